@@ -0,0 +1,139 @@
+package com.famoco.morphodemo.device;
+
+import com.morpho.morphosmart.sdk.Coder;
+import com.morpho.morphosmart.sdk.CompressionAlgorithm;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.EnrollmentType;
+import com.morpho.morphosmart.sdk.LatentDetection;
+import com.morpho.morphosmart.sdk.MorphoDevice;
+import com.morpho.morphosmart.sdk.MorphoImage;
+import com.morpho.morphosmart.sdk.ResultMatching;
+import com.morpho.morphosmart.sdk.StrategyAcquisitionMode;
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.util.Observer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link MorphoDevicePort} backed by the physical sensor through the Morpho SDK
+ *
+ * @version DEMO
+ */
+public class SdkMorphoDevice implements MorphoDevicePort {
+
+    /**
+     * Morpho device of the SDK
+     */
+    private final MorphoDevice morphoDevice;
+
+    public SdkMorphoDevice(MorphoDevice morphoDevice) {
+        this.morphoDevice = checkNotNull(morphoDevice);
+    }
+
+    @Override
+    public int initUsbDevicesNameEnum(CustomInteger nbUsbDevice) {
+        return morphoDevice.initUsbDevicesNameEnum(nbUsbDevice);
+    }
+
+    @Override
+    public String getUsbDeviceName(int index) {
+        return morphoDevice.getUsbDeviceName(index);
+    }
+
+    @Override
+    public int openUsbDevice(String sensorName, int timeout) {
+        return morphoDevice.openUsbDevice(sensorName, timeout);
+    }
+
+    @Override
+    public int openDeviceWithUart(String port, int speed) {
+        return morphoDevice.openDeviceWithUart(port, speed);
+    }
+
+    @Override
+    public int closeDevice() {
+        return morphoDevice.closeDevice();
+    }
+
+    @Override
+    public int setConfigParam(int tag, byte[] value) {
+        return morphoDevice.setConfigParam(tag, value);
+    }
+
+    @Override
+    public byte[] getConfigParam(int tag) {
+        return morphoDevice.getConfigParam(tag);
+    }
+
+    @Override
+    public int setStrategyAcquisitionMode(StrategyAcquisitionMode strategyAcquisitionMode) {
+        return morphoDevice.setStrategyAcquisitionMode(strategyAcquisitionMode);
+    }
+
+    @Override
+    public int capture(int timeout, int acquisitionThreshold, int advancedSecurityLevelsRequired,
+                       int fingerNumber, TemplateType templateType, TemplateFVPType templateFVPType,
+                       int maxSizeTemplate, EnrollmentType enrollType, LatentDetection latentDetection,
+                       Coder coderChoice, int detectModeChoice, CompressionAlgorithm compressAlgo,
+                       int compressRate, TemplateList templateList, int callbackCmd, Observer callback) {
+        return morphoDevice.capture(timeout, acquisitionThreshold, advancedSecurityLevelsRequired,
+                fingerNumber, templateType, templateFVPType, maxSizeTemplate, enrollType,
+                latentDetection, coderChoice, detectModeChoice, compressAlgo, compressRate,
+                templateList, callbackCmd, callback);
+    }
+
+    @Override
+    public int verify(int timeout, int far, Coder coderChoice, int detectModeChoice, int matchingStrategy,
+                      TemplateList templateList, int callbackCmd, Observer callback,
+                      ResultMatching resultMatching) {
+        return morphoDevice.verify(timeout, far, coderChoice, detectModeChoice, matchingStrategy,
+                templateList, callbackCmd, callback, resultMatching);
+    }
+
+    @Override
+    public int verifyMatch(int far, TemplateList searchTemplateList, TemplateList referenceTemplateList,
+                           CustomInteger matchingPkIndex) {
+        return morphoDevice.verifyMatch(far, searchTemplateList, referenceTemplateList, matchingPkIndex);
+    }
+
+    @Override
+    public int getImage(int timeout, int acquisitionThreshold, CompressionAlgorithm compressAlgo,
+                        int compressRate, int detectModeChoice, LatentDetection latentDetection,
+                        MorphoImage morphoImage, int callbackCmd, Observer callback) {
+        return morphoDevice.getImage(timeout, acquisitionThreshold, compressAlgo, compressRate,
+                detectModeChoice, latentDetection, morphoImage, callbackCmd, callback);
+    }
+
+    @Override
+    public int rebootSoft(int timeout, Observer callback) {
+        return morphoDevice.rebootSoft(timeout, callback);
+    }
+
+    @Override
+    public int cancelLiveAcquisition() {
+        return morphoDevice.cancelLiveAcquisition();
+    }
+
+    @Override
+    public String getFFDLogs() {
+        return morphoDevice.getFFDLogs();
+    }
+
+    @Override
+    public String getProductDescriptor() {
+        return morphoDevice.getProductDescriptor();
+    }
+
+    @Override
+    public String getSoftwareDescriptor() {
+        return morphoDevice.getSoftwareDescriptor();
+    }
+
+    @Override
+    public int getInternalError() {
+        return morphoDevice.getInternalError();
+    }
+}
@@ -8,7 +8,6 @@ import android.graphics.drawable.ShapeDrawable;
 import android.graphics.drawable.shapes.RoundRectShape;
 import android.media.RingtoneManager;
 import android.net.Uri;
-import android.os.Environment;
 import android.os.Handler;
 import android.os.Vibrator;
 import androidx.appcompat.app.AlertDialog;
@@ -38,15 +37,6 @@ public class MorphoFragment extends Fragment {
      */
     private static final String TAG = MorphoFragment.class.getSimpleName();
 
-    /**
-     * Name of the Template file containing all the fingerprint data
-     */
-    public static final String FILENAME = "TemplateFP_test_f1.iso-fmc-cs";
-    /**
-     * Path of the Template file containing all the fingerprint data
-     */
-    public static String FILEPATH = Environment.getExternalStorageDirectory().getPath() + "/" + FILENAME;
-
     private AlertDialog alertDialog;
 
     /**
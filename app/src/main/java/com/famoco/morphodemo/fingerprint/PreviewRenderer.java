@@ -0,0 +1,85 @@
+package com.famoco.morphodemo.fingerprint;
+
+import android.graphics.Bitmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts the low resolution live images of an acquisition to Bitmaps displayed to User.
+ * The Bitmaps come from a small ring sized from the header of the first frame and are
+ * overwritten in place, instead of allocating a Bitmap for every frame.
+ * Must only be used from the UI Thread
+ *
+ * @version DEMO
+ */
+public class PreviewRenderer {
+
+    /**
+     * Number of Bitmaps of the ring : the one displayed, the one being drawn and a spare
+     * for a display not refreshed yet
+     */
+    private static final int POOL_SIZE = 3;
+
+    private final Bitmap[] pool = new Bitmap[POOL_SIZE];
+    private int next = 0;
+    private int rows = 0;
+    private int columns = 0;
+    private byte[] unpacked = null;
+
+    /**
+     * Render a live image
+     *
+     * @param image low resolution live image sent by the Morpho device
+     * @return a Bitmap of the ring containing the image, valid until {@value #POOL_SIZE}
+     * other images have been rendered, or null if the image is truncated or not readable
+     */
+    public Bitmap render(byte[] image) {
+        // Pixels are copied straight from the callback buffer, without intermediate MorphoImage
+        LiveFrame frame = LiveFrame.parse(image);
+        if (frame == null) {
+            return null;
+        }
+        Bitmap bitmap = nextBitmap(frame.getNbRow(), frame.getNbColumn());
+        if (!frame.isPacked()) {
+            bitmap.copyPixelsFromBuffer(frame.getPixels());
+            return bitmap;
+        }
+        // 4 bits per pixel : expanded in a buffer kept for the next frames
+        if (unpacked == null) {
+            unpacked = new byte[rows * columns];
+        }
+        frame.unpackPixels(unpacked);
+        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(unpacked));
+        return bitmap;
+    }
+
+    /**
+     * Forget the Bitmaps of the ring. They are not recycled as the last one may still be displayed
+     */
+    public void release() {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool[i] = null;
+        }
+        unpacked = null;
+        rows = 0;
+        columns = 0;
+    }
+
+    /**
+     * @return the next Bitmap of the ring, (re)allocated if the size of the frames changed
+     */
+    private Bitmap nextBitmap(int frameRows, int frameColumns) {
+        if (frameRows != rows || frameColumns != columns) {
+            release();
+            rows = frameRows;
+            columns = frameColumns;
+        }
+        Bitmap bitmap = pool[next];
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(columns, rows, Bitmap.Config.ALPHA_8);
+            pool[next] = bitmap;
+        }
+        next = (next + 1) % POOL_SIZE;
+        return bitmap;
+    }
+}
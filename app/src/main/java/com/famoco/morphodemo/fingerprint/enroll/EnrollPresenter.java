@@ -1,34 +1,27 @@
 package com.famoco.morphodemo.fingerprint.enroll;
 
+import android.graphics.Bitmap;
 import android.os.Handler;
 import android.util.Log;
 
+import com.famoco.morphodemo.device.DevicePool;
+import com.famoco.morphodemo.device.HotPlugRecovery;
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.fingerprint.CallbackDispatcher;
+import com.famoco.morphodemo.fingerprint.FrameMailbox;
 import com.famoco.morphodemo.fingerprint.MorphoUtils;
+import com.famoco.morphodemo.fingerprint.PreviewRenderer;
+import com.famoco.morphodemo.storage.ExportFile;
+import com.famoco.morphodemo.storage.ExportWriter;
+import com.famoco.morphodemo.storage.TemplateStorage;
 import com.famoco.morphodemo.utils.morpho.ProcessInfo;
-import com.morpho.morphosmart.sdk.CallbackMessage;
-import com.morpho.morphosmart.sdk.Coder;
-import com.morpho.morphosmart.sdk.DetectionMode;
-import com.morpho.morphosmart.sdk.EnrollmentType;
 import com.morpho.morphosmart.sdk.ErrorCodes;
-import com.morpho.morphosmart.sdk.LatentDetection;
-import com.morpho.morphosmart.sdk.MorphoDevice;
-import com.morpho.morphosmart.sdk.MorphoWakeUpMode;
-import com.morpho.morphosmart.sdk.Template;
-import com.morpho.morphosmart.sdk.TemplateFVP;
-import com.morpho.morphosmart.sdk.TemplateFVPType;
-import com.morpho.morphosmart.sdk.TemplateList;
-import com.morpho.morphosmart.sdk.TemplateType;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Observable;
+import java.util.List;
 import java.util.Observer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.morpho.morphosmart.sdk.CompressionAlgorithm.MORPHO_COMPRESS_WSQ;
-import static com.morpho.morphosmart.sdk.CompressionAlgorithm.MORPHO_NO_COMPRESS;
-import static com.morpho.morphosmart.sdk.TemplateFVPType.MORPHO_NO_PK_FVP;
 
 /**
  * Presenter of EnrollFragment
@@ -36,7 +29,7 @@ import static com.morpho.morphosmart.sdk.TemplateFVPType.MORPHO_NO_PK_FVP;
  * @author Yoann
  * @version DEMO
  */
-class EnrollPresenter implements EnrollContract.Presenter, Observer {
+class EnrollPresenter implements EnrollContract.Presenter, CallbackDispatcher.Listener {
 
     /**
      * Constant Tag for debug purpose
@@ -44,31 +37,59 @@ class EnrollPresenter implements EnrollContract.Presenter, Observer {
     private static final String TAG = EnrollPresenter.class.getSimpleName();
 
     /**
-     * Morpho Device Capture Configuration
+     * View of the MVP pattern
      */
-    private final String ID_USER = "test";
-    private final TemplateType TEMPLATE_TYPE = TemplateType.MORPHO_PK_ISO_FMC_CS;
-    private final TemplateFVPType TEMPLATE_FVP_TYPE = MORPHO_NO_PK_FVP;
-    private final EnrollmentType ENROLL_TYPE = EnrollmentType.ONE_ACQUISITIONS;
-    private final int MAX_SIZE_TEMPLATE = 255;
-    private final LatentDetection LATENT_DETECTION = LatentDetection.LATENT_DETECT_ENABLE;
-    private final int NB_FINGER = 1;
+    private EnrollContract.View view;
 
     /**
-     * View of the MVP pattern
+     * Storage of the enrolled templates
      */
-    private EnrollContract.View view;
+    private final TemplateStorage templateStorage;
 
     /**
-     * Morpho device
+     * Logs the exports of the enrolled templates
      */
-    private MorphoDevice morphoDevice;
+    private final ExportWriter.Listener exportListener = new ExportWriter.Listener() {
+        @Override
+        public void onExportCompleted(List<ExportFile> files) {
+            Log.d(TAG, "Exported " + files);
+        }
+
+        @Override
+        public void onExportFailed(ExportFile file, IOException e) {
+            Log.e(TAG, "Export of " + file + " failed", e);
+        }
+    };
 
     /**
      * Handler to update UI Thread
      */
     private Handler mHandler;
 
+    /**
+     * Latest live image not displayed yet
+     */
+    private final FrameMailbox frameMailbox = new FrameMailbox();
+
+    /**
+     * Bitmaps of the live images, reused from one frame to the next
+     */
+    private final PreviewRenderer previewRenderer = new PreviewRenderer();
+
+    /**
+     * Display of the latest live image, at most one pending on the UI Thread
+     */
+    private final Runnable displayFrame = new Runnable() {
+        @Override
+        public void run() {
+            byte[] image = frameMailbox.take();
+            Bitmap bitmap = image != null ? previewRenderer.render(image) : null;
+            if (bitmap != null) {
+                view.updateImage(bitmap);
+            }
+        }
+    };
+
     /**
      * Constructor of the Presenter
      *
@@ -77,17 +98,19 @@ class EnrollPresenter implements EnrollContract.Presenter, Observer {
     EnrollPresenter(EnrollContract.View view) {
         this.view = checkNotNull(view);
         mHandler = new Handler();
-        morphoDevice = ProcessInfo.getInstance().getMorphoDevice();
+        templateStorage = new TemplateStorage(ProcessInfo.getInstance().getStorageDirectory());
     }
 
     @Override
     public void processFingerCapture() {
-        morphoDeviceCapture(this);
+        morphoDeviceCapture(new CallbackDispatcher(this));
     }
 
     @Override
     public void stopProcess() {
         mHandler.removeCallbacksAndMessages(null);
+        frameMailbox.clear();
+        previewRenderer.release();
     }
 
     /**
@@ -96,124 +119,55 @@ class EnrollPresenter implements EnrollContract.Presenter, Observer {
      * @param observer that will be notified in real time of the device acquisition
      */
     private void morphoDeviceCapture(final Observer observer) {
-        //Background thread to capture a new fingerprint
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                ProcessInfo processInfo = ProcessInfo.getInstance();
-                final int timeout = processInfo.getTimeout();
-                TemplateList templateList = new TemplateList();
-
-                int acquisitionThreshold = (processInfo.isFingerprintQualityThreshold()) ?
-                        processInfo.getFingerprintQualityThresholdvalue() : 0;
-                int advancedSecurityLevelsRequired = (processInfo.isAdvancedSecLevCompReq()) ?
-                        1 : 0xFF;
-
-                int callbackCmd = processInfo.getCallbackCmd();
-                Coder coderChoice = processInfo.getCoder();
-
-                int detectModeChoice = DetectionMode.MORPHO_ENROLL_DETECT_MODE.getValue();
-                if (processInfo.isForceFingerPlacementOnTop())
-                    detectModeChoice |= DetectionMode.MORPHO_FORCE_FINGER_ON_TOP_DETECT_MODE.getValue();
-                if (processInfo.isWakeUpWithLedOff())
-                    detectModeChoice |= MorphoWakeUpMode.MORPHO_WAKEUP_LED_OFF.getCode();
-
-                int ret = morphoDevice.setStrategyAcquisitionMode(processInfo.getStrategyAcquisitionMode());
-                if (ret == ErrorCodes.MORPHO_OK) {
-                    ret = morphoDevice.capture(timeout, acquisitionThreshold, advancedSecurityLevelsRequired,
-                            NB_FINGER,
-                            TEMPLATE_TYPE, TEMPLATE_FVP_TYPE, MAX_SIZE_TEMPLATE, ENROLL_TYPE,
-                            LATENT_DETECTION, coderChoice, detectModeChoice,
-                            MORPHO_NO_COMPRESS, 0, templateList, callbackCmd, observer);
+        // Command routed to an idle Morpho device to capture a new fingerprint
+        try {
+            DevicePool.getInstance().submit(new DevicePool.Command<Void>() {
+                @Override
+                public Void execute(MorphoDevicePort device) {
+                    EnrollProcess enrollProcess = new EnrollProcess(device, templateStorage);
+                    enrollProcess.setExportWriter(ExportWriter.getInstance(), exportListener);
+                    final EnrollResult result = enrollProcess.execute(observer);
+                    if (ProcessInfo.getInstance().getDuplicatePolicy() != DuplicatePolicy.NONE) {
+                        Log.d(TAG, "Duplicate check : " + result.getDuplicateCheckNanos() / 1000000 + " ms"
+                                + (result.isDuplicateCheckComplete() ? "" : " (incomplete)")
+                                + ", duplicate : " + result.getDuplicate());
+                    }
+                    Log.d(TAG, "Live images : " + frameMailbox.getOfferedCount() + " received, "
+                            + frameMailbox.getDroppedCount() + " dropped before display");
+
+                    if (HotPlugRecovery.getInstance().resumeAfterRecovery(device, result.getErrorCode(),
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    morphoDeviceCapture(observer);
+                                }
+                            })) {
+                        Log.d(TAG, "Capture interrupted by a detach, resumed when the device is back");
+                        return null;
+                    }
 
-                    //Test of getImage method from SDK
-//                    final MorphoImage[] morphoImage = new MorphoImage[] {new MorphoImage()};
-//                    ret = morphoDevice.getImage(timeout, acquisitionThreshold,
-//                            MORPHO_COMPRESS_WSQ, 0, detectModeChoice, LATENT_DETECTION, morphoImage[0], callbackCmd, observer);
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public synchronized void run() {
+                            if (result.getErrorCode() != ErrorCodes.MORPHOERR_CMDE_ABORTED) {
+                                view.alert(result.getErrorCode(), result.getInternalError());
+                                view.onCaptureCompleted();
+                            }
+                        }
+                    });
+                    return null;
                 }
-
-                processInfo.setCommandBioStart(false);
-
-                MorphoUtils.storeFFDLogs(morphoDevice);
-
-                if (ret == ErrorCodes.MORPHO_OK) {
-                    exportFVP(templateList);
-                    exportFP(templateList);
+            });
+        } catch (IllegalStateException e) {
+            // No sensor open yet, or all of them detached
+            Log.e(TAG, "No Morpho device to run the command : " + e.getMessage());
+            mHandler.post(new Runnable() {
+                @Override
+                public synchronized void run() {
+                    view.alert(ErrorCodes.MORPHOERR_COM_NOT_OPEN, 0);
+                    view.onCaptureCompleted();
                 }
-
-                final int internalError = morphoDevice.getInternalError();
-                final int retValue = ret;
-
-                mHandler.post(new Runnable() {
-                    @Override
-                    public synchronized void run() {
-                        if (retValue != ErrorCodes.MORPHOERR_CMDE_ABORTED) {
-                            view.alert(retValue, internalError);
-                            view.onCaptureCompleted();
-                        }
-                    }
-                });
-            }
-        }).start();
-    }
-
-    /**
-     * Write data in a file with FP format
-     *
-     * @param templateList containing data
-     */
-    private void exportFP(TemplateList templateList) {
-        int nbTemplate = templateList.getNbTemplate();
-        for (int i = 0; i < nbTemplate; i++) {
-            try (FileOutputStream fos = new FileOutputStream("sdcard/TemplateFP_" + ID_USER + "_f" + (i + 1) + TEMPLATE_TYPE.getExtension())) {
-                Template t = templateList.getTemplate(i);
-                byte[] data = t.getData();
-                Log.d(TAG, "Writing data in file with FP format : " + Arrays.toString(data));
-                fos.write(data);
-            } catch (IOException e) {
-                Log.e(TAG, "An error has occurred while manipulating files " + e.getMessage());
-            }
-        }
-    }
-
-    /**
-     * Write data in a file with FVP format
-     *
-     * @param templateList containing data
-     */
-    private void exportFVP(TemplateList templateList) {
-        int nbTemplateFVP = templateList.getNbFVPTemplate();
-        for (int i = 0; i < nbTemplateFVP; i++) {
-            try (FileOutputStream fos = new FileOutputStream("sdcard/TemplateFVP_" + ID_USER + "_f" + (i + 1) + TEMPLATE_FVP_TYPE.getExtension())) {
-                TemplateFVP t = templateList.getFVPTemplate(i);
-                byte[] data = t.getData();
-                Log.d(TAG, "Writing data in file with FVP format : " + Arrays.toString(data));
-                fos.write(data);
-            } catch (IOException e) {
-                Log.e(TAG, "An error has occurred while manipulating files " + e.getMessage());
-            }
-        }
-    }
-
-    @Override
-    public void update(Observable o, Object arg) {
-        // Convert the object to a callback message.
-        CallbackMessage message = (CallbackMessage) arg;
-        int type = message.getMessageType();
-
-        switch (type) {
-            case 1: // Message is a command.
-                handleCommand((Integer) message.getMessage());
-                break;
-            case 2: // Message is a low resolution image
-                handleImage((byte[]) message.getMessage());
-                break;
-            case 3: // Message is the coded image quality.
-                handleQuality((Integer) message.getMessage());
-                break;
-            default:
-                Log.e(TAG, "Unknown message received from Morpho device : " + arg);
-                break;
+            });
         }
     }
 
@@ -222,7 +176,8 @@ class EnrollPresenter implements EnrollContract.Presenter, Observer {
      *
      * @param quality used to set new progress
      */
-    private void handleQuality(final Integer quality) {
+    @Override
+    public void onQuality(final Integer quality) {
         mHandler.post(new Runnable() {
             @Override
             public synchronized void run() {
@@ -232,17 +187,16 @@ class EnrollPresenter implements EnrollContract.Presenter, Observer {
     }
 
     /**
-     * Update UI Thread with image return by Morpho device
+     * Update UI Thread with image return by Morpho device.
+     * Images received while the previous one is not displayed yet replace it
      *
      * @param image to display
      */
-    private void handleImage(final byte[] image) {
-        mHandler.post(new Runnable() {
-            @Override
-            public synchronized void run() {
-                view.updateImage(MorphoUtils.createBitmap(image));
-            }
-        });
+    @Override
+    public void onImage(final byte[] image) {
+        if (frameMailbox.offer(image)) {
+            mHandler.post(displayFrame);
+        }
     }
 
     /**
@@ -250,7 +204,8 @@ class EnrollPresenter implements EnrollContract.Presenter, Observer {
      *
      * @param command corresponding to a String to display
      */
-    private void handleCommand(final Integer command) {
+    @Override
+    public void onCommand(final Integer command) {
         mHandler.post(new Runnable() {
             @Override
             public synchronized void run() {
@@ -1,40 +1,31 @@
 package com.famoco.morphodemo.fingerprint.image;
 
-import android.app.AlertDialog;
-import android.content.DialogInterface;
+import android.graphics.Bitmap;
 import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 
 import com.famoco.fingerprintimageheaderlib.WSQUtils;
-import com.famoco.morphodemo.R;
+import com.famoco.morphodemo.device.DevicePool;
+import com.famoco.morphodemo.device.HotPlugRecovery;
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.fingerprint.CallbackDispatcher;
+import com.famoco.morphodemo.fingerprint.FrameMailbox;
 import com.famoco.morphodemo.fingerprint.MorphoUtils;
-import com.famoco.morphodemo.utils.morpho.FingerPrintInfo;
-import com.famoco.morphodemo.utils.morpho.FingerPrintMode;
-import com.famoco.morphodemo.utils.morpho.MorphoInfo;
+import com.famoco.morphodemo.fingerprint.PreviewRenderer;
+import com.famoco.morphodemo.fingerprint.ProcessResult;
+import com.famoco.morphodemo.storage.ExportFile;
+import com.famoco.morphodemo.storage.ExportWriter;
+import com.famoco.morphodemo.storage.TemplateStorage;
 import com.famoco.morphodemo.utils.morpho.ProcessInfo;
-import com.morpho.morphosmart.sdk.CallbackMask;
-import com.morpho.morphosmart.sdk.CallbackMessage;
-import com.morpho.morphosmart.sdk.CompressionAlgorithm;
-import com.morpho.morphosmart.sdk.DetectionMode;
 import com.morpho.morphosmart.sdk.ErrorCodes;
-import com.morpho.morphosmart.sdk.LatentDetection;
-import com.morpho.morphosmart.sdk.MorphoDevice;
-import com.morpho.morphosmart.sdk.MorphoImage;
-import com.morpho.morphosmart.sdk.MorphoWakeUpMode;
-import com.morpho.morphosmart.sdk.Template;
-
-import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Observable;
+import java.util.List;
 import java.util.Observer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-public class ImagePresenter implements ImageContract.Presenter, Observer {
+public class ImagePresenter implements ImageContract.Presenter, CallbackDispatcher.Listener {
 
     /**
      * Constant Tag for debug purpose
@@ -47,15 +38,64 @@ public class ImagePresenter implements ImageContract.Presenter, Observer {
     private ImageContract.View view;
 
     /**
-     * Morpho device
+     * Storage of the captured images
+     */
+    private final TemplateStorage templateStorage;
+
+    /**
+     * Adds the WSQ header to the captured images
      */
-    private MorphoDevice morphoDevice;
+    private final ImageProcess.HeaderWriter headerWriter = new ImageProcess.HeaderWriter() {
+        @Override
+        public byte[] setNewHeader(byte[] data) {
+            return WSQUtils.setNewHeader(data);
+        }
+    };
+
+    /**
+     * Logs the exports of the captured images
+     */
+    private final ExportWriter.Listener exportListener = new ExportWriter.Listener() {
+        @Override
+        public void onExportCompleted(List<ExportFile> files) {
+            Log.d(TAG, "Exported " + files);
+        }
+
+        @Override
+        public void onExportFailed(ExportFile file, IOException e) {
+            Log.e(TAG, "Export of " + file + " failed", e);
+        }
+    };
 
     /**
      * Handler to update UI Thread
      */
     private Handler mHandler;
 
+    /**
+     * Latest live image not displayed yet
+     */
+    private final FrameMailbox frameMailbox = new FrameMailbox();
+
+    /**
+     * Bitmaps of the live images, reused from one frame to the next
+     */
+    private final PreviewRenderer previewRenderer = new PreviewRenderer();
+
+    /**
+     * Display of the latest live image, at most one pending on the UI Thread
+     */
+    private final Runnable displayFrame = new Runnable() {
+        @Override
+        public void run() {
+            byte[] image = frameMailbox.take();
+            Bitmap bitmap = image != null ? previewRenderer.render(image) : null;
+            if (bitmap != null) {
+                view.updateImage(bitmap);
+            }
+        }
+    };
+
     /**
      * Constructor of the Presenter
      *
@@ -64,141 +104,66 @@ public class ImagePresenter implements ImageContract.Presenter, Observer {
     ImagePresenter(ImageContract.View view) {
         this.view = checkNotNull(view);
         mHandler = new Handler();
-        morphoDevice = ProcessInfo.getInstance().getMorphoDevice();
+        templateStorage = new TemplateStorage(ProcessInfo.getInstance().getStorageDirectory());
     }
 
     @Override
     public void processImageCapture() {
-        morphoDeviceGetImage(this);
+        morphoDeviceGetImage(new CallbackDispatcher(this));
     }
 
     @Override
     public void stopProcess() {
         mHandler.removeCallbacksAndMessages(null);
+        frameMailbox.clear();
+        previewRenderer.release();
     }
 
     private void morphoDeviceGetImage(final Observer observer) {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-
-                ProcessInfo processInfo = ProcessInfo.getInstance();
-
-                MorphoInfo morphoInfo = ProcessInfo.getInstance().getMorphoInfo();
-                int timeOut = processInfo.getTimeout();
-                int acquisitionThreshold = 0;
-                final CompressionAlgorithm compressAlgo = CompressionAlgorithm.MORPHO_COMPRESS_WSQ;
-                int compressRate = 10;
-                int detectModeChoice = DetectionMode.MORPHO_ENROLL_DETECT_MODE.getValue();
-                LatentDetection latentDetection = LatentDetection.LATENT_DETECT_ENABLE;
-                final MorphoImage[] morphoImage = new MorphoImage[] {new MorphoImage()};
-                int callbackCmd = ProcessInfo.getInstance().getCallbackCmd();
-
-                callbackCmd &= ~CallbackMask.MORPHO_CALLBACK_ENROLLMENT_CMD.getValue();
+        // Command routed to an idle Morpho device to capture an image
+        try {
+            DevicePool.getInstance().submit(new DevicePool.Command<Void>() {
+                @Override
+                public Void execute(MorphoDevicePort device) {
+                    ImageProcess imageProcess = new ImageProcess(device, templateStorage, headerWriter);
+                    imageProcess.setExportWriter(ExportWriter.getInstance(), exportListener);
+                    final ProcessResult result = imageProcess.execute(observer);
+                    Log.d(TAG, "Live images : " + frameMailbox.getOfferedCount() + " received, "
+                            + frameMailbox.getDroppedCount() + " dropped before display");
+
+                    if (HotPlugRecovery.getInstance().resumeAfterRecovery(device, result.getErrorCode(),
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    morphoDeviceGetImage(observer);
+                                }
+                            })) {
+                        Log.d(TAG, "Capture interrupted by a detach, resumed when the device is back");
+                        return null;
+                    }
 
-                if(ProcessInfo.getInstance().isFingerprintQualityThreshold()) {
-                    acquisitionThreshold = ProcessInfo.getInstance().getFingerprintQualityThresholdvalue();
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public synchronized void run() {
+                            if (result.getErrorCode() != ErrorCodes.MORPHOERR_CMDE_ABORTED) {
+                                view.alert(result.getErrorCode(), result.getInternalError());
+                                view.onImageCaptureCompleted();
+                            }
+                        }
+                    });
+                    return null;
                 }
-
-                final int ret = morphoDevice.getImage(timeOut, acquisitionThreshold,
-                        compressAlgo,
-                        compressRate,
-                        detectModeChoice,
-                        latentDetection,
-                        morphoImage[0],
-                        callbackCmd,
-                        observer);
-
-                ProcessInfo.getInstance().setCommandBioStart(false);
-
-                MorphoUtils.storeFFDLogs(morphoDevice);
-
-                if (ret == ErrorCodes.MORPHO_OK) {
-//                    exportNoCompressedImage(morphoImage[0]);
-                    exportWSQCompressedImage(morphoImage[0]);
-//                    exportWSQCompressedImageWithHeader(morphoImage[0]);
-                    exportWSQCompressedImageWithNewHeader(morphoImage[0]);
-//                    saveImage(morphoImage);
+            });
+        } catch (IllegalStateException e) {
+            // No sensor open yet, or all of them detached
+            Log.e(TAG, "No Morpho device to run the command : " + e.getMessage());
+            mHandler.post(new Runnable() {
+                @Override
+                public synchronized void run() {
+                    view.alert(ErrorCodes.MORPHOERR_COM_NOT_OPEN, 0);
+                    view.onImageCaptureCompleted();
                 }
-
-                final int internalError = morphoDevice.getInternalError();
-                final int retValue = ret;
-
-                mHandler.post(new Runnable() {
-                    @Override
-                    public synchronized void run() {
-                        if (retValue != ErrorCodes.MORPHOERR_CMDE_ABORTED) {
-                            view.alert(retValue, internalError);
-                            view.onImageCaptureCompleted();
-                        }
-                    }
-                });
-            }
-        }).start();
-    }
-
-    private void exportNoCompressedImage(final MorphoImage morphoImage) {
-//        morphoImage.setCompressionAlgorithm(CompressionAlgorithm.MORPHO_NO_COMPRESS);
-        try (FileOutputStream fos = new FileOutputStream("sdcard/TemplateFP_no_WSQ" + CompressionAlgorithm.MORPHO_NO_COMPRESS.getExtension())) {
-            byte[] data = morphoImage.getImage();
-            Log.d(TAG, "Writing data in file with WSQ format : " + Arrays.toString(data));
-            fos.write(data);
-        } catch (IOException e) {
-            Log.e(TAG, "An error has occurred while manipulating files " + e.getMessage());
-        }
-    }
-
-    private void exportWSQCompressedImageWithHeader(final MorphoImage morphoImage) {
-        try (FileOutputStream fos = new FileOutputStream("sdcard/TemplateFP_WSQ_header" + CompressionAlgorithm.MORPHO_COMPRESS_WSQ.getExtension())) {
-            byte[] data = morphoImage.getCompressedImage();
-            byte[] result = WSQUtils.setHeader(data);
-            Log.d(TAG, "Writing data in file with WSQ format : " + Arrays.toString(data));
-            fos.write(result);
-        } catch (IOException e) {
-            Log.e(TAG, "An error has occurred while manipulating files " + e.getMessage());
-        }
-    }
-
-    private void exportWSQCompressedImageWithNewHeader(final MorphoImage morphoImage) {
-        try (FileOutputStream fos = new FileOutputStream("sdcard/TemplateFP_WSQ_newHeader" + CompressionAlgorithm.MORPHO_COMPRESS_WSQ.getExtension())) {
-            byte[] data = morphoImage.getCompressedImage();
-            byte[] result = WSQUtils.setNewHeader(data);
-            Log.d(TAG, "Writing data in file with WSQ format : " + Arrays.toString(data));
-            fos.write(result);
-        } catch (IOException e) {
-            Log.e(TAG, "An error has occurred while manipulating files " + e.getMessage());
-        }
-    }
-
-    private void exportWSQCompressedImage(final MorphoImage morphoImage) {
-        try (FileOutputStream fos = new FileOutputStream("sdcard/TemplateFP_WSQ" + CompressionAlgorithm.MORPHO_COMPRESS_WSQ.getExtension())) {
-            byte[] data = morphoImage.getCompressedImage();
-            Log.d(TAG, "Writing data in file with WSQ format : " + Arrays.toString(data));
-            fos.write(data);
-        } catch (IOException e) {
-            Log.e(TAG, "An error has occurred while manipulating files " + e.getMessage());
-        }
-    }
-
-    @Override
-    public void update(Observable o, Object arg) {
-// Convert the object to a callback message.
-        CallbackMessage message = (CallbackMessage) arg;
-        int type = message.getMessageType();
-
-        switch (type) {
-            case 1: // Message is a command.
-                handleCommand((Integer) message.getMessage());
-                break;
-            case 2: // Message is a low resolution image
-                handleImage((byte[]) message.getMessage());
-                break;
-            case 3: // Message is the coded image quality.
-                handleQuality((Integer) message.getMessage());
-                break;
-            default:
-                Log.e(TAG, "Unknown message received from Morpho device : " + arg);
-                break;
+            });
         }
     }
 
@@ -207,7 +172,8 @@ public class ImagePresenter implements ImageContract.Presenter, Observer {
      *
      * @param quality used to set new progress
      */
-    private void handleQuality(final Integer quality) {
+    @Override
+    public void onQuality(final Integer quality) {
         mHandler.post(new Runnable() {
             @Override
             public synchronized void run() {
@@ -217,17 +183,16 @@ public class ImagePresenter implements ImageContract.Presenter, Observer {
     }
 
     /**
-     * Update UI Thread with image return by Morpho device
+     * Update UI Thread with image return by Morpho device.
+     * Images received while the previous one is not displayed yet replace it
      *
      * @param image to display
      */
-    private void handleImage(final byte[] image) {
-        mHandler.post(new Runnable() {
-            @Override
-            public synchronized void run() {
-                view.updateImage(MorphoUtils.createBitmap(image));
-            }
-        });
+    @Override
+    public void onImage(final byte[] image) {
+        if (frameMailbox.offer(image)) {
+            mHandler.post(displayFrame);
+        }
     }
 
     /**
@@ -235,7 +200,8 @@ public class ImagePresenter implements ImageContract.Presenter, Observer {
      *
      * @param command corresponding to a String to display
      */
-    private void handleCommand(final Integer command) {
+    @Override
+    public void onCommand(final Integer command) {
         mHandler.post(new Runnable() {
             @Override
             public synchronized void run() {
@@ -1,30 +1,27 @@
 package com.famoco.morphodemo.fingerprint.verify;
 
+import android.graphics.Bitmap;
 import android.os.Handler;
 import android.util.Log;
 
-import com.famoco.morphodemo.fingerprint.MorphoFragment;
+import com.famoco.morphodemo.device.DevicePool;
+import com.famoco.morphodemo.device.HotPlugRecovery;
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.fingerprint.CallbackDispatcher;
+import com.famoco.morphodemo.fingerprint.FrameMailbox;
 import com.famoco.morphodemo.fingerprint.MorphoUtils;
+import com.famoco.morphodemo.fingerprint.PreviewRenderer;
+import com.famoco.morphodemo.fingerprint.ProcessResult;
+import com.famoco.morphodemo.fingerprint.identify.IdentifyProcess;
+import com.famoco.morphodemo.fingerprint.identify.IdentifyResult;
+import com.famoco.morphodemo.fingerprint.identify.MinutiaePreFilter;
+import com.famoco.morphodemo.storage.TemplateCache;
+import com.famoco.morphodemo.storage.TemplateStorage;
 import com.famoco.morphodemo.utils.morpho.ProcessInfo;
-import com.morpho.morphosmart.sdk.CallbackMask;
-import com.morpho.morphosmart.sdk.CallbackMessage;
-import com.morpho.morphosmart.sdk.Coder;
-import com.morpho.morphosmart.sdk.DetectionMode;
 import com.morpho.morphosmart.sdk.ErrorCodes;
-import com.morpho.morphosmart.sdk.FalseAcceptanceRate;
-import com.morpho.morphosmart.sdk.ITemplateType;
-import com.morpho.morphosmart.sdk.MorphoDevice;
-import com.morpho.morphosmart.sdk.ResultMatching;
-import com.morpho.morphosmart.sdk.Template;
-import com.morpho.morphosmart.sdk.TemplateFVP;
-import com.morpho.morphosmart.sdk.TemplateFVPType;
 import com.morpho.morphosmart.sdk.TemplateList;
-import com.morpho.morphosmart.sdk.TemplateType;
 
-import java.io.DataInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Observable;
 import java.util.Observer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -35,7 +32,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * @author Yoann
  * @version DEMO
  */
-public class VerifyPresenter implements Observer, VerifyContract.Presenter {
+public class VerifyPresenter implements CallbackDispatcher.Listener, VerifyContract.Presenter {
 
     /**
      * Constant Tag for debug purpose
@@ -52,15 +49,39 @@ public class VerifyPresenter implements Observer, VerifyContract.Presenter {
      */
     private Handler mHandler;
 
+    /**
+     * Latest live image not displayed yet
+     */
+    private final FrameMailbox frameMailbox = new FrameMailbox();
+
+    /**
+     * Bitmaps of the live images, reused from one frame to the next
+     */
+    private final PreviewRenderer previewRenderer = new PreviewRenderer();
+
+    /**
+     * Display of the latest live image, at most one pending on the UI Thread
+     */
+    private final Runnable displayFrame = new Runnable() {
+        @Override
+        public void run() {
+            byte[] image = frameMailbox.take();
+            Bitmap bitmap = image != null ? previewRenderer.render(image) : null;
+            if (bitmap != null) {
+                view.updateImage(bitmap);
+            }
+        }
+    };
+
     /**
      * View of the MVP pattern
      */
     private VerifyContract.View view;
 
     /**
-     * Morpho device
+     * Storage of the enrolled templates
      */
-    private MorphoDevice morphoDevice;
+    private final TemplateStorage templateStorage;
 
     /**
      * Constructor of the Presenter
@@ -70,17 +91,19 @@ public class VerifyPresenter implements Observer, VerifyContract.Presenter {
     VerifyPresenter(VerifyContract.View view) {
         this.view = checkNotNull(view);
         this.mHandler = new Handler();
-        this.morphoDevice = ProcessInfo.getInstance().getMorphoDevice();
+        this.templateStorage = new TemplateStorage(ProcessInfo.getInstance().getStorageDirectory());
     }
 
     @Override
     public void processFingerVerification() {
-        morphoDeviceVerify(this);
+        morphoDeviceVerify(new CallbackDispatcher(this));
     }
 
     @Override
     public void stopProcess() {
         mHandler.removeCallbacksAndMessages(null);
+        frameMailbox.clear();
+        previewRenderer.release();
     }
 
     /**
@@ -89,130 +112,92 @@ public class VerifyPresenter implements Observer, VerifyContract.Presenter {
      * @param observer that will be notified in real time of the device acquisition
      */
     private void morphoDeviceVerify(final Observer observer) {
-        try (DataInputStream dis = new DataInputStream(new FileInputStream(MorphoFragment.FILEPATH))) {
-
-            int length = dis.available();
-            final byte[] buffer = new byte[length];
-            dis.readFully(buffer);
-
-            // Background thread to process the verification of the fingerprint
-            new Thread(new Runnable() {
+        // Command routed to an idle Morpho device to verify the fingerprint
+        try {
+            DevicePool.getInstance().submit(new DevicePool.Command<Void>() {
                 @Override
-                public void run() {
-                    Template template = new Template();
-                    TemplateFVP templateFVP = new TemplateFVP();
-                    TemplateList templateList = new TemplateList();
-
-                    ITemplateType iTemplateType = getTemplateTypeFromExtension(getFileExtension(MorphoFragment.FILENAME));
-                    if (iTemplateType instanceof TemplateFVPType) {
-                        templateFVP.setData(buffer);
-                        templateFVP.setTemplateFVPType((TemplateFVPType) iTemplateType);
-                        templateList.putFVPTemplate(templateFVP);
+                public Void execute(MorphoDevicePort device) {
+                    final ProcessResult result;
+                    if (ProcessInfo.getInstance().isIdentification()) {
+                        IdentifyProcess identifyProcess = new IdentifyProcess(device, templateStorage);
+                        // The shortlist trades some recall for speed, only on the galleries too
+                        // large to be matched whole
+                        int preFilterGallerySize = ProcessInfo.getInstance().getPreFilterGallerySize();
+                        if (preFilterGallerySize > 0) {
+                            identifyProcess.setPreFilter(MinutiaePreFilter.getInstance(),
+                                    MinutiaePreFilter.DEFAULT_SHORTLIST_SIZE, preFilterGallerySize);
+                        }
+                        IdentifyResult identifyResult = identifyProcess.execute(observer);
+                        Log.d(TAG, "Identification : " + identifyResult);
+                        result = identifyResult;
                     } else {
-                        template.setData(buffer);
-                        template.setTemplateType((TemplateType) iTemplateType);
-                        templateList.putTemplate(template);
+                        VerifyProcess verifyProcess = new VerifyProcess(device, templateStorage);
+                        String userId = ProcessInfo.getInstance().getUserId();
+                        final TemplateList templateList;
+                        try {
+                            templateList = verifyProcess.loadTemplateList(userId);
+                        } catch (IOException e) {
+                            Log.d(TAG, "Exception encountered with file verification : " + e.getMessage());
+                            postFailure(ErrorCodes.MORPHOERR_INTERNAL);
+                            return null;
+                        }
+                        TemplateCache templateCache = TemplateCache.getInstance();
+                        Log.d(TAG, "Template cache : " + templateCache.getHitCount() + " hits, "
+                                + templateCache.getMissCount() + " misses");
+                        if (templateList == null) {
+                            // Never enrolled, or its record has been quarantined
+                            Log.d(TAG, "No template enrolled for " + userId);
+                            postFailure(ErrorCodes.MORPHOERR_NO_REGISTERED_TEMPLATE);
+                            return null;
+                        }
+                        result = verifyProcess.execute(templateList, observer);
                     }
-
-                    int timeOut = 0;
-                    int far = FalseAcceptanceRate.MORPHO_FAR_5;
-                    Coder coderChoice = Coder.MORPHO_DEFAULT_CODER;
-                    int detectModeChoice = DetectionMode.MORPHO_ENROLL_DETECT_MODE.getValue();
-                    int matchingStrategy = 0;
-
-                    int callbackCmd = ProcessInfo.getInstance().getCallbackCmd();
-
-                    callbackCmd &= ~CallbackMask.MORPHO_CALLBACK_ENROLLMENT_CMD.getValue();
-
-                    ResultMatching resultMatching = new ResultMatching();
-
-                    int ret = morphoDevice.setStrategyAcquisitionMode(ProcessInfo.getInstance().getStrategyAcquisitionMode());
-
-                    if (ret == 0) {
-                        ret = morphoDevice.verify(timeOut, far,
-                                coderChoice, detectModeChoice,
-                                matchingStrategy, templateList,
-                                callbackCmd, observer, resultMatching);
+                    Log.d(TAG, "Live images : " + frameMailbox.getOfferedCount() + " received, "
+                            + frameMailbox.getDroppedCount() + " dropped before display");
+
+                    if (HotPlugRecovery.getInstance().resumeAfterRecovery(device, result.getErrorCode(),
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    morphoDeviceVerify(observer);
+                                }
+                            })) {
+                        Log.d(TAG, "Verification interrupted by a detach, resumed when the device is back");
+                        return null;
                     }
 
-                    ProcessInfo.getInstance().setCommandBioStart(false);
-
-                    MorphoUtils.storeFFDLogs(morphoDevice);
-
-                    final int l_ret = ret;
-                    final int internalError = morphoDevice.getInternalError();
                     mHandler.post(new Runnable() {
                         @Override
                         public synchronized void run() {
-                            if (l_ret != ErrorCodes.MORPHOERR_CMDE_ABORTED) {
-                                view.alert(l_ret, internalError);
+                            if (result.getErrorCode() != ErrorCodes.MORPHOERR_CMDE_ABORTED) {
+                                view.alert(result.getErrorCode(), result.getInternalError());
                                 view.onVerificationCompleted();
                             }
                         }
                     });
+                    return null;
                 }
-            }).start();
-        } catch (IOException e) {
-            Log.d(TAG, "Exception encountered with file verification : " + e.getMessage());
+            });
+        } catch (IllegalStateException e) {
+            // No sensor open yet, or all of them detached
+            Log.e(TAG, "No Morpho device to run the command : " + e.getMessage());
+            postFailure(ErrorCodes.MORPHOERR_COM_NOT_OPEN);
         }
     }
 
     /**
-     * Determines whether the Template is of type Template FP or Template FVP (depending on the
-     * different Morpho devices)
+     * Report a verification which could not reach the Morpho device
      *
-     * @param extension of the file
-     * @return the type of Template
+     * @param errorCode to display
      */
-    private ITemplateType getTemplateTypeFromExtension(String extension) {
-        for (TemplateType templateType : TemplateType.values()) {
-            if (templateType.getExtension().equalsIgnoreCase(extension)) {
-                return templateType;
-            }
-        }
-        for (TemplateFVPType templateFVPType : TemplateFVPType.values()) {
-            if (templateFVPType.getExtension().equalsIgnoreCase(extension)) {
-                return templateFVPType;
+    private void postFailure(final int errorCode) {
+        mHandler.post(new Runnable() {
+            @Override
+            public synchronized void run() {
+                view.alert(errorCode, 0);
+                view.onVerificationCompleted();
             }
-        }
-        return TemplateType.MORPHO_NO_PK_FP;
-    }
-
-    /**
-     * Subtract the extension of a file and return it
-     *
-     * @param fileName to isolate extension
-     * @return the extension
-     */
-    private String getFileExtension(String fileName) {
-        String extension = "";
-        int dotIndex = fileName.lastIndexOf('.');
-        if (dotIndex >= 0) {
-            extension = fileName.substring(dotIndex);
-        }
-        return extension;
-    }
-
-    @Override
-    public void update(Observable o, Object arg) {
-        // Convert the object to a callback message.
-        CallbackMessage message = (CallbackMessage) arg;
-        int type = message.getMessageType();
-
-        switch (type) {
-            case 1: // Message is a command.
-                handleCommand((Integer) message.getMessage());
-                break;
-            case 2: // Message is a low resolution image
-                handleImage((byte[]) message.getMessage());
-                break;
-            case 3: // Message is the coded image quality.
-                handleQuality((Integer) message.getMessage());
-                break;
-            default:
-                Log.e(TAG, "Unknown message received from Morpho device : " + arg);
-                break;
-        }
+        });
     }
 
     /**
@@ -220,7 +205,8 @@ public class VerifyPresenter implements Observer, VerifyContract.Presenter {
      *
      * @param quality used to set new progress
      */
-    private void handleQuality(final Integer quality) {
+    @Override
+    public void onQuality(final Integer quality) {
         mHandler.post(new Runnable() {
             @Override
             public synchronized void run() {
@@ -230,17 +216,16 @@ public class VerifyPresenter implements Observer, VerifyContract.Presenter {
     }
 
     /**
-     * Update UI Thread with image return by Morpho device
+     * Update UI Thread with image return by Morpho device.
+     * Images received while the previous one is not displayed yet replace it
      *
      * @param image to display
      */
-    private void handleImage(final byte[] image) {
-        mHandler.post(new Runnable() {
-            @Override
-            public synchronized void run() {
-                view.updateImage(MorphoUtils.createBitmap(image));
-            }
-        });
+    @Override
+    public void onImage(final byte[] image) {
+        if (frameMailbox.offer(image)) {
+            mHandler.post(displayFrame);
+        }
     }
 
     /**
@@ -248,7 +233,8 @@ public class VerifyPresenter implements Observer, VerifyContract.Presenter {
      *
      * @param command corresponding to a String to display
      */
-    private void handleCommand(final Integer command) {
+    @Override
+    public void onCommand(final Integer command) {
         mHandler.post(new Runnable() {
             @Override
             public synchronized void run() {
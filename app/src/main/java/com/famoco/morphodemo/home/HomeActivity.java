@@ -26,7 +26,6 @@ import com.famoco.morphodemo.fingerprint.image.ImageFragment;
 import com.famoco.morphodemo.fingerprint.verify.VerifyFragment;
 import com.famoco.morphodemo.utils.DialogUtils;
 import com.famoco.morphodemo.utils.Utils;
-import com.morpho.morphosmart.sdk.ErrorCodes;
 
 import java.util.Observable;
 import java.util.Observer;
@@ -144,7 +143,7 @@ public class HomeActivity extends AppCompatActivity implements
                     if (device != null) {
                         Log.i(TAG, "\t--> onReceive: USB Attached " + device.toString());
                         if (device.getVendorId() == 8797) {
-                            rebootSoft();
+                            presenter.onUsbAttached();
                         } else {
                             Log.e(TAG, "onReceive: Device attached : Not a Morpho");
                         }
@@ -167,12 +166,8 @@ public class HomeActivity extends AppCompatActivity implements
                     if (device != null) {
                         Log.i(TAG, "\t--> onReceive: USB Detached " + device.toString());
                         if (device.getVendorId() == 8797) {
-                            presenter.cancelConnection();
-                            Fragment f = getFragmentManager().findFragmentById(R.id.fragment_container);
-                            if ((f instanceof EnrollFragment) || (f instanceof VerifyFragment) || (f instanceof ImageFragment)) {
-                                onBackPressed();
-                            }
-                            displayDetachToast();
+                            // The capture is left only if the device does not come back
+                            presenter.onUsbDetached();
                         } else {
                             Log.e(TAG, "onReceive: Device Detached : Not a Morpho");
                         }
@@ -182,19 +177,6 @@ public class HomeActivity extends AppCompatActivity implements
         };
     }
 
-    /**
-     * Method used to reboot the Morpho device
-     */
-    private void rebootSoft() {
-        displayAttachToast();
-        int ret = presenter.rebootSoft(callback);
-        if (ErrorCodes.MORPHO_OK == ret) {
-            Log.d(TAG, "onReceive: device reconnected");
-        } else {
-            Log.e(TAG, "onReceive: ErrorCodes : " + ret);
-        }
-    }
-
     @Override
     public void onHomeFragmentInteraction(HomeAction action) {
         this.presenter.handleInteraction(action);
@@ -276,6 +258,20 @@ public class HomeActivity extends AppCompatActivity implements
         DialogUtils.createInfoDialog(this, productInfo, softwareInfo).show();
     }
 
+    @Override
+    public void onDeviceLost() {
+        Fragment f = getFragmentManager().findFragmentById(R.id.fragment_container);
+        if ((f instanceof EnrollFragment) || (f instanceof VerifyFragment) || (f instanceof ImageFragment)) {
+            onBackPressed();
+        }
+        displayDetachToast();
+    }
+
+    @Override
+    public void onDeviceRecovered() {
+        displayValidReconnectingToast();
+    }
+
     /**
      * Display a Toast and disable capture buttons when the Morpho device is detached
      */
@@ -284,13 +280,6 @@ public class HomeActivity extends AppCompatActivity implements
         Toast.makeText(this, R.string.MSG_ERROR_DEVICE_DISCONNECTED, Toast.LENGTH_SHORT).show();
     }
 
-    /**
-     * Display a Toast when the Morpho device is attached
-     */
-    private void displayAttachToast() {
-        Toast.makeText(this, R.string.RECONNECTING_SOFTWARE, Toast.LENGTH_SHORT).show();
-    }
-
     /**
      * Display a Toast and enable capture buttons when the Morpho device has been correctly reconnected
      */
@@ -36,6 +36,16 @@ public interface HomeContract {
          * Setting the firmware information and the product information of th Morpho device in the texts views
          */
         void setMorphoDeviceInfo(String productInfo, String softwareInfo);
+
+        /**
+         * Leave the capture and inform the User that the Morpho device is disconnected
+         */
+        void onDeviceLost();
+
+        /**
+         * Inform the User that the Morpho device is reconnected
+         */
+        void onDeviceRecovered();
     }
 
 
@@ -65,10 +75,21 @@ public interface HomeContract {
 
         /**
          * Can rebbot the software when the Morpho device is Attached
+         * (queued on the thread of the Morpho device)
          * @param callback
-         * @return
          */
-        int rebootSoft(Observer callback);
+        void rebootSoft(Observer callback);
+
+        /**
+         * A Morpho device has been detached : the running capture is stopped and resumed if the
+         * device comes back quickly
+         */
+        void onUsbDetached();
+
+        /**
+         * A Morpho device has been attached : re-opened without soft reboot when possible
+         */
+        void onUsbAttached();
 
         /**
          * Update product and firmware information about the Morpho device
@@ -1,15 +1,29 @@
 package com.famoco.morphodemo.home;
 
+import android.os.Handler;
 import android.util.Log;
 
-import com.famoco.morphodemo.fingerprint.MorphoFragment;
+import com.famoco.morphodemo.device.CapabilityCache;
+import com.famoco.morphodemo.device.DeviceCapabilities;
+import com.famoco.morphodemo.device.DeviceExecutor;
+import com.famoco.morphodemo.device.DevicePool;
+import com.famoco.morphodemo.device.HotPlugRecovery;
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.device.SdkMorphoDevice;
+import com.famoco.morphodemo.device.SensorSessionManager;
+import com.famoco.morphodemo.storage.ExportWriter;
+import com.famoco.morphodemo.storage.IntegritySweep;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.famoco.morphodemo.storage.TemplateStorage;
 import com.famoco.morphodemo.utils.Constants;
 import com.famoco.morphodemo.utils.Utils;
 import com.famoco.morphodemo.utils.morpho.ProcessInfo;
 import com.morpho.morphosmart.sdk.ErrorCodes;
 import com.morpho.morphosmart.sdk.MorphoDevice;
 
-import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Observer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -35,7 +49,64 @@ public class HomePresenter implements HomeContract.Presenter {
     /**
      * Morpho device
      */
-    private MorphoDevice morphoDevice;
+    private MorphoDevicePort morphoDevice;
+
+    /**
+     * True while this presenter holds a reference on the session of the device.
+     * Only accessed on the thread of the DeviceExecutor
+     */
+    private boolean sessionAcquired;
+
+    /**
+     * Other sensors of the station, opened in the DevicePool. Only accessed on the UI Thread
+     */
+    private final List<MorphoDevicePort> otherSensors = new ArrayList<>();
+
+    /**
+     * Handler to update UI Thread
+     */
+    private final Handler mHandler = new Handler();
+
+    /**
+     * Outcome of the detaches of the Morpho device, on a background thread
+     */
+    private final HotPlugRecovery.Listener recoveryListener = new HotPlugRecovery.Listener() {
+        @Override
+        public void onLost() {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    view.onDeviceLost();
+                }
+            });
+        }
+
+        @Override
+        public void onRecovered(String serial, boolean replaced, int resumed, long outageNanos) {
+            Log.d(TAG, "Sensor " + serial + " reconnected after " + outageNanos / 1000000 + " ms, "
+                    + resumed + " captures resumed");
+            if (replaced) {
+                // On the thread of the device : the new sensor is open
+                ProcessInfo.getInstance().setMSOSerialNumber(serial);
+                CapabilityCache.getInstance(ProcessInfo.getInstance().getStorageDirectory())
+                        .put(serial, DeviceCapabilities.read(morphoDevice));
+                DevicePool.getInstance().remove(morphoDevice);
+                DevicePool.getInstance().add(serial, morphoDevice, DeviceExecutor.getInstance());
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    view.onDeviceRecovered();
+                }
+            });
+        }
+
+        @Override
+        public void onRecoveryFailed(int error) {
+            Log.e(TAG, "Sensor not reopened : " + error + ", rebooting it");
+            rebootSoft(HomeActivity.getCallback());
+        }
+    };
 
     HomePresenter(HomeContract.View view) {
         this.view = checkNotNull(view);
@@ -44,24 +115,55 @@ public class HomePresenter implements HomeContract.Presenter {
     @Override
     public void openConnection() {
         this.morphoDevice = ProcessInfo.getInstance().getMorphoDevice();
-        if (!Utils.isFP200()) {
-            if (this.morphoDevice.openUsbDevice(
-                    ProcessInfo.getInstance().getMSOSerialNumber(), 0) != ErrorCodes.MORPHO_OK) {
-                closeConnection();
-                Log.e(TAG, "\t--> Error opening device in DeviceDetectionMode.SdkDetection");
-            }
-        } else {
-            if (this.morphoDevice.openDeviceWithUart(
-                    Constants.UART_PORT, Constants.UART_SPEED) != ErrorCodes.MORPHO_OK) {
+        DeviceExecutor.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                // Called by onCreate then onResume : one reference for both
+                if (sessionAcquired) {
+                    return;
+                }
+                // Takes over the session opened by ConnectionActivity
+                int ret = SensorSessionManager.getInstance().acquire(morphoDevice, !Utils.isFP200()
+                        ? SensorSessionManager.usb(ProcessInfo.getInstance().getMSOSerialNumber(), 0)
+                        : SensorSessionManager.uart(Constants.UART_PORT, Constants.UART_SPEED));
+                if (ret != ErrorCodes.MORPHO_OK) {
+                    Log.e(TAG, "\t--> Error opening device in DeviceDetectionMode.SdkDetection : " + ret);
+                    return;
+                }
+                sessionAcquired = true;
+                Log.d(TAG, "\t--> Opening device in DeviceDetectionMode.SdkDetection");
+                // The commands of the screens are routed by the pool once the device is open
+                DevicePool.getInstance().add(SensorSessionManager.getInstance().getSensorName(morphoDevice),
+                        morphoDevice, DeviceExecutor.getInstance());
+                if (!Utils.isFP200()) {
+                    HotPlugRecovery.getInstance().watch(morphoDevice,
+                            ProcessInfo.getInstance().getMSOSerialNumber(), recoveryListener);
+                }
+                startIntegritySweep();
             }
-        }
-        Log.d(TAG, "\t--> Opening device in DeviceDetectionMode.SdkDetection");
+        });
+        openOtherSensors();
     }
 
     @Override
     public void closeConnection() {
+        HotPlugRecovery.getInstance().stop();
+        // Stop the running commands first, the closes are queued behind them and their exports
+        DevicePool.getInstance().remove(morphoDevice);
         this.morphoDevice.cancelLiveAcquisition();
-        this.morphoDevice.closeDevice();
+        closeOtherSensors();
+        DeviceExecutor.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                IntegritySweep.getInstance().stop();
+                ExportWriter.getInstance().flush();
+                // Already closed if the device has been unplugged
+                if (sessionAcquired && SensorSessionManager.getInstance().isOpen(morphoDevice)) {
+                    SensorSessionManager.getInstance().release(morphoDevice);
+                }
+                sessionAcquired = false;
+            }
+        });
     }
 
     @Override
@@ -93,24 +195,150 @@ public class HomePresenter implements HomeContract.Presenter {
     public void cancelConnection() {
         Log.d(TAG, "\t--> Closing Morpho device");
         ProcessInfo.getInstance().getMorphoDevice().cancelLiveAcquisition();
+        DevicePool.getInstance().cancelAll();
+        HotPlugRecovery.getInstance().cancelResume();
+    }
+
+    @Override
+    public void rebootSoft(final Observer callback) {
+        DeviceExecutor.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                int ret = morphoDevice.rebootSoft(30, callback);
+                if (ErrorCodes.MORPHO_OK == ret) {
+                    Log.d(TAG, "rebootSoft: device reconnected");
+                } else {
+                    Log.e(TAG, "rebootSoft: ErrorCodes : " + ret);
+                }
+            }
+        });
     }
 
     @Override
-    public int rebootSoft(Observer callback) {
-        return morphoDevice.rebootSoft(30, callback);
+    public void onUsbDetached() {
+        HotPlugRecovery.getInstance().onDetached();
+    }
+
+    @Override
+    public void onUsbAttached() {
+        HotPlugRecovery.getInstance().onAttached();
     }
 
     @Override
     public void updateMorphoDeviceInfo() {
-        view.setMorphoDeviceInfo(morphoDevice.getProductDescriptor(), morphoDevice.getSoftwareDescriptor());
+        final String serial = ProcessInfo.getInstance().getMSOSerialNumber();
+        final CapabilityCache capabilityCache =
+                CapabilityCache.getInstance(ProcessInfo.getInstance().getStorageDirectory());
+        DeviceCapabilities capabilities = serial != null ? capabilityCache.get(serial) : null;
+        if (capabilities != null) {
+            view.setMorphoDeviceInfo(capabilities.getProductDescriptor(), capabilities.getSoftwareDescriptor());
+            return;
+        }
+        // Not cached yet : read after the running command, displayed on the UI Thread
+        DeviceExecutor.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                final DeviceCapabilities read = DeviceCapabilities.read(morphoDevice);
+                if (serial != null) {
+                    capabilityCache.put(serial, read);
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        view.setMorphoDeviceInfo(read.getProductDescriptor(), read.getSoftwareDescriptor());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Open the other USB sensors of the station, each one on its own thread, and add them to
+     * the pool so the captures run on whichever sensor is idle. A sensor failing to open is
+     * left out, the station works with the others
+     */
+    private void openOtherSensors() {
+        List<String> sensorNames = ProcessInfo.getInstance().getSensorNames();
+        if (!otherSensors.isEmpty() || Utils.isFP200()) {
+            return;
+        }
+        for (int i = 1; i < sensorNames.size(); i++) {
+            final String sensorName = sensorNames.get(i);
+            final MorphoDevicePort device = new SdkMorphoDevice(new MorphoDevice());
+            final DeviceExecutor executor = DevicePool.getInstance().getExecutor(i);
+            otherSensors.add(device);
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    int ret = SensorSessionManager.getInstance().acquire(device,
+                            SensorSessionManager.usb(sensorName, 0));
+                    if (ret != ErrorCodes.MORPHO_OK) {
+                        Log.e(TAG, "\t--> Error opening sensor " + sensorName + " : " + ret);
+                        return;
+                    }
+                    DevicePool.getInstance().add(sensorName, device, executor);
+                }
+            });
+        }
+    }
+
+    /**
+     * Remove the other sensors from the pool and close them after their running command
+     */
+    private void closeOtherSensors() {
+        DevicePool pool = DevicePool.getInstance();
+        for (int i = 0; i < otherSensors.size(); i++) {
+            final MorphoDevicePort device = otherSensors.get(i);
+            DevicePool.Member member = pool.remove(device);
+            if (member != null) {
+                Log.d(TAG, "Sensor " + member);
+            }
+            device.cancelLiveAcquisition();
+            pool.getExecutor(i + 1).submit(new Runnable() {
+                @Override
+                public void run() {
+                    // Added by its open if it was still queued
+                    DevicePool.getInstance().remove(device);
+                    if (SensorSessionManager.getInstance().isOpen(device)) {
+                        SensorSessionManager.getInstance().release(device);
+                    }
+                }
+            });
+        }
+        otherSensors.clear();
+    }
+
+    /**
+     * Verify the checksums of the stored templates in the background while the device is open,
+     * so the corrupt ones are quarantined before a capture is matched against them
+     */
+    private void startIntegritySweep() {
+        try {
+            IntegritySweep.getInstance().start(
+                    new TemplateStorage(ProcessInfo.getInstance().getStorageDirectory()).getRepository());
+        } catch (IOException e) {
+            Log.e(TAG, "Template repository unavailable : " + e.getMessage());
+        }
     }
 
     /**
-     * Determines whether a fingerprint exist or not (file with content exist)
+     * Determines whether the current user has an enrolled fingerprint
+     * (any user in identification mode)
      *
      * @return a boolean value
      */
     private boolean fingerPrintExist() {
-        return (new File(MorphoFragment.FILEPATH).length() != 0);
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+        try {
+            TemplateRepository templateRepository =
+                    new TemplateStorage(processInfo.getStorageDirectory()).getRepository();
+            if (processInfo.isIdentification()) {
+                return !templateRepository.isEmpty();
+            }
+            return templateRepository.contains(processInfo.getUserId());
+        } catch (IOException e) {
+            Log.e(TAG, "Template repository unavailable : " + e.getMessage());
+            return false;
+        }
     }
 }
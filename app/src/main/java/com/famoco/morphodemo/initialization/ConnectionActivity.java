@@ -91,8 +91,8 @@ public class ConnectionActivity extends android.app.Activity implements Connecti
             this.registerReceiver(this.usbPermissionBroadcastReceiver, new IntentFilter(Constants.ACTION_USB_PERMISSION));
         }
         this.mHandler = initHandler();
-        // Start the process of initialization of Morpho device
-        new ProcessThread().start();
+        // Start the process of initialization of Morpho device, on its own thread
+        this.presenter.startConnection(getApplicationContext());
     }
 
     @SuppressLint("HandlerLeak")
@@ -153,11 +153,12 @@ public class ConnectionActivity extends android.app.Activity implements Connecti
                         Log.d(TAG, "\t --> Permission granted for device" + device);
                         if(device != null){
                             Log.d(TAG, "\t --> Device USB found ");
-                            // Initiate if permission granted
-                            presenter.initiateMorphoDevice();
+                            // Initiate if permission granted, off the UI Thread
+                            presenter.onUsbPermissionResult(true);
                         }
                     } else {
                         Log.d(TAG, "\t --> Permission denied for device " + device);
+                        presenter.onUsbPermissionResult(false);
                         permissionDenied();
                     }
                 }
@@ -219,20 +220,4 @@ public class ConnectionActivity extends android.app.Activity implements Connecti
             this.alertDialog.dismiss();
         }
     }
-
-    /**
-     * Ask permission to User for USB uses the first time.
-     * If already granted, initiate Morpho device.
-     * initialize() also method set stuff for Morpho device (native C functions)
-     */
-    private class ProcessThread extends Thread {
-        @Override
-        public void run() {
-            super.run();
-            if (!Utils.isFP200()) {
-                presenter.askUSBPermission(getApplicationContext());
-            }
-            presenter.initiateMorphoDevice();
-        }
-    }
 }
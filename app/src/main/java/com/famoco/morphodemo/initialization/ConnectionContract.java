@@ -54,16 +54,17 @@ public interface ConnectionContract {
         void createMorphoDevice();
 
         /**
-         * Test USB permission.
-         * If granted, enumerate device and starts connection with it
+         * Require User USB permission, then enumerate devices and start connection with the
+         * first one, on the thread of the Morpho device
+         * @param context of the Application required to call Morpho SDK method initialize
          */
-        void initiateMorphoDevice();
+        void startConnection(Context context);
 
         /**
-         * Require User USB permission
-         * @param context of the Application required to call Morpho SDK method initialize
+         * Go on with the connection once the User has answered the USB permission dialog
+         * @param granted true if the permission has been granted
          */
-        void askUSBPermission(Context context);
+        void onUsbPermissionResult(boolean granted);
     }
 
 }
@@ -1,10 +1,19 @@
 package com.famoco.morphodemo.initialization;
 
 import android.content.Context;
+import android.os.Environment;
 import androidx.annotation.NonNull;
 import android.util.Log;
 
 import com.famoco.morphodemo.R;
+import com.famoco.morphodemo.device.CapabilityCache;
+import com.famoco.morphodemo.device.ConnectionSequence;
+import com.famoco.morphodemo.device.DeviceCapabilities;
+import com.famoco.morphodemo.device.DeviceExecutor;
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.device.SdkMorphoDevice;
+import com.famoco.morphodemo.device.SensorSessionManager;
+import com.famoco.morphodemo.metrics.StartupTimeline;
 import com.famoco.morphodemo.utils.Constants;
 import com.famoco.morphodemo.utils.Utils;
 import com.famoco.morphodemo.utils.morpho.DeviceDetectionMode;
@@ -15,6 +24,9 @@ import com.morpho.morphosmart.sdk.CustomInteger;
 import com.morpho.morphosmart.sdk.ErrorCodes;
 import com.morpho.morphosmart.sdk.MorphoDevice;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Presenter of ConnectionActivity
  *
@@ -49,20 +61,35 @@ class ConnectionPresenter implements ConnectionContract.Presenter {
 
     /**
      * Name of the Morpho sensor
-     * Can be obtained with {@link MorphoDevice#getUsbDeviceName(int)}
+     * Can be obtained with {@link MorphoDevicePort#getUsbDeviceName(int)}
      */
     private String sensorName;
 
     /**
      * Morpho Device
      */
-    private MorphoDevice morphoDevice;
+    private MorphoDevicePort morphoDevice;
+
+    /**
+     * Static information of the sensor, cached by its serial number
+     */
+    private DeviceCapabilities capabilities;
 
     /**
      * View of this presenter
      */
     private ConnectionContract.View view;
 
+    /**
+     * Steps of the connection, measured from the creation of the presenter
+     */
+    private final StartupTimeline startupTimeline = new StartupTimeline();
+
+    /**
+     * Connection run on the thread of the Morpho device
+     */
+    private ConnectionSequence sequence;
+
     /**
      * Constructor of the Presenter
      * @param view of the MVP pattern
@@ -91,6 +118,12 @@ class ConnectionPresenter implements ConnectionContract.Presenter {
             Log.d(TAG, "\t --> MORPHO OK");
             if (nbUsbDevice.getValueOf() > 0) {
                 this.sensorName = morphoDevice.getUsbDeviceName(0);
+                // The other sensors of the station are opened by the home screen, in the DevicePool
+                List<String> sensorNames = new ArrayList<>();
+                for (int i = 0; i < nbUsbDevice.getValueOf(); i++) {
+                    sensorNames.add(morphoDevice.getUsbDeviceName(i));
+                }
+                ProcessInfo.getInstance().setSensorNames(sensorNames);
                 view.informUserOfCurrentProgress(MSG_USER_PROGRESS_DEVICE_FOUND, THIRD_STEP);
                 Log.i(TAG, "\t --> Enumerate : SensorName : " + sensorName);
             } else {
@@ -107,45 +140,66 @@ class ConnectionPresenter implements ConnectionContract.Presenter {
     }
 
     /**
-     * Connection with Morpho device and set data
-     * If all initialization succeed, starts next HomeActivity
+     * Connection with Morpho device, USB connection closed by the session manager on failure
+     * @return an ErrorCodes value
      */
-    private void connection() {
-        int ret;
-        if (!Utils.isFP200()) {
-            // Open USB connection with Morpho device
-            ret = morphoDevice.openUsbDevice(sensorName, 2000);
-        } else {
-            ret = morphoDevice.openDeviceWithUart(Constants.UART_PORT, Constants.UART_SPEED);
-        }
+    private int connection() {
+        view.informUserOfCurrentProgress(MSG_USER_PROGRESS_CONNECTION, FOURTH_STEP);
+        // Open USB connection with Morpho device, unless still open
+        int ret = SensorSessionManager.getInstance().acquire(morphoDevice, !Utils.isFP200()
+                ? SensorSessionManager.usb(sensorName, 2000)
+                : SensorSessionManager.uart(Constants.UART_PORT, Constants.UART_SPEED));
         Log.d(TAG, "\t --> Open Device returned : " + ret);
+        return ret;
+    }
 
-        if (ret == ErrorCodes.MORPHO_OK) {
-            // Set Morpho device data
-            initMorphoDeviceData();
-
-            view.informUserOfCurrentProgress(MSG_USER_PROGRESS_CONNECTION_ESTABLISHED, LAST_STEP);
-
-            String productDescriptor = morphoDevice.getProductDescriptor();
-            java.util.StringTokenizer tokenizer = new java.util.StringTokenizer(productDescriptor, "\n");
-            if (tokenizer.hasMoreTokens())
-            {
-                String l_s_current = tokenizer.nextToken();
-                if (l_s_current.contains("FINGER VP") || l_s_current.contains("FVP"))
-                    MorphoInfo.setM_b_fvp(true);
-            }
-
-            // Close USB connection with Morpho device
-            morphoDevice.closeDevice();
+    /**
+     * Load the capabilities of the sensor saved by a previous connection, before opening it
+     */
+    private void loadCapabilities() {
+        this.capabilities = capabilityCache().get(sensorName);
+        if (this.capabilities != null) {
+            Log.d(TAG, "\t --> Cached " + capabilities);
+            MorphoInfo.setM_b_fvp(capabilities.isFvp());
+        }
+    }
 
-            // Start next HomeActivity
-            view.startNextActivity();
+    /**
+     * Read the product descriptor of the Morpho device to detect a FINGER VP sensor,
+     * unless known from a previous connection
+     */
+    private void readProductDescriptor() {
+        if (this.capabilities != null) {
+            return;
+        }
+        this.capabilities = DeviceCapabilities.read(morphoDevice);
+        MorphoInfo.setM_b_fvp(capabilities.isFvp());
+        capabilityCache().put(sensorName, capabilities);
+    }
 
-        } else {
-            // Close USB connection with Morpho device
-            morphoDevice.closeDevice();
-            view.displayDialogWithMessage(ErrorCodes.getError(ret, morphoDevice.getInternalError()));
+    /**
+     * Read the descriptors again once connected, on the thread of the Morpho device, if the
+     * cached ones are stale (e.g. firmware updated since)
+     */
+    private void refreshCapabilitiesIfStale() {
+        if (!CapabilityCache.isStale(capabilities)) {
+            return;
         }
+        final String serial = sensorName;
+        DeviceExecutor.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                if (SensorSessionManager.getInstance().isOpen(morphoDevice)) {
+                    DeviceCapabilities refreshed = DeviceCapabilities.read(morphoDevice);
+                    MorphoInfo.setM_b_fvp(refreshed.isFvp());
+                    capabilityCache().put(serial, refreshed);
+                }
+            }
+        });
+    }
+
+    private static CapabilityCache capabilityCache() {
+        return CapabilityCache.getInstance(ProcessInfo.getInstance().getStorageDirectory());
     }
 
     /**
@@ -190,35 +244,91 @@ class ConnectionPresenter implements ConnectionContract.Presenter {
     @Override
     public void createMorphoDevice() {
         // Instantiation of Morpho Device
-        this.morphoDevice = new MorphoDevice();
+        this.morphoDevice = new SdkMorphoDevice(new MorphoDevice());
         ProcessInfo.getInstance().setMorphoDevice(this.morphoDevice);
+        ProcessInfo.getInstance().setStorageDirectory(Environment.getExternalStorageDirectory());
     }
 
     @Override
-    public void initiateMorphoDevice() {
-        // {Morpho SDK method} to check the USB permission
-        // (call to USBManager.getInstance().initialize(...) required
-        if (!Utils.isFP200()) {
-            if (USBManager.getInstance().isDevicesHasPermission()) {
-                Log.d(TAG, "\t --> Start enumeration of devices");
-                view.informUserOfCurrentProgress(MSG_USER_PROGRESS_ENUMERATION, SECOND_STEP);
-                if (enumerate() == ErrorCodes.MORPHO_OK) {
-                    Log.d(TAG, "\t --> Start connection");
-                    view.informUserOfCurrentProgress(MSG_USER_PROGRESS_CONNECTION, FOURTH_STEP);
-                    connection();
+    public void startConnection(@NonNull final Context context) {
+        this.sequence = new ConnectionSequence(DeviceExecutor.getInstance(), new ConnectionSequence.Steps() {
+            @Override
+            public boolean requestPermission() {
+                if (Utils.isFP200()) {
+                    return true;
                 }
+                view.informUserOfCurrentProgress(MSG_USER_PROGRESS_USB_PERMISSION, FIRST_STEP);
+                // {Morpho SDK method} that initialize Morpho device and ask for USB permission
+                USBManager.getInstance().initialize(context,
+                        context.getResources().getString(R.string.ACTION_USB_PERMISSION));
+                // {Morpho SDK method} to check the USB permission
+                return USBManager.getInstance().isDevicesHasPermission();
             }
-        } else {
-            Log.d(TAG, "\t --> Start connection");
-            view.informUserOfCurrentProgress(MSG_USER_PROGRESS_CONNECTION, FOURTH_STEP);
-            connection();
-        }
+
+            @Override
+            public int enumerate() {
+                int ret = ErrorCodes.MORPHO_OK;
+                if (Utils.isFP200()) {
+                    // The UART sensor is known by its port
+                    sensorName = Constants.UART_PORT;
+                } else {
+                    Log.d(TAG, "\t --> Start enumeration of devices");
+                    view.informUserOfCurrentProgress(MSG_USER_PROGRESS_ENUMERATION, SECOND_STEP);
+                    ret = ConnectionPresenter.this.enumerate();
+                }
+                if (ret == ErrorCodes.MORPHO_OK) {
+                    loadCapabilities();
+                }
+                return ret;
+            }
+
+            @Override
+            public int open() {
+                Log.d(TAG, "\t --> Start connection");
+                return connection();
+            }
+
+            @Override
+            public int configure() {
+                // Set Morpho device data
+                initMorphoDeviceData();
+                return ErrorCodes.MORPHO_OK;
+            }
+
+            @Override
+            public int readDescriptor() {
+                readProductDescriptor();
+                return ErrorCodes.MORPHO_OK;
+            }
+        }, new ConnectionSequence.Listener() {
+            @Override
+            public void onConnected(StartupTimeline timeline) {
+                Log.i(TAG, "\t --> Startup timeline : " + timeline);
+                ProcessInfo.getInstance().setStartupTimeline(timeline);
+                view.informUserOfCurrentProgress(MSG_USER_PROGRESS_CONNECTION_ESTABLISHED, LAST_STEP);
+                // Keep the connection open for HomeActivity
+                SensorSessionManager.getInstance().handOff(morphoDevice);
+                // Start next HomeActivity
+                view.startNextActivity();
+                refreshCapabilitiesIfStale();
+            }
+
+            @Override
+            public void onFailed(ConnectionSequence.State state, int error, StartupTimeline timeline) {
+                Log.e(TAG, "\t --> " + state + " failed : " + error + ", startup timeline : " + timeline);
+                // Permission and enumeration failures already reported to the User
+                if (state == ConnectionSequence.State.OPENING) {
+                    view.displayDialogWithMessage(ErrorCodes.getError(error, morphoDevice.getInternalError()));
+                }
+            }
+        }, startupTimeline);
+        this.sequence.start();
     }
 
     @Override
-    public void askUSBPermission(@NonNull Context context) {
-        view.informUserOfCurrentProgress(MSG_USER_PROGRESS_USB_PERMISSION, FIRST_STEP);
-        // {Morpho SDK method} that initialize Morpho device and ask for USB permission
-        USBManager.getInstance().initialize(context, context.getResources().getString(R.string.ACTION_USB_PERMISSION));
+    public void onUsbPermissionResult(boolean granted) {
+        if (this.sequence != null) {
+            this.sequence.onPermissionResult(granted);
+        }
     }
 }
\ No newline at end of file
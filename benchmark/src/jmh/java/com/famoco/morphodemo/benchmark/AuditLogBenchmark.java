@@ -0,0 +1,72 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.device.SimulatedMorphoDevice;
+import com.famoco.morphodemo.fingerprint.MorphoUtils;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.MorphoImage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.morpho.morphosmart.sdk.CompressionAlgorithm.MORPHO_NO_COMPRESS;
+import static com.morpho.morphosmart.sdk.LatentDetection.LATENT_DETECT_ENABLE;
+
+/**
+ * Append of the FFD logs to the daily audit file, done after each command of the device
+ *
+ * @version DEMO
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AuditLogBenchmark {
+
+    private File directory;
+    private SimulatedMorphoDevice morphoDevice;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Fixtures.createTempDirectory();
+        ProcessInfo.getInstance().setStorageDirectory(directory);
+        ProcessInfo.getInstance().setMSOSerialNumber("SIM-00000");
+
+        morphoDevice = Fixtures.openedDevice();
+        // A first command so that the device has FFD logs to give
+        morphoDevice.getImage(0, 0, MORPHO_NO_COMPRESS, 0, 0, LATENT_DETECT_ENABLE,
+                new MorphoImage(), 0, null);
+    }
+
+    /**
+     * Start each iteration with an empty audit file
+     */
+    @Setup(Level.Iteration)
+    public void clearAuditFile() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public void storeFFDLogs() {
+        MorphoUtils.storeFFDLogs(morphoDevice, "SIM-00000");
+    }
+}
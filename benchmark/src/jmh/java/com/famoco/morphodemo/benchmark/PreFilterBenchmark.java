@@ -0,0 +1,79 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.fingerprint.identify.MinutiaePreFilter;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host side shortlist of the candidates of an identification, scored on one thread and on
+ * all the cores. Recall and sensor time are measured by PreFilterHarness.
+ *
+ * @version DEMO
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PreFilterBenchmark {
+
+    /**
+     * Number of users in the repository
+     */
+    @Param({"1000", "10000", "50000"})
+    public int users;
+
+    /**
+     * Threads scoring the gallery, 0 for all the cores
+     */
+    @Param({"1", "0"})
+    public int threads;
+
+    private File directory;
+    private TemplateRepository repository;
+    private MinutiaePreFilter preFilter;
+    private byte[] probe;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Fixtures.createTempDirectory();
+        repository = TemplateRepository.open(directory);
+        Random random = new Random(Fixtures.SEED);
+        byte[] template = null;
+        for (int i = 0; i < users; i++) {
+            template = Fixtures.minutiaeTemplate(random);
+            repository.put(new StoredTemplate("user" + i, 1, TemplateType.MORPHO_PK_ISO_FMC_CS, template));
+        }
+        probe = Fixtures.reacquire(template, random);
+        preFilter = new MinutiaePreFilter(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        preFilter.index(repository);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        preFilter.shutdown();
+        repository.close();
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public List<StoredTemplate> shortlist() throws IOException {
+        return preFilter.shortlist(repository, probe, TemplateType.MORPHO_PK_ISO_FMC_CS,
+                MinutiaePreFilter.DEFAULT_SHORTLIST_SIZE);
+    }
+}
@@ -0,0 +1,93 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.fingerprint.LiveFrame;
+import com.morpho.morphosmart.sdk.MorphoImage;
+import com.morpho.morphosmart.sdk.MorphoImageHeader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame preview path : header parse of the live image, by the SDK or in place by
+ * LiveFrame, then copy of the pixels into the ALPHA_8 buffer of the displayed image,
+ * either allocated per frame (createBitmap) or taken from the ring of PreviewRenderer
+ * (pooledBitmap, liveFrameBitmap).
+ * The Bitmap is replaced by a heap ByteBuffer of the same size, as allocated on the
+ * Java heap by Android before API 26.
+ *
+ * @version DEMO
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PreviewBenchmark {
+
+    /**
+     * Side of the low resolution live image, in pixels
+     */
+    @Param({"120", "256", "416"})
+    public int previewSize;
+
+    private byte[] frame;
+    private final ByteBuffer[] pool = new ByteBuffer[3];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        frame = Fixtures.liveFrame(previewSize, previewSize);
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = ByteBuffer.allocate(previewSize * previewSize);
+        }
+    }
+
+    @Benchmark
+    public MorphoImage parseHeader() {
+        return MorphoImage.getMorphoImageFromLive(frame);
+    }
+
+    @Benchmark
+    public LiveFrame parseLiveFrame() {
+        return LiveFrame.parse(frame);
+    }
+
+    @Benchmark
+    public ByteBuffer createBitmap() {
+        MorphoImage morphoImage = MorphoImage.getMorphoImageFromLive(frame);
+        MorphoImageHeader header = morphoImage.getMorphoImageHeader();
+        ByteBuffer bitmap = ByteBuffer.allocate(header.getNbRow() * header.getNbColumn());
+        bitmap.put(ByteBuffer.wrap(morphoImage.getImage(), 0, morphoImage.getImage().length));
+        return bitmap;
+    }
+
+    @Benchmark
+    public ByteBuffer pooledBitmap() {
+        MorphoImage morphoImage = MorphoImage.getMorphoImageFromLive(frame);
+        MorphoImageHeader header = morphoImage.getMorphoImageHeader();
+        ByteBuffer bitmap = pool[next];
+        next = (next + 1) % pool.length;
+        bitmap.clear();
+        bitmap.put(ByteBuffer.wrap(morphoImage.getImage(), 0, header.getNbRow() * header.getNbColumn()));
+        return bitmap;
+    }
+
+    @Benchmark
+    public ByteBuffer liveFrameBitmap() {
+        LiveFrame liveFrame = LiveFrame.parse(frame);
+        ByteBuffer bitmap = pool[next];
+        next = (next + 1) % pool.length;
+        bitmap.clear();
+        ByteBuffer pixels = liveFrame.getPixels();
+        pixels.limit(pixels.position() + liveFrame.getNbRow() * liveFrame.getNbColumn());
+        bitmap.put(pixels);
+        return bitmap;
+    }
+}
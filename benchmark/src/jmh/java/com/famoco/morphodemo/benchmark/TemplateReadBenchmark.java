@@ -0,0 +1,104 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.fingerprint.verify.VerifyProcess;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateCache;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.famoco.morphodemo.utils.morpho.MorphoTools;
+
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of a stored template : legacy Template file, as read by MorphoTools.ReadFile, and
+ * lookup in a TemplateRepository holding the templates of many users, as done before a
+ * verification, with and without the TemplateCache
+ *
+ * @version DEMO
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TemplateReadBenchmark {
+
+    /**
+     * Size of the Template file, in bytes
+     */
+    @Param({"255", "2048"})
+    public int templateSize;
+
+    /**
+     * Number of users in the repository
+     */
+    @Param({"1", "10000"})
+    public int users;
+
+    private static final String USER_ID = "test";
+
+    private File directory;
+    private TemplateStorage templateStorage;
+    private VerifyProcess verifyProcess;
+    private VerifyProcess uncachedVerifyProcess;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Fixtures.createTempDirectory();
+        templateStorage = new TemplateStorage(directory);
+        try (FileOutputStream fos = new FileOutputStream(templateStorage.getTemplateFile())) {
+            fos.write(Fixtures.templateData(templateSize));
+        }
+        // Legacy file imported as the template of "test" on opening
+        TemplateRepository templateRepository = templateStorage.getRepository();
+        for (int i = 1; i < users; i++) {
+            templateRepository.put(new StoredTemplate("user" + i, 1, TemplateType.MORPHO_PK_ISO_FMC_CS,
+                    Fixtures.templateData(templateSize)));
+        }
+        verifyProcess = new VerifyProcess(Fixtures.openedDevice(), templateStorage);
+        verifyProcess.setTemplateCache(new TemplateCache(TemplateCache.DEFAULT_CAPACITY));
+        uncachedVerifyProcess = new VerifyProcess(Fixtures.openedDevice(), templateStorage);
+        uncachedVerifyProcess.setTemplateCache(new TemplateCache(0));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        templateStorage.getRepository().close();
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public byte[] readTemplate() throws IOException {
+        return templateStorage.readTemplate(templateStorage.getTemplateFile());
+    }
+
+    @Benchmark
+    public TemplateList loadTemplateList() throws IOException {
+        return verifyProcess.loadTemplateList(USER_ID);
+    }
+
+    @Benchmark
+    public TemplateList loadTemplateListUncached() throws IOException {
+        return uncachedVerifyProcess.loadTemplateList(USER_ID);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream readFile() throws IOException {
+        return MorphoTools.ReadFile(templateStorage.getTemplateFile());
+    }
+}
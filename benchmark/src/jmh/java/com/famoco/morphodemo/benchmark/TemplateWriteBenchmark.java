@@ -0,0 +1,77 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.fingerprint.enroll.EnrollProcess;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.morpho.morphosmart.sdk.Template;
+import com.morpho.morphosmart.sdk.TemplateFVP;
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+import com.morpho.morphosmart.sdk.TemplateList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Template exports done after a successful enrollment
+ *
+ * @version DEMO
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TemplateWriteBenchmark {
+
+    /**
+     * Size of each exported template, in bytes
+     */
+    @Param({"255", "2048"})
+    public int templateSize;
+
+    private static final String USER_ID = "test";
+
+    private File directory;
+    private TemplateStorage templateStorage;
+    private TemplateList templateList;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Fixtures.createTempDirectory();
+        templateStorage = new TemplateStorage(directory);
+
+        Template template = new Template();
+        template.setData(Fixtures.templateData(templateSize));
+        template.setTemplateType(EnrollProcess.TEMPLATE_TYPE);
+        TemplateFVP templateFVP = new TemplateFVP();
+        templateFVP.setData(Fixtures.templateData(templateSize));
+        templateFVP.setTemplateFVPType(TemplateFVPType.MORPHO_PK_FVP);
+
+        templateList = new TemplateList();
+        templateList.putTemplate(template);
+        templateList.putFVPTemplate(templateFVP);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public void exportFP() {
+        templateStorage.exportFP(templateList, USER_ID, EnrollProcess.TEMPLATE_TYPE);
+    }
+
+    @Benchmark
+    public void exportFVP() {
+        templateStorage.exportFVP(templateList, USER_ID, TemplateFVPType.MORPHO_PK_FVP);
+    }
+}
@@ -0,0 +1,91 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.storage.GalleryBackup;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Backup of a gallery in a GalleryBackup archive against copying its files one by one through
+ * the heap, then restoration of the archive.
+ *
+ * The gallery holds --templates random compact card templates in the repository, each also
+ * exported as a file, and --images WSQ images of --image-kb.
+ *
+ * Usage : ./gradlew :benchmark:backup --args="--templates 50000"
+ * Options : --templates, --images, --image-kb
+ *
+ * @version DEMO
+ */
+public class BackupHarness {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Fixtures.parseOptions(args);
+        int templates = Integer.parseInt(Fixtures.option(options, "templates", "50000"));
+        int images = Integer.parseInt(Fixtures.option(options, "images", "200"));
+        int imageSize = Integer.parseInt(Fixtures.option(options, "image-kb", "100")) * 1024;
+
+        File directory = Fixtures.createTempDirectory();
+        try {
+            File gallery = new File(directory, "gallery");
+            gallery.mkdirs();
+            TemplateStorage templateStorage = new TemplateStorage(gallery);
+            TemplateRepository repository = TemplateRepository.open(gallery);
+            Random random = new Random(Fixtures.SEED);
+            List<StoredTemplate> batch = new ArrayList<>();
+            for (int i = 0; i < templates; i++) {
+                StoredTemplate template = new StoredTemplate("user" + i, 1, TemplateType.MORPHO_PK_ISO_FMC_CS,
+                        Fixtures.minutiaeTemplate(random));
+                batch.add(template);
+                templateStorage.getImageFile("TemplateFP_user" + i + "_f1"
+                        + TemplateType.MORPHO_PK_ISO_FMC_CS.getExtension(), template.getData()).write();
+            }
+            repository.putAll(batch);
+            repository.close();
+            byte[] image = new byte[imageSize];
+            for (int i = 0; i < images; i++) {
+                random.nextBytes(image);
+                templateStorage.getImageFile("TemplateFP_WSQ_" + i + ".wsq", image).write();
+            }
+
+            long start = System.nanoTime();
+            File copy = new File(directory, "copy");
+            copy.mkdirs();
+            for (File file : gallery.listFiles()) {
+                try (FileOutputStream out = new FileOutputStream(new File(copy, file.getName()))) {
+                    out.write(templateStorage.readTemplate(file));
+                }
+            }
+            long copyNanos = System.nanoTime() - start;
+
+            File archive = new File(directory, "gallery" + GalleryBackup.EXTENSION);
+            start = System.nanoTime();
+            GalleryBackup.Manifest manifest = new GalleryBackup(templateStorage).backup(archive);
+            long backupNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            new GalleryBackup(templateStorage).restore(archive);
+            long restoreNanos = System.nanoTime() - start;
+            templateStorage.getRepository().close();
+
+            System.out.println(manifest);
+            System.out.println(String.format(Locale.ROOT, "file by file copy : %10.1f ms", copyNanos / 1e6));
+            System.out.println(String.format(Locale.ROOT, "archive backup    : %10.1f ms", backupNanos / 1e6));
+            System.out.println(String.format(Locale.ROOT, "archive restore   : %10.1f ms", restoreNanos / 1e6));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Fixtures.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.device.DeviceExecutor;
+import com.famoco.morphodemo.device.SimulatedMorphoDevice;
+import com.famoco.morphodemo.device.replay.CallbackReplayer;
+import com.famoco.morphodemo.device.replay.CallbackStream;
+import com.famoco.morphodemo.fingerprint.CallbackDispatcher;
+import com.famoco.morphodemo.fingerprint.FrameMailbox;
+import com.famoco.morphodemo.fingerprint.LiveFrame;
+import com.famoco.morphodemo.fingerprint.MorphoUtils;
+import com.famoco.morphodemo.fingerprint.ProcessResult;
+import com.famoco.morphodemo.fingerprint.enroll.DuplicatePolicy;
+import com.famoco.morphodemo.fingerprint.enroll.EnrollProcess;
+import com.famoco.morphodemo.fingerprint.verify.VerifyProcess;
+import com.famoco.morphodemo.metrics.LatencyHistogram;
+import com.famoco.morphodemo.metrics.Phase;
+import com.famoco.morphodemo.metrics.PhaseRecorder;
+import com.famoco.morphodemo.storage.ExportWriter;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Enrollment then verification, back-to-back, against the simulated Morpho device,
+ * with the threading of the presenters : commands queued on the DeviceExecutor and the
+ * result posted to a single UI thread.
+ *
+ * Usage : ./gradlew :benchmark:run --args="--iterations 2000 --frames 10 --frame-ms 0"
+ * Options : --iterations, --warmup, --frames, --frame-ms, --coding-ms, --matching-ms, --preview,
+ * --replay (recording of a real session replayed as the live stream), --replay-speed,
+ * --async-export true (templates written by an ExportWriter as in the app),
+ * --duplicate-policy FLAG or REJECT (search of each enrolled finger among the other users)
+ *
+ * @version DEMO
+ */
+public class EndToEndHarness {
+
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private final int frames;
+    private final long frameMillis;
+    private final long codingMillis;
+    private final long matchingMillis;
+    private final int preview;
+    private CallbackReplayer replayer;
+    private ExportWriter exportWriter;
+    private DuplicatePolicy duplicatePolicy;
+
+    /**
+     * Single thread playing the role of the UI Thread of the app
+     */
+    private final ExecutorService uiThread = Executors.newSingleThreadExecutor();
+
+    private final Operation enroll = new Operation("enroll");
+    private final Operation verify = new Operation("verify");
+
+    private File directory;
+    private EnrollProcess enrollProcess;
+    private VerifyProcess verifyProcess;
+
+    private EndToEndHarness(int frames, long frameMillis, long codingMillis, long matchingMillis, int preview) {
+        this.frames = frames;
+        this.frameMillis = frameMillis;
+        this.codingMillis = codingMillis;
+        this.matchingMillis = matchingMillis;
+        this.preview = preview;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Fixtures.parseOptions(args);
+        int iterations = Integer.parseInt(Fixtures.option(options, "iterations", "2000"));
+        int warmup = Integer.parseInt(Fixtures.option(options, "warmup", "200"));
+
+        EndToEndHarness harness = new EndToEndHarness(
+                Integer.parseInt(Fixtures.option(options, "frames", "10")),
+                Long.parseLong(Fixtures.option(options, "frame-ms", "0")),
+                Long.parseLong(Fixtures.option(options, "coding-ms", "0")),
+                Long.parseLong(Fixtures.option(options, "matching-ms", "0")),
+                Integer.parseInt(Fixtures.option(options, "preview", "120")));
+        if (options.containsKey("replay")) {
+            harness.replayer = new CallbackReplayer(CallbackStream.read(new File(options.get("replay"))));
+            harness.replayer.setSpeed(Double.parseDouble(Fixtures.option(options, "replay-speed", "1")));
+        }
+        harness.duplicatePolicy = DuplicatePolicy.valueOf(Fixtures.option(options, "duplicate-policy", "NONE"));
+        if (Boolean.parseBoolean(Fixtures.option(options, "async-export", "false"))) {
+            harness.exportWriter = new ExportWriter(ExportWriter.THREAD_NAME, ExportWriter.DEFAULT_CAPACITY);
+        }
+        try {
+            harness.setUp();
+            harness.run(warmup);
+            harness.reset();
+
+            long[] gcBefore = gcCounters();
+            long start = System.nanoTime();
+            harness.run(iterations);
+            long elapsed = System.nanoTime() - start;
+            long[] gcAfter = gcCounters();
+
+            harness.report(iterations, elapsed, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        } finally {
+            harness.tearDown();
+        }
+    }
+
+    private void setUp() throws IOException {
+        directory = Files.createTempDirectory("morpho-harness").toFile();
+
+        SimulatedMorphoDevice morphoDevice = new SimulatedMorphoDevice(Fixtures.SEED);
+        morphoDevice.setFrameCount(frames);
+        morphoDevice.setPreviewSize(preview, preview);
+        morphoDevice.setLatency(SimulatedMorphoDevice.Phase.FRAME, frameMillis);
+        morphoDevice.setLatency(SimulatedMorphoDevice.Phase.CODING, codingMillis);
+        morphoDevice.setLatency(SimulatedMorphoDevice.Phase.MATCHING, matchingMillis);
+        morphoDevice.setReplay(replayer);
+        morphoDevice.initUsbDevicesNameEnum(new CustomInteger());
+        morphoDevice.openUsbDevice(morphoDevice.getUsbDeviceName(0), 0);
+
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+        processInfo.setMorphoDevice(morphoDevice);
+        processInfo.setStorageDirectory(directory);
+        processInfo.setMSOSerialNumber("SIM-00000");
+        processInfo.setDuplicatePolicy(duplicatePolicy);
+
+        TemplateStorage templateStorage = new TemplateStorage(directory);
+        enrollProcess = new EnrollProcess(morphoDevice, templateStorage);
+        enrollProcess.setPhaseRecorder(enroll);
+        verifyProcess = new VerifyProcess(morphoDevice, templateStorage);
+        verifyProcess.setPhaseRecorder(verify);
+        enrollProcess.setExportWriter(exportWriter, ExportWriter.Listener.NONE);
+    }
+
+    private void tearDown() {
+        uiThread.shutdownNow();
+        if (exportWriter != null) {
+            exportWriter.shutdown();
+        }
+        if (directory != null) {
+            Fixtures.delete(directory);
+        }
+    }
+
+    private void reset() {
+        enroll.reset();
+        verify.reset();
+    }
+
+    private void run(int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            execute(enroll, new Command() {
+                @Override
+                public ProcessResult execute(CallbackDispatcher dispatcher) {
+                    return enrollProcess.execute(dispatcher);
+                }
+            });
+            execute(verify, new Command() {
+                @Override
+                public ProcessResult execute(CallbackDispatcher dispatcher) {
+                    // As VerifyPresenter, the templates are read on the device thread
+                    try {
+                        return verifyProcess.execute(
+                                verifyProcess.loadTemplateList(ProcessInfo.getInstance().getUserId()), dispatcher);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+    }
+
+    private interface Command {
+        ProcessResult execute(CallbackDispatcher dispatcher);
+    }
+
+    /**
+     * Run a command the way the presenters do and wait for its result to be displayed
+     */
+    private void execute(final Operation operation, final Command command) throws InterruptedException {
+        final CountDownLatch displayed = new CountDownLatch(1);
+        final CallbackDispatcher dispatcher = new CallbackDispatcher(operation);
+        final long requested = System.nanoTime();
+
+        DeviceExecutor.getInstance().setPhaseRecorder(operation);
+        DeviceExecutor.getInstance().submit(new Runnable() {
+            @Override
+            public void run() {
+                final ProcessResult result = command.execute(dispatcher);
+                if (result.getErrorCode() != ErrorCodes.MORPHO_OK) {
+                    operation.errors++;
+                }
+                final long posted = System.nanoTime();
+                uiThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long now = System.nanoTime();
+                        operation.record(Phase.UI_POST, now - posted);
+                        operation.total.record(now - requested);
+                        displayed.countDown();
+                    }
+                });
+            }
+        });
+
+        displayed.await();
+    }
+
+    private void report(int iterations, long elapsedNanos, long gcCount, long gcMillis) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(String.format(Locale.ROOT,
+                "%d enroll + verify in %.2f s : %.1f cycles/s, %.1f verifications/min",
+                iterations, seconds, iterations / seconds, iterations / seconds * 60));
+        System.out.println(String.format(Locale.ROOT,
+                "GC : %d collections, %d ms", gcCount, gcMillis));
+        System.out.println(String.format(Locale.ROOT, "%-8s %-14s %8s %10s %10s %10s %10s",
+                "", "phase (us)", "count", "p50", "p95", "p99", "max"));
+        enroll.print();
+        verify.print();
+    }
+
+    /**
+     * @return the number of collections and their total time in ms, all collectors together
+     */
+    private static long[] gcCounters() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    /**
+     * Latencies of one kind of command, also consuming the callbacks of the device
+     * as the presenters would (message creation, latest live image parsed on the UI thread)
+     */
+    private class Operation implements PhaseRecorder, CallbackDispatcher.Listener {
+
+        private final String name;
+        private volatile FrameMailbox frameMailbox = new FrameMailbox();
+        private final Runnable displayFrame = new Runnable() {
+            @Override
+            public void run() {
+                byte[] image = frameMailbox.take();
+                if (image != null) {
+                    LiveFrame.parse(image).getPixels();
+                }
+            }
+        };
+        private final Map<Phase, LatencyHistogram> phases = new EnumMap<>(Phase.class);
+        private final LatencyHistogram total = new LatencyHistogram();
+        private volatile int errors;
+
+        Operation(String name) {
+            this.name = name;
+            for (Phase phase : Phase.values()) {
+                phases.put(phase, new LatencyHistogram());
+            }
+        }
+
+        @Override
+        public void record(Phase phase, long durationNanos) {
+            phases.get(phase).record(durationNanos);
+        }
+
+        @Override
+        public void onCommand(Integer command) {
+            MorphoUtils.createMessage(command);
+        }
+
+        @Override
+        public void onImage(byte[] image) {
+            if (frameMailbox.offer(image)) {
+                uiThread.execute(displayFrame);
+            }
+        }
+
+        @Override
+        public void onQuality(Integer quality) {
+        }
+
+        void reset() {
+            for (LatencyHistogram histogram : phases.values()) {
+                histogram.reset();
+            }
+            total.reset();
+            errors = 0;
+            frameMailbox = new FrameMailbox();
+        }
+
+        void print() {
+            for (Map.Entry<Phase, LatencyHistogram> entry : phases.entrySet()) {
+                print(entry.getKey().name(), entry.getValue());
+            }
+            print("TOTAL", total);
+            System.out.println(name + " : " + frameMailbox.getOfferedCount() + " live images, "
+                    + frameMailbox.getDroppedCount() + " dropped before display");
+            if (errors > 0) {
+                System.out.println(name + " : " + errors + " commands failed");
+            }
+        }
+
+        private void print(String phase, LatencyHistogram histogram) {
+            if (histogram.getCount() == 0) {
+                return;
+            }
+            System.out.println(String.format(Locale.ROOT, "%-8s %-14s %8d %10.1f %10.1f %10.1f %10.1f",
+                    name, phase, histogram.getCount(),
+                    histogram.getPercentile(50) / NANOS_PER_MICRO,
+                    histogram.getPercentile(95) / NANOS_PER_MICRO,
+                    histogram.getPercentile(99) / NANOS_PER_MICRO,
+                    histogram.getMax() / NANOS_PER_MICRO));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.device.SimulatedMorphoDevice;
+import com.famoco.morphodemo.fingerprint.CallbackDispatcher;
+import com.morpho.morphosmart.sdk.CallbackMask;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.DetectionMode;
+import com.morpho.morphosmart.sdk.MorphoImage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.morpho.morphosmart.sdk.CompressionAlgorithm.MORPHO_NO_COMPRESS;
+import static com.morpho.morphosmart.sdk.LatentDetection.LATENT_DETECT_ENABLE;
+
+/**
+ * Data shared by the benchmarks, produced by the simulated Morpho device
+ *
+ * @version DEMO
+ */
+final class Fixtures {
+
+    static final long SEED = 42;
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return an opened simulated device without latency
+     */
+    static SimulatedMorphoDevice openedDevice() {
+        SimulatedMorphoDevice device = new SimulatedMorphoDevice(SEED);
+        device.initUsbDevicesNameEnum(new CustomInteger());
+        device.openUsbDevice(device.getUsbDeviceName(0), 0);
+        return device;
+    }
+
+    /**
+     * @return the last low resolution live image sent during an acquisition, header included
+     */
+    static byte[] liveFrame(int rows, int columns) {
+        SimulatedMorphoDevice device = openedDevice();
+        device.setPreviewSize(rows, columns);
+        final byte[][] last = new byte[1][];
+        device.getImage(0, 0, MORPHO_NO_COMPRESS, 0,
+                DetectionMode.MORPHO_ENROLL_DETECT_MODE.getValue(), LATENT_DETECT_ENABLE,
+                new MorphoImage(), CallbackMask.MORPHO_CALLBACK_IMAGE_CMD.getValue(),
+                new CallbackDispatcher(new CallbackDispatcher.Listener() {
+                    @Override
+                    public void onCommand(Integer command) {
+                    }
+
+                    @Override
+                    public void onImage(byte[] image) {
+                        last[0] = image;
+                    }
+
+                    @Override
+                    public void onQuality(Integer quality) {
+                    }
+                }));
+        return last[0];
+    }
+
+    /**
+     * @return random compact card template (3 bytes per minutia) of at most the given size
+     */
+    static byte[] templateData(int size) {
+        byte[] data = new byte[size - size % 3];
+        Random random = new Random(SEED);
+        random.nextBytes(data);
+        for (int i = 2; i < data.length; i += 3) {
+            // Minutia type : ridge ending or bifurcation
+            data[i] = (byte) ((1 + random.nextInt(2)) << 6 | (data[i] & 0x3F));
+        }
+        return data;
+    }
+
+    /**
+     * @return random compact card template of 30 to 50 minutiae, all distinct for the same random
+     */
+    static byte[] minutiaeTemplate(Random random) {
+        byte[] template = new byte[(30 + random.nextInt(21)) * 3];
+        for (int i = 0; i < template.length; i += 3) {
+            template[i] = (byte) (20 + random.nextInt(180));
+            template[i + 1] = (byte) (20 + random.nextInt(220));
+            template[i + 2] = (byte) ((1 + random.nextInt(2)) << 6 | random.nextInt(64));
+        }
+        return template;
+    }
+
+    /**
+     * @return a compact card template with its minutiae sorted by vertical position, as by the
+     * extractors
+     */
+    static byte[] sortByY(byte[] template) {
+        long[] minutiae = new long[template.length / 3];
+        for (int i = 0; i < minutiae.length; i++) {
+            minutiae[i] = (template[3 * i + 1] & 0xFFL) << 32 | i;
+        }
+        Arrays.sort(minutiae);
+        byte[] sorted = new byte[template.length];
+        for (int i = 0; i < minutiae.length; i++) {
+            System.arraycopy(template, 3 * (int) minutiae[i], sorted, 3 * i, 3);
+        }
+        return sorted;
+    }
+
+    /**
+     * @return another acquisition of the finger of a compact card template : minutiae moved by up
+     * to 2 units, angles by up to 1 unit, the last 3 minutiae missed
+     */
+    static byte[] reacquire(byte[] template, Random random) {
+        byte[] probe = new byte[template.length - 3 * 3];
+        for (int i = 0; i < probe.length; i += 3) {
+            probe[i] = (byte) ((template[i] & 0xFF) + random.nextInt(5) - 2);
+            probe[i + 1] = (byte) ((template[i + 1] & 0xFF) + random.nextInt(5) - 2);
+            probe[i + 2] = (byte) ((template[i + 2] & 0xC0) | ((template[i + 2] + random.nextInt(3) - 1) & 0x3F));
+        }
+        return probe;
+    }
+
+    /**
+     * @return the options of a harness, given as "--key value" pairs
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument : " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    static String option(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    static File createTempDirectory() throws IOException {
+        return Files.createTempDirectory("morpho-bench").toFile();
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
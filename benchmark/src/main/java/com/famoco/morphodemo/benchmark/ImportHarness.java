@@ -0,0 +1,123 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateImporter;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Bulk import of an export of random compact card templates, from a directory and from a zip
+ * archive, against storing the same templates one by one as an enrollment does.
+ *
+ * One template in --duplicates has the content of another user's template. The minutiae are in
+ * random order unless --sorted true, which sorts them by vertical position as most extractors
+ * do : only the sorted compact card templates get shorter once packed by the repository.
+ *
+ * Usage : ./gradlew :benchmark:importTemplates --args="--templates 50000"
+ * Options : --templates, --duplicates, --threads, --sorted
+ *
+ * @version DEMO
+ */
+public class ImportHarness {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Fixtures.parseOptions(args);
+        int count = Integer.parseInt(Fixtures.option(options, "templates", "50000"));
+        int duplicates = Integer.parseInt(Fixtures.option(options, "duplicates", "100"));
+        int threads = Integer.parseInt(Fixtures.option(options, "threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        boolean sorted = Boolean.parseBoolean(Fixtures.option(options, "sorted", "false"));
+
+        File directory = Fixtures.createTempDirectory();
+        try {
+            File export = new File(directory, "export");
+            File archive = new File(directory, "export.zip");
+            byte[][] templates = export(count, duplicates, sorted, export, archive);
+
+            long rawBytes = 0;
+            for (byte[] template : templates) {
+                rawBytes += template.length;
+            }
+            System.out.println(String.format(Locale.ROOT, "%d templates of %d KB in all", count, rawBytes / 1024));
+            System.out.println(String.format(Locale.ROOT, "%-12s %10s %10s %10s %12s %10s",
+                    "source", "imported", "duplicates", "ms", "templates/s", "stored KB"));
+            File single = new File(directory, "single");
+            print("one by one", count, 0, putOneByOne(templates, single), single);
+            File imported = new File(directory, "directory");
+            print("directory", importFrom(export, imported, threads), imported);
+            imported = new File(directory, "zip");
+            print("zip", importFrom(archive, imported, threads), imported);
+        } finally {
+            Fixtures.delete(directory);
+        }
+    }
+
+    /**
+     * Write the templates as exported by the app, in a directory and in a zip archive
+     */
+    private static byte[][] export(int count, int duplicates, boolean sorted, File export, File archive)
+            throws IOException {
+        Random random = new Random(Fixtures.SEED);
+        byte[][] templates = new byte[count][];
+        int every = duplicates > 0 ? Math.max(2, count / duplicates) : Integer.MAX_VALUE;
+        export.mkdirs();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (int i = 0; i < count; i++) {
+                if (i % every == every - 1) {
+                    templates[i] = templates[random.nextInt(i)];
+                } else {
+                    byte[] template = Fixtures.minutiaeTemplate(random);
+                    templates[i] = sorted ? Fixtures.sortByY(template) : template;
+                }
+                String name = "TemplateFP_user" + i + "_f1" + TemplateType.MORPHO_PK_ISO_FMC_CS.getExtension();
+                try (FileOutputStream out = new FileOutputStream(new File(export, name))) {
+                    out.write(templates[i]);
+                }
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(templates[i]);
+                zip.closeEntry();
+            }
+        }
+        return templates;
+    }
+
+    private static long putOneByOne(byte[][] templates, File directory) throws IOException {
+        directory.mkdirs();
+        long start = System.nanoTime();
+        try (TemplateRepository repository = TemplateRepository.open(directory)) {
+            for (int i = 0; i < templates.length; i++) {
+                repository.put(new StoredTemplate("user" + i, 1, TemplateType.MORPHO_PK_ISO_FMC_CS, templates[i]));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static TemplateImporter.Report importFrom(File source, File directory, int threads) throws IOException {
+        directory.mkdirs();
+        try (TemplateRepository repository = TemplateRepository.open(directory)) {
+            return new TemplateImporter(repository, threads).importFrom(source, TemplateImporter.Listener.NONE);
+        }
+    }
+
+    private static void print(String source, TemplateImporter.Report report, File repository) {
+        print(source, report.getImported(), report.getDuplicates(), report.getElapsedNanos(), repository);
+    }
+
+    /**
+     * @param repository directory, whose data file is measured
+     */
+    private static void print(String source, int imported, int duplicates, long nanos, File repository) {
+        System.out.println(String.format(Locale.ROOT, "%-12s %10d %10d %10.1f %12.0f %10d",
+                source, imported, duplicates, nanos / 1e6, (imported + duplicates) / (nanos / 1e9),
+                new File(repository, TemplateRepository.DATA_FILENAME).length() / 1024));
+    }
+}
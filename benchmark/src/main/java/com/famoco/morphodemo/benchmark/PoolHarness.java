@@ -0,0 +1,148 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.device.DeviceExecutor;
+import com.famoco.morphodemo.device.DevicePool;
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.device.SimulatedMorphoDevice;
+import com.famoco.morphodemo.fingerprint.CallbackDispatcher;
+import com.famoco.morphodemo.fingerprint.ProcessResult;
+import com.famoco.morphodemo.fingerprint.enroll.EnrollProcess;
+import com.famoco.morphodemo.metrics.LatencyHistogram;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enrollments of a station routed by the {@link DevicePool} to 1, 2... simulated sensors,
+ * each client (an operator) submitting its next enrollment when the previous one returned.
+ *
+ * Usage : ./gradlew :benchmark:pool --args="--sensors 1,2,4 --clients 4 --enrollments 200"
+ * Options : --sensors, --clients, --enrollments, --frames, --frame-ms, --coding-ms
+ *
+ * @version DEMO
+ */
+public class PoolHarness {
+
+    private static final CallbackDispatcher.Listener NO_DISPLAY = new CallbackDispatcher.Listener() {
+        @Override
+        public void onCommand(Integer command) {
+        }
+
+        @Override
+        public void onImage(byte[] image) {
+        }
+
+        @Override
+        public void onQuality(Integer quality) {
+        }
+    };
+
+    private final int clients;
+    private final int enrollments;
+    private final int frames;
+    private final long frameMillis;
+    private final long codingMillis;
+
+    private PoolHarness(int clients, int enrollments, int frames, long frameMillis, long codingMillis) {
+        this.clients = clients;
+        this.enrollments = enrollments;
+        this.frames = frames;
+        this.frameMillis = frameMillis;
+        this.codingMillis = codingMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Fixtures.parseOptions(args);
+        PoolHarness harness = new PoolHarness(
+                Integer.parseInt(Fixtures.option(options, "clients", "4")),
+                Integer.parseInt(Fixtures.option(options, "enrollments", "200")),
+                Integer.parseInt(Fixtures.option(options, "frames", "10")),
+                Long.parseLong(Fixtures.option(options, "frame-ms", "20")),
+                Long.parseLong(Fixtures.option(options, "coding-ms", "100")));
+        System.out.println(String.format(Locale.ROOT, "%-8s %10s %12s %10s %10s %14s",
+                "sensors", "time (s)", "enroll/min", "p50 (ms)", "p95 (ms)", "queued behind"));
+        for (String sensors : Fixtures.option(options, "sensors", "1,2").split(",")) {
+            harness.run(Integer.parseInt(sensors.trim()));
+        }
+    }
+
+    private void run(int sensors) throws Exception {
+        File directory = Files.createTempDirectory("morpho-pool").toFile();
+        ExecutorService operators = Executors.newFixedThreadPool(clients);
+        try {
+            ProcessInfo.getInstance().setStorageDirectory(directory);
+            final TemplateStorage templateStorage = new TemplateStorage(directory);
+            final DevicePool pool = new DevicePool();
+            for (int i = 0; i < sensors; i++) {
+                SimulatedMorphoDevice device = new SimulatedMorphoDevice(Fixtures.SEED + i);
+                device.setFrameCount(frames);
+                device.setLatency(SimulatedMorphoDevice.Phase.FRAME, frameMillis);
+                device.setLatency(SimulatedMorphoDevice.Phase.CODING, codingMillis);
+                device.openUsbDevice("SIM-" + i, 0);
+                pool.add("SIM-" + i, device, new DeviceExecutor("PoolHarness-" + i, DeviceExecutor.DEFAULT_CAPACITY));
+            }
+
+            final LatencyHistogram latencies = new LatencyHistogram();
+            final AtomicInteger remaining = new AtomicInteger(enrollments);
+            final AtomicInteger errors = new AtomicInteger();
+            final DevicePool.Command<ProcessResult> enroll = new DevicePool.Command<ProcessResult>() {
+                @Override
+                public ProcessResult execute(MorphoDevicePort device) {
+                    return new EnrollProcess(device, templateStorage).execute(new CallbackDispatcher(NO_DISPLAY));
+                }
+            };
+            List<Future<?>> running = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < clients; i++) {
+                running.add(operators.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        while (remaining.getAndDecrement() > 0) {
+                            long requested = System.nanoTime();
+                            if (pool.submit(enroll).get().getErrorCode() != ErrorCodes.MORPHO_OK) {
+                                errors.incrementAndGet();
+                            }
+                            latencies.record(System.nanoTime() - requested);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            double seconds = elapsed / 1e9;
+            System.out.println(String.format(Locale.ROOT, "%-8d %10.2f %12.1f %10.1f %10.1f %14d",
+                    sensors, seconds, enrollments / seconds * 60,
+                    latencies.getPercentile(50) / 1e6, latencies.getPercentile(95) / 1e6,
+                    pool.getRoutedToBusyCount()));
+            for (DevicePool.Member member : pool.getMembers()) {
+                System.out.println(String.format(Locale.ROOT, "  %-6s %5d enrollments, busy %3.0f %%, p50 %.1f ms",
+                        member.getName(), member.getCompletedCount(),
+                        100.0 * member.getBusyNanos() / elapsed, member.getRunTimes().getPercentile(50) / 1e6));
+            }
+            if (errors.get() > 0) {
+                System.out.println(errors.get() + " enrollments failed");
+            }
+        } finally {
+            operators.shutdownNow();
+            operators.awaitTermination(1, TimeUnit.SECONDS);
+            Fixtures.delete(directory);
+        }
+    }
+}
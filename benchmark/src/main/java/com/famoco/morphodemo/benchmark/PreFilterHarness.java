@@ -0,0 +1,125 @@
+package com.famoco.morphodemo.benchmark;
+
+import com.famoco.morphodemo.device.SimulatedMorphoDevice;
+import com.famoco.morphodemo.fingerprint.identify.IdentifyProcess;
+import com.famoco.morphodemo.fingerprint.identify.IdentifyResult;
+import com.famoco.morphodemo.fingerprint.identify.MinutiaePreFilter;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Identification of the whole gallery by the sensor against identification of the shortlist
+ * of the MinutiaePreFilter, on galleries of random compact card templates.
+ *
+ * Recall : share of the reacquired fingers (moved and missing minutiae) found in the shortlist.
+ * Latency : identification of an enrolled finger on the simulated device, each verifyMatch of
+ * a batch taking --matching-ms.
+ *
+ * Usage : ./gradlew :benchmark:preFilter --args="--users 1000,10000,50000"
+ * Options : --users, --probes, --identifications, --shortlist, --matching-ms, --threads
+ *
+ * @version DEMO
+ */
+public class PreFilterHarness {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Fixtures.parseOptions(args);
+        int probes = Integer.parseInt(Fixtures.option(options, "probes", "200"));
+        int identifications = Integer.parseInt(Fixtures.option(options, "identifications", "5"));
+        int shortlist = Integer.parseInt(Fixtures.option(options, "shortlist",
+                String.valueOf(MinutiaePreFilter.DEFAULT_SHORTLIST_SIZE)));
+        long matchingMillis = Long.parseLong(Fixtures.option(options, "matching-ms", "2"));
+        int threads = Integer.parseInt(Fixtures.option(options, "threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        System.out.println(String.format(Locale.ROOT, "%8s %10s %12s %14s %14s %12s %12s",
+                "users", "index ms", "recall@" + shortlist, "shortlist ms", "full ms", "filtered ms", "candidates"));
+        for (String users : Fixtures.option(options, "users", "1000,10000,50000").split(",")) {
+            run(Integer.parseInt(users.trim()), probes, identifications, shortlist, matchingMillis, threads);
+        }
+    }
+
+    private static void run(int users, int probes, int identifications, int shortlist, long matchingMillis,
+                            int threads) throws IOException {
+        File directory = Fixtures.createTempDirectory();
+        MinutiaePreFilter preFilter = new MinutiaePreFilter(threads);
+        try {
+            ProcessInfo.getInstance().setStorageDirectory(directory);
+            TemplateStorage templateStorage = new TemplateStorage(directory);
+            TemplateRepository repository = templateStorage.getRepository();
+            Random random = new Random(Fixtures.SEED);
+            byte[][] templates = new byte[users][];
+            for (int i = 0; i < users; i++) {
+                templates[i] = Fixtures.minutiaeTemplate(random);
+                repository.put(new StoredTemplate("user" + i, 1, TemplateType.MORPHO_PK_ISO_FMC_CS, templates[i]));
+            }
+
+            long start = System.nanoTime();
+            preFilter.index(repository);
+            long indexNanos = System.nanoTime() - start;
+
+            int found = 0;
+            long shortlistNanos = 0;
+            for (int p = 0; p < probes; p++) {
+                int user = random.nextInt(users);
+                byte[] probe = Fixtures.reacquire(templates[user], random);
+                start = System.nanoTime();
+                List<StoredTemplate> candidates = preFilter.shortlist(repository, probe,
+                        TemplateType.MORPHO_PK_ISO_FMC_CS, shortlist);
+                shortlistNanos += System.nanoTime() - start;
+                for (StoredTemplate candidate : candidates) {
+                    if (candidate.getUserId().equals("user" + user)) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+
+            // The simulated sensor only matches identical templates : the enrolled one is presented
+            SimulatedMorphoDevice morphoDevice = Fixtures.openedDevice();
+            morphoDevice.setLatency(SimulatedMorphoDevice.Phase.MATCHING, matchingMillis);
+            IdentifyProcess full = new IdentifyProcess(morphoDevice, templateStorage);
+            IdentifyProcess filtered = new IdentifyProcess(morphoDevice, templateStorage);
+            filtered.setPreFilter(preFilter, shortlist);
+            long fullNanos = 0;
+            long filteredNanos = 0;
+            long candidates = 0;
+            for (int i = 0; i < identifications; i++) {
+                morphoDevice.setPresentedTemplate(templates[random.nextInt(users)]);
+                start = System.nanoTime();
+                check(full.execute(null));
+                fullNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                candidates += check(filtered.execute(null)).getCandidates();
+                filteredNanos += System.nanoTime() - start;
+            }
+
+            System.out.println(String.format(Locale.ROOT, "%8d %10.1f %11.1f%% %14.2f %14.1f %12.1f %12.1f",
+                    users, indexNanos / 1e6, 100.0 * found / probes, shortlistNanos / 1e6 / probes,
+                    fullNanos / 1e6 / identifications, filteredNanos / 1e6 / identifications,
+                    (double) candidates / identifications));
+            repository.close();
+        } finally {
+            preFilter.shutdown();
+            Fixtures.delete(directory);
+        }
+    }
+
+    private static IdentifyResult check(IdentifyResult result) {
+        if (result.getErrorCode() != ErrorCodes.MORPHO_OK) {
+            throw new IllegalStateException("Identification failed : " + result);
+        }
+        return result;
+    }
+}
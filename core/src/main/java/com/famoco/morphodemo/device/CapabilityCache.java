@@ -0,0 +1,150 @@
+package com.famoco.morphodemo.device;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link DeviceCapabilities} of the sensors already connected, one properties file per serial
+ * number, so the startup and the About dialog do not wait for the sensor to read information
+ * which does not change. An entry older than {@link #MAX_AGE_MS} is still returned, and
+ * should be refreshed from the sensor when idle.
+ *
+ * Thread safe
+ *
+ * @version DEMO
+ */
+public class CapabilityCache {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = CapabilityCache.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Name of the directory of the cache, in the storage directory
+     */
+    public static final String DIRECTORY_NAME = "capabilities";
+
+    /**
+     * Age of an entry after which it should be refreshed from the sensor
+     */
+    public static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static final String EXTENSION = ".properties";
+
+    private static CapabilityCache mInstance = null;
+
+    private final File directory;
+    private final Map<String, DeviceCapabilities> entries = new HashMap<>();
+
+    /**
+     * @param storageDirectory containing the directory of the cache
+     * @return the cache of the storage directory
+     */
+    public static synchronized CapabilityCache getInstance(File storageDirectory) {
+        File directory = new File(storageDirectory, DIRECTORY_NAME);
+        if (mInstance == null || !mInstance.directory.equals(directory)) {
+            mInstance = new CapabilityCache(directory);
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param directory of the properties files, created on first write
+     */
+    public CapabilityCache(File directory) {
+        this.directory = checkNotNull(directory);
+    }
+
+    /**
+     * @param serial number of the sensor
+     * @return the capabilities of the sensor, or null if never saved
+     */
+    public synchronized DeviceCapabilities get(String serial) {
+        DeviceCapabilities capabilities = entries.get(checkNotNull(serial));
+        if (capabilities == null) {
+            capabilities = load(serial);
+            if (capabilities != null) {
+                entries.put(serial, capabilities);
+            }
+        }
+        return capabilities;
+    }
+
+    /**
+     * Save the capabilities of a sensor. The file is only rewritten if the descriptors changed
+     * or the entry is stale
+     *
+     * @param serial number of the sensor
+     * @param capabilities read from the sensor
+     */
+    public synchronized void put(String serial, DeviceCapabilities capabilities) {
+        checkNotNull(capabilities);
+        DeviceCapabilities previous = get(serial);
+        entries.put(serial, capabilities);
+        if (capabilities.sameAs(previous) && !isStale(previous)) {
+            return;
+        }
+        try {
+            save(serial, capabilities);
+        } catch (IOException e) {
+            LOGGER.warning("Capabilities of " + serial + " not saved : " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if the capabilities should be refreshed from the sensor
+     */
+    public static boolean isStale(DeviceCapabilities capabilities) {
+        long age = System.currentTimeMillis() - capabilities.getRefreshedAt();
+        return age < 0 || age > MAX_AGE_MS;
+    }
+
+    private File file(String serial) {
+        // Serial numbers are alphanumeric, anything else is kept out of the file name
+        return new File(directory, serial.replaceAll("[^A-Za-z0-9_.-]", "_") + EXTENSION);
+    }
+
+    private DeviceCapabilities load(String serial) {
+        File file = file(serial);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            LOGGER.warning("Capabilities of " + serial + " unreadable : " + e.getMessage());
+            return null;
+        }
+        return DeviceCapabilities.fromProperties(properties);
+    }
+
+    private void save(String serial, DeviceCapabilities capabilities) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        File file = file(serial);
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            capabilities.toProperties().store(out, serial);
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Can not rename " + tmp);
+        }
+    }
+}
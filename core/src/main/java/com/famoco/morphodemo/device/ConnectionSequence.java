@@ -0,0 +1,232 @@
+package com.famoco.morphodemo.device;
+
+import com.famoco.morphodemo.metrics.StartupTimeline;
+import com.famoco.morphodemo.metrics.StartupTimeline.Step;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Connection to the Morpho device at the start of the app : USB permission, enumeration,
+ * open, configuration and read of the product descriptor, each step timed in a
+ * {@link StartupTimeline}.
+ *
+ * Every transition runs on the thread of the {@link DeviceExecutor}, so neither the UI Thread
+ * nor a broadcast receiver ever waits for the device, and a late or repeated trigger (e.g. the
+ * permission granted while already connecting) is ignored by the state it finds.
+ *
+ * @version DEMO
+ */
+public class ConnectionSequence {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = ConnectionSequence.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * States of the sequence, with the step of the timeline they run
+     */
+    public enum State {
+        IDLE(null),
+        WAITING_PERMISSION(Step.PERMISSION),
+        ENUMERATING(Step.ENUMERATE),
+        OPENING(Step.OPEN),
+        CONFIGURING(Step.CONFIGURE),
+        READING_DESCRIPTOR(Step.DESCRIPTOR),
+        CONNECTED(null),
+        FAILED(null);
+
+        private final Step step;
+
+        State(Step step) {
+            this.step = step;
+        }
+
+        public Step getStep() {
+            return step;
+        }
+    }
+
+    /**
+     * Steps of the connection, run on the thread of the device
+     */
+    public interface Steps {
+
+        /**
+         * Ask the USB permission if not granted yet
+         *
+         * @return true if the permission is granted, false to wait for
+         * {@link ConnectionSequence#onPermissionResult(boolean)}
+         */
+        boolean requestPermission();
+
+        /**
+         * @return an ErrorCodes value, MORPHO_OK to go on
+         */
+        int enumerate();
+
+        /**
+         * @return an ErrorCodes value, MORPHO_OK to go on
+         */
+        int open();
+
+        /**
+         * @return an ErrorCodes value, MORPHO_OK to go on
+         */
+        int configure();
+
+        /**
+         * @return an ErrorCodes value, MORPHO_OK to go on
+         */
+        int readDescriptor();
+    }
+
+    /**
+     * Receives the outcome of the sequence, on the thread of the device
+     */
+    public interface Listener {
+
+        /**
+         * Listener doing nothing
+         */
+        Listener NONE = new Listener() {
+            @Override
+            public void onConnected(StartupTimeline timeline) {
+            }
+
+            @Override
+            public void onFailed(State state, int error, StartupTimeline timeline) {
+            }
+        };
+
+        /**
+         * @param timeline of the steps
+         */
+        void onConnected(StartupTimeline timeline);
+
+        /**
+         * @param state whose step failed
+         * @param error ErrorCodes value returned by the step
+         * @param timeline of the steps
+         */
+        void onFailed(State state, int error, StartupTimeline timeline);
+    }
+
+    private final DeviceExecutor executor;
+    private final Steps steps;
+    private final Listener listener;
+    private final StartupTimeline timeline;
+
+    private volatile State state = State.IDLE;
+
+    /**
+     * @param executor running the steps
+     * @param steps of the connection
+     * @param listener notified of the outcome
+     * @param timeline receiving the duration of the steps, whose origin is the start of the app
+     */
+    public ConnectionSequence(DeviceExecutor executor, Steps steps, Listener listener, StartupTimeline timeline) {
+        this.executor = checkNotNull(executor);
+        this.steps = checkNotNull(steps);
+        this.listener = checkNotNull(listener);
+        this.timeline = checkNotNull(timeline);
+    }
+
+    /**
+     * Start the sequence, unless already started
+     */
+    public void start() {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (state != State.IDLE) {
+                    return;
+                }
+                enter(State.WAITING_PERMISSION);
+                if (steps.requestPermission()) {
+                    timeline.end(Step.PERMISSION);
+                    connect();
+                }
+            }
+        });
+    }
+
+    /**
+     * Result of the USB permission dialog, ignored unless the sequence waits for it
+     *
+     * @param granted true if the User has granted the permission
+     */
+    public void onPermissionResult(final boolean granted) {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (state != State.WAITING_PERMISSION) {
+                    LOGGER.fine("Permission result ignored in state " + state);
+                    return;
+                }
+                timeline.end(Step.PERMISSION);
+                if (granted) {
+                    connect();
+                } else {
+                    fail(ErrorCodes.MORPHOERR_USB_PERMISSION_DENIED);
+                }
+            }
+        });
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public StartupTimeline getTimeline() {
+        return timeline;
+    }
+
+    private void connect() {
+        State[] sequence = {State.ENUMERATING, State.OPENING, State.CONFIGURING, State.READING_DESCRIPTOR};
+        for (State next : sequence) {
+            enter(next);
+            int ret = run(next);
+            timeline.end(next.getStep());
+            if (ret != ErrorCodes.MORPHO_OK) {
+                fail(ret);
+                return;
+            }
+        }
+        state = State.CONNECTED;
+        LOGGER.info("Connected : " + timeline);
+        listener.onConnected(timeline);
+    }
+
+    private int run(State next) {
+        switch (next) {
+            case ENUMERATING:
+                return steps.enumerate();
+            case OPENING:
+                return steps.open();
+            case CONFIGURING:
+                return steps.configure();
+            case READING_DESCRIPTOR:
+                return steps.readDescriptor();
+            default:
+                throw new IllegalArgumentException("No step in state " + next);
+        }
+    }
+
+    private void enter(State next) {
+        state = next;
+        timeline.begin(next.getStep());
+    }
+
+    private void fail(int error) {
+        State failed = state;
+        state = State.FAILED;
+        LOGGER.warning(failed + " failed : " + error + " (" + timeline + ")");
+        listener.onFailed(failed, error, timeline);
+    }
+}
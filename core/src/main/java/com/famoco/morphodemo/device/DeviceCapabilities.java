@@ -0,0 +1,128 @@
+package com.famoco.morphodemo.device;
+
+import java.util.Properties;
+import java.util.StringTokenizer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Static information of a Morpho sensor, which does not change between two connections of
+ * the same sensor unless its firmware is updated : its descriptors, and the FINGER VP support
+ * read from them.
+ *
+ * @version DEMO
+ */
+public final class DeviceCapabilities {
+
+    private static final String KEY_PRODUCT_DESCRIPTOR = "productDescriptor";
+    private static final String KEY_SOFTWARE_DESCRIPTOR = "softwareDescriptor";
+    private static final String KEY_REFRESHED_AT = "refreshedAt";
+
+    private final String productDescriptor;
+    private final String softwareDescriptor;
+    private final long refreshedAt;
+    private final boolean fvp;
+
+    /**
+     * @param productDescriptor returned by the sensor
+     * @param softwareDescriptor returned by the sensor
+     * @param refreshedAt time of the read of the descriptors, in ms since the epoch
+     */
+    public DeviceCapabilities(String productDescriptor, String softwareDescriptor, long refreshedAt) {
+        this.productDescriptor = checkNotNull(productDescriptor);
+        this.softwareDescriptor = checkNotNull(softwareDescriptor);
+        this.refreshedAt = refreshedAt;
+        this.fvp = isFvp(productDescriptor);
+    }
+
+    /**
+     * Read the descriptors of an open sensor
+     *
+     * @param device open
+     * @return the capabilities of the sensor
+     */
+    public static DeviceCapabilities read(MorphoDevicePort device) {
+        String productDescriptor = device.getProductDescriptor();
+        String softwareDescriptor = device.getSoftwareDescriptor();
+        return new DeviceCapabilities(productDescriptor != null ? productDescriptor : "",
+                softwareDescriptor != null ? softwareDescriptor : "", System.currentTimeMillis());
+    }
+
+    /**
+     * @return the capabilities saved by {@link #toProperties()}, or null if incomplete
+     */
+    static DeviceCapabilities fromProperties(Properties properties) {
+        String productDescriptor = properties.getProperty(KEY_PRODUCT_DESCRIPTOR);
+        String softwareDescriptor = properties.getProperty(KEY_SOFTWARE_DESCRIPTOR);
+        String refreshedAt = properties.getProperty(KEY_REFRESHED_AT);
+        if (productDescriptor == null || softwareDescriptor == null || refreshedAt == null) {
+            return null;
+        }
+        try {
+            return new DeviceCapabilities(productDescriptor, softwareDescriptor, Long.parseLong(refreshedAt));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    Properties toProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_PRODUCT_DESCRIPTOR, productDescriptor);
+        properties.setProperty(KEY_SOFTWARE_DESCRIPTOR, softwareDescriptor);
+        properties.setProperty(KEY_REFRESHED_AT, String.valueOf(refreshedAt));
+        return properties;
+    }
+
+    /**
+     * A FINGER VP sensor names itself on the first line of its product descriptor
+     */
+    private static boolean isFvp(String productDescriptor) {
+        StringTokenizer tokenizer = new StringTokenizer(productDescriptor, "\n");
+        if (tokenizer.hasMoreTokens()) {
+            String firstLine = tokenizer.nextToken();
+            return firstLine.contains("FINGER VP") || firstLine.contains("FVP");
+        }
+        return false;
+    }
+
+    public String getProductDescriptor() {
+        return productDescriptor;
+    }
+
+    public String getSoftwareDescriptor() {
+        return softwareDescriptor;
+    }
+
+    /**
+     * @return the first line of the software descriptor
+     */
+    public String getFirmwareVersion() {
+        int end = softwareDescriptor.indexOf('\n');
+        return (end < 0 ? softwareDescriptor : softwareDescriptor.substring(0, end)).trim();
+    }
+
+    /**
+     * @return the time of the read of the descriptors, in ms since the epoch
+     */
+    public long getRefreshedAt() {
+        return refreshedAt;
+    }
+
+    public boolean isFvp() {
+        return fvp;
+    }
+
+    /**
+     * @return true if the descriptors are the same
+     */
+    public boolean sameAs(DeviceCapabilities other) {
+        return other != null && productDescriptor.equals(other.productDescriptor)
+                && softwareDescriptor.equals(other.softwareDescriptor);
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceCapabilities{firmware=" + getFirmwareVersion() + ", fvp=" + fvp
+                + ", refreshedAt=" + refreshedAt + '}';
+    }
+}
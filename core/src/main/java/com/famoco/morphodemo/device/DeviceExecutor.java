@@ -0,0 +1,203 @@
+package com.famoco.morphodemo.device;
+
+import com.famoco.morphodemo.metrics.LatencyHistogram;
+import com.famoco.morphodemo.metrics.Phase;
+import com.famoco.morphodemo.metrics.PhaseRecorder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Single worker thread owning the Morpho device : every command sent to the sensor
+ * (open, capture, verify, getImage, reboot, close) is submitted here and runs after
+ * the previous one has returned, so two commands never reach the sensor at the same time.
+ *
+ * cancelLiveAcquisition must NOT be submitted : it is called from any thread to stop
+ * the command running on the worker.
+ *
+ * @version DEMO
+ */
+public class DeviceExecutor {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = DeviceExecutor.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Name of the worker thread
+     */
+    public static final String THREAD_NAME = "MorphoDevice";
+
+    /**
+     * Maximum number of commands waiting for the sensor
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private static DeviceExecutor mInstance = null;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private volatile PhaseRecorder phaseRecorder = PhaseRecorder.NONE;
+    private volatile Thread worker;
+
+    public static synchronized DeviceExecutor getInstance() {
+        if (mInstance == null) {
+            mInstance = new DeviceExecutor(THREAD_NAME, DEFAULT_CAPACITY);
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param threadName name of the worker thread
+     * @param capacity maximum number of commands waiting for the worker
+     */
+    public DeviceExecutor(final String threadName, int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        worker = thread;
+                        return thread;
+                    }
+                }) {
+
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+                return new TimedTask<>(callable);
+            }
+
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+                return new TimedTask<>(runnable, value);
+            }
+
+            @Override
+            protected void beforeExecute(Thread t, Runnable r) {
+                if (r instanceof TimedTask) {
+                    long wait = System.nanoTime() - ((TimedTask<?>) r).submitted;
+                    waitTimes.record(wait);
+                    phaseRecorder.record(Phase.QUEUE_WAIT, wait);
+                }
+            }
+
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                completed.incrementAndGet();
+                // The submitters of fire-and-forget commands never read their future
+                if (r instanceof TimedTask && ((TimedTask<?>) r).isDone()) {
+                    try {
+                        ((TimedTask<?>) r).get();
+                    } catch (ExecutionException e) {
+                        LOGGER.log(Level.SEVERE, "Command of the Morpho device failed", e.getCause());
+                    } catch (CancellationException e) {
+                        // Nothing to report
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Queue a command for the sensor
+     *
+     * @param task calling the Morpho device
+     * @return the future result of the command
+     * @throws RejectedExecutionException if too many commands are already waiting
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        Future<T> future = executor.submit(checkNotNull(task));
+        submitted.incrementAndGet();
+        return future;
+    }
+
+    /**
+     * Queue a command for the sensor
+     *
+     * @param task calling the Morpho device
+     * @return the future completion of the command
+     * @throws RejectedExecutionException if too many commands are already waiting
+     */
+    public Future<?> submit(Runnable task) {
+        Future<?> future = executor.submit(checkNotNull(task));
+        submitted.incrementAndGet();
+        return future;
+    }
+
+    /**
+     * @return true if the current thread is the worker of the sensor
+     */
+    public boolean isDeviceThread() {
+        return Thread.currentThread() == worker;
+    }
+
+    /**
+     * @return the number of commands waiting for the sensor
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * @return the time spent by the commands waiting for the sensor
+     */
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /**
+     * @param phaseRecorder receiving the {@link Phase#QUEUE_WAIT} of every command
+     */
+    public void setPhaseRecorder(PhaseRecorder phaseRecorder) {
+        this.phaseRecorder = checkNotNull(phaseRecorder);
+    }
+
+    /**
+     * Task remembering when it was submitted
+     */
+    private static class TimedTask<T> extends FutureTask<T> {
+
+        private final long submitted = System.nanoTime();
+
+        TimedTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        TimedTask(Runnable runnable, T result) {
+            super(runnable, result);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.famoco.morphodemo.device;
+
+import com.famoco.morphodemo.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Open Morpho sensors of a station, each one with its own {@link DeviceExecutor} : a command
+ * submitted to the pool runs on the first idle sensor, in the order they were added, or on the
+ * least loaded one if they are all busy. Two sensors capture at the same time, while the
+ * commands of one sensor still never overlap.
+ *
+ * The first sensor uses {@link DeviceExecutor#getInstance()}, so the commands routed to it
+ * stay ordered with its open, reboot and close.
+ *
+ * Thread safe
+ *
+ * @version DEMO
+ */
+public class DevicePool {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = DevicePool.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Command run on the sensor chosen by the pool
+     */
+    public interface Command<T> {
+
+        /**
+         * @param device open, owned by the current thread until the command returns
+         * @return the result of the command
+         */
+        T execute(MorphoDevicePort device) throws Exception;
+    }
+
+    /**
+     * Sensor of the pool, with the metrics of the commands it ran
+     */
+    public static final class Member {
+
+        private final String name;
+        private final MorphoDevicePort device;
+        private final DeviceExecutor executor;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final LatencyHistogram runTimes = new LatencyHistogram();
+
+        Member(String name, MorphoDevicePort device, DeviceExecutor executor) {
+            this.name = checkNotNull(name);
+            this.device = checkNotNull(device);
+            this.executor = checkNotNull(executor);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public MorphoDevicePort getDevice() {
+            return device;
+        }
+
+        public DeviceExecutor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * @return true if no command of the pool is waiting for or running on the sensor
+         */
+        public boolean isIdle() {
+            return inFlight.get() == 0;
+        }
+
+        /**
+         * @return the number of commands of the pool waiting for or running on the sensor
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public long getCompletedCount() {
+            return completed.get();
+        }
+
+        /**
+         * @return the time spent running commands of the pool, in ns
+         */
+        public long getBusyNanos() {
+            return busyNanos.get();
+        }
+
+        /**
+         * @return the duration of the commands of the pool, without their wait
+         */
+        public LatencyHistogram getRunTimes() {
+            return runTimes;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{inFlight=" + inFlight.get() + ", completed=" + completed.get()
+                    + ", busy=" + busyNanos.get() / 1000000 + " ms}";
+        }
+    }
+
+    private static DevicePool mInstance = null;
+
+    private final List<Member> members = new CopyOnWriteArrayList<>();
+    private final List<DeviceExecutor> executors = new ArrayList<>();
+    private final AtomicLong routedToBusy = new AtomicLong();
+
+    public static synchronized DevicePool getInstance() {
+        if (mInstance == null) {
+            mInstance = new DevicePool();
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param index of the sensor in the enumeration
+     * @return the executor of the sensor, {@link DeviceExecutor#getInstance()} for the first one.
+     * Kept for the next connection of the sensor
+     */
+    public synchronized DeviceExecutor getExecutor(int index) {
+        checkArgument(index >= 0, "index must not be negative");
+        if (index == 0) {
+            return DeviceExecutor.getInstance();
+        }
+        while (executors.size() < index) {
+            executors.add(new DeviceExecutor(DeviceExecutor.THREAD_NAME + "-" + (executors.size() + 1),
+                    DeviceExecutor.DEFAULT_CAPACITY));
+        }
+        return executors.get(index - 1);
+    }
+
+    /**
+     * Add an open sensor, unless already in the pool
+     *
+     * @param name of the sensor
+     * @param device open
+     * @param executor owning the sensor
+     * @return the member of the sensor
+     */
+    public synchronized Member add(String name, MorphoDevicePort device, DeviceExecutor executor) {
+        for (Member member : members) {
+            if (member.device == device) {
+                return member;
+            }
+        }
+        Member member = new Member(name, device, executor);
+        members.add(member);
+        LOGGER.info("Sensor " + name + " added, " + members.size() + " in the pool");
+        return member;
+    }
+
+    /**
+     * Remove a sensor before its close : the commands already routed to it still run
+     *
+     * @param device to remove
+     * @return the removed member, or null if not in the pool
+     */
+    public synchronized Member remove(MorphoDevicePort device) {
+        for (Member member : members) {
+            if (member.device == device) {
+                members.remove(member);
+                LOGGER.info("Sensor " + member.name + " removed : " + member);
+                return member;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Run a command on the first idle sensor
+     *
+     * @param command calling the sensor
+     * @return the future result of the command
+     * @throws IllegalStateException if the pool has no sensor
+     * @throws RejectedExecutionException if too many commands are already waiting for the sensor
+     */
+    public <T> Future<T> submit(final Command<T> command) {
+        checkNotNull(command);
+        final Member member = select();
+        try {
+            return member.executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    long start = System.nanoTime();
+                    try {
+                        return command.execute(member.device);
+                    } finally {
+                        long duration = System.nanoTime() - start;
+                        member.runTimes.record(duration);
+                        member.busyNanos.addAndGet(duration);
+                        member.completed.incrementAndGet();
+                        member.inFlight.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            member.inFlight.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Stop the commands running on the sensors, from any thread
+     */
+    public void cancelAll() {
+        for (Member member : members) {
+            if (!member.isIdle()) {
+                member.device.cancelLiveAcquisition();
+            }
+        }
+    }
+
+    /**
+     * @return the sensors of the pool, in their routing order
+     */
+    public List<Member> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * @return the number of sensors without any command of the pool
+     */
+    public int getIdleCount() {
+        int idle = 0;
+        for (Member member : members) {
+            if (member.isIdle()) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * @return the number of commands queued behind another one because every sensor was busy
+     */
+    public long getRoutedToBusyCount() {
+        return routedToBusy.get();
+    }
+
+    /**
+     * The choice and the count of the command in flight are atomic, so two commands
+     * submitted at the same time do not pick the same idle sensor
+     */
+    private synchronized Member select() {
+        checkState(!members.isEmpty(), "No sensor in the pool");
+        Member selected = null;
+        for (Member member : members) {
+            if (member.isIdle()) {
+                selected = member;
+                break;
+            }
+            if (selected == null || member.inFlight.get() < selected.inFlight.get()) {
+                selected = member;
+            }
+        }
+        if (!selected.isIdle()) {
+            routedToBusy.incrementAndGet();
+        }
+        selected.inFlight.incrementAndGet();
+        return selected;
+    }
+}
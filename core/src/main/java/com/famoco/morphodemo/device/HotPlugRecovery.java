@@ -0,0 +1,453 @@
+package com.famoco.morphodemo.device;
+
+import com.famoco.morphodemo.metrics.LatencyHistogram;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Recovery of the Morpho device after a USB detach, without the soft reboot of the sensor.
+ *
+ * The broadcast of a detach does not tell which sensor left, so the sensors are enumerated
+ * again : the watched one is closed if it is no longer enumerated, the other sensors of the
+ * {@link DevicePool} are removed from it and closed. An attach re-opens the same serial number
+ * through the {@link SensorSessionManager}, or the new sensor if it has been replaced. Within
+ * {@link #DEFAULT_GLITCH_WINDOW_MS} of the detach (a loose connector) the commands the watched
+ * sensor aborted are resumed; after it the device is reported lost and they are dropped, the
+ * next attach still re-opens it.
+ *
+ * The enumeration, close and open run on the thread of the {@link DeviceExecutor}, behind the
+ * interrupted command.
+ *
+ * @version DEMO
+ */
+public class HotPlugRecovery {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = HotPlugRecovery.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Maximum duration of an outage whose interrupted operations are resumed
+     */
+    public static final long DEFAULT_GLITCH_WINDOW_MS = 3000;
+
+    public enum State {
+        CONNECTED,
+        DETACHED,
+        LOST
+    }
+
+    /**
+     * Receives the outcome of the detaches, on a background thread
+     */
+    public interface Listener {
+
+        /**
+         * Listener doing nothing
+         */
+        Listener NONE = new Listener() {
+            @Override
+            public void onLost() {
+            }
+
+            @Override
+            public void onRecovered(String serial, boolean replaced, int resumed, long outageNanos) {
+            }
+
+            @Override
+            public void onRecoveryFailed(int error) {
+            }
+        };
+
+        /**
+         * The device has not been attached again within the glitch window
+         */
+        void onLost();
+
+        /**
+         * @param serial of the sensor open
+         * @param replaced true if it is another sensor than the detached one
+         * @param resumed number of interrupted operations resumed
+         * @param outageNanos time between the detach and the attach
+         */
+        void onRecovered(String serial, boolean replaced, int resumed, long outageNanos);
+
+        /**
+         * @param error ErrorCodes value of the open of the attached sensor
+         */
+        void onRecoveryFailed(int error);
+    }
+
+    private static HotPlugRecovery mInstance = null;
+
+    private final DeviceExecutor executor;
+    private final SensorSessionManager sessions;
+    private final DevicePool pool;
+    private final long glitchWindowMs;
+    private final ScheduledThreadPoolExecutor timer;
+    private final List<Runnable> interrupted = new ArrayList<>();
+    private final LatencyHistogram outages = new LatencyHistogram();
+
+    private MorphoDevicePort device;
+    private String serial;
+    private Listener listener = Listener.NONE;
+    private State state = State.CONNECTED;
+    private long detachedAt;
+    private ScheduledFuture<?> lostTimeout;
+    private int glitchCount;
+    private int replacementCount;
+
+    public static synchronized HotPlugRecovery getInstance() {
+        if (mInstance == null) {
+            mInstance = new HotPlugRecovery(DeviceExecutor.getInstance(), SensorSessionManager.getInstance(),
+                    DevicePool.getInstance(), DEFAULT_GLITCH_WINDOW_MS);
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param executor owning the device
+     * @param sessions of the device, re-opened after an attach
+     * @param pool of the sensors of the station, without the detached ones
+     * @param glitchWindowMs maximum duration of an outage whose operations are resumed
+     */
+    public HotPlugRecovery(DeviceExecutor executor, SensorSessionManager sessions, DevicePool pool,
+                           long glitchWindowMs) {
+        checkArgument(glitchWindowMs > 0, "glitchWindowMs must be positive");
+        this.executor = checkNotNull(executor);
+        this.sessions = checkNotNull(sessions);
+        this.pool = checkNotNull(pool);
+        this.glitchWindowMs = glitchWindowMs;
+        timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Recover this device after its detaches
+     *
+     * @param device open, with a session held by the caller
+     * @param serial of the sensor
+     * @param listener notified of the outcome of the detaches
+     */
+    public synchronized void watch(MorphoDevicePort device, String serial, Listener listener) {
+        this.device = checkNotNull(device);
+        this.serial = checkNotNull(serial);
+        this.listener = checkNotNull(listener);
+        state = State.CONNECTED;
+        interrupted.clear();
+    }
+
+    /**
+     * Ignore the next detaches, e.g. before the close of the device
+     */
+    public synchronized void stop() {
+        device = null;
+        listener = Listener.NONE;
+        state = State.CONNECTED;
+        interrupted.clear();
+        cancelLostTimeout();
+    }
+
+    /**
+     * A Morpho sensor has been detached, from any thread. The watched sensor is suspected until
+     * the enumeration : its running command is only stopped if it is the single sensor of the
+     * pool, otherwise a command of a sensor which left fails on its own
+     */
+    public void onDetached() {
+        final MorphoDevicePort watched;
+        synchronized (this) {
+            if (device == null) {
+                return;
+            }
+            watched = device;
+            if (state == State.CONNECTED) {
+                state = State.DETACHED;
+                detachedAt = System.nanoTime();
+            }
+        }
+        if (pool.size() <= 1) {
+            watched.cancelLiveAcquisition();
+        }
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                checkDetached(watched);
+            }
+        });
+    }
+
+    /**
+     * A Morpho sensor has been attached, from any thread
+     */
+    public void onAttached() {
+        final long attachedAt = System.nanoTime();
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                recover(attachedAt);
+            }
+        });
+    }
+
+    /**
+     * Resume an operation interrupted by a detach once the device is back, unless it has been
+     * lost or {@link #cancelResume()} is called
+     *
+     * @param failed device which ran the operation
+     * @param errorCode ErrorCodes value returned by the operation
+     * @param operation to run again, on the thread of the device
+     * @return true if the operation will be resumed, false if it did not run on the detached
+     * device or it was not interrupted, its result is then to be reported
+     */
+    public synchronized boolean resumeAfterRecovery(MorphoDevicePort failed, int errorCode, Runnable operation) {
+        checkNotNull(failed);
+        checkNotNull(operation);
+        if (device != failed || state != State.DETACHED || !isInterruption(errorCode)) {
+            return false;
+        }
+        interrupted.add(operation);
+        return true;
+    }
+
+    /**
+     * Drop the interrupted operations, e.g. when the User leaves their screen
+     */
+    public synchronized void cancelResume() {
+        interrupted.clear();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the number of outages recovered within the glitch window
+     */
+    public synchronized int getGlitchCount() {
+        return glitchCount;
+    }
+
+    /**
+     * @return the number of sensors replaced by another one
+     */
+    public synchronized int getReplacementCount() {
+        return replacementCount;
+    }
+
+    /**
+     * @return the time between the detaches and the attaches recovered
+     */
+    public LatencyHistogram getOutages() {
+        return outages;
+    }
+
+    /**
+     * A detach of another sensor of the station also lands here : the session is only closed
+     * if the sensor is no longer enumerated
+     */
+    private void checkDetached(MorphoDevicePort suspected) {
+        List<String> names = enumerate(suspected);
+        removeDetachedMembers(suspected, names);
+        String watched;
+        synchronized (this) {
+            if (device != suspected || state == State.CONNECTED) {
+                return;
+            }
+            watched = serial;
+        }
+        if (names.contains(watched)) {
+            LOGGER.info("Sensor " + watched + " still attached");
+            reconnected(true, false, 0);
+            return;
+        }
+        sessions.invalidate(suspected);
+        synchronized (this) {
+            // Reported lost at the end of the glitch window, counted from the detach
+            long remainingNanos = detachedAt + TimeUnit.MILLISECONDS.toNanos(glitchWindowMs) - System.nanoTime();
+            if (state == State.DETACHED && lostTimeout == null) {
+                lostTimeout = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        lost();
+                    }
+                }, Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Remove from the pool the other sensors which are no longer enumerated, their session is
+     * closed on their own thread, behind their failed command
+     */
+    private void removeDetachedMembers(MorphoDevicePort watched, List<String> names) {
+        for (DevicePool.Member member : pool.getMembers()) {
+            final MorphoDevicePort detached = member.getDevice();
+            if (detached == watched || names.contains(member.getName())) {
+                continue;
+            }
+            pool.remove(detached);
+            detached.cancelLiveAcquisition();
+            member.getExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    sessions.invalidate(detached);
+                }
+            });
+            LOGGER.warning("Sensor " + member.getName() + " detached, " + pool.size() + " left in the pool");
+        }
+    }
+
+    private void recover(long attachedAt) {
+        MorphoDevicePort target;
+        String watched;
+        boolean glitch;
+        synchronized (this) {
+            if (device == null || state == State.CONNECTED) {
+                return;
+            }
+            target = device;
+            watched = serial;
+            glitch = state == State.DETACHED
+                    && attachedAt - detachedAt <= TimeUnit.MILLISECONDS.toNanos(glitchWindowMs);
+        }
+        List<String> names = enumerate(target);
+        String attached = names.contains(watched) ? watched : newSensor(names);
+        if (attached == null) {
+            LOGGER.fine("Attached sensor is not " + watched);
+            return;
+        }
+        sessions.invalidate(target);
+        int ret = sessions.acquire(target, SensorSessionManager.usb(attached, 0));
+        Listener current;
+        synchronized (this) {
+            current = listener;
+        }
+        if (ret != ErrorCodes.MORPHO_OK) {
+            LOGGER.warning("Open of " + attached + " failed : " + ret);
+            current.onRecoveryFailed(ret);
+            return;
+        }
+        boolean replaced = !attached.equals(watched);
+        synchronized (this) {
+            serial = attached;
+            outages.record(attachedAt - detachedAt);
+            if (replaced) {
+                replacementCount++;
+            } else if (glitch) {
+                glitchCount++;
+            }
+        }
+        reconnected(glitch && !replaced, replaced, attachedAt - detachedAt);
+    }
+
+    /**
+     * @param resume true to run the interrupted operations, false to drop them
+     * @param replaced true if the sensor open is another one
+     * @param outageNanos time between the detach and the attach, 0 if the sensor never left
+     */
+    private void reconnected(boolean resume, boolean replaced, long outageNanos) {
+        List<Runnable> operations = new ArrayList<>();
+        Listener current;
+        String recovered;
+        synchronized (this) {
+            state = State.CONNECTED;
+            cancelLostTimeout();
+            if (resume) {
+                operations.addAll(interrupted);
+            }
+            interrupted.clear();
+            current = listener;
+            recovered = serial;
+        }
+        LOGGER.info("Sensor " + recovered + " back after " + outageNanos / 1000000 + " ms, "
+                + operations.size() + " operations resumed");
+        for (Runnable operation : operations) {
+            operation.run();
+        }
+        if (outageNanos > 0) {
+            current.onRecovered(recovered, replaced, operations.size(), outageNanos);
+        }
+    }
+
+    private void lost() {
+        Listener current;
+        String watched;
+        synchronized (this) {
+            if (state != State.DETACHED) {
+                return;
+            }
+            state = State.LOST;
+            interrupted.clear();
+            current = listener;
+            watched = serial;
+        }
+        LOGGER.warning("Sensor " + watched + " lost");
+        current.onLost();
+    }
+
+    /**
+     * @return the first enumerated sensor which is not open in the pool
+     */
+    private String newSensor(List<String> names) {
+        List<String> open = new ArrayList<>();
+        for (DevicePool.Member member : pool.getMembers()) {
+            open.add(member.getName());
+        }
+        for (String name : names) {
+            if (!open.contains(name)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the error is the one of a command stopped or cut off by a detach
+     */
+    private static boolean isInterruption(int errorCode) {
+        return errorCode == ErrorCodes.MORPHOERR_CMDE_ABORTED
+                || errorCode == ErrorCodes.MORPHOERR_PROTOCOLE
+                || errorCode == ErrorCodes.MORPHOERR_CLOSE_COM
+                || errorCode == ErrorCodes.MORPHOERR_COM_NOT_OPEN
+                || errorCode == ErrorCodes.MORPHOERR_SVC_LOST_DEVICE;
+    }
+
+    private static List<String> enumerate(MorphoDevicePort device) {
+        List<String> names = new ArrayList<>();
+        CustomInteger count = new CustomInteger();
+        if (device.initUsbDevicesNameEnum(count) == ErrorCodes.MORPHO_OK) {
+            for (int i = 0; i < count.getValueOf(); i++) {
+                names.add(device.getUsbDeviceName(i));
+            }
+        }
+        return names;
+    }
+
+    private void cancelLostTimeout() {
+        if (lostTimeout != null) {
+            lostTimeout.cancel(false);
+            lostTimeout = null;
+        }
+    }
+}
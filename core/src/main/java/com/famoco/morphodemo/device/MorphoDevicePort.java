@@ -0,0 +1,129 @@
+package com.famoco.morphodemo.device;
+
+import com.morpho.morphosmart.sdk.Coder;
+import com.morpho.morphosmart.sdk.CompressionAlgorithm;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.EnrollmentType;
+import com.morpho.morphosmart.sdk.LatentDetection;
+import com.morpho.morphosmart.sdk.MorphoImage;
+import com.morpho.morphosmart.sdk.ResultMatching;
+import com.morpho.morphosmart.sdk.StrategyAcquisitionMode;
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.util.Observer;
+
+/**
+ * Port between the app and a Morpho sensor.
+ * Covers the subset of {@link com.morpho.morphosmart.sdk.MorphoDevice} the app actually uses,
+ * with the exact same signatures and return codes ({@link com.morpho.morphosmart.sdk.ErrorCodes}),
+ * so that the physical sensor can be swapped for {@link SimulatedMorphoDevice}.
+ *
+ * @version DEMO
+ */
+public interface MorphoDevicePort {
+
+    /**
+     * Fill the number of USB sensors connected
+     * @param nbUsbDevice output number of sensors
+     * @return an ErrorCodes value
+     */
+    int initUsbDevicesNameEnum(CustomInteger nbUsbDevice);
+
+    /**
+     * @param index of the sensor in the last enumeration
+     * @return the name (serial number) of the sensor
+     */
+    String getUsbDeviceName(int index);
+
+    /**
+     * Open a USB sensor
+     * @param sensorName serial number of the sensor
+     * @param timeout in milliseconds
+     * @return an ErrorCodes value
+     */
+    int openUsbDevice(String sensorName, int timeout);
+
+    /**
+     * Open a sensor connected through UART (FP200)
+     * @param port UART port
+     * @param speed UART speed
+     * @return an ErrorCodes value
+     */
+    int openDeviceWithUart(String port, int speed);
+
+    /**
+     * Close the connection with the sensor
+     * @return an ErrorCodes value
+     */
+    int closeDevice();
+
+    int setConfigParam(int tag, byte[] value);
+
+    byte[] getConfigParam(int tag);
+
+    int setStrategyAcquisitionMode(StrategyAcquisitionMode strategyAcquisitionMode);
+
+    /**
+     * Acquire a fingerprint and extract its template(s) in templateList
+     * @return an ErrorCodes value
+     */
+    int capture(int timeout, int acquisitionThreshold, int advancedSecurityLevelsRequired,
+                int fingerNumber, TemplateType templateType, TemplateFVPType templateFVPType,
+                int maxSizeTemplate, EnrollmentType enrollType, LatentDetection latentDetection,
+                Coder coderChoice, int detectModeChoice, CompressionAlgorithm compressAlgo,
+                int compressRate, TemplateList templateList, int callbackCmd, Observer callback);
+
+    /**
+     * Acquire a fingerprint and match it against the templates of templateList
+     * @return an ErrorCodes value
+     */
+    int verify(int timeout, int far, Coder coderChoice, int detectModeChoice, int matchingStrategy,
+               TemplateList templateList, int callbackCmd, Observer callback,
+               ResultMatching resultMatching);
+
+    /**
+     * Match templates already extracted, without acquisition
+     * @param searchTemplateList template of the finger to search
+     * @param referenceTemplateList candidates
+     * @param matchingPkIndex output index of the matching candidate
+     * @return MORPHO_OK on a hit, MORPHOERR_NO_HIT or another ErrorCodes value
+     */
+    int verifyMatch(int far, TemplateList searchTemplateList, TemplateList referenceTemplateList,
+                    CustomInteger matchingPkIndex);
+
+    /**
+     * Acquire the image of a fingerprint
+     * @return an ErrorCodes value
+     */
+    int getImage(int timeout, int acquisitionThreshold, CompressionAlgorithm compressAlgo,
+                 int compressRate, int detectModeChoice, LatentDetection latentDetection,
+                 MorphoImage morphoImage, int callbackCmd, Observer callback);
+
+    /**
+     * Reboot the sensor, callback is notified with a Boolean once reconnected
+     * @return an ErrorCodes value
+     */
+    int rebootSoft(int timeout, Observer callback);
+
+    /**
+     * Abort the current acquisition, the pending command returns MORPHOERR_CMDE_ABORTED
+     * @return an ErrorCodes value
+     */
+    int cancelLiveAcquisition();
+
+    /**
+     * @return the FFD logs of the last command, or null
+     */
+    String getFFDLogs();
+
+    String getProductDescriptor();
+
+    String getSoftwareDescriptor();
+
+    /**
+     * @return the internal error of the last command
+     */
+    int getInternalError();
+}
@@ -0,0 +1,248 @@
+package com.famoco.morphodemo.device;
+
+import com.morpho.morphosmart.sdk.ErrorCodes;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Open sessions of the Morpho devices, shared by the screens of the app : the first
+ * {@link #acquire(MorphoDevicePort, Opener)} of a device opens it, the following ones take a
+ * reference on its open session, and the device is closed by the last
+ * {@link #release(MorphoDevicePort)}. Each sensor of a station has its own session.
+ *
+ * The connection screen opens and configures the device then hands its reference off with
+ * {@link #handOff(MorphoDevicePort)}, so the home screen takes over the open session instead of
+ * opening the device again : the USB open and enumeration are paid once per start of the app.
+ *
+ * The open and close are commands of the device : must be called on the thread of the
+ * {@link DeviceExecutor} of the device.
+ *
+ * @version DEMO
+ */
+public class SensorSessionManager {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = SensorSessionManager.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Opens the device, as configured by the screen acquiring the session first
+     */
+    public interface Opener {
+
+        /**
+         * @param device to open
+         * @return an ErrorCodes value, MORPHO_OK if the device is open
+         */
+        int open(MorphoDevicePort device);
+
+        /**
+         * @return the name of the sensor opened : serial number of a USB sensor, port of a UART one
+         */
+        String getSensorName();
+    }
+
+    /**
+     * Open session of a device
+     */
+    private static final class Session {
+
+        private final String sensorName;
+        private int references = 1;
+        private boolean handedOff;
+
+        /**
+         * True while the device is opened, outside of the lock of the manager
+         */
+        private boolean opening;
+
+        Session(String sensorName) {
+            this.sensorName = sensorName;
+        }
+    }
+
+    private static SensorSessionManager mInstance = null;
+
+    private final Map<MorphoDevicePort, Session> sessions = new IdentityHashMap<>();
+    private int openCount;
+    private int reuseCount;
+
+    public static synchronized SensorSessionManager getInstance() {
+        if (mInstance == null) {
+            mInstance = new SensorSessionManager();
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param sensorName name of the USB sensor
+     * @param timeout of the open, in milliseconds
+     * @return an Opener of the USB sensor
+     */
+    public static Opener usb(final String sensorName, final int timeout) {
+        return new Opener() {
+            @Override
+            public int open(MorphoDevicePort device) {
+                return device.openUsbDevice(sensorName, timeout);
+            }
+
+            @Override
+            public String getSensorName() {
+                return sensorName;
+            }
+        };
+    }
+
+    /**
+     * @param port of the UART sensor
+     * @param speed of the port
+     * @return an Opener of the UART sensor
+     */
+    public static Opener uart(final String port, final int speed) {
+        return new Opener() {
+            @Override
+            public int open(MorphoDevicePort device) {
+                return device.openDeviceWithUart(port, speed);
+            }
+
+            @Override
+            public String getSensorName() {
+                return port;
+            }
+        };
+    }
+
+    /**
+     * Take a reference on the session of the device, opening it if not open yet. A session
+     * handed off is taken over with its reference. The device is opened outside of the lock of
+     * the manager, so the sessions of the other devices stay usable meanwhile
+     *
+     * @param device to open
+     * @param opener used if the device is not open
+     * @return an ErrorCodes value, MORPHO_OK if the caller holds a reference to release
+     */
+    public int acquire(MorphoDevicePort device, Opener opener) {
+        checkNotNull(device);
+        checkNotNull(opener);
+        Session session;
+        synchronized (this) {
+            try {
+                while ((session = sessions.get(device)) != null && session.opening) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ErrorCodes.MORPHOERR_CMDE_ABORTED;
+            }
+            if (session != null) {
+                if (session.handedOff) {
+                    session.handedOff = false;
+                } else {
+                    session.references++;
+                }
+                reuseCount++;
+                LOGGER.fine("Session of " + session.sensorName + " reused, " + session.references + " references");
+                return ErrorCodes.MORPHO_OK;
+            }
+            session = new Session(opener.getSensorName());
+            session.opening = true;
+            sessions.put(device, session);
+        }
+
+        int ret = opener.open(device);
+        if (ret != ErrorCodes.MORPHO_OK) {
+            device.closeDevice();
+        }
+        synchronized (this) {
+            session.opening = false;
+            if (ret == ErrorCodes.MORPHO_OK) {
+                openCount++;
+            } else {
+                sessions.remove(device);
+            }
+            notifyAll();
+        }
+        return ret;
+    }
+
+    /**
+     * Keep the session of the device open for the next {@link #acquire(MorphoDevicePort, Opener)},
+     * which takes over the reference of the caller. The caller must not release it
+     */
+    public synchronized void handOff(MorphoDevicePort device) {
+        Session session = openSession(device);
+        checkState(session != null, "No session to hand off");
+        session.handedOff = true;
+    }
+
+    /**
+     * Release a reference on the session of the device, closing it with the last one
+     */
+    public void release(MorphoDevicePort device) {
+        synchronized (this) {
+            Session session = openSession(device);
+            checkState(session != null, "No session to release");
+            session.references--;
+            if (session.references > 0) {
+                return;
+            }
+            sessions.remove(device);
+        }
+        device.closeDevice();
+    }
+
+    /**
+     * Close the session of the device whatever its references, e.g. when it has been unplugged
+     */
+    public void invalidate(MorphoDevicePort device) {
+        synchronized (this) {
+            if (openSession(device) == null) {
+                return;
+            }
+            sessions.remove(device);
+        }
+        device.closeDevice();
+    }
+
+    public synchronized boolean isOpen(MorphoDevicePort device) {
+        return openSession(device) != null;
+    }
+
+    /**
+     * @return the name of the sensor open on the device, or null if not open
+     */
+    public synchronized String getSensorName(MorphoDevicePort device) {
+        Session session = openSession(device);
+        return session != null ? session.sensorName : null;
+    }
+
+    /**
+     * @return the number of times a device has been opened
+     */
+    public synchronized int getOpenCount() {
+        return openCount;
+    }
+
+    /**
+     * @return the number of acquisitions served by a session already open
+     */
+    public synchronized int getReuseCount() {
+        return reuseCount;
+    }
+
+    /**
+     * @return the session of the device, or null if not open or still opening
+     */
+    private Session openSession(MorphoDevicePort device) {
+        Session session = sessions.get(device);
+        return session != null && !session.opening ? session : null;
+    }
+}
@@ -0,0 +1,563 @@
+package com.famoco.morphodemo.device;
+
+import com.famoco.morphodemo.device.replay.CallbackReplayer;
+import com.morpho.morphosmart.sdk.CallbackMask;
+import com.morpho.morphosmart.sdk.CallbackMessage;
+import com.morpho.morphosmart.sdk.Coder;
+import com.morpho.morphosmart.sdk.CompressionAlgorithm;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.EnrollmentType;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+import com.morpho.morphosmart.sdk.LatentDetection;
+import com.morpho.morphosmart.sdk.MorphoImage;
+import com.morpho.morphosmart.sdk.MorphoImageHeader;
+import com.morpho.morphosmart.sdk.ResultMatching;
+import com.morpho.morphosmart.sdk.StrategyAcquisitionMode;
+import com.morpho.morphosmart.sdk.Template;
+import com.morpho.morphosmart.sdk.TemplateFVP;
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Random;
+
+/**
+ * Deterministic {@link MorphoDevicePort} that does not need any sensor.
+ * Every acquisition emits the same kind of CallbackMessage stream as the SDK (type 1 commands,
+ * type 2 low resolution live images, type 3 quality values), with a configurable latency for
+ * each phase of a command. Two instances created with the same seed produce the same streams
+ * and the same templates.
+ *
+ * @version DEMO
+ */
+public class SimulatedMorphoDevice implements MorphoDevicePort {
+
+    /**
+     * Phases of a simulated command
+     */
+    public enum Phase {
+        /** Opening of the connection */
+        OPEN,
+        /** Delay between two live frames of an acquisition */
+        FRAME,
+        /** Extraction of the template / compression of the image */
+        CODING,
+        /** Matching against the TemplateList */
+        MATCHING,
+        /** Soft reboot of the sensor */
+        REBOOT
+    }
+
+    /**
+     * Size of the header of a live image, see {@link MorphoImage#getMorphoImageFromLive(byte[])}
+     */
+    public static final int LIVE_IMAGE_HEADER_SIZE = 12;
+
+    /**
+     * Messages types of {@link CallbackMessage}
+     */
+    private static final int MESSAGE_COMMAND = 1;
+    private static final int MESSAGE_IMAGE = 2;
+    private static final int MESSAGE_QUALITY = 3;
+
+    /**
+     * Commands sent during an acquisition (see MorphoUtils.createMessage)
+     */
+    private static final int COMMAND_NO_FINGER = 0;
+    private static final int COMMAND_PRESS_HARDER = 5;
+    private static final int COMMAND_REMOVE_FINGER = 7;
+
+    private static final int RESOLUTION = 500;
+    private static final int FULL_IMAGE_SIZE = 416;
+    private static final int QUALITY_MASK = CallbackMask.MORPHO_CALLBACK_CODEQUALITY.getValue()
+            | CallbackMask.MORPHO_CALLBACK_DETECTQUALITY.getValue();
+
+    private final Random random;
+    private final Map<Phase, Long> latencies = new EnumMap<>(Phase.class);
+    private final Map<Integer, byte[]> configParams = new HashMap<>();
+
+    private int frameCount = 10;
+    private int previewRows = 120;
+    private int previewColumns = 120;
+    private int deviceCount = 1;
+    private boolean fvp = false;
+    private int matchResult = ErrorCodes.MORPHO_OK;
+    private int matchScore = 4200;
+    private byte[] presentedTemplate = null;
+    private volatile CallbackReplayer replayer = null;
+
+    private volatile boolean opened = false;
+    private volatile boolean aborted = false;
+    private String lastFFDLogs = null;
+    private String openedSensorName = "";
+
+    /**
+     * @param seed of the pseudo random generator used for images and templates
+     */
+    public SimulatedMorphoDevice(long seed) {
+        this.random = new Random(seed);
+        for (Phase phase : Phase.values()) {
+            latencies.put(phase, 0L);
+        }
+    }
+
+    /**
+     * Set the latency of a phase
+     * @param phase to configure
+     * @param millis duration of the phase in milliseconds
+     */
+    public void setLatency(Phase phase, long millis) {
+        latencies.put(phase, Math.max(0L, millis));
+    }
+
+    public long getLatency(Phase phase) {
+        return latencies.get(phase);
+    }
+
+    /**
+     * @param frameCount number of live frames emitted by each acquisition
+     */
+    public void setFrameCount(int frameCount) {
+        this.frameCount = Math.max(1, frameCount);
+    }
+
+    /**
+     * Size of the low resolution live images
+     */
+    public void setPreviewSize(int rows, int columns) {
+        this.previewRows = rows;
+        this.previewColumns = columns;
+    }
+
+    /**
+     * @param deviceCount number of sensors returned by the enumeration
+     */
+    public void setDeviceCount(int deviceCount) {
+        this.deviceCount = deviceCount;
+    }
+
+    /**
+     * @param fvp true to simulate a FINGER VP sensor
+     */
+    public void setFvp(boolean fvp) {
+        this.fvp = fvp;
+    }
+
+    /**
+     * Force the result of the next verifications
+     * @param matchResult an ErrorCodes value (MORPHO_OK, MORPHOERR_NO_HIT ...)
+     */
+    public void setMatchResult(int matchResult) {
+        this.matchResult = matchResult;
+    }
+
+    public void setMatchScore(int matchScore) {
+        this.matchScore = matchScore;
+    }
+
+    /**
+     * Template of the finger placed on the sensor.
+     * When set, captures return it and verifications only match a TemplateList containing it.
+     * When null, captures return generated templates and verifications always match.
+     */
+    public void setPresentedTemplate(byte[] presentedTemplate) {
+        this.presentedTemplate = presentedTemplate;
+    }
+
+    /**
+     * Replay a recorded stream as the live stream of the acquisitions, instead of the
+     * generated frames
+     *
+     * @param replayer of the recorded stream, null to generate the frames again
+     */
+    public void setReplay(CallbackReplayer replayer) {
+        if (replayer != null) {
+            replayer.reset();
+        }
+        this.replayer = replayer;
+    }
+
+    public boolean isOpened() {
+        return opened;
+    }
+
+    @Override
+    public int initUsbDevicesNameEnum(CustomInteger nbUsbDevice) {
+        nbUsbDevice.setValueOf(deviceCount);
+        return ErrorCodes.MORPHO_OK;
+    }
+
+    @Override
+    public String getUsbDeviceName(int index) {
+        return String.format("SIM-%05d", index);
+    }
+
+    @Override
+    public int openUsbDevice(String sensorName, int timeout) {
+        pause(Phase.OPEN);
+        openedSensorName = sensorName;
+        opened = true;
+        return ErrorCodes.MORPHO_OK;
+    }
+
+    @Override
+    public int openDeviceWithUart(String port, int speed) {
+        pause(Phase.OPEN);
+        openedSensorName = port;
+        opened = true;
+        return ErrorCodes.MORPHO_OK;
+    }
+
+    @Override
+    public int closeDevice() {
+        opened = false;
+        return ErrorCodes.MORPHO_OK;
+    }
+
+    @Override
+    public int setConfigParam(int tag, byte[] value) {
+        configParams.put(tag, value);
+        return ErrorCodes.MORPHO_OK;
+    }
+
+    @Override
+    public byte[] getConfigParam(int tag) {
+        return configParams.get(tag);
+    }
+
+    @Override
+    public int setStrategyAcquisitionMode(StrategyAcquisitionMode strategyAcquisitionMode) {
+        return opened ? ErrorCodes.MORPHO_OK : ErrorCodes.MORPHOERR_COM_NOT_OPEN;
+    }
+
+    @Override
+    public int capture(int timeout, int acquisitionThreshold, int advancedSecurityLevelsRequired,
+                       int fingerNumber, TemplateType templateType, TemplateFVPType templateFVPType,
+                       int maxSizeTemplate, EnrollmentType enrollType, LatentDetection latentDetection,
+                       Coder coderChoice, int detectModeChoice, CompressionAlgorithm compressAlgo,
+                       int compressRate, TemplateList templateList, int callbackCmd, Observer callback) {
+        int ret = acquire(callbackCmd, callback);
+        if (ret == ErrorCodes.MORPHO_OK && !pause(Phase.CODING)) {
+            ret = ErrorCodes.MORPHOERR_CMDE_ABORTED;
+        }
+        if (ret == ErrorCodes.MORPHO_OK) {
+            for (int i = 0; i < fingerNumber; i++) {
+                if (templateType != TemplateType.MORPHO_NO_PK_FP) {
+                    Template template = new Template();
+                    template.setTemplateType(templateType);
+                    template.setData(createTemplate(maxSizeTemplate));
+                    templateList.putTemplate(template);
+                }
+                if (fvp && templateFVPType != TemplateFVPType.MORPHO_NO_PK_FVP) {
+                    TemplateFVP templateFVP = new TemplateFVP();
+                    templateFVP.setTemplateFVPType(templateFVPType);
+                    templateFVP.setData(createTemplate(maxSizeTemplate));
+                    templateList.putFVPTemplate(templateFVP);
+                }
+            }
+        }
+        lastFFDLogs = createFFDLogs("capture", ret);
+        return ret;
+    }
+
+    @Override
+    public int verify(int timeout, int far, Coder coderChoice, int detectModeChoice, int matchingStrategy,
+                      TemplateList templateList, int callbackCmd, Observer callback,
+                      ResultMatching resultMatching) {
+        int ret = acquire(callbackCmd, callback);
+        if (ret == ErrorCodes.MORPHO_OK && !(pause(Phase.CODING) && pause(Phase.MATCHING))) {
+            ret = ErrorCodes.MORPHOERR_CMDE_ABORTED;
+        }
+        if (ret == ErrorCodes.MORPHO_OK) {
+            ret = match(presentedTemplate, templateList, resultMatching);
+        }
+        lastFFDLogs = createFFDLogs("verify", ret);
+        return ret;
+    }
+
+    @Override
+    public int verifyMatch(int far, TemplateList searchTemplateList, TemplateList referenceTemplateList,
+                           CustomInteger matchingPkIndex) {
+        aborted = false;
+        int ret;
+        if (!opened) {
+            ret = ErrorCodes.MORPHOERR_COM_NOT_OPEN;
+        } else if (searchTemplateList.getNbTemplate() == 0) {
+            ret = ErrorCodes.MORPHOERR_BADPARAMETER;
+        } else if (!pause(Phase.MATCHING)) {
+            ret = ErrorCodes.MORPHOERR_CMDE_ABORTED;
+        } else {
+            ResultMatching resultMatching = new ResultMatching();
+            byte[] search = presentedTemplate != null ? searchTemplateList.getTemplate(0).getData() : null;
+            ret = match(search, referenceTemplateList, resultMatching);
+            if (ret == ErrorCodes.MORPHO_OK && matchingPkIndex != null) {
+                matchingPkIndex.setValueOf(resultMatching.getMatchingPKNumber());
+            }
+        }
+        lastFFDLogs = createFFDLogs("verifyMatch", ret);
+        return ret;
+    }
+
+    @Override
+    public int getImage(int timeout, int acquisitionThreshold, CompressionAlgorithm compressAlgo,
+                        int compressRate, int detectModeChoice, LatentDetection latentDetection,
+                        MorphoImage morphoImage, int callbackCmd, Observer callback) {
+        int ret = acquire(callbackCmd, callback);
+        if (ret == ErrorCodes.MORPHO_OK && !pause(Phase.CODING)) {
+            ret = ErrorCodes.MORPHOERR_CMDE_ABORTED;
+        }
+        if (ret == ErrorCodes.MORPHO_OK) {
+            MorphoImageHeader header = new MorphoImageHeader();
+            header.setNbRow(FULL_IMAGE_SIZE);
+            header.setNbColumn(FULL_IMAGE_SIZE);
+            header.setResX(RESOLUTION);
+            header.setResY(RESOLUTION);
+            header.setNbBitsPerPixel(8);
+            header.setCompressionRatio(compressRate);
+            morphoImage.setMorphoImageHeader(header);
+            morphoImage.setCompressionAlgorithm(compressAlgo);
+            byte[] pixels = new byte[FULL_IMAGE_SIZE * FULL_IMAGE_SIZE];
+            fillPixels(pixels, 0, FULL_IMAGE_SIZE, FULL_IMAGE_SIZE, 100);
+            morphoImage.setImage(pixels);
+            if (compressAlgo == CompressionAlgorithm.MORPHO_COMPRESS_WSQ) {
+                // Not a real WSQ stream, only its size and SOI marker are realistic
+                byte[] compressed = new byte[pixels.length / Math.max(1, compressRate)];
+                random.nextBytes(compressed);
+                compressed[0] = (byte) 0xFF;
+                compressed[1] = (byte) 0xA0;
+                morphoImage.setCompressedImage(compressed);
+            }
+        }
+        lastFFDLogs = createFFDLogs("getImage", ret);
+        return ret;
+    }
+
+    @Override
+    public int rebootSoft(int timeout, Observer callback) {
+        opened = false;
+        pause(Phase.REBOOT);
+        opened = true;
+        if (callback != null) {
+            callback.update(null, Boolean.TRUE);
+        }
+        return ErrorCodes.MORPHO_OK;
+    }
+
+    @Override
+    public int cancelLiveAcquisition() {
+        aborted = true;
+        CallbackReplayer current = replayer;
+        if (current != null) {
+            current.cancel();
+        }
+        return ErrorCodes.MORPHO_OK;
+    }
+
+    @Override
+    public String getFFDLogs() {
+        return lastFFDLogs;
+    }
+
+    @Override
+    public String getProductDescriptor() {
+        return (fvp ? "MSO FVP (simulated)" : "MSO 1300 E3 (simulated)") + "\n" + openedSensorName;
+    }
+
+    @Override
+    public String getSoftwareDescriptor() {
+        return "Simulated firmware 1.0";
+    }
+
+    @Override
+    public int getInternalError() {
+        return 0;
+    }
+
+    /**
+     * Emit the live stream of an acquisition
+     * @return MORPHO_OK, or the error that ended the acquisition
+     */
+    private int acquire(int callbackCmd, Observer callback) {
+        aborted = false;
+        if (!opened) {
+            return ErrorCodes.MORPHOERR_COM_NOT_OPEN;
+        }
+        CallbackReplayer current = replayer;
+        if (current != null) {
+            return replay(current, callbackCmd, callback);
+        }
+        for (int frame = 0; frame < frameCount; frame++) {
+            if (!pause(Phase.FRAME)) {
+                return ErrorCodes.MORPHOERR_CMDE_ABORTED;
+            }
+            int quality = (frame + 1) * 100 / frameCount;
+            if ((callbackCmd & CallbackMask.MORPHO_CALLBACK_COMMAND_CMD.getValue()) != 0) {
+                notify(callback, MESSAGE_COMMAND, commandOf(frame));
+            }
+            if ((callbackCmd & CallbackMask.MORPHO_CALLBACK_IMAGE_CMD.getValue()) != 0) {
+                notify(callback, MESSAGE_IMAGE, createLiveImage(quality));
+            }
+            if ((callbackCmd & QUALITY_MASK) != 0) {
+                notify(callback, MESSAGE_QUALITY, quality);
+            }
+        }
+        return ErrorCodes.MORPHO_OK;
+    }
+
+    /**
+     * Replay a recorded stream, keeping only the messages requested by the callback mask
+     */
+    private int replay(CallbackReplayer current, final int callbackCmd, final Observer callback) {
+        return current.replay(new Observer() {
+            @Override
+            public void update(Observable o, Object arg) {
+                int type = ((CallbackMessage) arg).getMessageType();
+                if (callback != null
+                        && ((type == MESSAGE_COMMAND && (callbackCmd & CallbackMask.MORPHO_CALLBACK_COMMAND_CMD.getValue()) != 0)
+                        || (type == MESSAGE_IMAGE && (callbackCmd & CallbackMask.MORPHO_CALLBACK_IMAGE_CMD.getValue()) != 0)
+                        || (type == MESSAGE_QUALITY && (callbackCmd & QUALITY_MASK) != 0))) {
+                    callback.update(o, arg);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the command sent for a frame of the acquisition
+     */
+    private int commandOf(int frame) {
+        if (frame < frameCount / 3) {
+            return COMMAND_NO_FINGER;
+        } else if (frame < frameCount - 1) {
+            return COMMAND_PRESS_HARDER;
+        }
+        return COMMAND_REMOVE_FINGER;
+    }
+
+    /**
+     * @param search template of the presented finger, null to match the first candidate
+     */
+    private int match(byte[] search, TemplateList templateList, ResultMatching resultMatching) {
+        int nbTemplate = templateList.getNbTemplate() + templateList.getNbFVPTemplate();
+        if (nbTemplate == 0) {
+            return ErrorCodes.MORPHOERR_BADPARAMETER;
+        }
+        if (matchResult != ErrorCodes.MORPHO_OK) {
+            return matchResult;
+        }
+        int index = 0;
+        if (search != null) {
+            index = -1;
+            for (int i = 0; i < templateList.getNbTemplate() && index < 0; i++) {
+                if (Arrays.equals(search, templateList.getTemplate(i).getData())) {
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                return ErrorCodes.MORPHOERR_NO_HIT;
+            }
+        }
+        if (resultMatching != null) {
+            resultMatching.setMatchingPKNumber(index);
+            resultMatching.setMatchingScore(matchScore);
+        }
+        return ErrorCodes.MORPHO_OK;
+    }
+
+    /**
+     * Create a low resolution live image with the same layout as the SDK :
+     * 12 bytes header (little endian) followed by 8 bits pixels
+     */
+    private byte[] createLiveImage(int quality) {
+        byte[] image = new byte[LIVE_IMAGE_HEADER_SIZE + previewRows * previewColumns];
+        putShort(image, 2, previewRows);
+        putShort(image, 4, previewColumns);
+        putShort(image, 6, RESOLUTION);
+        putShort(image, 8, RESOLUTION);
+        image[10] = (byte) CompressionAlgorithm.MORPHO_NO_COMPRESS.getCode();
+        image[11] = 8;
+        fillPixels(image, LIVE_IMAGE_HEADER_SIZE, previewRows, previewColumns, quality);
+        return image;
+    }
+
+    /**
+     * Draw concentric ridges whose radius grows with the quality, as a finger pressing harder
+     */
+    private static void fillPixels(byte[] pixels, int offset, int rows, int columns, int quality) {
+        int centerRow = rows / 2;
+        int centerColumn = columns / 2;
+        int radius = Math.max(rows, columns) * quality / 200;
+        int radius2 = radius * radius;
+        for (int row = 0; row < rows; row++) {
+            int dy = row - centerRow;
+            for (int column = 0; column < columns; column++) {
+                int dx = column - centerColumn;
+                int distance2 = dx * dx + dy * dy;
+                int value = 0xFF;
+                if (distance2 < radius2) {
+                    value = ((distance2 >> 4) & 0x04) != 0 ? 0x30 : 0xD0;
+                }
+                pixels[offset + row * columns + column] = (byte) value;
+            }
+        }
+    }
+
+    /**
+     * Create a template with the layout of an ISO/IEC 19794-2 compact card template :
+     * 3 bytes per minutia (x, y, type and angle)
+     */
+    private byte[] createTemplate(int maxSizeTemplate) {
+        if (presentedTemplate != null) {
+            return presentedTemplate.clone();
+        }
+        int nbMinutiae = Math.min(20 + random.nextInt(21), maxSizeTemplate / 3);
+        byte[] template = new byte[nbMinutiae * 3];
+        for (int i = 0; i < nbMinutiae; i++) {
+            template[i * 3] = (byte) (20 + random.nextInt(180));
+            template[i * 3 + 1] = (byte) (20 + random.nextInt(220));
+            template[i * 3 + 2] = (byte) ((1 + random.nextInt(2)) << 6 | random.nextInt(64));
+        }
+        return template;
+    }
+
+    private String createFFDLogs(String command, int ret) {
+        return "SIMULATED;" + command + ";" + ret + "\n";
+    }
+
+    /**
+     * Sleep for the latency of a phase
+     * @return false if the command has been aborted meanwhile
+     */
+    private boolean pause(Phase phase) {
+        long millis = latencies.get(phase);
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !aborted;
+    }
+
+    private static void notify(Observer callback, int type, Object value) {
+        if (callback != null) {
+            CallbackMessage message = new CallbackMessage();
+            message.setMessageType(type);
+            message.setMessage(value);
+            callback.update(null, message);
+        }
+    }
+
+    private static void putShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+    }
+}
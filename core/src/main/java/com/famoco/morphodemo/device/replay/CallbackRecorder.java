@@ -0,0 +1,147 @@
+package com.famoco.morphodemo.device.replay;
+
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.CallbackMessage;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Observer recording the CallbackMessage sent by the Morpho device during an acquisition
+ * before forwarding them, to replay the session with a {@link CallbackReplayer}.
+ * A recording error never interrupts the acquisition : the recording just stops.
+ *
+ * @version DEMO
+ */
+public class CallbackRecorder implements Observer, Closeable {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = CallbackRecorder.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Extension of the recordings files
+     */
+    public static final String EXTENSION = ".mcb";
+
+    private final Observer delegate;
+    private OutputStream out;
+    private long lastMessageNanos;
+    private int count;
+
+    /**
+     * @param file to write the recording in
+     * @param delegate receiving the messages
+     * @throws IOException if the file can not be created
+     */
+    public CallbackRecorder(File file, Observer delegate) throws IOException {
+        this(new FileOutputStream(file), delegate);
+    }
+
+    /**
+     * @param out to write the recording in, closed with the recorder
+     * @param delegate receiving the messages
+     * @throws IOException if the header can not be written
+     */
+    public CallbackRecorder(OutputStream out, Observer delegate) throws IOException {
+        this.delegate = checkNotNull(delegate);
+        this.out = new BufferedOutputStream(out);
+        CallbackStream.writeHeader(this.out);
+        this.lastMessageNanos = System.nanoTime();
+    }
+
+    /**
+     * Start the recording of an acquisition in the storage directory, if enabled in ProcessInfo
+     *
+     * @param command name of the command, part of the file name
+     * @param delegate receiving the messages
+     * @return the recorder, or null if the recording is disabled or could not start
+     */
+    public static CallbackRecorder startIfEnabled(String command, Observer delegate) {
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+        if (!processInfo.isCallbackRecording()) {
+            return null;
+        }
+        String date = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.FRANCE).format(new Date());
+        File file = new File(processInfo.getStorageDirectory(), "Callbacks_" + command + "_" + date + EXTENSION);
+        try {
+            return new CallbackRecorder(file, delegate);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Recording of the callbacks not started : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Close a recorder returned by {@link #startIfEnabled(String, Observer)}
+     *
+     * @param recorder to close, may be null
+     */
+    public static void stop(CallbackRecorder recorder) {
+        if (recorder != null) {
+            recorder.closeQuietly();
+        }
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        record(arg);
+        delegate.update(o, arg);
+    }
+
+    private synchronized void record(Object arg) {
+        if (out == null || !(arg instanceof CallbackMessage)) {
+            return;
+        }
+        long now = System.nanoTime();
+        try {
+            if (CallbackStream.writeMessage(out, (now - lastMessageNanos) / 1000, (CallbackMessage) arg)) {
+                lastMessageNanos = now;
+                count++;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Recording of the callbacks stopped : " + e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    /**
+     * @return the number of messages recorded
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            OutputStream stream = out;
+            out = null;
+            stream.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage());
+        }
+    }
+}
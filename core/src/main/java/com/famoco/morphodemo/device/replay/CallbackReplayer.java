@@ -0,0 +1,99 @@
+package com.famoco.morphodemo.device.replay;
+
+import com.morpho.morphosmart.sdk.ErrorCodes;
+
+import java.util.Observer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Feeds a recorded {@link CallbackStream} to an Observer (a presenter through its
+ * CallbackDispatcher, or the simulated device) with the recorded timing
+ *
+ * @version DEMO
+ */
+public class CallbackReplayer {
+
+    /**
+     * Speed replaying the messages without waiting
+     */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private final CallbackStream stream;
+    private volatile double speed = 1.0;
+    private volatile boolean cancelled = false;
+
+    public CallbackReplayer(CallbackStream stream) {
+        this.stream = checkNotNull(stream);
+    }
+
+    public CallbackStream getStream() {
+        return stream;
+    }
+
+    /**
+     * @param speed factor applied to the recorded timing : 1 for real time, 2 twice as fast,
+     *              {@link #AS_FAST_AS_POSSIBLE} without any wait
+     */
+    public void setSpeed(double speed) {
+        checkArgument(speed > 0, "speed must be positive");
+        this.speed = speed;
+    }
+
+    /**
+     * Send every message of the stream to the observer.
+     * Blocks for the (scaled) duration of the stream
+     *
+     * @param observer receiving the messages
+     * @return MORPHO_OK, or MORPHOERR_CMDE_ABORTED if {@link #cancel()} was called meanwhile or
+     * before the replay, the cancel being then consumed
+     */
+    public int replay(Observer observer) {
+        long start = System.nanoTime();
+        long elapsedMicros = 0;
+        for (int i = 0; i < stream.size(); i++) {
+            elapsedMicros += stream.getDelayMicros(i);
+            if (!waitUntil(start, elapsedMicros) || cancelled) {
+                cancelled = false;
+                return ErrorCodes.MORPHOERR_CMDE_ABORTED;
+            }
+            observer.update(null, stream.getMessage(i));
+        }
+        return ErrorCodes.MORPHO_OK;
+    }
+
+    /**
+     * Stop the replay in progress, or the next one if none is in progress
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Forget a cancel not consumed by a replay
+     */
+    public void reset() {
+        cancelled = false;
+    }
+
+    /**
+     * @return false if interrupted
+     */
+    private boolean waitUntil(long startNanos, long elapsedMicros) {
+        if (Double.isInfinite(speed)) {
+            return true;
+        }
+        long deadline = startNanos + (long) (elapsedMicros * 1000 / speed);
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0 && !cancelled) {
+            try {
+                Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
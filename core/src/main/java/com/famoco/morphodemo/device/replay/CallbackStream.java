@@ -0,0 +1,173 @@
+package com.famoco.morphodemo.device.replay;
+
+import com.famoco.morphodemo.utils.VarInts;
+import com.morpho.morphosmart.sdk.CallbackMessage;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CallbackMessage stream of an acquisition, with the time of each message.
+ *
+ * Binary format (see {@link CallbackRecorder}) :
+ * magic "MCBR", version byte, then for each message :
+ * delay since the previous message in microseconds (varint), type (byte),
+ * value (varint) for commands and qualities or length (varint) and bytes for images
+ *
+ * @version DEMO
+ */
+public class CallbackStream {
+
+    static final int MAGIC = 0x4D434252;
+    static final int VERSION = 1;
+
+    static final int MESSAGE_COMMAND = 1;
+    static final int MESSAGE_IMAGE = 2;
+    static final int MESSAGE_QUALITY = 3;
+
+    /**
+     * Largest image accepted in a recording, far above a full resolution frame
+     */
+    static final int MAX_IMAGE_LENGTH = 4 * 1024 * 1024;
+
+    private final List<Long> delaysMicros = new ArrayList<>();
+    private final List<CallbackMessage> messages = new ArrayList<>();
+
+    /**
+     * Read a whole recording
+     *
+     * @param file written by a {@link CallbackRecorder}
+     * @return the stream
+     * @throws IOException if the file can not be read or is not a recording
+     */
+    public static CallbackStream read(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Read a whole recording
+     *
+     * @param in positioned on the header of the recording
+     * @return the stream
+     * @throws IOException if the stream can not be read or is not a recording
+     */
+    public static CallbackStream read(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("Not a callback recording");
+        }
+        int version = dis.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported callback recording version " + version);
+        }
+
+        CallbackStream stream = new CallbackStream();
+        while (true) {
+            long delay;
+            try {
+                delay = VarInts.readUnsignedLong(dis);
+            } catch (EOFException e) {
+                // End of the recording
+                return stream;
+            }
+            int type = dis.readUnsignedByte();
+            Object value;
+            if (type == MESSAGE_IMAGE) {
+                long length = VarInts.readUnsignedLong(dis);
+                if (length < 0 || length > MAX_IMAGE_LENGTH) {
+                    throw new IOException("Corrupt callback recording : image of " + length + " bytes");
+                }
+                byte[] image = new byte[(int) length];
+                dis.readFully(image);
+                value = image;
+            } else {
+                value = VarInts.readUnsignedInt(dis);
+            }
+            stream.add(delay, type, value);
+        }
+    }
+
+    /**
+     * Write the header of a recording
+     */
+    static void writeHeader(OutputStream out) throws IOException {
+        out.write(MAGIC >>> 24);
+        out.write(MAGIC >>> 16);
+        out.write(MAGIC >>> 8);
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    /**
+     * Write a message of a recording
+     *
+     * @return false if the message is not of a recordable type
+     */
+    static boolean writeMessage(OutputStream out, long delayMicros, CallbackMessage message) throws IOException {
+        int type = message.getMessageType();
+        Object value = message.getMessage();
+        if (type == MESSAGE_IMAGE && value instanceof byte[]) {
+            byte[] image = (byte[]) value;
+            VarInts.writeUnsignedLong(out, delayMicros);
+            out.write(type);
+            VarInts.writeUnsignedInt(out, image.length);
+            out.write(image);
+            return true;
+        } else if ((type == MESSAGE_COMMAND || type == MESSAGE_QUALITY) && value instanceof Integer) {
+            VarInts.writeUnsignedLong(out, delayMicros);
+            out.write(type);
+            VarInts.writeUnsignedInt(out, (Integer) value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param delayMicros since the previous message
+     * @param type of the CallbackMessage
+     * @param value of the CallbackMessage
+     */
+    public void add(long delayMicros, int type, Object value) {
+        CallbackMessage message = new CallbackMessage();
+        message.setMessageType(type);
+        message.setMessage(value);
+        delaysMicros.add(delayMicros);
+        messages.add(message);
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * @return the delay before the message at index, since the previous message, in microseconds
+     */
+    public long getDelayMicros(int index) {
+        return delaysMicros.get(index);
+    }
+
+    public CallbackMessage getMessage(int index) {
+        return messages.get(index);
+    }
+
+    /**
+     * @return the duration of the whole stream in microseconds
+     */
+    public long getDurationMicros() {
+        long duration = 0;
+        for (Long delay : delaysMicros) {
+            duration += delay;
+        }
+        return duration;
+    }
+}
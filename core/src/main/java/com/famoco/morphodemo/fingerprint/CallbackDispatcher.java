@@ -0,0 +1,75 @@
+package com.famoco.morphodemo.fingerprint;
+
+import com.morpho.morphosmart.sdk.CallbackMessage;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Observer given to the Morpho device that decodes the CallbackMessage
+ * received during an acquisition and dispatches them to a {@link Listener}
+ *
+ * @version DEMO
+ */
+public class CallbackDispatcher implements Observer {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = CallbackDispatcher.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Listener of the messages sent by the Morpho device during an acquisition
+     * Methods are called on the thread of the Morpho device
+     */
+    public interface Listener {
+
+        /**
+         * @param command sent by the device (see {@link MorphoUtils#createMessage(Integer)})
+         */
+        void onCommand(Integer command);
+
+        /**
+         * @param image low resolution live image
+         */
+        void onImage(byte[] image);
+
+        /**
+         * @param quality coded image quality
+         */
+        void onQuality(Integer quality);
+    }
+
+    private final Listener listener;
+
+    public CallbackDispatcher(Listener listener) {
+        this.listener = checkNotNull(listener);
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        // Convert the object to a callback message.
+        CallbackMessage message = (CallbackMessage) arg;
+        int type = message.getMessageType();
+
+        switch (type) {
+            case 1: // Message is a command.
+                listener.onCommand((Integer) message.getMessage());
+                break;
+            case 2: // Message is a low resolution image
+                listener.onImage((byte[]) message.getMessage());
+                break;
+            case 3: // Message is the coded image quality.
+                listener.onQuality((Integer) message.getMessage());
+                break;
+            default:
+                LOGGER.severe("Unknown message received from Morpho device : " + arg);
+                break;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.famoco.morphodemo.fingerprint;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single slot, lock-free mailbox between the thread of the Morpho device, which sends the
+ * live frames, and the UI Thread, which displays them. A new frame replaces the frame not
+ * displayed yet, so only the latest frame is ever rendered and the UI Thread receives at
+ * most one pending display request whatever the frame rate.
+ *
+ * Usage : post a display to the UI Thread only when {@link #offer(byte[])} returns true,
+ * the display then renders {@link #take()}.
+ *
+ * @version DEMO
+ */
+public class FrameMailbox {
+
+    private final AtomicReference<byte[]> slot = new AtomicReference<>();
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Put the latest frame, replacing the frame not taken yet
+     *
+     * @param frame low resolution live image
+     * @return true if the mailbox was empty, a display must then be requested
+     */
+    public boolean offer(byte[] frame) {
+        offered.incrementAndGet();
+        byte[] previous = slot.getAndSet(frame);
+        if (previous != null) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the latest frame, or null if it has already been taken
+     */
+    public byte[] take() {
+        return slot.getAndSet(null);
+    }
+
+    /**
+     * Drop the frame not taken yet, to call when the pending display requests are removed
+     */
+    public void clear() {
+        if (slot.getAndSet(null) != null) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of frames received
+     */
+    public long getOfferedCount() {
+        return offered.get();
+    }
+
+    /**
+     * @return the number of frames replaced before being displayed
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,166 @@
+package com.famoco.morphodemo.fingerprint;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Low resolution live image sent by the Morpho device (type 2 CallbackMessage),
+ * read in place : same fields as MorphoImage.getMorphoImageFromLive, without
+ * copying the pixels out of the callback buffer.
+ *
+ * Layout : 12 bytes header (little endian), then the pixels
+ * [2..3] rows, [4..5] columns, [6..7] X resolution, [8..9] Y resolution,
+ * [10] compression, [11] bits per pixel
+ *
+ * The pixels are 8 bits per pixel, or 4 bits per pixel (two pixels per byte, the first one in
+ * the high nibble) for the preview of the FP200.
+ *
+ * @version DEMO
+ */
+public final class LiveFrame {
+
+    /**
+     * Size of the header preceding the pixels
+     */
+    public static final int HEADER_SIZE = 12;
+
+    /**
+     * Bits per pixel of the frames displayed as they are
+     */
+    public static final int BITS_PER_PIXEL = 8;
+
+    /**
+     * Bits per pixel of the packed frames, expanded by {@link #unpackPixels(byte[])}
+     */
+    public static final int PACKED_BITS_PER_PIXEL = 4;
+
+    private final byte[] data;
+    private final int nbRow;
+    private final int nbColumn;
+    private final int resX;
+    private final int resY;
+    private final int compression;
+    private final int nbBitsPerPixel;
+
+    private LiveFrame(byte[] data, ByteBuffer header) {
+        this.data = data;
+        this.nbRow = header.getShort(2);
+        this.nbColumn = header.getShort(4);
+        this.resX = header.getShort(6);
+        this.resY = header.getShort(8);
+        this.compression = data[10];
+        this.nbBitsPerPixel = data[11];
+    }
+
+    /**
+     * Read the header of a live image
+     *
+     * @param image received in the CallbackMessage, kept (not copied) by the LiveFrame
+     * @return the frame, or null if the buffer is too short for its header and its pixels, the
+     * image is empty or its pixels are neither 8 nor 4 bits wide
+     */
+    public static LiveFrame parse(byte[] image) {
+        if (image == null || image.length < HEADER_SIZE) {
+            return null;
+        }
+        LiveFrame frame = new LiveFrame(image, ByteBuffer.wrap(image, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+        if (frame.nbRow <= 0 || frame.nbColumn <= 0
+                || (frame.nbBitsPerPixel != BITS_PER_PIXEL && frame.nbBitsPerPixel != PACKED_BITS_PER_PIXEL)
+                || frame.getPackedLength() > frame.getPixelLength()) {
+            return null;
+        }
+        return frame;
+    }
+
+    public int getNbRow() {
+        return nbRow;
+    }
+
+    public int getNbColumn() {
+        return nbColumn;
+    }
+
+    public int getResX() {
+        return resX;
+    }
+
+    public int getResY() {
+        return resY;
+    }
+
+    /**
+     * @return the code of the CompressionAlgorithm
+     */
+    public int getCompression() {
+        return compression;
+    }
+
+    public int getNbBitsPerPixel() {
+        return nbBitsPerPixel;
+    }
+
+    /**
+     * @return the buffer of the callback, header included
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the offset of the first pixel in {@link #getData()}
+     */
+    public int getPixelOffset() {
+        return HEADER_SIZE;
+    }
+
+    /**
+     * @return the number of bytes of pixels in {@link #getData()}
+     */
+    public int getPixelLength() {
+        return data.length - HEADER_SIZE;
+    }
+
+    /**
+     * @return true if the pixels are packed, two per byte
+     */
+    public boolean isPacked() {
+        return nbBitsPerPixel == PACKED_BITS_PER_PIXEL;
+    }
+
+    /**
+     * @return a view on the pixels as sent, positioned on the first one
+     * (ready for Bitmap.copyPixelsFromBuffer if not {@link #isPacked()})
+     */
+    public ByteBuffer getPixels() {
+        return ByteBuffer.wrap(data, HEADER_SIZE, getPixelLength());
+    }
+
+    /**
+     * Copy the pixels one byte per pixel, the 4 bits ones scaled to 8 bits
+     *
+     * @param target of at least rows x columns bytes, reused between the frames
+     */
+    public void unpackPixels(byte[] target) {
+        int pixels = nbRow * nbColumn;
+        if (target.length < pixels) {
+            throw new IllegalArgumentException("target shorter than " + pixels + " pixels");
+        }
+        if (!isPacked()) {
+            System.arraycopy(data, HEADER_SIZE, target, 0, pixels);
+            return;
+        }
+        for (int i = 0; i < pixels; i++) {
+            int packed = data[HEADER_SIZE + (i >> 1)];
+            int value = (i & 1) == 0 ? (packed >> 4) & 0x0F : packed & 0x0F;
+            target[i] = (byte) (value << 4 | value);
+        }
+    }
+
+    /**
+     * @return the number of bytes of the pixels announced by the header
+     */
+    private long getPackedLength() {
+        long pixels = (long) nbRow * nbColumn;
+        return nbBitsPerPixel == PACKED_BITS_PER_PIXEL ? (pixels + 1) / 2 : pixels;
+    }
+}
@@ -1,19 +1,17 @@
 package com.famoco.morphodemo.fingerprint;
 
-import android.graphics.Bitmap;
-import android.util.Log;
-
+import com.famoco.morphodemo.device.MorphoDevicePort;
 import com.famoco.morphodemo.utils.morpho.ProcessInfo;
-import com.morpho.morphosmart.sdk.MorphoDevice;
-import com.morpho.morphosmart.sdk.MorphoImage;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Utility class
@@ -25,41 +23,34 @@ public class MorphoUtils {
 
     private static final String TAG = MorphoUtils.class.getSimpleName();
 
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
     /**
-     * Write logs in a file
+     * Write logs in a file, one per sensor and day
+     *
+     * @param morphoDevice whose logs are written
+     * @param sensorName naming the file, the MSO serial number of the connection if null
      */
-    public static void storeFFDLogs(MorphoDevice morphoDevice) {
+    public static void storeFFDLogs(MorphoDevicePort morphoDevice, String sensorName) {
         String ffdLogs = morphoDevice.getFFDLogs();
 
         if(ffdLogs != null) {
-            String serialNbr = ProcessInfo.getInstance().getMSOSerialNumber();
+            String serialNbr = sensorName != null ? sensorName : ProcessInfo.getInstance().getMSOSerialNumber();
             SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd", Locale.FRANCE);
             String currentDate = sdf.format(new Date());
-            String saveFile = "sdcard/" + serialNbr + "_" + currentDate + "_Audit.log";
+            File saveFile = new File(ProcessInfo.getInstance().getStorageDirectory(),
+                    serialNbr + "_" + currentDate + "_Audit.log");
 
             try(FileWriter fileStream = new FileWriter(saveFile,true);
                 BufferedWriter out = new BufferedWriter(fileStream)) {
                 out.write(ffdLogs);
-                Log.d(TAG, "Writing logs : " + ffdLogs);
+                LOGGER.fine("Writing logs : " + ffdLogs);
             } catch (IOException e) {
-                Log.e(TAG, e.getMessage());
+                LOGGER.log(Level.SEVERE, e.getMessage());
             }
         }
     }
 
-    /**
-     * Create a Bitmap from an array of byte
-     * @param image to transform
-     */
-    public static Bitmap createBitmap(byte[] image) {
-        MorphoImage morphoImage = MorphoImage.getMorphoImageFromLive(image);
-        int imageRowNumber = morphoImage.getMorphoImageHeader().getNbRow();
-        int imageColumnNumber = morphoImage.getMorphoImageHeader().getNbColumn();
-        final Bitmap imageBmp = Bitmap.createBitmap(imageColumnNumber, imageRowNumber, Bitmap.Config.ALPHA_8);
-        imageBmp.copyPixelsFromBuffer(ByteBuffer.wrap(morphoImage.getImage(), 0, morphoImage.getImage().length));
-        return imageBmp;
-    }
-
     /**
      * Create a message from a command
      * @param command corresponding to a String
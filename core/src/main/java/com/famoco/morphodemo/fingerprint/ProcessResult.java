@@ -0,0 +1,37 @@
+package com.famoco.morphodemo.fingerprint;
+
+/**
+ * Result of a command sent to the Morpho device
+ *
+ * @version DEMO
+ */
+public class ProcessResult {
+
+    /**
+     * ErrorCodes value returned by the Morpho device
+     */
+    private final int errorCode;
+
+    /**
+     * Internal error of the Morpho device after the command
+     */
+    private final int internalError;
+
+    public ProcessResult(int errorCode, int internalError) {
+        this.errorCode = errorCode;
+        this.internalError = internalError;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public int getInternalError() {
+        return internalError;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessResult{errorCode=" + errorCode + ", internalError=" + internalError + "}";
+    }
+}
@@ -0,0 +1,21 @@
+package com.famoco.morphodemo.fingerprint.enroll;
+
+/**
+ * Handling of a finger captured for enrollment which is already enrolled under another user
+ *
+ * @version DEMO
+ */
+public enum DuplicatePolicy {
+    /**
+     * The gallery is not searched
+     */
+    NONE,
+    /**
+     * The templates are stored, the duplicate is reported in the EnrollResult
+     */
+    FLAG,
+    /**
+     * The templates are not stored, the enrollment fails with MORPHOERR_ALREADY_ENROLLED
+     */
+    REJECT
+}
@@ -0,0 +1,359 @@
+package com.famoco.morphodemo.fingerprint.enroll;
+
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.device.SensorSessionManager;
+import com.famoco.morphodemo.device.replay.CallbackRecorder;
+import com.famoco.morphodemo.fingerprint.MorphoUtils;
+import com.famoco.morphodemo.fingerprint.identify.IdentifyProcess;
+import com.famoco.morphodemo.fingerprint.identify.MinutiaePreFilter;
+import com.famoco.morphodemo.fingerprint.template.TemplateFormatException;
+import com.famoco.morphodemo.metrics.Phase;
+import com.famoco.morphodemo.metrics.PhaseRecorder;
+import com.famoco.morphodemo.storage.ExportFile;
+import com.famoco.morphodemo.storage.ExportWriter;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.Coder;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.DetectionMode;
+import com.morpho.morphosmart.sdk.EnrollmentType;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+import com.morpho.morphosmart.sdk.FalseAcceptanceRate;
+import com.morpho.morphosmart.sdk.LatentDetection;
+import com.morpho.morphosmart.sdk.MorphoWakeUpMode;
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.morpho.morphosmart.sdk.CompressionAlgorithm.MORPHO_NO_COMPRESS;
+import static com.morpho.morphosmart.sdk.TemplateFVPType.MORPHO_NO_PK_FVP;
+
+/**
+ * Capture of a new fingerprint with the Morpho device and export of its templates.
+ *
+ * Depending on the DuplicatePolicy of ProcessInfo, the captured finger is first searched among
+ * the templates of the other users : the sensor matches by batches the closest ones, shortlisted
+ * by the {@link MinutiaePreFilter}, then the rest of the gallery, until a hit or the end of the
+ * time budget. The check is only complete if the whole gallery has been matched.
+ *
+ * @version DEMO
+ */
+public class EnrollProcess {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = EnrollProcess.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Morpho Device Capture Configuration
+     */
+    public static final TemplateType TEMPLATE_TYPE = TemplateType.MORPHO_PK_ISO_FMC_CS;
+    public static final TemplateFVPType TEMPLATE_FVP_TYPE = MORPHO_NO_PK_FVP;
+    private static final EnrollmentType ENROLL_TYPE = EnrollmentType.ONE_ACQUISITIONS;
+    public static final int MAX_SIZE_TEMPLATE = 255;
+    private static final LatentDetection LATENT_DETECTION = LatentDetection.LATENT_DETECT_ENABLE;
+    private static final int NB_FINGER = 1;
+
+    /**
+     * Morpho Device Duplicate Check Configuration
+     */
+    private static final int DUPLICATE_FAR = FalseAcceptanceRate.MORPHO_FAR_5;
+    private static final int DUPLICATE_BATCH_SIZE = IdentifyProcess.DEFAULT_BATCH_SIZE;
+
+    private final MorphoDevicePort morphoDevice;
+    private final TemplateStorage templateStorage;
+    private PhaseRecorder phaseRecorder = PhaseRecorder.NONE;
+    private ExportWriter exportWriter = null;
+    private ExportWriter.Listener exportListener = ExportWriter.Listener.NONE;
+    private MinutiaePreFilter preFilter = null;
+    private int shortlistSize = MinutiaePreFilter.DEFAULT_SHORTLIST_SIZE;
+
+    public EnrollProcess(MorphoDevicePort morphoDevice, TemplateStorage templateStorage) {
+        this.morphoDevice = checkNotNull(morphoDevice);
+        this.templateStorage = checkNotNull(templateStorage);
+    }
+
+    /**
+     * @param phaseRecorder receiving the duration of the phases of each execution
+     */
+    public void setPhaseRecorder(PhaseRecorder phaseRecorder) {
+        this.phaseRecorder = checkNotNull(phaseRecorder);
+    }
+
+    /**
+     * Hand the exported files to a background writer instead of writing them before returning
+     *
+     * @param exportWriter writing the files, null to write them in {@link #execute}
+     * @param exportListener notified once the files are written
+     */
+    public void setExportWriter(ExportWriter exportWriter, ExportWriter.Listener exportListener) {
+        this.exportWriter = exportWriter;
+        this.exportListener = checkNotNull(exportListener);
+    }
+
+    /**
+     * @param preFilter shortlisting the candidates of the duplicate check, null for the shared one
+     * @param shortlistSize maximum number of candidates matched by the sensor
+     */
+    public void setPreFilter(MinutiaePreFilter preFilter, int shortlistSize) {
+        checkArgument(shortlistSize > 0, "shortlistSize must be positive");
+        this.preFilter = preFilter;
+        this.shortlistSize = shortlistSize;
+    }
+
+    /**
+     * Capture a fingerprint of the user of ProcessInfo, store its templates in the
+     * TemplateRepository and export them.
+     * Blocks until the Morpho device returns, must not be called on the UI Thread
+     *
+     * @param observer that will be notified in real time of the device acquisition
+     * @return the result of the capture, MORPHOERR_ALREADY_ENROLLED if rejected as a duplicate
+     */
+    public EnrollResult execute(Observer observer) {
+        CallbackRecorder recorder = CallbackRecorder.startIfEnabled("enroll", observer);
+        try {
+            return capture(recorder != null ? recorder : observer);
+        } finally {
+            CallbackRecorder.stop(recorder);
+        }
+    }
+
+    private EnrollResult capture(Observer observer) {
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+        final String userId = processInfo.getUserId();
+        final int timeout = processInfo.getTimeout();
+        TemplateList templateList = new TemplateList();
+
+        int acquisitionThreshold = (processInfo.isFingerprintQualityThreshold()) ?
+                processInfo.getFingerprintQualityThresholdvalue() : 0;
+        int advancedSecurityLevelsRequired = (processInfo.isAdvancedSecLevCompReq()) ?
+                1 : 0xFF;
+
+        int callbackCmd = processInfo.getCallbackCmd();
+        Coder coderChoice = processInfo.getCoder();
+
+        int detectModeChoice = DetectionMode.MORPHO_ENROLL_DETECT_MODE.getValue();
+        if (processInfo.isForceFingerPlacementOnTop())
+            detectModeChoice |= DetectionMode.MORPHO_FORCE_FINGER_ON_TOP_DETECT_MODE.getValue();
+        if (processInfo.isWakeUpWithLedOff())
+            detectModeChoice |= MorphoWakeUpMode.MORPHO_WAKEUP_LED_OFF.getCode();
+
+        long start = System.nanoTime();
+        int ret = morphoDevice.setStrategyAcquisitionMode(processInfo.getStrategyAcquisitionMode());
+        if (ret == ErrorCodes.MORPHO_OK) {
+            ret = morphoDevice.capture(timeout, acquisitionThreshold, advancedSecurityLevelsRequired,
+                    NB_FINGER,
+                    TEMPLATE_TYPE, TEMPLATE_FVP_TYPE, MAX_SIZE_TEMPLATE, ENROLL_TYPE,
+                    LATENT_DETECTION, coderChoice, detectModeChoice,
+                    MORPHO_NO_COMPRESS, 0, templateList, callbackCmd, observer);
+        }
+
+        phaseRecorder.record(Phase.DEVICE_CALL, System.nanoTime() - start);
+        processInfo.setCommandBioStart(false);
+
+        start = System.nanoTime();
+        MorphoUtils.storeFFDLogs(morphoDevice, SensorSessionManager.getInstance().getSensorName(morphoDevice));
+        phaseRecorder.record(Phase.FFD_LOG_WRITE, System.nanoTime() - start);
+
+        DuplicateSearch duplicateSearch = null;
+        long duplicateCheckNanos = 0;
+        if (ret == ErrorCodes.MORPHO_OK && processInfo.getDuplicatePolicy() != DuplicatePolicy.NONE
+                && templateList.getNbTemplate() > 0) {
+            start = System.nanoTime();
+            duplicateSearch = findDuplicate(userId, templateList, processInfo.getDuplicateCheckBudget());
+            duplicateCheckNanos = System.nanoTime() - start;
+            phaseRecorder.record(Phase.DUPLICATE_CHECK, duplicateCheckNanos);
+            if (duplicateSearch.duplicate != null) {
+                LOGGER.warning("Finger of " + userId + " already enrolled as " + duplicateSearch.duplicate);
+                if (processInfo.getDuplicatePolicy() == DuplicatePolicy.REJECT) {
+                    ret = ErrorCodes.MORPHOERR_ALREADY_ENROLLED;
+                }
+            }
+        }
+
+        if (ret == ErrorCodes.MORPHO_OK) {
+            start = System.nanoTime();
+            ret = store(userId, templateList);
+            List<ExportFile> files = new ArrayList<>(
+                    templateStorage.getFVPFiles(templateList, userId, TEMPLATE_FVP_TYPE));
+            files.addAll(templateStorage.getFPFiles(templateList, userId, TEMPLATE_TYPE));
+            export(files);
+            phaseRecorder.record(Phase.EXPORT, System.nanoTime() - start);
+        }
+
+        if (duplicateSearch == null) {
+            return new EnrollResult(ret, morphoDevice.getInternalError(), null, 0, false);
+        }
+        return new EnrollResult(ret, morphoDevice.getInternalError(), duplicateSearch.duplicate,
+                duplicateCheckNanos, duplicateSearch.complete);
+    }
+
+    /**
+     * Match the captured finger against the closest templates of the other users, then against
+     * the rest of the gallery, until a hit or the end of the time budget
+     *
+     * @param budgetMs time given to the search, the indexing of the pre-filter included
+     */
+    private DuplicateSearch findDuplicate(String userId, TemplateList search, long budgetMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        DuplicateSearch duplicateSearch = new DuplicateSearch();
+        try {
+            TemplateRepository repository = templateStorage.getRepository();
+            Set<String> shortlisted = new HashSet<>();
+            List<StoredTemplate> candidates = new ArrayList<>();
+            for (StoredTemplate candidate : shortlist(repository, search.getTemplate(0).getData())) {
+                if (isCandidate(userId, candidate)) {
+                    candidates.add(candidate);
+                    shortlisted.add(keyOf(candidate));
+                }
+            }
+            if (!match(search, candidates, deadline, duplicateSearch)) {
+                return duplicateSearch;
+            }
+
+            // The pre-filter misses some of the users, the templates not shortlisted follow
+            TemplateRepository.Cursor cursor = repository.cursor();
+            List<StoredTemplate> read;
+            while (!(read = cursor.next(DUPLICATE_BATCH_SIZE)).isEmpty()) {
+                candidates.clear();
+                for (StoredTemplate candidate : read) {
+                    if (isCandidate(userId, candidate) && !shortlisted.contains(keyOf(candidate))) {
+                        candidates.add(candidate);
+                    }
+                }
+                if (!match(search, candidates, deadline, duplicateSearch)) {
+                    break;
+                }
+            }
+        } catch (IOException | ConcurrentModificationException e) {
+            LOGGER.severe("Duplicate check not run : " + e.getMessage());
+            duplicateSearch.complete = false;
+        }
+        return duplicateSearch;
+    }
+
+    /**
+     * @return the candidates of the pre-filter, closest first, none if it fails : the whole
+     * gallery is then scanned in the order of the repository
+     */
+    private List<StoredTemplate> shortlist(TemplateRepository repository, byte[] probe) {
+        MinutiaePreFilter filter = preFilter != null ? preFilter : MinutiaePreFilter.getInstance();
+        try {
+            return filter.shortlist(repository, probe, TEMPLATE_TYPE, shortlistSize);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning("Duplicate candidates not shortlisted : " + e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Match the captured finger against candidates by batches
+     *
+     * @return false once the search is over : a hit, the deadline, or an error of the sensor
+     */
+    private boolean match(TemplateList search, List<StoredTemplate> candidates, long deadline,
+                          DuplicateSearch duplicateSearch) {
+        CustomInteger matchingPkIndex = new CustomInteger();
+        for (int from = 0; from < candidates.size(); from += DUPLICATE_BATCH_SIZE) {
+            if (System.nanoTime() > deadline) {
+                LOGGER.warning("Duplicate check out of time");
+                duplicateSearch.complete = false;
+                return false;
+            }
+            List<StoredTemplate> batch = candidates.subList(from,
+                    Math.min(from + DUPLICATE_BATCH_SIZE, candidates.size()));
+            TemplateList reference = new TemplateList();
+            for (StoredTemplate candidate : batch) {
+                candidate.putInto(reference);
+            }
+            int ret = morphoDevice.verifyMatch(DUPLICATE_FAR, search, reference, matchingPkIndex);
+            if (ret == ErrorCodes.MORPHO_OK) {
+                duplicateSearch.duplicate = batch.get(matchingPkIndex.getValueOf());
+                return false;
+            }
+            if (ret != ErrorCodes.MORPHOERR_NO_HIT) {
+                LOGGER.warning("Duplicate check stopped, ErrorCodes : " + ret);
+                duplicateSearch.complete = false;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Enrolling again the same user is not a duplicate, corrupt templates are skipped
+     */
+    private static boolean isCandidate(String userId, StoredTemplate template) {
+        if (template.getUserId().equals(userId) || !(template.getTemplateType() instanceof TemplateType)) {
+            return false;
+        }
+        try {
+            template.validate();
+            return true;
+        } catch (TemplateFormatException e) {
+            LOGGER.warning("Corrupt template " + template + " skipped : " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static String keyOf(StoredTemplate template) {
+        return template.getUserId() + '#' + template.getFinger();
+    }
+
+    private static class DuplicateSearch {
+
+        private StoredTemplate duplicate = null;
+        private boolean complete = true;
+    }
+
+    /**
+     * Store the templates in the repository, the finger index following their order.
+     * Sensors producing FVP templates only have them stored instead
+     */
+    private int store(String userId, TemplateList templateList) {
+        try {
+            TemplateRepository templateRepository = templateStorage.getRepository();
+            int nbTemplate = templateList.getNbTemplate();
+            for (int i = 0; i < nbTemplate; i++) {
+                templateRepository.put(new StoredTemplate(userId, i + 1, TEMPLATE_TYPE,
+                        templateList.getTemplate(i).getData()));
+            }
+            if (nbTemplate == 0) {
+                for (int i = 0; i < templateList.getNbFVPTemplate(); i++) {
+                    templateRepository.put(new StoredTemplate(userId, i + 1, TEMPLATE_FVP_TYPE,
+                            templateList.getFVPTemplate(i).getData()));
+                }
+            }
+            return ErrorCodes.MORPHO_OK;
+        } catch (IOException e) {
+            LOGGER.severe("Templates of " + userId + " not stored : " + e.getMessage());
+            return ErrorCodes.MORPHOERR_INTERNAL;
+        }
+    }
+
+    private void export(List<ExportFile> files) {
+        if (exportWriter != null) {
+            exportWriter.submit(files, exportListener);
+        } else {
+            ExportWriter.writeNow(files, exportListener);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.famoco.morphodemo.fingerprint.enroll;
+
+import com.famoco.morphodemo.fingerprint.ProcessResult;
+import com.famoco.morphodemo.storage.StoredTemplate;
+
+/**
+ * Result of an enrollment, with the outcome of the duplicate check
+ *
+ * @version DEMO
+ */
+public class EnrollResult extends ProcessResult {
+
+    /**
+     * Template of another user matching the captured finger, null if none
+     */
+    private final StoredTemplate duplicate;
+
+    /**
+     * Duration of the duplicate check, 0 if not run
+     */
+    private final long duplicateCheckNanos;
+
+    /**
+     * False if the time budget ran out before all the candidates were matched
+     */
+    private final boolean duplicateCheckComplete;
+
+    public EnrollResult(int errorCode, int internalError, StoredTemplate duplicate, long duplicateCheckNanos,
+                        boolean duplicateCheckComplete) {
+        super(errorCode, internalError);
+        this.duplicate = duplicate;
+        this.duplicateCheckNanos = duplicateCheckNanos;
+        this.duplicateCheckComplete = duplicateCheckComplete;
+    }
+
+    public StoredTemplate getDuplicate() {
+        return duplicate;
+    }
+
+    public long getDuplicateCheckNanos() {
+        return duplicateCheckNanos;
+    }
+
+    public boolean isDuplicateCheckComplete() {
+        return duplicateCheckComplete;
+    }
+
+    @Override
+    public String toString() {
+        return "EnrollResult{errorCode=" + getErrorCode() + ", internalError=" + getInternalError()
+                + ", duplicate=" + duplicate + ", duplicateCheckNanos=" + duplicateCheckNanos
+                + ", duplicateCheckComplete=" + duplicateCheckComplete + "}";
+    }
+}
@@ -0,0 +1,338 @@
+package com.famoco.morphodemo.fingerprint.identify;
+
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.device.SensorSessionManager;
+import com.famoco.morphodemo.device.replay.CallbackRecorder;
+import com.famoco.morphodemo.fingerprint.MorphoUtils;
+import com.famoco.morphodemo.fingerprint.enroll.EnrollProcess;
+import com.famoco.morphodemo.fingerprint.template.TemplateFormatException;
+import com.famoco.morphodemo.metrics.Phase;
+import com.famoco.morphodemo.metrics.PhaseRecorder;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.CallbackMask;
+import com.morpho.morphosmart.sdk.Coder;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.DetectionMode;
+import com.morpho.morphosmart.sdk.EnrollmentType;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+import com.morpho.morphosmart.sdk.FalseAcceptanceRate;
+import com.morpho.morphosmart.sdk.LatentDetection;
+import com.morpho.morphosmart.sdk.ResultMatching;
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Observer;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.morpho.morphosmart.sdk.CompressionAlgorithm.MORPHO_NO_COMPRESS;
+import static com.morpho.morphosmart.sdk.TemplateFVPType.MORPHO_NO_PK_FVP;
+
+/**
+ * Identification (1:N) of a fingerprint among the templates of the TemplateRepository,
+ * without knowing the user beforehand.
+ *
+ * The candidates are read from the repository by batches of at most the number of templates
+ * the sensor matches in one call. A gallery fitting in one batch is matched by verify, which
+ * reports the matching score. A larger gallery is matched with a single acquisition : the finger
+ * is captured once, then its template is matched against each batch with verifyMatch until a hit.
+ * With a {@link MinutiaePreFilter}, only the shortlist of the closest candidates is matched, once
+ * the gallery reaches the size given with it : the pre-filter misses some of the users.
+ *
+ * Only the well formed FP templates are candidates. If a concurrent enrollment reallocates the
+ * index of the repository, the scan restarts from its first template, the batches already
+ * matched are matched again.
+ *
+ * @version DEMO
+ */
+public class IdentifyProcess {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = IdentifyProcess.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Number of templates sent to the sensor in one call
+     */
+    public static final int DEFAULT_BATCH_SIZE = 20;
+
+    /**
+     * Morpho Device Identification Configuration
+     */
+    private static final int FAR = FalseAcceptanceRate.MORPHO_FAR_5;
+
+    /**
+     * Number of reallocations of the index tolerated during one identification
+     */
+    private static final int MAX_SCAN_RESTARTS = 3;
+
+    private final MorphoDevicePort morphoDevice;
+    private final TemplateStorage templateStorage;
+    private PhaseRecorder phaseRecorder = PhaseRecorder.NONE;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private MinutiaePreFilter preFilter = null;
+    private int shortlistSize;
+    private int preFilterGallerySize;
+    private TemplateRepository.Cursor cursor;
+    private int scanRestarts;
+
+    public IdentifyProcess(MorphoDevicePort morphoDevice, TemplateStorage templateStorage) {
+        this.morphoDevice = checkNotNull(morphoDevice);
+        this.templateStorage = checkNotNull(templateStorage);
+    }
+
+    /**
+     * @param phaseRecorder receiving the duration of the phases of each execution
+     */
+    public void setPhaseRecorder(PhaseRecorder phaseRecorder) {
+        this.phaseRecorder = checkNotNull(phaseRecorder);
+    }
+
+    /**
+     * @param batchSize maximum number of templates matched by the sensor in one call
+     */
+    public void setBatchSize(int batchSize) {
+        checkArgument(batchSize > 0, "batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param preFilter selecting the candidates matched by the sensor once the finger is
+     * captured, null to match the whole gallery
+     * @param shortlistSize maximum number of candidates matched by the sensor
+     */
+    public void setPreFilter(MinutiaePreFilter preFilter, int shortlistSize) {
+        setPreFilter(preFilter, shortlistSize, 0);
+    }
+
+    /**
+     * @param preFilter selecting the candidates matched by the sensor once the finger is
+     * captured, null to match the whole gallery
+     * @param shortlistSize maximum number of candidates matched by the sensor
+     * @param gallerySize number of templates of the repository from which the pre-filter is
+     * used, the smaller galleries are matched whole
+     */
+    public void setPreFilter(MinutiaePreFilter preFilter, int shortlistSize, int gallerySize) {
+        checkArgument(shortlistSize > 0, "shortlistSize must be positive");
+        checkArgument(gallerySize >= 0, "gallerySize must not be negative");
+        this.preFilter = preFilter;
+        this.shortlistSize = shortlistSize;
+        this.preFilterGallerySize = gallerySize;
+    }
+
+    /**
+     * Identify a fingerprint among all the stored templates.
+     * Blocks until the Morpho device returns, must not be called on the UI Thread
+     *
+     * @param observer that will be notified in real time of the device acquisition
+     * @return the result of the identification, MORPHOERR_NO_HIT if the finger is unknown
+     */
+    public IdentifyResult execute(Observer observer) {
+        CallbackRecorder recorder = CallbackRecorder.startIfEnabled("identify", observer);
+        try {
+            return identify(recorder != null ? recorder : observer);
+        } finally {
+            CallbackRecorder.stop(recorder);
+        }
+    }
+
+    private IdentifyResult identify(Observer observer) {
+        // Null when the shortlist of the pre-filter replaces the batches
+        List<StoredTemplate> batch = null;
+        List<StoredTemplate> next = null;
+        try {
+            TemplateRepository repository = templateStorage.getRepository();
+            int gallerySize = repository.size();
+            scanRestarts = 0;
+            if (preFilter == null || gallerySize <= batchSize || gallerySize < preFilterGallerySize) {
+                cursor = repository.cursor();
+                batch = nextBatch();
+                next = nextBatch();
+            }
+        } catch (IOException | ConcurrentModificationException e) {
+            LOGGER.severe("Templates not readable : " + e.getMessage());
+            return new IdentifyResult(ErrorCodes.MORPHOERR_INTERNAL, 0, null, IdentifyResult.SCORE_UNKNOWN, 0);
+        }
+        if (batch != null && batch.isEmpty()) {
+            return new IdentifyResult(ErrorCodes.MORPHOERR_NO_HIT, 0, null, IdentifyResult.SCORE_UNKNOWN, 0);
+        }
+
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+        int callbackCmd = processInfo.getCallbackCmd() & ~CallbackMask.MORPHO_CALLBACK_ENROLLMENT_CMD.getValue();
+        Coder coderChoice = processInfo.getCoder();
+        int detectModeChoice = DetectionMode.MORPHO_ENROLL_DETECT_MODE.getValue();
+
+        long start = System.nanoTime();
+        IdentifyResult result;
+        int ret = morphoDevice.setStrategyAcquisitionMode(processInfo.getStrategyAcquisitionMode());
+        if (ret != ErrorCodes.MORPHO_OK) {
+            result = new IdentifyResult(ret, morphoDevice.getInternalError(), null, IdentifyResult.SCORE_UNKNOWN, 0);
+        } else if (next != null && next.isEmpty()) {
+            result = verify(batch, coderChoice, detectModeChoice, callbackCmd, observer);
+        } else {
+            result = captureThenMatch(batch, next, coderChoice, detectModeChoice, callbackCmd, observer);
+        }
+
+        cursor = null;
+        phaseRecorder.record(Phase.DEVICE_CALL, System.nanoTime() - start);
+        processInfo.setCommandBioStart(false);
+
+        start = System.nanoTime();
+        MorphoUtils.storeFFDLogs(morphoDevice, SensorSessionManager.getInstance().getSensorName(morphoDevice));
+        phaseRecorder.record(Phase.FFD_LOG_WRITE, System.nanoTime() - start);
+
+        return result;
+    }
+
+    /**
+     * Acquire and match the finger against the whole gallery in one call
+     */
+    private IdentifyResult verify(List<StoredTemplate> gallery, Coder coderChoice, int detectModeChoice,
+                                  int callbackCmd, Observer observer) {
+        ResultMatching resultMatching = new ResultMatching();
+        int ret = morphoDevice.verify(ProcessInfo.getInstance().getTimeout(), FAR, coderChoice, detectModeChoice,
+                0, toTemplateList(gallery), callbackCmd, observer, resultMatching);
+        if (ret != ErrorCodes.MORPHO_OK) {
+            return new IdentifyResult(ret, morphoDevice.getInternalError(), null,
+                    IdentifyResult.SCORE_UNKNOWN, gallery.size());
+        }
+        return new IdentifyResult(ret, morphoDevice.getInternalError(),
+                gallery.get(resultMatching.getMatchingPKNumber()), resultMatching.getMatchingScore(), gallery.size());
+    }
+
+    /**
+     * Acquire the finger once, then match its template against the batches, or the shortlist of
+     * the pre-filter if no batch has been read, until a hit
+     */
+    private IdentifyResult captureThenMatch(List<StoredTemplate> batch, List<StoredTemplate> next,
+                                            Coder coderChoice, int detectModeChoice, int callbackCmd,
+                                            Observer observer) {
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+        int acquisitionThreshold = (processInfo.isFingerprintQualityThreshold()) ?
+                processInfo.getFingerprintQualityThresholdvalue() : 0;
+        TemplateList search = new TemplateList();
+        int ret = morphoDevice.capture(processInfo.getTimeout(), acquisitionThreshold, 0xFF, 1,
+                EnrollProcess.TEMPLATE_TYPE, MORPHO_NO_PK_FVP, EnrollProcess.MAX_SIZE_TEMPLATE,
+                EnrollmentType.ONE_ACQUISITIONS,
+                LatentDetection.LATENT_DETECT_ENABLE, coderChoice, detectModeChoice,
+                MORPHO_NO_COMPRESS, 0, search, callbackCmd, observer);
+        if (ret != ErrorCodes.MORPHO_OK) {
+            return new IdentifyResult(ret, morphoDevice.getInternalError(), null, IdentifyResult.SCORE_UNKNOWN, 0);
+        }
+
+        int candidates = 0;
+        CustomInteger matchingPkIndex = new CustomInteger();
+        ret = ErrorCodes.MORPHOERR_NO_HIT;
+        try {
+            List<StoredTemplate> shortlist = null;
+            if (batch == null) {
+                shortlist = shortlist(search.getTemplate(0).getData());
+                batch = shortlist.subList(0, Math.min(batchSize, shortlist.size()));
+            }
+            while (!batch.isEmpty()) {
+                candidates += batch.size();
+                ret = morphoDevice.verifyMatch(FAR, search, toTemplateList(batch), matchingPkIndex);
+                if (ret == ErrorCodes.MORPHO_OK) {
+                    return new IdentifyResult(ret, morphoDevice.getInternalError(),
+                            batch.get(matchingPkIndex.getValueOf()), IdentifyResult.SCORE_UNKNOWN, candidates);
+                }
+                if (ret != ErrorCodes.MORPHOERR_NO_HIT) {
+                    break;
+                }
+                if (shortlist != null) {
+                    batch = shortlist.subList(candidates, Math.min(candidates + batchSize, shortlist.size()));
+                } else {
+                    batch = next;
+                    next = nextBatch();
+                }
+            }
+        } catch (IOException | ConcurrentModificationException e) {
+            LOGGER.severe("Templates not readable : " + e.getMessage());
+            ret = ErrorCodes.MORPHOERR_INTERNAL;
+        }
+        return new IdentifyResult(ret, morphoDevice.getInternalError(), null, IdentifyResult.SCORE_UNKNOWN, candidates);
+    }
+
+    /**
+     * @return the next FP templates of the repository, empty at the end
+     * @throws ConcurrentModificationException if the index has been reallocated more than
+     * {@link #MAX_SCAN_RESTARTS} times
+     */
+    private List<StoredTemplate> nextBatch() throws IOException {
+        List<StoredTemplate> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize) {
+            List<StoredTemplate> read;
+            try {
+                read = cursor.next(batchSize - batch.size());
+            } catch (ConcurrentModificationException e) {
+                restartScan(e);
+                batch.clear();
+                cursor = templateStorage.getRepository().cursor();
+                continue;
+            }
+            if (read.isEmpty()) {
+                break;
+            }
+            for (StoredTemplate template : read) {
+                if (template.getTemplateType() instanceof TemplateType && isWellFormed(template)) {
+                    batch.add(template);
+                }
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @return the shortlist of the pre-filter, its index is rebuilt if the repository index has
+     * been reallocated while it was read
+     */
+    private List<StoredTemplate> shortlist(byte[] probe) throws IOException {
+        while (true) {
+            try {
+                return preFilter.shortlist(templateStorage.getRepository(), probe, EnrollProcess.TEMPLATE_TYPE,
+                        shortlistSize);
+            } catch (ConcurrentModificationException e) {
+                restartScan(e);
+            }
+        }
+    }
+
+    private void restartScan(ConcurrentModificationException e) {
+        if (++scanRestarts > MAX_SCAN_RESTARTS) {
+            throw e;
+        }
+        LOGGER.info("Templates reindexed, scan restarted : " + e.getMessage());
+    }
+
+    /**
+     * Corrupt templates are skipped rather than failing the whole batch on the sensor
+     */
+    private static boolean isWellFormed(StoredTemplate template) {
+        try {
+            template.validate();
+            return true;
+        } catch (TemplateFormatException e) {
+            LOGGER.warning("Corrupt template " + template + " skipped : " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static TemplateList toTemplateList(List<StoredTemplate> templates) {
+        TemplateList templateList = new TemplateList();
+        for (StoredTemplate template : templates) {
+            template.putInto(templateList);
+        }
+        return templateList;
+    }
+}
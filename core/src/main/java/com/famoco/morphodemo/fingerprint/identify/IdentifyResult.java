@@ -0,0 +1,57 @@
+package com.famoco.morphodemo.fingerprint.identify;
+
+import com.famoco.morphodemo.fingerprint.ProcessResult;
+import com.famoco.morphodemo.storage.StoredTemplate;
+
+/**
+ * Result of an identification : the matching template, if any
+ *
+ * @version DEMO
+ */
+public class IdentifyResult extends ProcessResult {
+
+    /**
+     * Score of a match found by verifyMatch, which does not report it
+     */
+    public static final int SCORE_UNKNOWN = -1;
+
+    /**
+     * Template of the identified user, null if none
+     */
+    private final StoredTemplate match;
+
+    /**
+     * Matching score of the ResultMatching, or SCORE_UNKNOWN
+     */
+    private final int matchingScore;
+
+    /**
+     * Number of templates compared to the finger
+     */
+    private final int candidates;
+
+    public IdentifyResult(int errorCode, int internalError, StoredTemplate match, int matchingScore, int candidates) {
+        super(errorCode, internalError);
+        this.match = match;
+        this.matchingScore = matchingScore;
+        this.candidates = candidates;
+    }
+
+    public StoredTemplate getMatch() {
+        return match;
+    }
+
+    public int getMatchingScore() {
+        return matchingScore;
+    }
+
+    public int getCandidates() {
+        return candidates;
+    }
+
+    @Override
+    public String toString() {
+        return "IdentifyResult{errorCode=" + getErrorCode() + ", internalError=" + getInternalError()
+                + ", match=" + match + ", matchingScore=" + matchingScore + ", candidates=" + candidates + "}";
+    }
+}
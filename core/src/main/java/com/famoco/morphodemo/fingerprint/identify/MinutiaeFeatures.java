@@ -0,0 +1,128 @@
+package com.famoco.morphodemo.fingerprint.identify;
+
+import com.famoco.morphodemo.fingerprint.template.IsoTemplate;
+
+/**
+ * Cheap features of the minutiae of a template, invariant to translation and rotation,
+ * compared on the host to shortlist the candidates of an identification.
+ *
+ * Layout, one byte each : [0] number of minutiae, [1] share of bifurcations,
+ * then the histogram of the distances between all pairs of minutiae, then the histogram
+ * of the angles between the neighbouring minutiae. Both histograms are normalized to 255.
+ *
+ * @version DEMO
+ */
+final class MinutiaeFeatures {
+
+    /**
+     * Number of bins of the distances histogram, the last one counting all the longer distances
+     */
+    static final int DISTANCE_BINS = 16;
+
+    /**
+     * Width of a bin of the distances histogram, in units of 0.1 mm
+     */
+    static final int DISTANCE_BIN_WIDTH = 16;
+
+    /**
+     * Number of bins of the angles histogram, from 0 to 180 degrees
+     */
+    static final int ANGLE_BINS = 8;
+
+    /**
+     * Maximum distance of two neighbouring minutiae, in units of 0.1 mm
+     */
+    static final int NEIGHBOUR_DISTANCE = 80;
+
+    /**
+     * Resolution assumed when a record does not report it, 500 dpi in pixels per centimeter
+     */
+    static final int DEFAULT_RESOLUTION = 197;
+
+    /**
+     * Size of the features of a template, in bytes
+     */
+    static final int SIZE = 2 + DISTANCE_BINS + ANGLE_BINS;
+
+    private MinutiaeFeatures() {
+    }
+
+    /**
+     * @param template to describe, its first finger view only : must have one
+     * @param out receiving the features
+     * @param offset of the features in out
+     */
+    static void extract(IsoTemplate template, byte[] out, int offset) {
+        IsoTemplate.FingerView view = template.getFingerView(0);
+        int nbMinutiae = view.getNbMinutiae();
+        // Positions in units of 0.1 mm, angles in 1/256 of a turn
+        int angleScale = Math.round(template.getFormat().getAngleUnit() * 256 / 360);
+        int[] xs = new int[nbMinutiae];
+        int[] ys = new int[nbMinutiae];
+        int[] angles = new int[nbMinutiae];
+        int bifurcations = 0;
+        for (int i = 0; i < nbMinutiae; i++) {
+            xs[i] = toTenthOfMillimeter(template, view.getMinutiaX(i), template.getResolutionX());
+            ys[i] = toTenthOfMillimeter(template, view.getMinutiaY(i), template.getResolutionY());
+            angles[i] = view.getMinutiaAngle(i) * angleScale;
+            if (view.getMinutiaType(i) == IsoTemplate.MINUTIA_BIFURCATION) {
+                bifurcations++;
+            }
+        }
+
+        int[] distances = new int[DISTANCE_BINS];
+        int[] relativeAngles = new int[ANGLE_BINS];
+        int neighbours = 0;
+        for (int i = 0; i < nbMinutiae; i++) {
+            for (int j = i + 1; j < nbMinutiae; j++) {
+                int dx = xs[i] - xs[j];
+                int dy = ys[i] - ys[j];
+                int distance = (int) Math.sqrt(dx * dx + dy * dy);
+                distances[Math.min(distance / DISTANCE_BIN_WIDTH, DISTANCE_BINS - 1)]++;
+                if (distance <= NEIGHBOUR_DISTANCE) {
+                    int angle = (angles[i] - angles[j]) & 0xFF;
+                    if (angle > 128) {
+                        angle = 256 - angle;
+                    }
+                    relativeAngles[Math.min(angle * ANGLE_BINS / 128, ANGLE_BINS - 1)]++;
+                    neighbours++;
+                }
+            }
+        }
+
+        out[offset] = (byte) Math.min(nbMinutiae, 255);
+        out[offset + 1] = (byte) (nbMinutiae == 0 ? 0 : bifurcations * 255 / nbMinutiae);
+        normalize(distances, nbMinutiae * (nbMinutiae - 1) / 2, out, offset + 2);
+        normalize(relativeAngles, neighbours, out, offset + 2 + DISTANCE_BINS);
+    }
+
+    /**
+     * @return a distance between two features, 0 for identical templates
+     */
+    static int distance(byte[] a, int aOffset, byte[] b, int bOffset) {
+        int distance = 4 * Math.abs((a[aOffset] & 0xFF) - (b[bOffset] & 0xFF))
+                + Math.abs((a[aOffset + 1] & 0xFF) - (b[bOffset + 1] & 0xFF)) / 2;
+        for (int i = 2; i < SIZE; i++) {
+            distance += Math.abs((a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF));
+        }
+        return distance;
+    }
+
+    private static int toTenthOfMillimeter(IsoTemplate template, int position, int resolution) {
+        switch (template.getFormat()) {
+            case CARD_COMPACT:
+                return position;
+            case CARD_NORMAL:
+                // In units of 0.01 mm
+                return position / 10;
+            default:
+                return position * 100 / (resolution != 0 ? resolution : DEFAULT_RESOLUTION);
+        }
+    }
+
+    private static void normalize(int[] histogram, int total, byte[] out, int offset) {
+        for (int i = 0; i < histogram.length; i++) {
+            out[offset + i] = (byte) (total == 0 ? 0 : histogram[i] * 255 / total);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.famoco.morphodemo.fingerprint.identify;
+
+import com.famoco.morphodemo.fingerprint.template.IsoTemplate;
+import com.famoco.morphodemo.fingerprint.template.TemplateFormatException;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.morpho.morphosmart.sdk.ITemplateType;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Host side shortlist of the candidates of an identification : the {@link MinutiaeFeatures} of
+ * the probe are compared to those of every FP template of the repository, in parallel on a fixed
+ * pool of threads, and only the closest templates are then matched by the sensor.
+ *
+ * The features of the gallery are kept in memory, in a single array, and extracted again when
+ * the repository changes. Templates which are not ISO/IEC 19794-2:2005, or have no finger view,
+ * are not candidates.
+ *
+ * @version DEMO
+ */
+public class MinutiaePreFilter {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = MinutiaePreFilter.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Number of candidates passed to the sensor by default
+     */
+    public static final int DEFAULT_SHORTLIST_SIZE = 100;
+
+    /**
+     * Below this number of templates per thread, the gallery is scored on the calling thread
+     */
+    static final int MIN_PARTITION_SIZE = 2048;
+
+    /**
+     * Number of templates read from the repository, then indexed in parallel, at once
+     */
+    private static final int READ_COUNT = 4 * MIN_PARTITION_SIZE;
+
+    private static MinutiaePreFilter mInstance = null;
+
+    private final ExecutorService executor;
+    private final int threads;
+
+    /**
+     * Gallery indexed, and its generation when indexed
+     */
+    private TemplateRepository repository;
+    private long generation;
+
+    private byte[] features = new byte[0];
+    private String[] userIds = new String[0];
+    private int[] fingers = new int[0];
+    private int size;
+
+    public static synchronized MinutiaePreFilter getInstance() {
+        if (mInstance == null) {
+            mInstance = new MinutiaePreFilter(Runtime.getRuntime().availableProcessors());
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param threads scoring the gallery
+     */
+    public MinutiaePreFilter(int threads) {
+        checkArgument(threads > 0, "threads must be positive");
+        this.threads = threads;
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Extract the features of the templates of a repository, unless already done for its
+     * current content
+     *
+     * @param templateRepository holding the gallery
+     * @return the number of candidates of the gallery
+     * @throws IOException if the templates can not be read
+     */
+    public synchronized int index(TemplateRepository templateRepository) throws IOException {
+        if (templateRepository == repository && templateRepository.getGeneration() == generation) {
+            return size;
+        }
+        long start = System.nanoTime();
+        long indexedGeneration = templateRepository.getGeneration();
+        repository = null;
+        size = 0;
+        int skipped = 0;
+        TemplateRepository.Cursor cursor = templateRepository.cursor();
+        final List<IsoTemplate> chunk = new ArrayList<>(READ_COUNT);
+        List<StoredTemplate> read;
+        while (!(read = cursor.next(READ_COUNT)).isEmpty()) {
+            chunk.clear();
+            ensureCapacity(size + read.size());
+            for (StoredTemplate template : read) {
+                if (!(template.getTemplateType() instanceof TemplateType)) {
+                    continue;
+                }
+                try {
+                    IsoTemplate parsed = template.parse();
+                    if (parsed.getNbFingerViews() == 0) {
+                        skipped++;
+                        continue;
+                    }
+                    chunk.add(parsed);
+                    userIds[size + chunk.size() - 1] = template.getUserId();
+                    fingers[size + chunk.size() - 1] = template.getFinger();
+                } catch (TemplateFormatException e) {
+                    skipped++;
+                }
+            }
+            final int first = size;
+            inPartitions(chunk.size(), new Partitioned<Void>() {
+                @Override
+                public Void run(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        MinutiaeFeatures.extract(chunk.get(i), features, (first + i) * MinutiaeFeatures.SIZE);
+                    }
+                    return null;
+                }
+            });
+            size += chunk.size();
+        }
+        repository = templateRepository;
+        generation = indexedGeneration;
+        LOGGER.info("Indexed " + size + " templates (" + skipped + " skipped) in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return size;
+    }
+
+    /**
+     * Select the candidates closest to a probe
+     *
+     * @param templateRepository holding the gallery
+     * @param probe data of the template to identify
+     * @param probeType of the probe, an ISO/IEC 19794-2:2005 type
+     * @param count maximum number of candidates
+     * @return the candidates, closest first
+     * @throws IOException if the templates can not be read or the probe is not well formed, or
+     * has no finger view
+     */
+    public synchronized List<StoredTemplate> shortlist(TemplateRepository templateRepository, byte[] probe,
+                                                       ITemplateType probeType, int count) throws IOException {
+        checkNotNull(templateRepository);
+        checkArgument(count > 0, "count must be positive");
+        index(templateRepository);
+        IsoTemplate probeTemplate = IsoTemplate.parse(probe, probeType);
+        if (probeTemplate.getNbFingerViews() == 0) {
+            throw new TemplateFormatException("Probe without finger view");
+        }
+        byte[] probeFeatures = new byte[MinutiaeFeatures.SIZE];
+        MinutiaeFeatures.extract(probeTemplate, probeFeatures, 0);
+
+        long[] closest = closest(probeFeatures, count);
+        List<StoredTemplate> candidates = new ArrayList<>(closest.length);
+        for (long scored : closest) {
+            int index = (int) scored;
+            StoredTemplate template = templateRepository.get(userIds[index], fingers[index]);
+            if (template != null) {
+                candidates.add(template);
+            }
+        }
+        return candidates;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Stop the threads, the pre-filter can not be used afterwards
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return the distance (high 32 bits) and index (low 32 bits) of the closest templates,
+     * closest first
+     */
+    private long[] closest(final byte[] probeFeatures, final int count) throws InterruptedIOException {
+        List<long[]> partitions = inPartitions(size, new Partitioned<long[]>() {
+            @Override
+            public long[] run(int from, int to) {
+                return closest(probeFeatures, from, to, count);
+            }
+        });
+        long[] merged = partitions.get(0);
+        for (int p = 1; p < partitions.size(); p++) {
+            long[] partition = partitions.get(p);
+            long[] union = Arrays.copyOf(merged, merged.length + partition.length);
+            System.arraycopy(partition, 0, union, merged.length, partition.length);
+            Arrays.sort(union);
+            merged = union.length > count ? Arrays.copyOf(union, count) : union;
+        }
+        return merged;
+    }
+
+    private long[] closest(byte[] probeFeatures, int from, int to, int count) {
+        long[] closest = new long[Math.min(count, to - from)];
+        int found = 0;
+        for (int i = from; i < to; i++) {
+            long scored = (long) MinutiaeFeatures.distance(probeFeatures, 0, features, i * MinutiaeFeatures.SIZE) << 32 | i;
+            if (found < closest.length) {
+                found++;
+            } else if (scored >= closest[found - 1]) {
+                continue;
+            }
+            // Insertion, keeping the closest first
+            int at = found - 1;
+            while (at > 0 && closest[at - 1] > scored) {
+                closest[at] = closest[at - 1];
+                at--;
+            }
+            closest[at] = scored;
+        }
+        return closest;
+    }
+
+    /**
+     * Run a task over consecutive ranges of [0, count), on the threads of the pre-filter
+     * unless the ranges would be too small
+     *
+     * @return the results of the ranges, in order
+     */
+    private <T> List<T> inPartitions(int count, final Partitioned<T> task) throws InterruptedIOException {
+        int partitions = Math.max(1, Math.min(threads, count / MIN_PARTITION_SIZE));
+        List<T> results = new ArrayList<>(partitions);
+        if (partitions == 1) {
+            results.add(task.run(0, count));
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            final int from = (int) ((long) count * p / partitions);
+            final int to = (int) ((long) count * (p + 1) / partitions);
+            futures.add(executor.submit(new Callable<T>() {
+                @Override
+                public T call() {
+                    return task.run(from, to);
+                }
+            }));
+        }
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(TAG + " interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    private interface Partitioned<T> {
+
+        T run(int from, int to);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > userIds.length) {
+            int length = Math.max(capacity, userIds.length * 2);
+            features = Arrays.copyOf(features, length * MinutiaeFeatures.SIZE);
+            userIds = Arrays.copyOf(userIds, length);
+            fingers = Arrays.copyOf(fingers, length);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.famoco.morphodemo.fingerprint.image;
+
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.device.SensorSessionManager;
+import com.famoco.morphodemo.device.replay.CallbackRecorder;
+import com.famoco.morphodemo.fingerprint.MorphoUtils;
+import com.famoco.morphodemo.fingerprint.ProcessResult;
+import com.famoco.morphodemo.metrics.Phase;
+import com.famoco.morphodemo.metrics.PhaseRecorder;
+import com.famoco.morphodemo.storage.ExportFile;
+import com.famoco.morphodemo.storage.ExportWriter;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.CallbackMask;
+import com.morpho.morphosmart.sdk.CompressionAlgorithm;
+import com.morpho.morphosmart.sdk.DetectionMode;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+import com.morpho.morphosmart.sdk.LatentDetection;
+import com.morpho.morphosmart.sdk.MorphoImage;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Observer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Capture of the image of a fingerprint with the Morpho device and export as WSQ files
+ *
+ * @version DEMO
+ */
+public class ImageProcess {
+
+    /**
+     * Write a header in a WSQ image
+     * (implemented by the fingerprint image header library of the app)
+     */
+    public interface HeaderWriter {
+
+        /**
+         * @param data WSQ compressed image
+         * @return the image with its header
+         */
+        byte[] setNewHeader(byte[] data);
+    }
+
+    private final MorphoDevicePort morphoDevice;
+    private final TemplateStorage templateStorage;
+    private PhaseRecorder phaseRecorder = PhaseRecorder.NONE;
+    private ExportWriter exportWriter = null;
+    private ExportWriter.Listener exportListener = ExportWriter.Listener.NONE;
+    private final HeaderWriter headerWriter;
+
+    public ImageProcess(MorphoDevicePort morphoDevice, TemplateStorage templateStorage, HeaderWriter headerWriter) {
+        this.morphoDevice = checkNotNull(morphoDevice);
+        this.templateStorage = checkNotNull(templateStorage);
+        this.headerWriter = checkNotNull(headerWriter);
+    }
+
+    /**
+     * @param phaseRecorder receiving the duration of the phases of each execution
+     */
+    public void setPhaseRecorder(PhaseRecorder phaseRecorder) {
+        this.phaseRecorder = checkNotNull(phaseRecorder);
+    }
+
+    /**
+     * Hand the exported files to a background writer instead of writing them before returning
+     *
+     * @param exportWriter writing the files, null to write them in {@link #execute}
+     * @param exportListener notified once the files are written
+     */
+    public void setExportWriter(ExportWriter exportWriter, ExportWriter.Listener exportListener) {
+        this.exportWriter = exportWriter;
+        this.exportListener = checkNotNull(exportListener);
+    }
+
+    /**
+     * Capture the image of a fingerprint and export it.
+     * Blocks until the Morpho device returns, must not be called on the UI Thread
+     *
+     * @param observer that will be notified in real time of the device acquisition
+     * @return the result of the capture
+     */
+    public ProcessResult execute(Observer observer) {
+        CallbackRecorder recorder = CallbackRecorder.startIfEnabled("image", observer);
+        try {
+            return getImage(recorder != null ? recorder : observer);
+        } finally {
+            CallbackRecorder.stop(recorder);
+        }
+    }
+
+    private ProcessResult getImage(Observer observer) {
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+
+        int timeOut = processInfo.getTimeout();
+        int acquisitionThreshold = 0;
+        final CompressionAlgorithm compressAlgo = CompressionAlgorithm.MORPHO_COMPRESS_WSQ;
+        int compressRate = 10;
+        int detectModeChoice = DetectionMode.MORPHO_ENROLL_DETECT_MODE.getValue();
+        LatentDetection latentDetection = LatentDetection.LATENT_DETECT_ENABLE;
+        final MorphoImage morphoImage = new MorphoImage();
+        int callbackCmd = processInfo.getCallbackCmd();
+
+        callbackCmd &= ~CallbackMask.MORPHO_CALLBACK_ENROLLMENT_CMD.getValue();
+
+        if(processInfo.isFingerprintQualityThreshold()) {
+            acquisitionThreshold = processInfo.getFingerprintQualityThresholdvalue();
+        }
+
+        long start = System.nanoTime();
+        final int ret = morphoDevice.getImage(timeOut, acquisitionThreshold,
+                compressAlgo,
+                compressRate,
+                detectModeChoice,
+                latentDetection,
+                morphoImage,
+                callbackCmd,
+                observer);
+
+        phaseRecorder.record(Phase.DEVICE_CALL, System.nanoTime() - start);
+        processInfo.setCommandBioStart(false);
+
+        start = System.nanoTime();
+        MorphoUtils.storeFFDLogs(morphoDevice, SensorSessionManager.getInstance().getSensorName(morphoDevice));
+        phaseRecorder.record(Phase.FFD_LOG_WRITE, System.nanoTime() - start);
+
+        if (ret == ErrorCodes.MORPHO_OK) {
+            start = System.nanoTime();
+            byte[] data = morphoImage.getCompressedImage();
+            export(Arrays.asList(
+                    templateStorage.getImageFile("TemplateFP_WSQ" + compressAlgo.getExtension(), data),
+                    templateStorage.getImageFile("TemplateFP_WSQ_newHeader" + compressAlgo.getExtension(),
+                            headerWriter.setNewHeader(data))));
+            phaseRecorder.record(Phase.EXPORT, System.nanoTime() - start);
+        }
+
+        return new ProcessResult(ret, morphoDevice.getInternalError());
+    }
+
+    private void export(List<ExportFile> files) {
+        if (exportWriter != null) {
+            exportWriter.submit(files, exportListener);
+        } else {
+            ExportWriter.writeNow(files, exportListener);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.famoco.morphodemo.fingerprint.template;
+
+import com.morpho.morphosmart.sdk.ITemplateType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * ISO/IEC 19794-2:2005 minutiae template, read in place : the header fields, finger views and
+ * minutiae are decoded on access from the buffer, which is neither copied nor modified.
+ * The whole structure is validated once, by {@link #parse(ByteBuffer, IsoTemplateFormat)}.
+ *
+ * Record layout (big endian) : 24 bytes header
+ * [0..3] "FMR\0", [4..7] " 20\0", [8..11] record length, [12..13] capture equipment,
+ * [14..15] width, [16..17] height, [18..19] X resolution, [20..21] Y resolution,
+ * [22] number of finger views, [23] reserved
+ * then for each finger view : [0] finger position, [1] view number and impression type,
+ * [2] finger quality, [3] number of minutiae, the minutiae, the extended data length (2 bytes)
+ * and the extended data.
+ *
+ * Card formats have a single finger view made of the minutiae only.
+ *
+ * @version DEMO
+ */
+public final class IsoTemplate {
+
+    /**
+     * Size of the header of a record
+     */
+    public static final int RECORD_HEADER_SIZE = 24;
+
+    /**
+     * Size of the header of a finger view of a record
+     */
+    public static final int VIEW_HEADER_SIZE = 4;
+
+    /**
+     * Highest finger position, 0 being an unknown finger
+     */
+    public static final int MAX_FINGER_POSITION = 10;
+
+    /**
+     * Highest finger and minutia quality, 0 being a quality not reported
+     */
+    public static final int MAX_QUALITY = 100;
+
+    public static final int MINUTIA_OTHER = 0;
+    public static final int MINUTIA_RIDGE_ENDING = 1;
+    public static final int MINUTIA_BIFURCATION = 2;
+
+    /**
+     * "FMR\0"
+     */
+    static final int FORMAT_IDENTIFIER = 0x464D5200;
+
+    /**
+     * " 20\0"
+     */
+    static final int VERSION_2005 = 0x20323000;
+
+    private final ByteBuffer buffer;
+    private final IsoTemplateFormat format;
+    private final int length;
+    private final int[] viewOffsets;
+    private final int[] viewMinutiae;
+
+    private IsoTemplate(ByteBuffer buffer, IsoTemplateFormat format, int length, int nbViews) {
+        this.buffer = buffer;
+        this.format = format;
+        this.length = length;
+        this.viewOffsets = new int[nbViews];
+        this.viewMinutiae = new int[nbViews];
+    }
+
+    /**
+     * Validate a template and read its structure
+     *
+     * @param data of the template, from its position to its limit, kept (not copied) by the IsoTemplate
+     * @param format of the template
+     * @return the template
+     * @throws TemplateFormatException if the content of data does not follow the format
+     */
+    public static IsoTemplate parse(ByteBuffer data, IsoTemplateFormat format) throws TemplateFormatException {
+        ByteBuffer buffer = data.slice().order(ByteOrder.BIG_ENDIAN);
+        if (format == IsoTemplateFormat.RECORD) {
+            return parseRecord(buffer);
+        }
+        return parseCard(buffer, format);
+    }
+
+    /**
+     * @param data of the template, kept (not copied) by the IsoTemplate
+     * @param templateType of the template
+     * @return the template
+     * @throws TemplateFormatException if templateType is not an ISO/IEC 19794-2:2005 type or
+     * the content of data does not follow it
+     */
+    public static IsoTemplate parse(byte[] data, ITemplateType templateType) throws TemplateFormatException {
+        IsoTemplateFormat format = IsoTemplateFormat.of(templateType);
+        if (format == null) {
+            throw new TemplateFormatException("Not an ISO/IEC 19794-2:2005 template : " + templateType);
+        }
+        return parse(ByteBuffer.wrap(data), format);
+    }
+
+    /**
+     * Check the structure of a template before sending it to the Morpho device
+     *
+     * @param data of the template
+     * @param templateType of the template, the templates of types other than ISO/IEC 19794-2:2005
+     * are not checked
+     * @throws TemplateFormatException if the content of data does not follow templateType
+     */
+    public static void validate(byte[] data, ITemplateType templateType) throws TemplateFormatException {
+        IsoTemplateFormat format = IsoTemplateFormat.of(templateType);
+        if (format != null) {
+            parse(ByteBuffer.wrap(data), format);
+        }
+    }
+
+    private static IsoTemplate parseCard(ByteBuffer buffer, IsoTemplateFormat format) throws TemplateFormatException {
+        int length = buffer.remaining();
+        int minutiaSize = format.getMinutiaSize();
+        if (length == 0 || length % minutiaSize != 0) {
+            throw new TemplateFormatException("Length " + length + " is not a number of minutiae of "
+                    + minutiaSize + " bytes");
+        }
+        IsoTemplate template = new IsoTemplate(buffer, format, length, 1);
+        template.viewMinutiae[0] = length / minutiaSize;
+        FingerView view = template.getFingerView(0);
+        for (int i = 0; i < view.getNbMinutiae(); i++) {
+            if (view.getMinutiaType(i) > MINUTIA_BIFURCATION) {
+                throw new TemplateFormatException("Reserved type of minutia " + i);
+            }
+        }
+        return template;
+    }
+
+    private static IsoTemplate parseRecord(ByteBuffer buffer) throws TemplateFormatException {
+        int length = buffer.remaining();
+        if (length < RECORD_HEADER_SIZE) {
+            throw new TemplateFormatException("Record of " + length + " bytes shorter than its header");
+        }
+        if (buffer.getInt(0) != FORMAT_IDENTIFIER) {
+            throw new TemplateFormatException("Not a finger minutiae record");
+        }
+        if (buffer.getInt(4) != VERSION_2005) {
+            throw new TemplateFormatException("Unsupported record version " + Integer.toHexString(buffer.getInt(4)));
+        }
+        if (buffer.getInt(8) != length) {
+            throw new TemplateFormatException("Record length " + buffer.getInt(8) + " instead of " + length);
+        }
+
+        IsoTemplate template = new IsoTemplate(buffer, IsoTemplateFormat.RECORD, length, buffer.get(22) & 0xFF);
+        int width = template.getImageWidth();
+        int height = template.getImageHeight();
+        int minutiaSize = IsoTemplateFormat.RECORD.getMinutiaSize();
+        int offset = RECORD_HEADER_SIZE;
+        for (int v = 0; v < template.viewOffsets.length; v++) {
+            if (offset + VIEW_HEADER_SIZE > length) {
+                throw new TemplateFormatException("Finger view " + v + " truncated at " + offset);
+            }
+            int nbMinutiae = buffer.get(offset + 3) & 0xFF;
+            template.viewOffsets[v] = offset;
+            template.viewMinutiae[v] = nbMinutiae;
+            FingerView view = template.getFingerView(v);
+            if (view.getFingerPosition() > MAX_FINGER_POSITION) {
+                throw new TemplateFormatException("Finger position " + view.getFingerPosition() + " of view " + v);
+            }
+            if (view.getQuality() > MAX_QUALITY) {
+                throw new TemplateFormatException("Quality " + view.getQuality() + " of view " + v);
+            }
+            // Minutiae then the length of the extended data
+            offset += VIEW_HEADER_SIZE + nbMinutiae * minutiaSize;
+            if (offset + 2 > length) {
+                throw new TemplateFormatException("Minutiae of view " + v + " truncated");
+            }
+            for (int i = 0; i < nbMinutiae; i++) {
+                if (view.getMinutiaType(i) > MINUTIA_BIFURCATION) {
+                    throw new TemplateFormatException("Reserved type of minutia " + i + " of view " + v);
+                }
+                if ((width != 0 && view.getMinutiaX(i) >= width) || (height != 0 && view.getMinutiaY(i) >= height)) {
+                    throw new TemplateFormatException("Minutia " + i + " of view " + v + " outside of the image");
+                }
+                if (view.getMinutiaQuality(i) > MAX_QUALITY) {
+                    throw new TemplateFormatException("Quality of minutia " + i + " of view " + v);
+                }
+            }
+            offset += 2 + (buffer.getShort(offset) & 0xFFFF);
+            if (offset > length) {
+                throw new TemplateFormatException("Extended data of view " + v + " truncated");
+            }
+        }
+        if (offset != length) {
+            throw new TemplateFormatException((length - offset) + " bytes after the last finger view");
+        }
+        return template;
+    }
+
+    public IsoTemplateFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the size of the template, in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the certification flags (4 bits) and the device type (12 bits) of the capture
+     * equipment, 0 for the card formats
+     */
+    public int getCaptureEquipment() {
+        return format == IsoTemplateFormat.RECORD ? buffer.getShort(12) & 0xFFFF : 0;
+    }
+
+    /**
+     * @return the width of the image, in pixels, 0 for the card formats
+     */
+    public int getImageWidth() {
+        return format == IsoTemplateFormat.RECORD ? buffer.getShort(14) & 0xFFFF : 0;
+    }
+
+    /**
+     * @return the height of the image, in pixels, 0 for the card formats
+     */
+    public int getImageHeight() {
+        return format == IsoTemplateFormat.RECORD ? buffer.getShort(16) & 0xFFFF : 0;
+    }
+
+    /**
+     * @return the horizontal resolution, in pixels per centimeter, 0 for the card formats
+     */
+    public int getResolutionX() {
+        return format == IsoTemplateFormat.RECORD ? buffer.getShort(18) & 0xFFFF : 0;
+    }
+
+    /**
+     * @return the vertical resolution, in pixels per centimeter, 0 for the card formats
+     */
+    public int getResolutionY() {
+        return format == IsoTemplateFormat.RECORD ? buffer.getShort(20) & 0xFFFF : 0;
+    }
+
+    public int getNbFingerViews() {
+        return viewOffsets.length;
+    }
+
+    /**
+     * @param index of the finger view
+     * @return a view over the finger view, reading the buffer of the template
+     */
+    public FingerView getFingerView(int index) {
+        checkElementIndex(index, viewOffsets.length);
+        return new FingerView(viewOffsets[index], viewMinutiae[index]);
+    }
+
+    @Override
+    public String toString() {
+        return format + " (" + length + " bytes, " + viewOffsets.length + " finger views)";
+    }
+
+    /**
+     * Finger view of an IsoTemplate, decoded on access
+     */
+    public final class FingerView {
+
+        private final int offset;
+        private final int nbMinutiae;
+        private final int minutiaeOffset;
+
+        private FingerView(int offset, int nbMinutiae) {
+            this.offset = offset;
+            this.nbMinutiae = nbMinutiae;
+            this.minutiaeOffset = format == IsoTemplateFormat.RECORD ? offset + VIEW_HEADER_SIZE : offset;
+        }
+
+        /**
+         * @return the finger position, from 1 (right thumb) to {@value #MAX_FINGER_POSITION},
+         * 0 if unknown or for the card formats
+         */
+        public int getFingerPosition() {
+            return format == IsoTemplateFormat.RECORD ? buffer.get(offset) & 0xFF : 0;
+        }
+
+        /**
+         * @return the view number of the finger, 0 for the card formats
+         */
+        public int getViewNumber() {
+            return format == IsoTemplateFormat.RECORD ? (buffer.get(offset + 1) >> 4) & 0x0F : 0;
+        }
+
+        /**
+         * @return the impression type, 0 (live-scan plain) for the card formats
+         */
+        public int getImpressionType() {
+            return format == IsoTemplateFormat.RECORD ? buffer.get(offset + 1) & 0x0F : 0;
+        }
+
+        /**
+         * @return the quality of the finger, from 1 to {@value #MAX_QUALITY},
+         * 0 if not reported or for the card formats
+         */
+        public int getQuality() {
+            return format == IsoTemplateFormat.RECORD ? buffer.get(offset + 2) & 0xFF : 0;
+        }
+
+        public int getNbMinutiae() {
+            return nbMinutiae;
+        }
+
+        /**
+         * @param index of the minutia
+         * @return {@link #MINUTIA_OTHER}, {@link #MINUTIA_RIDGE_ENDING} or {@link #MINUTIA_BIFURCATION}
+         */
+        public int getMinutiaType(int index) {
+            int at = minutiaOffset(index);
+            if (format == IsoTemplateFormat.CARD_COMPACT) {
+                return (buffer.get(at + 2) >> 6) & 0x03;
+            }
+            return (buffer.get(at) >> 6) & 0x03;
+        }
+
+        /**
+         * @param index of the minutia
+         * @return the horizontal position, in pixels, or in units of 0.01 mm for the normal card format
+         * and of 0.1 mm for the compact one
+         */
+        public int getMinutiaX(int index) {
+            int at = minutiaOffset(index);
+            if (format == IsoTemplateFormat.CARD_COMPACT) {
+                return buffer.get(at) & 0xFF;
+            }
+            return buffer.getShort(at) & 0x3FFF;
+        }
+
+        /**
+         * @param index of the minutia
+         * @return the vertical position, in pixels, or in units of 0.01 mm for the normal card format
+         * and of 0.1 mm for the compact one
+         */
+        public int getMinutiaY(int index) {
+            int at = minutiaOffset(index);
+            if (format == IsoTemplateFormat.CARD_COMPACT) {
+                return buffer.get(at + 1) & 0xFF;
+            }
+            return buffer.getShort(at + 2) & 0x3FFF;
+        }
+
+        /**
+         * @param index of the minutia
+         * @return the angle, in units of {@link IsoTemplateFormat#getAngleUnit()} degrees
+         */
+        public int getMinutiaAngle(int index) {
+            int at = minutiaOffset(index);
+            if (format == IsoTemplateFormat.CARD_COMPACT) {
+                return buffer.get(at + 2) & 0x3F;
+            }
+            return buffer.get(at + 4) & 0xFF;
+        }
+
+        /**
+         * @param index of the minutia
+         * @return the quality of the minutia, from 1 to {@value #MAX_QUALITY},
+         * 0 if not reported or for the card formats
+         */
+        public int getMinutiaQuality(int index) {
+            return format == IsoTemplateFormat.RECORD ? buffer.get(minutiaOffset(index) + 5) & 0xFF : 0;
+        }
+
+        private int minutiaOffset(int index) {
+            checkElementIndex(index, nbMinutiae);
+            return minutiaeOffset + index * format.getMinutiaSize();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.famoco.morphodemo.fingerprint.template;
+
+import com.morpho.morphosmart.sdk.ITemplateType;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+/**
+ * Encodings of the ISO/IEC 19794-2:2005 minutiae templates produced by the Morpho device
+ *
+ * @version DEMO
+ */
+public enum IsoTemplateFormat {
+
+    /**
+     * Finger minutiae record : record header, then for each finger view a view header,
+     * 6 bytes per minutia and an extended data block
+     */
+    RECORD(TemplateType.MORPHO_PK_ISO_FMR, 6, 360f / 256),
+
+    /**
+     * Card format, normal size : 5 bytes per minutia, no header
+     */
+    CARD_NORMAL(TemplateType.MORPHO_PK_ISO_FMC_NS, 5, 360f / 256),
+
+    /**
+     * Card format, compact size : 3 bytes per minutia, no header
+     */
+    CARD_COMPACT(TemplateType.MORPHO_PK_ISO_FMC_CS, 3, 360f / 64);
+
+    private final TemplateType templateType;
+    private final int minutiaSize;
+    private final float angleUnit;
+
+    IsoTemplateFormat(TemplateType templateType, int minutiaSize, float angleUnit) {
+        this.templateType = templateType;
+        this.minutiaSize = minutiaSize;
+        this.angleUnit = angleUnit;
+    }
+
+    public TemplateType getTemplateType() {
+        return templateType;
+    }
+
+    /**
+     * @return the size of one minutia, in bytes
+     */
+    public int getMinutiaSize() {
+        return minutiaSize;
+    }
+
+    /**
+     * @return the angle, in degrees, of one unit of the minutiae angles
+     */
+    public float getAngleUnit() {
+        return angleUnit;
+    }
+
+    /**
+     * @param templateType of a template
+     * @return the format of the templates of this type, or null if not an ISO/IEC 19794-2:2005 type
+     */
+    public static IsoTemplateFormat of(ITemplateType templateType) {
+        for (IsoTemplateFormat format : values()) {
+            if (format.templateType == templateType) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
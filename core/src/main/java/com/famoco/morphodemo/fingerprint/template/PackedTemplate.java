@@ -0,0 +1,384 @@
+package com.famoco.morphodemo.fingerprint.template;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lossless packing of the ISO/IEC 19794-2:2005 templates.
+ *
+ * The vertical position of each minutia is replaced by its difference with the previous one,
+ * written with a Rice code whose parameter is chosen for the template; the other fields of the
+ * minutiae and the headers of the record format are kept as they are, bit aligned. When the
+ * minutiae are in ascending order of their vertical position, as sorted by most extractors, the
+ * differences are positive and a packed template is 10 to 25% smaller, depending on the format
+ * and the number of minutiae. Otherwise the differences are signed, zigzag encoded (0, -1, 1,
+ * -2...), and the template is packed only if it is still smaller.
+ *
+ * Packed template : Rice parameter (1 byte, with {@link #SIGNED_STEPS} if the differences are
+ * signed), then for the card formats the number of minutiae (2 bytes) and the minutiae, for the
+ * record format its header then for each finger view its header, its minutiae and its extended
+ * data.
+ *
+ * @version DEMO
+ */
+public final class PackedTemplate {
+
+    private static final int MAX_RICE_PARAMETER = 13;
+
+    /**
+     * Flag of the first byte : the vertical steps are zigzag encoded
+     */
+    private static final int SIGNED_STEPS = 0x80;
+
+    private PackedTemplate() {
+    }
+
+    /**
+     * @param data of a template
+     * @param format of the template
+     * @return the packed template, or null if the template can not be packed in fewer bytes
+     * (not well formed, or minutiae too scattered)
+     */
+    public static byte[] pack(byte[] data, IsoTemplateFormat format) {
+        try {
+            IsoTemplate.parse(ByteBuffer.wrap(data), format);
+        } catch (TemplateFormatException e) {
+            return null;
+        }
+        boolean signed = !isSorted(data, format);
+        int riceParameter = riceParameter(data, format, signed);
+        BitWriter out = new BitWriter(data.length - 1);
+        out.write(signed ? riceParameter | SIGNED_STEPS : riceParameter, 8);
+        int size = format.getMinutiaSize();
+        if (format != IsoTemplateFormat.RECORD) {
+            int nbMinutiae = data.length / size;
+            if (nbMinutiae > 0xFFFF) {
+                return null;
+            }
+            out.write(nbMinutiae, 16);
+            packMinutiae(data, 0, nbMinutiae, format, riceParameter, signed, out);
+        } else {
+            out.copy(data, 0, IsoTemplate.RECORD_HEADER_SIZE);
+            int offset = IsoTemplate.RECORD_HEADER_SIZE;
+            for (int v = data[22] & 0xFF; v > 0; v--) {
+                int nbMinutiae = data[offset + 3] & 0xFF;
+                out.copy(data, offset, IsoTemplate.VIEW_HEADER_SIZE);
+                offset += IsoTemplate.VIEW_HEADER_SIZE;
+                packMinutiae(data, offset, nbMinutiae, format, riceParameter, signed, out);
+                offset += nbMinutiae * size;
+                int extended = 2 + ((data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF);
+                out.copy(data, offset, extended);
+                offset += extended;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param packed template returned by {@link #pack(byte[], IsoTemplateFormat)}
+     * @param format of the template
+     * @return the data of the template
+     * @throws TemplateFormatException if the packed template is truncated or corrupt
+     */
+    public static byte[] unpack(byte[] packed, IsoTemplateFormat format) throws TemplateFormatException {
+        BitReader in = new BitReader(packed);
+        int first = in.read(8);
+        boolean signed = (first & SIGNED_STEPS) != 0;
+        int riceParameter = first & ~SIGNED_STEPS;
+        if (riceParameter > MAX_RICE_PARAMETER) {
+            throw new TemplateFormatException("Rice parameter " + riceParameter);
+        }
+        int size = format.getMinutiaSize();
+        byte[] data;
+        if (format != IsoTemplateFormat.RECORD) {
+            int nbMinutiae = in.read(16);
+            data = new byte[nbMinutiae * size];
+            unpackMinutiae(in, data, 0, nbMinutiae, format, riceParameter, signed);
+        } else {
+            byte[] header = new byte[IsoTemplate.RECORD_HEADER_SIZE];
+            in.copy(header, 0, header.length);
+            int length = ByteBuffer.wrap(header).getInt(8);
+            if (length < header.length || length > packed.length * 16) {
+                throw new TemplateFormatException("Record length " + length);
+            }
+            data = new byte[length];
+            System.arraycopy(header, 0, data, 0, header.length);
+            int offset = header.length;
+            for (int v = data[22] & 0xFF; v > 0; v--) {
+                in.copy(data, offset, IsoTemplate.VIEW_HEADER_SIZE);
+                int nbMinutiae = data[offset + 3] & 0xFF;
+                offset += IsoTemplate.VIEW_HEADER_SIZE;
+                unpackMinutiae(in, data, offset, nbMinutiae, format, riceParameter, signed);
+                offset += nbMinutiae * size;
+                in.copy(data, offset, 2);
+                int extended = (data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF;
+                in.copy(data, offset + 2, extended);
+                offset += 2 + extended;
+            }
+            if (offset != length) {
+                throw new TemplateFormatException((length - offset) + " bytes missing in the packed record");
+            }
+        }
+        if (!in.isAtEnd()) {
+            throw new TemplateFormatException("Bytes after the packed template");
+        }
+        return data;
+    }
+
+    /**
+     * @return true if the minutiae of each finger view are in ascending order of their vertical
+     * position
+     */
+    private static boolean isSorted(byte[] data, IsoTemplateFormat format) {
+        int size = format.getMinutiaSize();
+        if (format != IsoTemplateFormat.RECORD) {
+            return isSorted(data, 0, data.length / size, format);
+        }
+        int offset = IsoTemplate.RECORD_HEADER_SIZE;
+        for (int v = data[22] & 0xFF; v > 0; v--) {
+            int nbMinutiae = data[offset + 3] & 0xFF;
+            offset += IsoTemplate.VIEW_HEADER_SIZE;
+            if (!isSorted(data, offset, nbMinutiae, format)) {
+                return false;
+            }
+            offset += nbMinutiae * size;
+            offset += 2 + ((data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF);
+        }
+        return true;
+    }
+
+    private static boolean isSorted(byte[] data, int offset, int nbMinutiae, IsoTemplateFormat format) {
+        int previous = 0;
+        for (int i = 0; i < nbMinutiae; i++) {
+            int y = readY(data, offset + i * format.getMinutiaSize(), format);
+            if (y < previous) {
+                return false;
+            }
+            previous = y;
+        }
+        return true;
+    }
+
+    /**
+     * @param signed true to zigzag encode the steps
+     * @return the Rice parameter giving the shortest code of the vertical steps of the minutiae
+     */
+    private static int riceParameter(byte[] data, IsoTemplateFormat format, boolean signed) {
+        long[] bits = new long[MAX_RICE_PARAMETER + 1];
+        int size = format.getMinutiaSize();
+        if (format != IsoTemplateFormat.RECORD) {
+            addSteps(data, 0, data.length / size, format, signed, bits);
+        } else {
+            int offset = IsoTemplate.RECORD_HEADER_SIZE;
+            for (int v = data[22] & 0xFF; v > 0; v--) {
+                int nbMinutiae = data[offset + 3] & 0xFF;
+                offset += IsoTemplate.VIEW_HEADER_SIZE;
+                addSteps(data, offset, nbMinutiae, format, signed, bits);
+                offset += nbMinutiae * size;
+                offset += 2 + ((data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF);
+            }
+        }
+        int best = 0;
+        for (int k = 1; k < bits.length; k++) {
+            if (bits[k] < bits[best]) {
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Add the length of the Rice codes of the vertical steps of minutiae, for each parameter
+     */
+    private static void addSteps(byte[] data, int offset, int nbMinutiae, IsoTemplateFormat format,
+                                 boolean signed, long[] bits) {
+        int previous = 0;
+        for (int i = 0; i < nbMinutiae; i++) {
+            int y = readY(data, offset + i * format.getMinutiaSize(), format);
+            int step = signed ? zigzag(y - previous) : y - previous;
+            for (int k = 0; k < bits.length; k++) {
+                bits[k] += (step >>> k) + 1 + k;
+            }
+            previous = y;
+        }
+    }
+
+    private static void packMinutiae(byte[] data, int offset, int nbMinutiae, IsoTemplateFormat format,
+                                     int riceParameter, boolean signed, BitWriter out) {
+        int size = format.getMinutiaSize();
+        int yOffset = yOffset(format);
+        int ySize = ySize(format);
+        int previous = 0;
+        for (int i = 0; i < nbMinutiae; i++, offset += size) {
+            int y = readY(data, offset, format);
+            out.writeRice(signed ? zigzag(y - previous) : y - previous, riceParameter);
+            previous = y;
+            out.copy(data, offset, yOffset);
+            out.copy(data, offset + yOffset + ySize, size - yOffset - ySize);
+        }
+    }
+
+    private static void unpackMinutiae(BitReader in, byte[] data, int offset, int nbMinutiae,
+                                       IsoTemplateFormat format, int riceParameter, boolean signed)
+            throws TemplateFormatException {
+        int size = format.getMinutiaSize();
+        int yOffset = yOffset(format);
+        int ySize = ySize(format);
+        int y = 0;
+        for (int i = 0; i < nbMinutiae; i++, offset += size) {
+            if (offset + size > data.length) {
+                throw new TemplateFormatException("Packed template longer than its data");
+            }
+            int step = in.readRice(riceParameter);
+            y += signed ? unzigzag(step) : step;
+            if (y < 0 || y >= 1 << (8 * ySize)) {
+                throw new TemplateFormatException("Vertical position " + y + " of minutia " + i);
+            }
+            in.copy(data, offset, yOffset);
+            if (ySize == 1) {
+                data[offset + yOffset] = (byte) y;
+            } else {
+                data[offset + yOffset] = (byte) (y >> 8);
+                data[offset + yOffset + 1] = (byte) y;
+            }
+            in.copy(data, offset + yOffset + ySize, size - yOffset - ySize);
+        }
+    }
+
+    /**
+     * @return the field holding the vertical position of a minutia, with the reserved bits of
+     * the record and normal card formats
+     */
+    private static int readY(byte[] data, int offset, IsoTemplateFormat format) {
+        int at = offset + yOffset(format);
+        return ySize(format) == 1 ? data[at] & 0xFF : (data[at] & 0xFF) << 8 | data[at + 1] & 0xFF;
+    }
+
+    /**
+     * @return the signed step mapped to 0, 1, 2... for 0, -1, 1...
+     */
+    private static int zigzag(int step) {
+        return step << 1 ^ step >> 31;
+    }
+
+    private static int unzigzag(int code) {
+        return code >>> 1 ^ -(code & 1);
+    }
+
+    private static int yOffset(IsoTemplateFormat format) {
+        return format == IsoTemplateFormat.CARD_COMPACT ? 1 : 2;
+    }
+
+    private static int ySize(IsoTemplateFormat format) {
+        return format == IsoTemplateFormat.CARD_COMPACT ? 1 : 2;
+    }
+
+    /**
+     * Bits written from the most significant, in an array of fixed capacity
+     */
+    private static final class BitWriter {
+
+        private final byte[] buffer;
+        private long position;
+        private boolean overflow;
+
+        BitWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void write(int value, int count) {
+            for (int bit = count - 1; bit >= 0; bit--) {
+                writeBit((value >>> bit) & 1);
+            }
+        }
+
+        void writeRice(int value, int riceParameter) {
+            for (int q = value >>> riceParameter; q > 0 && !overflow; q--) {
+                writeBit(1);
+            }
+            writeBit(0);
+            write(value, riceParameter);
+        }
+
+        void copy(byte[] data, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                write(data[offset + i] & 0xFF, 8);
+            }
+        }
+
+        private void writeBit(int bit) {
+            int index = (int) (position >>> 3);
+            if (index >= buffer.length) {
+                overflow = true;
+                return;
+            }
+            if (bit != 0) {
+                buffer[index] |= 0x80 >>> (position & 7);
+            }
+            position++;
+        }
+
+        /**
+         * @return the bytes written, or null if the capacity has been exceeded
+         */
+        byte[] toByteArray() {
+            if (overflow) {
+                return null;
+            }
+            byte[] bytes = new byte[(int) ((position + 7) >>> 3)];
+            System.arraycopy(buffer, 0, bytes, 0, bytes.length);
+            return bytes;
+        }
+    }
+
+    private static final class BitReader {
+
+        private final byte[] buffer;
+        private long position;
+
+        BitReader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int read(int count) throws TemplateFormatException {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                value = value << 1 | readBit();
+            }
+            return value;
+        }
+
+        int readRice(int riceParameter) throws TemplateFormatException {
+            int q = 0;
+            while (readBit() != 0) {
+                q++;
+            }
+            return q << riceParameter | read(riceParameter);
+        }
+
+        void copy(byte[] data, int offset, int length) throws TemplateFormatException {
+            if (offset + length > data.length) {
+                throw new TemplateFormatException("Packed template longer than its data");
+            }
+            for (int i = 0; i < length; i++) {
+                data[offset + i] = (byte) read(8);
+            }
+        }
+
+        /**
+         * @return true if only the padding of the last byte remains
+         */
+        boolean isAtEnd() {
+            return (position + 7) >>> 3 == buffer.length;
+        }
+
+        private int readBit() throws TemplateFormatException {
+            int index = (int) (position >>> 3);
+            if (index >= buffer.length) {
+                throw new TemplateFormatException("Packed template truncated");
+            }
+            int bit = (buffer[index] >>> (7 - (position & 7))) & 1;
+            position++;
+            return bit;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.famoco.morphodemo.fingerprint.template;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the content of a template does not follow its format
+ *
+ * @version DEMO
+ */
+public class TemplateFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TemplateFormatException(String message) {
+        super(message);
+    }
+}
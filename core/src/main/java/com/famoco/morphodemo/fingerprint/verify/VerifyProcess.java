@@ -0,0 +1,160 @@
+package com.famoco.morphodemo.fingerprint.verify;
+
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.device.SensorSessionManager;
+import com.famoco.morphodemo.device.replay.CallbackRecorder;
+import com.famoco.morphodemo.fingerprint.MorphoUtils;
+import com.famoco.morphodemo.fingerprint.ProcessResult;
+import com.famoco.morphodemo.fingerprint.template.TemplateFormatException;
+import com.famoco.morphodemo.metrics.Phase;
+import com.famoco.morphodemo.metrics.PhaseRecorder;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateCache;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.CallbackMask;
+import com.morpho.morphosmart.sdk.Coder;
+import com.morpho.morphosmart.sdk.DetectionMode;
+import com.morpho.morphosmart.sdk.FalseAcceptanceRate;
+import com.morpho.morphosmart.sdk.ResultMatching;
+import com.morpho.morphosmart.sdk.TemplateList;
+
+import java.io.IOException;
+import java.util.Observer;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Verification of a fingerprint against the stored templates of a user with the Morpho device
+ *
+ * @version DEMO
+ */
+public class VerifyProcess {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = VerifyProcess.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    private final MorphoDevicePort morphoDevice;
+    private final TemplateStorage templateStorage;
+    private PhaseRecorder phaseRecorder = PhaseRecorder.NONE;
+    private TemplateCache templateCache = TemplateCache.getInstance();
+
+    public VerifyProcess(MorphoDevicePort morphoDevice, TemplateStorage templateStorage) {
+        this.morphoDevice = checkNotNull(morphoDevice);
+        this.templateStorage = checkNotNull(templateStorage);
+    }
+
+    /**
+     * @param phaseRecorder receiving the duration of the phases of each execution
+     */
+    public void setPhaseRecorder(PhaseRecorder phaseRecorder) {
+        this.phaseRecorder = checkNotNull(phaseRecorder);
+    }
+
+    /**
+     * @param templateCache keeping the TemplateLists loaded, the shared one by default
+     */
+    public void setTemplateCache(TemplateCache templateCache) {
+        this.templateCache = checkNotNull(templateCache);
+    }
+
+    /**
+     * Read the stored templates of a user and build the TemplateList to verify against,
+     * unless the TemplateCache already has it. Corrupt templates are left out, without
+     * spending a sensor round-trip on them.
+     *
+     * @param userId owner of the templates
+     * @return the TemplateList, with the templates of every enrolled finger of the user,
+     * or null if the user has no template
+     * @throws IOException if the TemplateRepository can not be read
+     */
+    public TemplateList loadTemplateList(String userId) throws IOException {
+        TemplateRepository templateRepository = templateStorage.getRepository();
+        TemplateList templateList = templateCache.get(templateRepository, userId);
+        if (templateList != null) {
+            return templateList;
+        }
+
+        long generation = templateRepository.getGeneration();
+        long[] recordOffsets = templateRepository.getRecordOffsets(userId);
+        for (int finger = 1; finger <= TemplateRepository.NB_FINGERS; finger++) {
+            StoredTemplate storedTemplate = templateRepository.get(userId, finger);
+            if (storedTemplate != null && isWellFormed(storedTemplate)) {
+                if (templateList == null) {
+                    templateList = new TemplateList();
+                }
+                storedTemplate.putInto(templateList);
+            }
+        }
+        if (templateList != null) {
+            templateCache.put(templateRepository, generation, recordOffsets, userId, templateList);
+        }
+        return templateList;
+    }
+
+    private static boolean isWellFormed(StoredTemplate storedTemplate) {
+        try {
+            storedTemplate.validate();
+            return true;
+        } catch (TemplateFormatException e) {
+            LOGGER.warning("Corrupt template " + storedTemplate + " skipped : " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Verify a fingerprint against the templates of templateList.
+     * Blocks until the Morpho device returns, must not be called on the UI Thread
+     *
+     * @param templateList to verify against
+     * @param observer that will be notified in real time of the device acquisition
+     * @return the result of the verification
+     */
+    public ProcessResult execute(TemplateList templateList, Observer observer) {
+        CallbackRecorder recorder = CallbackRecorder.startIfEnabled("verify", observer);
+        try {
+            return verify(templateList, recorder != null ? recorder : observer);
+        } finally {
+            CallbackRecorder.stop(recorder);
+        }
+    }
+
+    private ProcessResult verify(TemplateList templateList, Observer observer) {
+        int timeOut = 0;
+        int far = FalseAcceptanceRate.MORPHO_FAR_5;
+        Coder coderChoice = Coder.MORPHO_DEFAULT_CODER;
+        int detectModeChoice = DetectionMode.MORPHO_ENROLL_DETECT_MODE.getValue();
+        int matchingStrategy = 0;
+
+        int callbackCmd = ProcessInfo.getInstance().getCallbackCmd();
+
+        callbackCmd &= ~CallbackMask.MORPHO_CALLBACK_ENROLLMENT_CMD.getValue();
+
+        ResultMatching resultMatching = new ResultMatching();
+
+        long start = System.nanoTime();
+        int ret = morphoDevice.setStrategyAcquisitionMode(ProcessInfo.getInstance().getStrategyAcquisitionMode());
+
+        if (ret == 0) {
+            ret = morphoDevice.verify(timeOut, far,
+                    coderChoice, detectModeChoice,
+                    matchingStrategy, templateList,
+                    callbackCmd, observer, resultMatching);
+        }
+
+        phaseRecorder.record(Phase.DEVICE_CALL, System.nanoTime() - start);
+        ProcessInfo.getInstance().setCommandBioStart(false);
+
+        start = System.nanoTime();
+        MorphoUtils.storeFFDLogs(morphoDevice, SensorSessionManager.getInstance().getSensorName(morphoDevice));
+        phaseRecorder.record(Phase.FFD_LOG_WRITE, System.nanoTime() - start);
+
+        return new ProcessResult(ret, morphoDevice.getInternalError());
+    }
+}
@@ -0,0 +1,73 @@
+package com.famoco.morphodemo.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Keeps every recorded latency to compute exact percentiles.
+ * Meant for benchmarks and diagnostics (8 bytes per sample)
+ *
+ * @version DEMO
+ */
+public class LatencyHistogram {
+
+    private long[] samples = new long[1024];
+    private int count;
+    private boolean sorted = true;
+
+    public synchronized void record(long durationNanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = durationNanos;
+        sorted = false;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the smallest recorded latency greater than or equal to the given percentage
+     * of the samples, 0 if nothing has been recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        sort();
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return samples[Math.max(0, Math.min(count, rank) - 1)];
+    }
+
+    public synchronized long getMax() {
+        if (count == 0) {
+            return 0;
+        }
+        sort();
+        return samples[count - 1];
+    }
+
+    public synchronized long getMean() {
+        if (count == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += samples[i];
+        }
+        return total / count;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        sorted = true;
+    }
+
+    private void sort() {
+        if (!sorted) {
+            Arrays.sort(samples, 0, count);
+            sorted = true;
+        }
+    }
+}
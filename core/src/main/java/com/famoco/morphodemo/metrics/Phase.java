@@ -0,0 +1,34 @@
+package com.famoco.morphodemo.metrics;
+
+/**
+ * Phases of a command sent to the Morpho device, from the request of the User
+ * to the update of the UI
+ *
+ * @version DEMO
+ */
+public enum Phase {
+    /**
+     * From the request to the start of the command on its background thread
+     */
+    QUEUE_WAIT,
+    /**
+     * Call to the Morpho device (acquisition, coding, matching)
+     */
+    DEVICE_CALL,
+    /**
+     * Append of the FFD logs to the audit file
+     */
+    FFD_LOG_WRITE,
+    /**
+     * Search of the captured finger among the templates of the other users
+     */
+    DUPLICATE_CHECK,
+    /**
+     * Export of the templates or images
+     */
+    EXPORT,
+    /**
+     * From the post of the result to its display on the UI Thread
+     */
+    UI_POST
+}
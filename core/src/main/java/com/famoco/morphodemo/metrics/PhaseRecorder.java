@@ -0,0 +1,25 @@
+package com.famoco.morphodemo.metrics;
+
+/**
+ * Receives the duration of each {@link Phase} of a command.
+ * Called on the thread of the command, implementations must be thread safe
+ *
+ * @version DEMO
+ */
+public interface PhaseRecorder {
+
+    /**
+     * Recorder doing nothing, used when no measure is required
+     */
+    PhaseRecorder NONE = new PhaseRecorder() {
+        @Override
+        public void record(Phase phase, long durationNanos) {
+        }
+    };
+
+    /**
+     * @param phase measured
+     * @param durationNanos duration of the phase in nanoseconds
+     */
+    void record(Phase phase, long durationNanos);
+}
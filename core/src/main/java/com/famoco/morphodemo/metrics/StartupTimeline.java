@@ -0,0 +1,114 @@
+package com.famoco.morphodemo.metrics;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Start and end of each step of the connection to the Morpho device, from the start of the
+ * app to the device ready for a first capture. Tells where the cold start time goes.
+ *
+ * Thread safe : the steps run on the thread of the device, the timeline is read by the UI
+ *
+ * @version DEMO
+ */
+public class StartupTimeline {
+
+    /**
+     * Steps of the connection, in order
+     */
+    public enum Step {
+        /**
+         * USB permission, including the dialog shown to the User the first time
+         */
+        PERMISSION,
+        /**
+         * Enumeration of the USB sensors
+         */
+        ENUMERATE,
+        /**
+         * Open of the sensor
+         */
+        OPEN,
+        /**
+         * Configuration of the sensor
+         */
+        CONFIGURE,
+        /**
+         * Read of the product descriptor
+         */
+        DESCRIPTOR
+    }
+
+    private static final long NOT_RECORDED = -1;
+
+    private final long originNanos;
+    private final long[] starts = new long[Step.values().length];
+    private final long[] ends = new long[Step.values().length];
+
+    /**
+     * Timeline whose origin is now
+     */
+    public StartupTimeline() {
+        this(System.nanoTime());
+    }
+
+    /**
+     * @param originNanos origin of the timeline, in {@link System#nanoTime()} time
+     */
+    public StartupTimeline(long originNanos) {
+        this.originNanos = originNanos;
+        Arrays.fill(starts, NOT_RECORDED);
+        Arrays.fill(ends, NOT_RECORDED);
+    }
+
+    public synchronized void begin(Step step) {
+        starts[step.ordinal()] = System.nanoTime() - originNanos;
+        ends[step.ordinal()] = NOT_RECORDED;
+    }
+
+    public synchronized void end(Step step) {
+        if (starts[step.ordinal()] != NOT_RECORDED) {
+            ends[step.ordinal()] = System.nanoTime() - originNanos;
+        }
+    }
+
+    /**
+     * @return the duration of the step in nanoseconds, or -1 if the step has not ended
+     */
+    public synchronized long getDurationNanos(Step step) {
+        long end = ends[step.ordinal()];
+        return end == NOT_RECORDED ? NOT_RECORDED : end - starts[step.ordinal()];
+    }
+
+    /**
+     * @return the end of the step since the origin in nanoseconds, or -1 if the step has not
+     * ended
+     */
+    public synchronized long getEndNanos(Step step) {
+        return ends[step.ordinal()];
+    }
+
+    /**
+     * @return the end of the last step ended since the origin in nanoseconds, 0 if none
+     */
+    public synchronized long getTotalNanos() {
+        long total = 0;
+        for (long end : ends) {
+            total = Math.max(total, end);
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Step step : Step.values()) {
+            long duration = getDurationNanos(step);
+            if (duration != NOT_RECORDED) {
+                builder.append(String.format(Locale.ROOT, "%s %.1f ms, ",
+                        step.name().toLowerCase(Locale.ROOT), duration / 1e6));
+            }
+        }
+        return builder.append(String.format(Locale.ROOT, "total %.1f ms", getTotalNanos() / 1e6)).toString();
+    }
+}
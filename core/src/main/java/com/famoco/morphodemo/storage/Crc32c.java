@@ -0,0 +1,61 @@
+package com.famoco.morphodemo.storage;
+
+/**
+ * CRC-32C (Castagnoli), as used by iSCSI and ext4 : better at detecting the burst errors of
+ * flash memory than the CRC-32 of java.util.zip, whose CRC32C is not available before Java 9.
+ *
+ * Computed by slices of 8 bytes with precomputed tables.
+ *
+ * @version DEMO
+ */
+final class Crc32c {
+
+    /**
+     * Reversed Castagnoli polynomial
+     */
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLES[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            for (int t = 1; t < TABLES.length; t++) {
+                TABLES[t][n] = (TABLES[t - 1][n] >>> 8) ^ TABLES[0][TABLES[t - 1][n] & 0xFF];
+            }
+        }
+    }
+
+    private Crc32c() {
+    }
+
+    /**
+     * @param data to check
+     * @param offset of the first byte
+     * @param length number of bytes
+     * @return the CRC-32C of the bytes
+     */
+    static int compute(byte[] data, int offset, int length) {
+        int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+        int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+        int crc = 0xFFFFFFFF;
+        int end = offset + length;
+        for (; offset + 8 <= end; offset += 8) {
+            int low = crc ^ ((data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8
+                    | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 24);
+            crc = t7[low & 0xFF] ^ t6[(low >>> 8) & 0xFF] ^ t5[(low >>> 16) & 0xFF] ^ t4[low >>> 24]
+                    ^ t3[data[offset + 4] & 0xFF] ^ t2[data[offset + 5] & 0xFF]
+                    ^ t1[data[offset + 6] & 0xFF] ^ t0[data[offset + 7] & 0xFF];
+        }
+        for (; offset < end; offset++) {
+            crc = (crc >>> 8) ^ t0[(crc ^ data[offset]) & 0xFF];
+        }
+        return ~crc;
+    }
+}
@@ -0,0 +1,52 @@
+package com.famoco.morphodemo.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Content of a file to export (template or image), written by {@link TemplateStorage}
+ * or later by an {@link ExportWriter}
+ *
+ * @version DEMO
+ */
+public final class ExportFile {
+
+    private final File file;
+    private final byte[] data;
+
+    /**
+     * @param file to write
+     * @param data content of the file, not copied : must not be modified afterwards
+     */
+    public ExportFile(File file, byte[] data) {
+        this.file = checkNotNull(file);
+        this.data = checkNotNull(data);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Write the content in the file, replacing the previous one
+     *
+     * @throws IOException if the file can not be written
+     */
+    public void write() throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(data);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + " (" + data.length + " bytes)";
+    }
+}
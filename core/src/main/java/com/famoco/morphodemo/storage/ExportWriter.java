@@ -0,0 +1,247 @@
+package com.famoco.morphodemo.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Background thread writing the exports of the captures (templates, WSQ images), so the
+ * thread of the Morpho device returns its result without waiting for the storage.
+ *
+ * The files of one capture are written together, in order, as one batch. When the queue is
+ * full the batch is written on the submitting thread : captures are slowed down but no export
+ * is lost.
+ *
+ * @version DEMO
+ */
+public class ExportWriter {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = ExportWriter.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Name of the writer thread
+     */
+    public static final String THREAD_NAME = "Export";
+
+    /**
+     * Maximum number of batches waiting for the storage
+     */
+    public static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * Maximum time waited by {@link #shutdown()} for the pending batches
+     */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Receives the outcome of a batch, on the thread which wrote it
+     */
+    public interface Listener {
+
+        /**
+         * Listener doing nothing, failures are still logged
+         */
+        Listener NONE = new Listener() {
+            @Override
+            public void onExportCompleted(List<ExportFile> files) {
+            }
+
+            @Override
+            public void onExportFailed(ExportFile file, IOException e) {
+            }
+        };
+
+        /**
+         * @param files all written
+         */
+        void onExportCompleted(List<ExportFile> files);
+
+        /**
+         * The files following the failed one in the batch are not written
+         *
+         * @param file which could not be written
+         * @param e cause of the failure
+         */
+        void onExportFailed(ExportFile file, IOException e);
+    }
+
+    private static ExportWriter mInstance = null;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Guards the counts of batches submitted and finished, waited on by {@link #flush()}
+     */
+    private final Object lock = new Object();
+    private long submitted;
+    private long finished;
+
+    public static synchronized ExportWriter getInstance() {
+        if (mInstance == null) {
+            mInstance = new ExportWriter(THREAD_NAME, DEFAULT_CAPACITY);
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param threadName name of the writer thread
+     * @param capacity maximum number of batches waiting for the writer
+     */
+    public ExportWriter(final String threadName, int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException(TAG + " has been shut down");
+                        }
+                        // Queue full : written by the submitter
+                        r.run();
+                    }
+                });
+    }
+
+    /**
+     * Queue the files of a capture
+     *
+     * @param files written in order
+     * @param listener notified once the batch is written or has failed
+     * @throws RejectedExecutionException if the writer has been shut down
+     */
+    public void submit(List<ExportFile> files, Listener listener) {
+        final List<ExportFile> batch = new ArrayList<>(checkNotNull(files));
+        final Listener batchListener = checkNotNull(listener);
+        synchronized (lock) {
+            submitted++;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    write(batch, batchListener);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (lock) {
+                submitted--;
+                lock.notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write the files of a capture on the current thread
+     *
+     * @param files written in order
+     * @param listener notified once the batch is written or has failed
+     * @return true if all the files have been written
+     */
+    public static boolean writeNow(List<ExportFile> files, Listener listener) {
+        for (ExportFile file : files) {
+            try {
+                LOGGER.fine("Writing " + file);
+                file.write();
+            } catch (IOException e) {
+                LOGGER.severe("An error has occurred while writing " + file + " : " + e.getMessage());
+                listener.onExportFailed(file, e);
+                return false;
+            }
+        }
+        listener.onExportCompleted(files);
+        return true;
+    }
+
+    /**
+     * Wait for the batches submitted before this call to be written.
+     * Must not be called from a {@link Listener}
+     */
+    public void flush() {
+        synchronized (lock) {
+            long target = submitted;
+            try {
+                while (finished < Math.min(target, submitted)) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Write the pending batches then stop the writer thread. Further submits are rejected
+     */
+    public void shutdown() {
+        executor.shutdown();
+        awaitTermination();
+    }
+
+    /**
+     * @return the number of batches waiting for the storage
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private void write(List<ExportFile> batch, Listener listener) {
+        try {
+            if (writeNow(batch, listener)) {
+                written.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+        } finally {
+            synchronized (lock) {
+                finished++;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void awaitTermination() {
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warning(executor.getQueue().size() + " exports still pending after shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.famoco.morphodemo.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Backup of the gallery of a directory in a single archive file, and its restoration.
+ *
+ * The archive holds the data file of the {@link TemplateRepository} and the template and image
+ * files exported by the app, one after the other, followed by a manifest giving the name, length
+ * and CRC-32 of each file. The contents are copied between the files by the channels (FileChannel
+ * transferTo / transferFrom) rather than through the heap; the CRC-32 are computed with a single
+ * buffer, reused for all the files, which also carries the files small enough to fit in it.
+ *
+ * The index of the repository is not archived, it is rebuilt from the data file on restore.
+ *
+ * @version DEMO
+ */
+public class GalleryBackup {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = GalleryBackup.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Extension of the archive files
+     */
+    public static final String EXTENSION = ".mbk";
+
+    /**
+     * Header : magic, version, reserved, creation time, number of templates, position of the
+     * manifest. The contents of the files follow, then the manifest
+     */
+    private static final int MAGIC = 0x4D42414B;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private final TemplateStorage templateStorage;
+
+    /**
+     * Reused to compute the CRC-32
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    public GalleryBackup(TemplateStorage templateStorage) {
+        this.templateStorage = checkNotNull(templateStorage);
+    }
+
+    /**
+     * Write the gallery of the directory of the storage in an archive, replaced once complete.
+     * Templates stored during the backup are not archived
+     *
+     * @param archive to write
+     * @return the manifest of the archive
+     * @throws IOException if the gallery can not be read or the archive written
+     */
+    public synchronized Manifest backup(File archive) throws IOException {
+        long start = System.nanoTime();
+        TemplateRepository repository = templateStorage.getRepository();
+        int templates = repository.size();
+        long dataLength = repository.syncedLength();
+        List<File> files = galleryFiles();
+        List<Entry> entries = new ArrayList<>(files.size() + 1);
+
+        File temporary = new File(archive.getPath() + TEMPORARY_EXTENSION);
+        Manifest manifest;
+        try (RandomAccessFile output = new RandomAccessFile(temporary, "rw")) {
+            output.setLength(0);
+            FileChannel target = output.getChannel();
+            target.position(HEADER_SIZE);
+            entries.add(archive(new File(templateStorage.getDirectory(), TemplateRepository.DATA_FILENAME),
+                    dataLength, target));
+            for (File file : files) {
+                entries.add(archive(file, file.length(), target));
+            }
+            manifest = new Manifest(System.currentTimeMillis(), templates, entries);
+            long manifestPosition = target.position();
+            write(target, ByteBuffer.wrap(manifest.encode()));
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(manifest.created)
+                    .putInt(templates).putLong(manifestPosition).flip();
+            target.position(0);
+            write(target, header);
+            target.force(false);
+        } catch (IOException e) {
+            temporary.delete();
+            throw e;
+        }
+        if (!temporary.renameTo(archive)) {
+            temporary.delete();
+            throw new IOException("Can not replace " + archive);
+        }
+        LOGGER.info("Backed up " + manifest + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        return manifest;
+    }
+
+    /**
+     * Append the beginning of a file to the archive. A file holding in the buffer of the
+     * checksum is written from it, a larger one is transferred by the channels
+     *
+     * @return the entry of the file
+     */
+    private Entry archive(File file, long length, FileChannel target) throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            FileChannel source = input.getChannel();
+            int crc = checksum(source, 0, length);
+            if (length <= buffer.capacity()) {
+                buffer.flip();
+                write(target, buffer);
+            } else {
+                long position = target.position();
+                transfer(source, 0, length, target);
+                target.position(position + length);
+            }
+            return new Entry(file.getName(), length, crc);
+        }
+    }
+
+    /**
+     * Restore the gallery of an archive in the directory of the storage, replacing the files of
+     * the same name. The archive is checked entirely before any file is replaced, the repository
+     * of the directory is closed, its index deleted, then its data file replaced at once
+     *
+     * @param archive to restore
+     * @return the manifest of the archive
+     * @throws IOException if the archive can not be read, is corrupt, or the files can not be written
+     */
+    public synchronized Manifest restore(File archive) throws IOException {
+        long start = System.nanoTime();
+        File directory = templateStorage.getDirectory();
+        try (RandomAccessFile input = new RandomAccessFile(archive, "r")) {
+            FileChannel source = input.getChannel();
+            Manifest manifest = Manifest.read(source);
+
+            long position = HEADER_SIZE;
+            for (Entry entry : manifest.entries) {
+                if (position + entry.length > manifest.position
+                        || checksum(source, position, entry.length) != entry.crc) {
+                    throw new IOException("Corrupt archive " + archive + " : " + entry.name);
+                }
+                position += entry.length;
+            }
+
+            // Under the lock of the repositories, so none is opened on a half restored directory
+            synchronized (TemplateRepository.class) {
+                templateStorage.getRepository().close();
+                // The index of the replaced data file must never be loaded against the restored one
+                File index = new File(directory, TemplateRepository.INDEX_FILENAME);
+                if (index.exists() && !index.delete()) {
+                    throw new IOException("Can not delete " + index);
+                }
+                position = HEADER_SIZE;
+                for (Entry entry : manifest.entries) {
+                    File file = new File(directory, entry.name);
+                    if (entry.name.equals(TemplateRepository.DATA_FILENAME)) {
+                        // Replaced at once, the repository is never left half restored
+                        File temporary = new File(directory, entry.name + TEMPORARY_EXTENSION);
+                        try {
+                            extract(source, position, entry.length, temporary, true);
+                        } catch (IOException e) {
+                            temporary.delete();
+                            throw e;
+                        }
+                        if (!temporary.renameTo(file)) {
+                            temporary.delete();
+                            throw new IOException("Can not replace " + file);
+                        }
+                    } else {
+                        extract(source, position, entry.length, file, false);
+                    }
+                    position += entry.length;
+                }
+            }
+            LOGGER.info("Restored " + manifest + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+            return manifest;
+        }
+    }
+
+    /**
+     * Write a range of the archive in a file, replacing its content
+     */
+    private static void extract(FileChannel source, long position, long length, File file, boolean force)
+            throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            FileChannel target = output.getChannel();
+            long transferred = 0;
+            while (transferred < length) {
+                source.position(position + transferred);
+                long count = target.transferFrom(source, transferred, length - transferred);
+                if (count <= 0) {
+                    throw new IOException("Unexpected end of archive");
+                }
+                transferred += count;
+            }
+            if (force) {
+                target.force(false);
+            }
+        }
+    }
+
+    /**
+     * @return the template and image files exported in the directory, in name order
+     */
+    private List<File> galleryFiles() throws IOException {
+        File[] files = templateStorage.getDirectory().listFiles();
+        if (files == null) {
+            throw new IOException("Can not list " + templateStorage.getDirectory());
+        }
+        Arrays.sort(files);
+        List<File> galleryFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile() && isGalleryFile(file.getName())) {
+                galleryFiles.add(file);
+            }
+        }
+        return galleryFiles;
+    }
+
+    private static boolean isGalleryFile(String name) {
+        return (name.startsWith(TemplateImporter.FP_PREFIX) || name.startsWith(TemplateImporter.FVP_PREFIX))
+                && !name.endsWith(TEMPORARY_EXTENSION);
+    }
+
+    /**
+     * @return the CRC-32 of a range of a file, the buffer holding the last part read
+     */
+    private int checksum(FileChannel channel, long position, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        long end = position + length;
+        buffer.clear().limit(0);
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            crc.update(buffer.array(), 0, buffer.position());
+            position += buffer.position();
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void transfer(FileChannel source, long position, long length, FileChannel target)
+            throws IOException {
+        long end = position + length;
+        while (position < end) {
+            long transferred = source.transferTo(position, end - position, target);
+            if (transferred <= 0 && position >= source.size()) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += transferred;
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * File of the archive
+     */
+    public static final class Entry {
+
+        private final String name;
+        private final long length;
+        private final int crc;
+
+        Entry(String name, long length, int crc) {
+            this.name = name;
+            this.length = length;
+            this.crc = crc;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the CRC-32 of the content
+         */
+        public int getCrc() {
+            return crc;
+        }
+    }
+
+    /**
+     * Content of an archive
+     */
+    public static final class Manifest {
+
+        private final long created;
+        private final int templates;
+        private final List<Entry> entries;
+
+        /**
+         * Position of the manifest in the archive, end of the contents
+         */
+        private long position;
+
+        Manifest(long created, int templates, List<Entry> entries) {
+            this.created = created;
+            this.templates = templates;
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * @return the time of the backup, in milliseconds since the epoch
+         */
+        public long getCreated() {
+            return created;
+        }
+
+        /**
+         * @return the number of templates of the repository archived
+         */
+        public int getTemplates() {
+            return templates;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return the total length of the files archived
+         */
+        public long getLength() {
+            long length = 0;
+            for (Entry entry : entries) {
+                length += entry.length;
+            }
+            return length;
+        }
+
+        /**
+         * @return the manifest, as written at the end of the archive
+         */
+        private byte[] encode() throws IOException {
+            ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(manifest);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.name);
+                out.writeLong(entry.length);
+                out.writeInt(entry.crc);
+            }
+            return manifest.toByteArray();
+        }
+
+        private static Manifest read(FileChannel channel) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            read(channel, header, 0);
+            if (header.getInt() != MAGIC || header.getShort() != VERSION) {
+                throw new IOException("Not a gallery backup of version " + VERSION);
+            }
+            header.getShort();
+            long created = header.getLong();
+            int templates = header.getInt();
+            long position = header.getLong();
+            if (position < HEADER_SIZE || position + 4 > channel.size()
+                    || channel.size() - position > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt manifest");
+            }
+            ByteBuffer manifest = ByteBuffer.allocate((int) (channel.size() - position));
+            read(channel, manifest, position);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(manifest.array()));
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long length = in.readLong();
+                if (name.isEmpty() || name.indexOf('/') >= 0 || name.indexOf(File.separatorChar) >= 0
+                        || name.equals("..") || length < 0) {
+                    throw new IOException("Corrupt manifest entry : " + name);
+                }
+                entries.add(new Entry(name, length, in.readInt()));
+            }
+            Manifest read = new Manifest(created, templates, entries);
+            read.position = position;
+            return read;
+        }
+
+        private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of archive");
+                }
+            }
+            buffer.flip();
+        }
+
+        @Override
+        public String toString() {
+            return entries.size() + " files (" + templates + " templates, " + getLength() + " bytes)";
+        }
+    }
+}
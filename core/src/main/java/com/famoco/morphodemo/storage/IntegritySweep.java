@@ -0,0 +1,164 @@
+package com.famoco.morphodemo.storage;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Background verification of the checksums of the template repository, on a thread of minimum
+ * priority : a few records every {@link #DEFAULT_PERIOD_MS}, then a pause of
+ * {@link #DEFAULT_PASS_INTERVAL_MS} between two passes over the whole repository. The records
+ * are locked batch by batch, so the captures are not held behind a whole pass.
+ *
+ * @version DEMO
+ */
+public class IntegritySweep {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = IntegritySweep.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Maximum number of records verified at once
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * Delay between two batches
+     */
+    public static final long DEFAULT_PERIOD_MS = 100;
+
+    /**
+     * Delay between the end of a pass and the start of the next one
+     */
+    public static final long DEFAULT_PASS_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private static IntegritySweep mInstance = null;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final int batchSize;
+    private final long periodMs;
+    private final long passIntervalMs;
+
+    private TemplateRepository repository;
+    private ScheduledFuture<?> task;
+    private TemplateRepository.Sweep sweep;
+    private long nextPassMs;
+    private int passes;
+    private int corrupt;
+
+    public static synchronized IntegritySweep getInstance() {
+        if (mInstance == null) {
+            mInstance = new IntegritySweep(DEFAULT_BATCH_SIZE, DEFAULT_PERIOD_MS, DEFAULT_PASS_INTERVAL_MS);
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param batchSize maximum number of records verified at once
+     * @param periodMs delay between two batches
+     * @param passIntervalMs delay between two passes over the repository
+     */
+    public IntegritySweep(int batchSize, long periodMs, long passIntervalMs) {
+        checkArgument(batchSize > 0, "batchSize must be positive");
+        checkArgument(periodMs > 0, "periodMs must be positive");
+        this.batchSize = batchSize;
+        this.periodMs = periodMs;
+        this.passIntervalMs = passIntervalMs;
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start sweeping a repository, replacing the one being swept
+     *
+     * @param repository to verify
+     */
+    public synchronized void start(TemplateRepository repository) {
+        checkNotNull(repository);
+        if (task != null && this.repository == repository) {
+            return;
+        }
+        stop();
+        this.repository = repository;
+        sweep = null;
+        nextPassMs = System.nanoTime() / 1000000L;
+        task = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                step();
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop sweeping, after the batch being verified
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * @return the number of passes completed over the repository
+     */
+    public synchronized int getPassCount() {
+        return passes;
+    }
+
+    /**
+     * @return the number of corrupt records found by the sweep
+     */
+    public synchronized int getCorruptCount() {
+        return corrupt;
+    }
+
+    /**
+     * Verify the next batch of records
+     */
+    private synchronized void step() {
+        if (task == null) {
+            return;
+        }
+        long now = System.nanoTime() / 1000000L;
+        if (now - nextPassMs < 0) {
+            return;
+        }
+        try {
+            if (sweep == null) {
+                sweep = repository.sweep();
+            }
+            int found = sweep.next(batchSize);
+            if (found < 0) {
+                sweep = null;
+                passes++;
+                nextPassMs = now + passIntervalMs;
+                LOGGER.fine("Pass " + passes + " completed, " + corrupt + " corrupt records");
+            } else {
+                corrupt += found;
+            }
+        } catch (IOException e) {
+            // Closed or unreadable repository : the next start will sweep it again
+            LOGGER.warning("Sweep stopped : " + e.getMessage());
+            stop();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.famoco.morphodemo.storage;
+
+import com.famoco.morphodemo.fingerprint.template.IsoTemplate;
+import com.famoco.morphodemo.fingerprint.template.IsoTemplateFormat;
+import com.famoco.morphodemo.fingerprint.template.PackedTemplate;
+import com.famoco.morphodemo.fingerprint.template.TemplateFormatException;
+import com.morpho.morphosmart.sdk.ITemplateType;
+import com.morpho.morphosmart.sdk.Template;
+import com.morpho.morphosmart.sdk.TemplateFVP;
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Template of one finger of a user, as kept by the {@link TemplateRepository}
+ *
+ * @version DEMO
+ */
+public final class StoredTemplate {
+
+    private final String userId;
+    private final int finger;
+    private final ITemplateType templateType;
+
+    /**
+     * Data of the template, unpacked on first access if read packed from the repository
+     */
+    private volatile byte[] data;
+    private final byte[] packed;
+
+    /**
+     * @param userId owner of the template
+     * @param finger index of the finger, from 1
+     * @param templateType TemplateType or TemplateFVPType of data
+     * @param data of the template, not copied
+     */
+    public StoredTemplate(String userId, int finger, ITemplateType templateType, byte[] data) {
+        this(userId, finger, templateType, checkNotNull(data), null);
+    }
+
+    private StoredTemplate(String userId, int finger, ITemplateType templateType, byte[] data, byte[] packed) {
+        this.userId = checkNotNull(userId);
+        this.finger = finger;
+        this.templateType = checkNotNull(templateType);
+        this.data = data;
+        this.packed = packed;
+    }
+
+    /**
+     * @param templateType ISO/IEC 19794-2:2005 type of the template
+     * @param packed template, as returned by {@link PackedTemplate#pack(byte[], IsoTemplateFormat)}
+     * @return a template read from the repository, its data unpacked on first access
+     */
+    static StoredTemplate packed(String userId, int finger, ITemplateType templateType, byte[] packed) {
+        checkArgument(IsoTemplateFormat.of(templateType) != null, "not an ISO template type");
+        return new StoredTemplate(userId, finger, templateType, null, checkNotNull(packed));
+    }
+
+    /**
+     * @return the packed data of a template read packed from the repository, null otherwise
+     */
+    byte[] getPacked() {
+        return packed;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public int getFinger() {
+        return finger;
+    }
+
+    public ITemplateType getTemplateType() {
+        return templateType;
+    }
+
+    /**
+     * @return the data of the template
+     * @throws IllegalStateException if the template was stored packed and can not be unpacked,
+     * which {@link #validate()} reports
+     */
+    public byte[] getData() {
+        try {
+            return unpacked();
+        } catch (TemplateFormatException e) {
+            throw new IllegalStateException("Corrupt packed template " + userId + "_f" + finger, e);
+        }
+    }
+
+    /**
+     * Check the structure of the data, for the ISO/IEC 19794-2:2005 template types
+     *
+     * @throws TemplateFormatException if the data does not follow the template type
+     */
+    public void validate() throws TemplateFormatException {
+        IsoTemplate.validate(unpacked(), templateType);
+    }
+
+    /**
+     * @return the structure of the data
+     * @throws TemplateFormatException if the data does not follow the template type, or it is
+     * not an ISO/IEC 19794-2:2005 type
+     */
+    public IsoTemplate parse() throws TemplateFormatException {
+        return IsoTemplate.parse(unpacked(), templateType);
+    }
+
+    private byte[] unpacked() throws TemplateFormatException {
+        byte[] unpacked = data;
+        if (unpacked == null) {
+            unpacked = PackedTemplate.unpack(packed, IsoTemplateFormat.of(templateType));
+            data = unpacked;
+        }
+        return unpacked;
+    }
+
+    /**
+     * Add the template to a TemplateList, as a Template or a TemplateFVP depending on its type
+     *
+     * @param templateList receiving the template
+     */
+    public void putInto(TemplateList templateList) {
+        if (templateType instanceof TemplateFVPType) {
+            TemplateFVP templateFVP = new TemplateFVP();
+            templateFVP.setData(getData());
+            templateFVP.setTemplateFVPType((TemplateFVPType) templateType);
+            templateList.putFVPTemplate(templateFVP);
+        } else {
+            Template template = new Template();
+            template.setData(getData());
+            template.setTemplateType((TemplateType) templateType);
+            templateList.putTemplate(template);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return userId + "_f" + finger + templateType.getExtension() + " ("
+                + (data != null ? data.length + " bytes)" : packed.length + " bytes packed)");
+    }
+}
@@ -0,0 +1,137 @@
+package com.famoco.morphodemo.storage;
+
+import com.morpho.morphosmart.sdk.TemplateList;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Least recently used TemplateLists of the users, ready to be sent to the Morpho device, so
+ * repeated verifications of the same user do not read the repository again.
+ *
+ * An entry is only valid for the repository it was read from, and while the records of the
+ * templates of its user are the ones read : storing, deleting or quarantining a template of the
+ * user invalidates it, the changes of the other users do not. The records are only looked up
+ * again once the generation of the repository has changed.
+ *
+ * @version DEMO
+ */
+public class TemplateCache {
+
+    /**
+     * Maximum number of users kept by the shared cache
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static TemplateCache mInstance = null;
+
+    private final Map<String, CachedList> entries;
+    private long hits;
+    private long misses;
+
+    public static synchronized TemplateCache getInstance() {
+        if (mInstance == null) {
+            mInstance = new TemplateCache(DEFAULT_CAPACITY);
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param capacity maximum number of users kept, 0 to disable the cache
+     */
+    public TemplateCache(final int capacity) {
+        checkArgument(capacity >= 0, "capacity must not be negative");
+        entries = new LinkedHashMap<String, CachedList>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedList> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param repository the templates are read from
+     * @param userId owner of the templates
+     * @return the TemplateList of the user, or null if not cached or outdated
+     * @throws IOException if the records of the user can not be looked up
+     */
+    public synchronized TemplateList get(TemplateRepository repository, String userId) throws IOException {
+        CachedList cached = entries.get(userId);
+        if (cached != null && cached.repository == repository && isCurrent(cached, repository, userId)) {
+            hits++;
+            return cached.templateList;
+        }
+        if (cached != null) {
+            entries.remove(userId);
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * @param repository the templates have been read from
+     * @param generation of the repository read before reading the templates
+     * @param recordOffsets of the templates of the user, read before reading them
+     * @param userId owner of the templates
+     * @param templateList of the user, must not be modified afterwards
+     */
+    public synchronized void put(TemplateRepository repository, long generation, long[] recordOffsets,
+                                 String userId, TemplateList templateList) {
+        entries.put(checkNotNull(userId), new CachedList(checkNotNull(repository), generation,
+                checkNotNull(recordOffsets), checkNotNull(templateList)));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Records of the user compared once the repository has changed, the entry then stays valid
+     * for the new generation
+     */
+    private static boolean isCurrent(CachedList cached, TemplateRepository repository, String userId)
+            throws IOException {
+        long generation = repository.getGeneration();
+        if (cached.generation == generation) {
+            return true;
+        }
+        if (!Arrays.equals(cached.recordOffsets, repository.getRecordOffsets(userId))) {
+            return false;
+        }
+        cached.generation = generation;
+        return true;
+    }
+
+    private static class CachedList {
+
+        private final TemplateRepository repository;
+        private long generation;
+        private final long[] recordOffsets;
+        private final TemplateList templateList;
+
+        CachedList(TemplateRepository repository, long generation, long[] recordOffsets,
+                   TemplateList templateList) {
+            this.repository = repository;
+            this.generation = generation;
+            this.recordOffsets = recordOffsets;
+            this.templateList = templateList;
+        }
+    }
+}
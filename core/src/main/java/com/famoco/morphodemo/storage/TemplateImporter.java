@@ -0,0 +1,429 @@
+package com.famoco.morphodemo.storage;
+
+import com.famoco.morphodemo.fingerprint.template.TemplateFormatException;
+import com.morpho.morphosmart.sdk.ITemplateType;
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bulk import of template files captured elsewhere into a {@link TemplateRepository}.
+ *
+ * The files are those exported by the app, named TemplateFP_&lt;user&gt;_f&lt;finger&gt;&lt;extension&gt;
+ * (or TemplateFVP_), found in a directory and its sub directories or in a zip archive. They are
+ * read, validated and hashed by batches, in parallel on a fixed pool of threads, then the batch
+ * is stored in a single write of the repository. A template whose content is already in the
+ * repository, or earlier in the import (in name order for a directory), is skipped.
+ *
+ * The import runs on the calling thread, which must not be the UI thread.
+ *
+ * @version DEMO
+ */
+public class TemplateImporter {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = TemplateImporter.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Number of files read, then stored, at once
+     */
+    public static final int BATCH_SIZE = 1024;
+
+    static final String FP_PREFIX = "TemplateFP_";
+    static final String FVP_PREFIX = "TemplateFVP_";
+    private static final String FINGER_SEPARATOR = "_f";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * Receives the progress of an import, on the importing thread
+     */
+    public interface Listener {
+
+        /**
+         * Listener doing nothing
+         */
+        Listener NONE = new Listener() {
+            @Override
+            public void onProgress(int processed, int total) {
+            }
+        };
+
+        /**
+         * Called after each batch stored
+         *
+         * @param processed number of files processed so far
+         * @param total number of files to process
+         */
+        void onProgress(int processed, int total);
+    }
+
+    private final TemplateRepository repository;
+    private final int threads;
+
+    /**
+     * @param repository receiving the templates
+     * @param threads reading and validating the files
+     */
+    public TemplateImporter(TemplateRepository repository, int threads) {
+        checkArgument(threads > 0, "threads must be positive");
+        this.repository = checkNotNull(repository);
+        this.threads = threads;
+    }
+
+    /**
+     * Import the template files of a directory or a zip archive
+     *
+     * @param source directory or zip archive containing the files
+     * @param listener notified of the progress
+     * @return the outcome of the import
+     * @throws IOException if the source can not be listed or the repository can not be written;
+     * the batches stored before stay in the repository
+     */
+    public Report importFrom(File source, Listener listener) throws IOException {
+        checkNotNull(listener);
+        long start = System.nanoTime();
+        if (source.isDirectory()) {
+            List<Entry> entries = new ArrayList<>();
+            listFiles(source, entries);
+            return importEntries(entries, listener, start);
+        }
+        if (!source.isFile()) {
+            throw new FileNotFoundException(source.getPath());
+        }
+        try (ZipFile zipFile = new ZipFile(source)) {
+            return importEntries(listEntries(zipFile), listener, start);
+        }
+    }
+
+    private Report importEntries(List<Entry> entries, Listener listener, long start) throws IOException {
+        Report report = new Report();
+        Set<ByteBuffer> digests = storedDigests();
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            for (int from = 0; from < entries.size(); from += BATCH_SIZE) {
+                List<Entry> batch = entries.subList(from, Math.min(from + BATCH_SIZE, entries.size()));
+                List<StoredTemplate> templates = new ArrayList<>(batch.size());
+                for (Parsed parsed : parse(executor, batch)) {
+                    if (parsed.template == null) {
+                        if (parsed.recognized) {
+                            report.invalid++;
+                        } else {
+                            report.ignored++;
+                        }
+                    } else if (!digests.add(parsed.digest)) {
+                        report.duplicates++;
+                    } else {
+                        templates.add(parsed.template);
+                    }
+                }
+                repository.putAll(templates);
+                report.imported += templates.size();
+                listener.onProgress(from + batch.size(), entries.size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        LOGGER.info("Imported " + report);
+        return report;
+    }
+
+    /**
+     * Read, validate and hash the files of a batch, the partitions of the batch in parallel
+     *
+     * @return the outcome of each file, in order
+     */
+    private List<Parsed> parse(ExecutorService executor, final List<Entry> batch) throws IOException {
+        int partitions = Math.max(1, Math.min(threads, batch.size()));
+        List<Future<List<Parsed>>> futures = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            final int from = (int) ((long) batch.size() * p / partitions);
+            final int to = (int) ((long) batch.size() * (p + 1) / partitions);
+            futures.add(executor.submit(new Callable<List<Parsed>>() {
+                @Override
+                public List<Parsed> call() {
+                    MessageDigest digest = newDigest();
+                    List<Parsed> parsed = new ArrayList<>(to - from);
+                    for (int i = from; i < to; i++) {
+                        parsed.add(parse(batch.get(i), digest));
+                    }
+                    return parsed;
+                }
+            }));
+        }
+        List<Parsed> results = new ArrayList<>(batch.size());
+        try {
+            for (Future<List<Parsed>> future : futures) {
+                results.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            for (Future<List<Parsed>> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(TAG + " interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    private static Parsed parse(Entry entry, MessageDigest digest) {
+        Parsed parsed = new Parsed();
+        StoredTemplate key = parseName(entry.getName());
+        if (key == null) {
+            return parsed;
+        }
+        parsed.recognized = true;
+        try {
+            StoredTemplate template = new StoredTemplate(key.getUserId(), key.getFinger(),
+                    key.getTemplateType(), entry.read());
+            template.validate();
+            parsed.template = template;
+            parsed.digest = ByteBuffer.wrap(digest.digest(template.getData()));
+        } catch (TemplateFormatException e) {
+            LOGGER.warning("Skipping " + entry.getName() + " : " + e.getMessage());
+        } catch (IOException e) {
+            LOGGER.warning("Can not read " + entry.getName() + " : " + e.getMessage());
+        }
+        return parsed;
+    }
+
+    /**
+     * @param path of a template file
+     * @return the user, finger and type of the template file, without data, or null if the
+     * name is not the one of a template file
+     */
+    static StoredTemplate parseName(String path) {
+        String name = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar)) + 1);
+        String prefix;
+        if (name.startsWith(FP_PREFIX)) {
+            prefix = FP_PREFIX;
+        } else if (name.startsWith(FVP_PREFIX)) {
+            prefix = FVP_PREFIX;
+        } else {
+            return null;
+        }
+        String extension = TemplateStorage.getFileExtension(name);
+        ITemplateType templateType = TemplateStorage.getTemplateTypeFromExtension(extension);
+        if (extension.isEmpty() || !templateType.getExtension().equalsIgnoreCase(extension)
+                || (templateType instanceof TemplateFVPType) != prefix.equals(FVP_PREFIX)) {
+            return null;
+        }
+        String key = name.substring(prefix.length(), name.length() - extension.length());
+        int separator = key.lastIndexOf(FINGER_SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+        int finger;
+        try {
+            finger = Integer.parseInt(key.substring(separator + FINGER_SEPARATOR.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (finger < 1 || finger > TemplateRepository.NB_FINGERS) {
+            return null;
+        }
+        return new StoredTemplate(key.substring(0, separator), finger, templateType, new byte[0]);
+    }
+
+    /**
+     * @return the digests of the templates already in the repository
+     */
+    private Set<ByteBuffer> storedDigests() throws IOException {
+        Set<ByteBuffer> digests = new HashSet<>();
+        MessageDigest digest = newDigest();
+        TemplateRepository.Cursor cursor = repository.cursor();
+        List<StoredTemplate> read;
+        while (!(read = cursor.next(BATCH_SIZE)).isEmpty()) {
+            for (StoredTemplate template : read) {
+                digests.add(ByteBuffer.wrap(digest.digest(template.getData())));
+            }
+        }
+        return digests;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " not available", e);
+        }
+    }
+
+    private static void listFiles(File directory, List<Entry> entries) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Can not list " + directory);
+        }
+        // In name order, so the first of duplicate templates kept does not depend on the file system
+        Arrays.sort(files);
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                listFiles(file, entries);
+            } else {
+                entries.add(new Entry() {
+                    @Override
+                    public String getName() {
+                        return file.getPath();
+                    }
+
+                    @Override
+                    public byte[] read() throws IOException {
+                        long length = file.length();
+                        if (length > Integer.MAX_VALUE) {
+                            throw new IOException(file + " of " + length + " bytes is not a template");
+                        }
+                        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                            byte[] data = new byte[(int) length];
+                            in.readFully(data);
+                            return data;
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    private static List<Entry> listEntries(final ZipFile zipFile) {
+        List<Entry> entries = new ArrayList<>(zipFile.size());
+        for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+            final ZipEntry zipEntry = e.nextElement();
+            if (zipEntry.isDirectory()) {
+                continue;
+            }
+            entries.add(new Entry() {
+                @Override
+                public String getName() {
+                    return zipEntry.getName();
+                }
+
+                @Override
+                public byte[] read() throws IOException {
+                    try (InputStream in = zipFile.getInputStream(zipEntry)) {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                                zipEntry.getSize() > 0 ? (int) zipEntry.getSize() : 512);
+                        byte[] buffer = new byte[4096];
+                        int read;
+                        while ((read = in.read(buffer)) >= 0) {
+                            out.write(buffer, 0, read);
+                        }
+                        return out.toByteArray();
+                    }
+                }
+            });
+        }
+        return entries;
+    }
+
+    /**
+     * File of a directory or entry of an archive
+     */
+    private interface Entry {
+
+        String getName();
+
+        byte[] read() throws IOException;
+    }
+
+    /**
+     * Outcome of a file : the template and its digest, or null if the file was not imported
+     */
+    private static final class Parsed {
+
+        boolean recognized;
+        StoredTemplate template;
+        ByteBuffer digest;
+    }
+
+    /**
+     * Counts of an import
+     */
+    public static final class Report {
+
+        private int imported;
+        private int duplicates;
+        private int invalid;
+        private int ignored;
+        private long elapsedNanos;
+
+        /**
+         * @return the number of templates stored
+         */
+        public int getImported() {
+            return imported;
+        }
+
+        /**
+         * @return the number of templates whose content was already stored
+         */
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return the number of template files which could not be read or are not well formed
+         */
+        public int getInvalid() {
+            return invalid;
+        }
+
+        /**
+         * @return the number of files not named as template files
+         */
+        public int getIgnored() {
+            return ignored;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return imported + " templates (" + duplicates + " duplicates, " + invalid + " invalid, "
+                    + ignored + " ignored) in " + elapsedNanos / 1000000 + " ms";
+        }
+    }
+}
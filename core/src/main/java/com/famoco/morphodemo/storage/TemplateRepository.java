@@ -0,0 +1,975 @@
+package com.famoco.morphodemo.storage;
+
+import com.famoco.morphodemo.fingerprint.template.IsoTemplateFormat;
+import com.famoco.morphodemo.fingerprint.template.PackedTemplate;
+import com.morpho.morphosmart.sdk.ITemplateType;
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Templates of all the enrolled users, one per user and finger.
+ *
+ * The templates are appended to a data file, never rewritten : a new enrollment of the same
+ * finger or a deletion appends a record superseding the previous one. The position of the
+ * current record of each (user, finger) is kept in a memory mapped hash table (open
+ * addressing, linear probing), so a lookup, an insertion or a deletion costs one probe of
+ * the table and one read or write of the data file, whatever the number of users.
+ *
+ * The data file is the reference : the index is rebuilt from it if missing or behind it
+ * (e.g. after a crash between the two writes). The records are forced to the storage before a
+ * store or a deletion returns, so a template reported as enrolled survives a power loss; the
+ * index is only forced by {@link #sync()}. {@link #putAll(List)} forces a whole batch at once.
+ *
+ * Each record ends with its CRC-32C, verified on the first read of the record and by
+ * {@link #sweep()}. A corrupt record is copied to {@value #QUARANTINE_FILENAME} and deleted, so
+ * it is never sent to the device for a match which can not succeed.
+ *
+ * @version DEMO
+ */
+public class TemplateRepository implements Closeable {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = TemplateRepository.class.getSimpleName();
+
+    private static final Logger LOGGER = Logger.getLogger(TAG);
+
+    /**
+     * Name of the file containing the records of the templates
+     */
+    public static final String DATA_FILENAME = "templates.dat";
+
+    /**
+     * Name of the file containing the index of the records
+     */
+    public static final String INDEX_FILENAME = "templates.idx";
+
+    /**
+     * Name of the file receiving the corrupt records, each preceded by its length
+     */
+    public static final String QUARANTINE_FILENAME = "templates.quarantine";
+
+    /**
+     * Number of fingers of a user, indexed from 1
+     */
+    public static final int NB_FINGERS = 10;
+
+    /**
+     * User and finger of the template file written before the repository
+     */
+    private static final String LEGACY_USER_ID = "test";
+    private static final int LEGACY_FINGER = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Data file : magic, version, then the records
+     */
+    private static final int DATA_MAGIC = 0x4D545044;
+    private static final int INDEX_MAGIC = 0x4D545049;
+    private static final short VERSION = 1;
+    private static final int DATA_HEADER_SIZE = 8;
+
+    /**
+     * Record : flags, encoding, template type, finger, user id length, user id,
+     * data length, data, then the CRC-32C of the record if {@link #FLAG_CHECKSUM}. The data of
+     * the ISO/IEC 19794-2:2005 templates is stored as a {@link PackedTemplate} when smaller, and
+     * unpacked when first accessed
+     */
+    private static final int RECORD_KEY_OFFSET = 7;
+    private static final int RECORD_FIXED_SIZE = RECORD_KEY_OFFSET + 4;
+    private static final int CHECKSUM_SIZE = 4;
+    static final int FLAG_DELETED = 0x01;
+    static final int FLAG_FVP = 0x02;
+    static final int FLAG_CHECKSUM = 0x04;
+    static final int ENCODING_RAW = 0;
+    static final int ENCODING_PACKED = 1;
+
+    /**
+     * Index : magic, version, capacity, size, deleted slots, committed length of the data file,
+     * then the slots : hash of the key, offset and length of the record, state
+     */
+    private static final int INDEX_HEADER_SIZE = 32;
+    private static final int INDEX_CAPACITY = 8;
+    private static final int INDEX_SIZE = 12;
+    private static final int INDEX_DELETED = 16;
+    private static final int INDEX_COMMITTED = 24;
+    private static final int SLOT_SIZE = 24;
+    private static final int SLOT_OFFSET = 8;
+    private static final int SLOT_LENGTH = 16;
+    private static final int SLOT_STATE = 20;
+    private static final int STATE_EMPTY = 0;
+    private static final int STATE_USED = 1;
+    private static final int STATE_DELETED = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static TemplateRepository mInstance = null;
+
+    private final File directory;
+    private final RandomAccessFile dataFile;
+    private final FileChannel dataChannel;
+    private final RandomAccessFile indexFile;
+    private final FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int size;
+    private int deleted;
+    private long dataLength;
+
+    /**
+     * Incremented each time the slots are reallocated, invalidating the cursors
+     */
+    private int layout;
+
+    /**
+     * Incremented by each template stored or deleted
+     */
+    private long generation;
+
+    /**
+     * Slots whose record has been checked against its CRC-32C since the repository was opened
+     */
+    private final BitSet verified = new BitSet();
+
+    /**
+     * Number of corrupt records quarantined since the repository was opened
+     */
+    private int quarantined;
+
+    /**
+     * @param directory containing the repository
+     * @return the repository of the directory, opened on first call
+     * @throws IOException if the repository can not be opened
+     */
+    public static synchronized TemplateRepository getInstance(File directory) throws IOException {
+        if (mInstance == null || !mInstance.directory.equals(directory) || !mInstance.dataChannel.isOpen()) {
+            if (mInstance != null) {
+                mInstance.close();
+                mInstance = null;
+            }
+            mInstance = open(directory);
+        }
+        return mInstance;
+    }
+
+    /**
+     * Open the repository of a directory, created if needed. A template file of the previous
+     * versions of the app found in the directory is imported into a new repository
+     *
+     * @param directory containing the repository
+     * @return the repository
+     * @throws IOException if the repository can not be opened
+     */
+    public static TemplateRepository open(File directory) throws IOException {
+        TemplateRepository repository = new TemplateRepository(checkNotNull(directory));
+        try {
+            repository.importLegacyTemplate();
+        } catch (IOException e) {
+            repository.close();
+            throw e;
+        }
+        return repository;
+    }
+
+    private TemplateRepository(File directory) throws IOException {
+        this.directory = directory;
+        dataFile = new RandomAccessFile(new File(directory, DATA_FILENAME), "rw");
+        dataChannel = dataFile.getChannel();
+        indexFile = new RandomAccessFile(new File(directory, INDEX_FILENAME), "rw");
+        indexChannel = indexFile.getChannel();
+        try {
+            openData();
+            if (!loadIndex()) {
+                LOGGER.info("Rebuilding the index of " + directory);
+                createIndex(INITIAL_CAPACITY);
+                replay(DATA_HEADER_SIZE);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of (user, finger) having a template
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a number changing each time a template is stored or deleted
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param userId owner of the template
+     * @param finger index of the finger, from 1 to {@value #NB_FINGERS}
+     * @return true if the finger of the user has a template
+     * @throws IOException if the repository can not be read
+     */
+    public synchronized boolean contains(String userId, int finger) throws IOException {
+        return findSlot(hash(userId, finger), userId, finger) >= 0;
+    }
+
+    /**
+     * @param userId owner of the templates
+     * @return true if at least one finger of the user has a template
+     * @throws IOException if the repository can not be read
+     */
+    public synchronized boolean contains(String userId) throws IOException {
+        for (int finger = 1; finger <= NB_FINGERS; finger++) {
+            if (contains(userId, finger)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param userId owner of the template
+     * @param finger index of the finger, from 1 to {@value #NB_FINGERS}
+     * @return the template of the finger of the user, or null if none
+     * @throws IOException if the repository can not be read
+     */
+    public synchronized StoredTemplate get(String userId, int finger) throws IOException {
+        int slot = findSlot(hash(userId, finger), userId, finger);
+        if (slot < 0) {
+            return null;
+        }
+        return decodeVerified(slot);
+    }
+
+    /**
+     * @param userId owner of the templates
+     * @return for each finger (index finger - 1), the position of the record of its template in
+     * the data file, or -1 if none. A template stored again, deleted or quarantined changes it
+     * @throws IOException if the repository can not be read
+     */
+    public synchronized long[] getRecordOffsets(String userId) throws IOException {
+        long[] offsets = new long[NB_FINGERS];
+        for (int finger = 1; finger <= NB_FINGERS; finger++) {
+            int slot = findSlot(hash(userId, finger), userId, finger);
+            offsets[finger - 1] = slot >= 0 ? slotOffset(slot) : -1;
+        }
+        return offsets;
+    }
+
+    /**
+     * @return the number of corrupt records quarantined since the repository was opened
+     */
+    public synchronized int getQuarantinedCount() {
+        return quarantined;
+    }
+
+    /**
+     * Store the template of a finger of a user, replacing the previous one
+     *
+     * @param template to store
+     * @throws IOException if the repository can not be written
+     */
+    public synchronized void put(StoredTemplate template) throws IOException {
+        String userId = template.getUserId();
+        int finger = template.getFinger();
+        long hash = hash(userId, finger);
+        int slot = findSlot(hash, userId, finger);
+
+        long offset = dataLength;
+        int length = append(encode(template, 0));
+        dataChannel.force(false);
+        if (slot >= 0) {
+            writeSlot(slot, hash, offset, length, STATE_USED);
+        } else {
+            insert(hash, offset, length);
+        }
+        generation++;
+        commit();
+    }
+
+    /**
+     * Store templates at once, each replacing the previous one of its user and finger : the
+     * records are appended in a single write and the index is committed once, after all of them
+     *
+     * @param templates to store, a later one replacing an earlier one of the same user and finger
+     * @throws IOException if the repository can not be written
+     */
+    public synchronized void putAll(List<StoredTemplate> templates) throws IOException {
+        if (templates.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] records = new ByteBuffer[templates.size()];
+        long[] hashes = new long[records.length];
+        int total = 0;
+        for (int i = 0; i < records.length; i++) {
+            StoredTemplate template = templates.get(i);
+            hashes[i] = hash(template.getUserId(), template.getFinger());
+            records[i] = encode(template, 0);
+            total += records[i].remaining();
+        }
+        ByteBuffer batch = ByteBuffer.allocate(total);
+        for (ByteBuffer record : records) {
+            batch.put(record.duplicate());
+        }
+        batch.flip();
+        long offset = dataLength;
+        append(batch);
+        dataChannel.force(false);
+
+        // The records are written, so the keys are compared against them by findSlot
+        for (int i = 0; i < records.length; i++) {
+            StoredTemplate template = templates.get(i);
+            int slot = findSlot(hashes[i], template.getUserId(), template.getFinger());
+            int length = records[i].remaining();
+            if (slot >= 0) {
+                writeSlot(slot, hashes[i], offset, length, STATE_USED);
+            } else {
+                insert(hashes[i], offset, length);
+            }
+            offset += length;
+        }
+        generation += records.length;
+        commit();
+    }
+
+    /**
+     * Delete the template of a finger of a user
+     *
+     * @param userId owner of the template
+     * @param finger index of the finger, from 1 to {@value #NB_FINGERS}
+     * @return true if the finger of the user had a template
+     * @throws IOException if the repository can not be written
+     */
+    public synchronized boolean delete(String userId, int finger) throws IOException {
+        long hash = hash(userId, finger);
+        int slot = findSlot(hash, userId, finger);
+        if (slot < 0) {
+            return false;
+        }
+        append(encode(new StoredTemplate(userId, finger, TemplateType.MORPHO_NO_PK_FP, new byte[0]),
+                FLAG_DELETED));
+        dataChannel.force(false);
+        remove(slot);
+        generation++;
+        commit();
+        return true;
+    }
+
+    /**
+     * @return a cursor over the templates of all the users, in no particular order
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * @return a sweep verifying the checksums of the records not read yet
+     */
+    public Sweep sweep() {
+        return new Sweep();
+    }
+
+    /**
+     * Force the pending writes to the storage
+     *
+     * @throws IOException if the repository can not be written
+     */
+    public synchronized void sync() throws IOException {
+        dataChannel.force(false);
+        if (index != null) {
+            index.force();
+        }
+    }
+
+    /**
+     * Force the pending writes to the storage. The records being only appended, the data file
+     * up to the returned length stays a consistent copy of the repository, whatever is stored
+     * afterwards
+     *
+     * @return the length of the data file written
+     * @throws IOException if the repository can not be written
+     */
+    public synchronized long syncedLength() throws IOException {
+        sync();
+        return dataLength;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (dataChannel.isOpen() && index != null) {
+                sync();
+            }
+        } finally {
+            index = null;
+            dataFile.close();
+            indexFile.close();
+        }
+    }
+
+    /**
+     * Import the template file of the previous versions of the app in a new repository
+     */
+    private void importLegacyTemplate() throws IOException {
+        TemplateStorage templateStorage = new TemplateStorage(directory);
+        if (dataLength == DATA_HEADER_SIZE && templateStorage.templateExists()) {
+            File file = templateStorage.getTemplateFile();
+            LOGGER.info("Importing " + file);
+            put(new StoredTemplate(LEGACY_USER_ID, LEGACY_FINGER,
+                    TemplateStorage.getTemplateTypeFromExtension(TemplateStorage.getFileExtension(file.getName())),
+                    templateStorage.readTemplate(file)));
+        }
+    }
+
+    private void openData() throws IOException {
+        if (dataChannel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_SIZE);
+            header.putInt(DATA_MAGIC).putShort(VERSION).putShort((short) 0).flip();
+            write(header, 0);
+        } else {
+            ByteBuffer header = read(0, DATA_HEADER_SIZE);
+            if (header.getInt() != DATA_MAGIC || header.getShort() != VERSION) {
+                throw new IOException(DATA_FILENAME + " is not a template repository of version " + VERSION);
+            }
+        }
+        dataLength = dataChannel.size();
+    }
+
+    /**
+     * Map the index file if it matches the data file, replaying the records appended after it
+     *
+     * @return false if the index must be rebuilt
+     */
+    private boolean loadIndex() throws IOException {
+        long length = indexChannel.size();
+        if (length < INDEX_HEADER_SIZE) {
+            return false;
+        }
+        MappedByteBuffer mapped = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        int mappedCapacity = mapped.getInt(INDEX_CAPACITY);
+        long committed = mapped.getLong(INDEX_COMMITTED);
+        if (mapped.getInt(0) != INDEX_MAGIC || mapped.getInt(4) != VERSION
+                || mappedCapacity <= 0 || Integer.bitCount(mappedCapacity) != 1
+                || length != INDEX_HEADER_SIZE + (long) mappedCapacity * SLOT_SIZE
+                || committed < DATA_HEADER_SIZE || committed > dataLength) {
+            return false;
+        }
+        index = mapped;
+        capacity = mappedCapacity;
+        size = mapped.getInt(INDEX_SIZE);
+        deleted = mapped.getInt(INDEX_DELETED);
+        if (committed < dataLength) {
+            LOGGER.info("Replaying " + (dataLength - committed) + " bytes not indexed");
+            replay(committed);
+        }
+        return true;
+    }
+
+    /**
+     * Replace the index by an empty one, left uncommitted : an index whose slots are not all
+     * written yet is rebuilt by the next open instead of being trusted
+     */
+    private void createIndex(int newCapacity) throws IOException {
+        index = null;
+        indexChannel.truncate(0);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                INDEX_HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(INDEX_CAPACITY, newCapacity);
+        capacity = newCapacity;
+        size = 0;
+        deleted = 0;
+        layout++;
+        verified.clear();
+        index.putLong(INDEX_COMMITTED, 0);
+    }
+
+    /**
+     * Index the records of the data file from a position. A truncated last record
+     * (interrupted append) is dropped
+     */
+    private void replay(long position) throws IOException {
+        while (position < dataLength) {
+            if (dataLength - position < RECORD_FIXED_SIZE) {
+                truncate(position);
+                break;
+            }
+            ByteBuffer header = read(position, RECORD_KEY_OFFSET);
+            int flags = header.get(0);
+            int finger = header.get(4);
+            int keyLength = header.getShort(5) & 0xFFFF;
+            long dataLengthOffset = position + RECORD_KEY_OFFSET + keyLength;
+            if (dataLengthOffset + 4 > dataLength) {
+                truncate(position);
+                break;
+            }
+            long recordLength = RECORD_FIXED_SIZE + keyLength + (read(dataLengthOffset, 4).getInt() & 0xFFFFFFFFL)
+                    + ((flags & FLAG_CHECKSUM) != 0 ? CHECKSUM_SIZE : 0);
+            if (position + recordLength > dataLength) {
+                truncate(position);
+                break;
+            }
+
+            String userId = new String(read(position + RECORD_KEY_OFFSET, keyLength).array(), UTF_8);
+            long hash = hash(userId, finger);
+            int slot = findSlot(hash, userId, finger);
+            if ((flags & FLAG_DELETED) != 0) {
+                if (slot >= 0) {
+                    remove(slot);
+                }
+            } else if (slot >= 0) {
+                writeSlot(slot, hash, position, (int) recordLength, STATE_USED);
+            } else {
+                insert(hash, position, (int) recordLength);
+            }
+            position += recordLength;
+        }
+        commit();
+    }
+
+    private void truncate(long position) throws IOException {
+        LOGGER.warning("Dropping the truncated record at " + position + " of " + DATA_FILENAME);
+        dataChannel.truncate(position);
+        dataLength = position;
+    }
+
+    /**
+     * @return the slot of the key, or -1 if the key is not indexed
+     */
+    private int findSlot(long hash, String userId, int finger) throws IOException {
+        int mask = capacity - 1;
+        for (int i = start(hash), probes = 0; probes < capacity; i = (i + 1) & mask, probes++) {
+            int state = slotState(i);
+            if (state == STATE_EMPTY) {
+                return -1;
+            }
+            if (state == STATE_USED && index.getLong(slotPosition(i)) == hash
+                    && matches(read(slotOffset(i), slotLength(i)), userId, finger)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Index a key known to be absent
+     */
+    private void insert(long hash, long offset, int length) throws IOException {
+        if ((size + deleted + 1) * 4L > capacity * 3L) {
+            resize(size * 2L >= capacity ? capacity * 2 : capacity);
+        }
+        int mask = capacity - 1;
+        int i = start(hash);
+        while (slotState(i) == STATE_USED) {
+            i = (i + 1) & mask;
+        }
+        if (slotState(i) == STATE_DELETED) {
+            deleted--;
+        }
+        writeSlot(i, hash, offset, length, STATE_USED);
+        size++;
+    }
+
+    private void remove(int slot) {
+        index.putInt(slotPosition(slot) + SLOT_STATE, STATE_DELETED);
+        verified.clear(slot);
+        size--;
+        deleted++;
+    }
+
+    /**
+     * Rehash the used slots in a new table, dropping the deleted ones
+     */
+    private void resize(int newCapacity) throws IOException {
+        // Records appended but not inserted yet stay out of the committed length
+        long committed = index.getLong(INDEX_COMMITTED);
+        long[] hashes = new long[size];
+        long[] offsets = new long[size];
+        int[] lengths = new int[size];
+        int n = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (slotState(i) == STATE_USED) {
+                hashes[n] = index.getLong(slotPosition(i));
+                offsets[n] = slotOffset(i);
+                lengths[n] = slotLength(i);
+                n++;
+            }
+        }
+        createIndex(newCapacity);
+        int mask = capacity - 1;
+        for (int k = 0; k < n; k++) {
+            int i = start(hashes[k]);
+            while (slotState(i) != STATE_EMPTY) {
+                i = (i + 1) & mask;
+            }
+            writeSlot(i, hashes[k], offsets[k], lengths[k], STATE_USED);
+        }
+        size = n;
+        index.putInt(INDEX_SIZE, size);
+        index.putInt(INDEX_DELETED, deleted);
+        index.putLong(INDEX_COMMITTED, committed);
+    }
+
+    private void commit() {
+        index.putInt(INDEX_SIZE, size);
+        index.putInt(INDEX_DELETED, deleted);
+        index.putLong(INDEX_COMMITTED, dataLength);
+    }
+
+    private int start(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+    }
+
+    private int slotPosition(int slot) {
+        return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private int slotState(int slot) {
+        return index.getInt(slotPosition(slot) + SLOT_STATE);
+    }
+
+    private long slotOffset(int slot) {
+        return index.getLong(slotPosition(slot) + SLOT_OFFSET);
+    }
+
+    private int slotLength(int slot) {
+        return index.getInt(slotPosition(slot) + SLOT_LENGTH);
+    }
+
+    private void writeSlot(int slot, long hash, long offset, int length, int state) {
+        int position = slotPosition(slot);
+        index.putLong(position, hash);
+        index.putLong(position + SLOT_OFFSET, offset);
+        index.putInt(position + SLOT_LENGTH, length);
+        index.putInt(position + SLOT_STATE, state);
+        verified.clear(slot);
+    }
+
+    private static long hash(String userId, int finger) {
+        checkNotNull(userId);
+        checkArgument(finger >= 1 && finger <= NB_FINGERS, "finger must be in [1, " + NB_FINGERS + "]");
+        // FNV-1a 64 bits
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : userId.getBytes(UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return (hash ^ finger) * 0x100000001b3L;
+    }
+
+    private static ByteBuffer encode(StoredTemplate template, int flags) {
+        byte[] key = template.getUserId().getBytes(UTF_8);
+        checkArgument(key.length <= 0xFFFF, "user id too long");
+        ITemplateType templateType = template.getTemplateType();
+        if (templateType instanceof TemplateFVPType) {
+            flags |= FLAG_FVP;
+        }
+        int encoding = ENCODING_PACKED;
+        byte[] data = template.getPacked();
+        if (data == null && (flags & FLAG_DELETED) == 0) {
+            IsoTemplateFormat format = IsoTemplateFormat.of(templateType);
+            data = format != null ? PackedTemplate.pack(template.getData(), format) : null;
+        }
+        if (data == null) {
+            encoding = ENCODING_RAW;
+            data = template.getData();
+        }
+        flags |= FLAG_CHECKSUM;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_FIXED_SIZE + key.length + data.length + CHECKSUM_SIZE);
+        record.put((byte) flags)
+                .put((byte) encoding)
+                .putShort((short) templateType.getCode())
+                .put((byte) template.getFinger())
+                .putShort((short) key.length)
+                .put(key)
+                .putInt(data.length)
+                .put(data);
+        record.putInt(Crc32c.compute(record.array(), 0, record.position()));
+        record.flip();
+        return record;
+    }
+
+    /**
+     * @return false if the length or the checksum of the record do not match its content. The
+     * records written before the checksums can only be checked for their length
+     */
+    private static boolean isIntact(ByteBuffer record) {
+        int length = record.remaining();
+        if (length < RECORD_FIXED_SIZE) {
+            return false;
+        }
+        int flags = record.get(0);
+        long expected = RECORD_FIXED_SIZE + (record.getShort(5) & 0xFFFF);
+        if (expected + 4 > length) {
+            return false;
+        }
+        expected += record.getInt(RECORD_KEY_OFFSET + (record.getShort(5) & 0xFFFF)) & 0xFFFFFFFFL;
+        if ((flags & FLAG_CHECKSUM) == 0) {
+            return expected == length;
+        }
+        return expected + CHECKSUM_SIZE == length
+                && Crc32c.compute(record.array(), 0, length - CHECKSUM_SIZE) == record.getInt(length - CHECKSUM_SIZE);
+    }
+
+    private static boolean matches(ByteBuffer record, String userId, int finger) {
+        if (record.get(4) != finger) {
+            return false;
+        }
+        byte[] key = userId.getBytes(UTF_8);
+        int keyLength = record.getShort(5) & 0xFFFF;
+        if (keyLength != key.length) {
+            return false;
+        }
+        return Arrays.equals(key, Arrays.copyOfRange(record.array(), RECORD_KEY_OFFSET, RECORD_KEY_OFFSET + keyLength));
+    }
+
+    /**
+     * @return the template of a used slot, or null if its record is corrupt and has been
+     * quarantined. The checksum of the record is verified on its first read
+     */
+    private StoredTemplate decodeVerified(int slot) throws IOException {
+        long offset = slotOffset(slot);
+        ByteBuffer record = read(offset, slotLength(slot));
+        if (!verified.get(slot)) {
+            if (!isIntact(record)) {
+                quarantine(slot, offset, record);
+                return null;
+            }
+            verified.set(slot);
+        }
+        return decode(record);
+    }
+
+    /**
+     * @return false if the record of a used slot is corrupt and has been quarantined
+     */
+    private boolean verify(int slot) throws IOException {
+        if (verified.get(slot)) {
+            return true;
+        }
+        long offset = slotOffset(slot);
+        ByteBuffer record = read(offset, slotLength(slot));
+        if (!isIntact(record)) {
+            quarantine(slot, offset, record);
+            return false;
+        }
+        verified.set(slot);
+        return true;
+    }
+
+    /**
+     * Copy a corrupt record to the quarantine file and delete it from the repository. The
+     * deletion is recorded when the key of the record is still readable, so the record is not
+     * indexed again if the index is rebuilt
+     */
+    private void quarantine(int slot, long offset, ByteBuffer record) throws IOException {
+        LOGGER.warning("Quarantining the corrupt record of " + record.remaining() + " bytes at " + offset
+                + " of " + DATA_FILENAME);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(directory, QUARANTINE_FILENAME), true)));
+        try {
+            out.writeLong(offset);
+            out.writeInt(record.remaining());
+            out.write(record.array(), 0, record.remaining());
+        } finally {
+            out.close();
+        }
+
+        int finger = record.get(4);
+        int keyLength = record.getShort(5) & 0xFFFF;
+        if (finger >= 1 && finger <= NB_FINGERS && RECORD_KEY_OFFSET + keyLength <= record.remaining()) {
+            String userId = new String(record.array(), RECORD_KEY_OFFSET, keyLength, UTF_8);
+            append(encode(new StoredTemplate(userId, finger, TemplateType.MORPHO_NO_PK_FP, new byte[0]),
+                    FLAG_DELETED));
+        }
+        remove(slot);
+        quarantined++;
+        generation++;
+        commit();
+    }
+
+    private static StoredTemplate decode(ByteBuffer record) throws IOException {
+        int flags = record.get();
+        int encoding = record.get();
+        if (encoding != ENCODING_RAW && encoding != ENCODING_PACKED) {
+            throw new IOException("Unknown encoding of template : " + encoding);
+        }
+        int typeCode = record.getShort();
+        int finger = record.get();
+        byte[] key = new byte[record.getShort() & 0xFFFF];
+        record.get(key);
+        byte[] data = new byte[record.getInt()];
+        record.get(data);
+        ITemplateType templateType = templateType(flags, typeCode);
+        if (encoding == ENCODING_PACKED) {
+            if (IsoTemplateFormat.of(templateType) == null) {
+                throw new IOException("Packed template of type " + templateType);
+            }
+            return StoredTemplate.packed(new String(key, UTF_8), finger, templateType, data);
+        }
+        return new StoredTemplate(new String(key, UTF_8), finger, templateType, data);
+    }
+
+    private static ITemplateType templateType(int flags, int code) throws IOException {
+        if ((flags & FLAG_FVP) != 0) {
+            for (TemplateFVPType templateFVPType : TemplateFVPType.values()) {
+                if (templateFVPType.getCode() == code) {
+                    return templateFVPType;
+                }
+            }
+        } else {
+            for (TemplateType templateType : TemplateType.values()) {
+                if (templateType.getCode() == code) {
+                    return templateType;
+                }
+            }
+        }
+        throw new IOException("Unknown template type : " + code);
+    }
+
+    /**
+     * @return the length of the record appended
+     */
+    private int append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        write(record, dataLength);
+        dataLength += length;
+        return length;
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += dataChannel.write(buffer, position);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = dataChannel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + DATA_FILENAME);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the templates of the repository by batches. Templates stored or deleted between two
+     * batches may or may not be returned
+     */
+    public final class Cursor {
+
+        private final int cursorLayout;
+        private int slot = 0;
+
+        private Cursor() {
+            synchronized (TemplateRepository.this) {
+                cursorLayout = layout;
+            }
+        }
+
+        /**
+         * @param count maximum number of templates to read
+         * @return the next templates, empty once all have been read
+         * @throws IOException if the repository can not be read
+         * @throws ConcurrentModificationException if the index has been reallocated since the
+         * creation of the cursor
+         */
+        public List<StoredTemplate> next(int count) throws IOException {
+            synchronized (TemplateRepository.this) {
+                if (cursorLayout != layout) {
+                    throw new ConcurrentModificationException("Template repository reindexed");
+                }
+                List<StoredTemplate> templates = new ArrayList<>(Math.min(count, size));
+                while (slot < capacity && templates.size() < count) {
+                    if (slotState(slot) == STATE_USED) {
+                        StoredTemplate template = decodeVerified(slot);
+                        if (template != null) {
+                            templates.add(template);
+                        }
+                    }
+                    slot++;
+                }
+                return templates;
+            }
+        }
+    }
+
+    /**
+     * Verifies the checksums of the records by batches, in the order of the index. The sweep
+     * starts over when the index is reallocated
+     */
+    public final class Sweep {
+
+        private int sweepLayout;
+        private int slot = 0;
+
+        private Sweep() {
+            synchronized (TemplateRepository.this) {
+                sweepLayout = layout;
+            }
+        }
+
+        /**
+         * @param count maximum number of records to verify
+         * @return the number of corrupt records quarantined, or -1 once all the records have
+         * been verified
+         * @throws IOException if the repository can not be read
+         */
+        public int next(int count) throws IOException {
+            synchronized (TemplateRepository.this) {
+                if (sweepLayout != layout) {
+                    sweepLayout = layout;
+                    slot = 0;
+                }
+                if (slot >= capacity) {
+                    return -1;
+                }
+                int corrupt = 0;
+                for (int checked = 0; slot < capacity && checked < count; slot++) {
+                    if (slotState(slot) == STATE_USED && !verified.get(slot)) {
+                        checked++;
+                        if (!verify(slot)) {
+                            corrupt++;
+                        }
+                    }
+                }
+                return corrupt;
+            }
+        }
+    }
+}
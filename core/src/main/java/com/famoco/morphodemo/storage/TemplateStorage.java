@@ -0,0 +1,202 @@
+package com.famoco.morphodemo.storage;
+
+import com.morpho.morphosmart.sdk.ITemplateType;
+import com.morpho.morphosmart.sdk.Template;
+import com.morpho.morphosmart.sdk.TemplateFVP;
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Read and write the templates and images files of the app
+ *
+ * @version DEMO
+ */
+public class TemplateStorage {
+
+    /**
+     * Constant Tag for debug purpose
+     */
+    private static final String TAG = TemplateStorage.class.getSimpleName();
+
+    /**
+     * Name of the Template file containing all the fingerprint data
+     */
+    public static final String FILENAME = "TemplateFP_test_f1.iso-fmc-cs";
+
+    /**
+     * Directory containing the files
+     */
+    private final File directory;
+
+    public TemplateStorage(File directory) {
+        this.directory = checkNotNull(directory);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the Template file containing all the fingerprint data, written by the versions
+     * of the app prior to the {@link TemplateRepository}
+     */
+    public File getTemplateFile() {
+        return new File(directory, FILENAME);
+    }
+
+    /**
+     * @return the repository of the templates of all the users, kept in the directory
+     * @throws IOException if the repository can not be opened
+     */
+    public TemplateRepository getRepository() throws IOException {
+        return TemplateRepository.getInstance(directory);
+    }
+
+    /**
+     * Determines whether a fingerprint exist or not (file with content exist)
+     *
+     * @return a boolean value
+     */
+    public boolean templateExists() {
+        return getTemplateFile().length() != 0;
+    }
+
+    /**
+     * Read the whole content of a template file
+     *
+     * @param file to read
+     * @return the content of the file
+     * @throws IOException if the file can not be read
+     */
+    public byte[] readTemplate(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            int length = dis.available();
+            final byte[] buffer = new byte[length];
+            dis.readFully(buffer);
+            return buffer;
+        }
+    }
+
+    /**
+     * Write data in a file with FP format
+     *
+     * @param templateList containing data
+     * @param userId owner of the templates
+     * @param templateType of the templates
+     */
+    public void exportFP(TemplateList templateList, String userId, TemplateType templateType) {
+        ExportWriter.writeNow(getFPFiles(templateList, userId, templateType), ExportWriter.Listener.NONE);
+    }
+
+    /**
+     * Write data in a file with FVP format
+     *
+     * @param templateList containing data
+     * @param userId owner of the templates
+     * @param templateFVPType of the templates
+     */
+    public void exportFVP(TemplateList templateList, String userId, TemplateFVPType templateFVPType) {
+        ExportWriter.writeNow(getFVPFiles(templateList, userId, templateFVPType), ExportWriter.Listener.NONE);
+    }
+
+    /**
+     * Write an image in a file
+     *
+     * @param fileName of the image
+     * @param data of the image
+     */
+    public void exportImage(String fileName, byte[] data) {
+        ExportWriter.writeNow(Collections.singletonList(getImageFile(fileName, data)),
+                ExportWriter.Listener.NONE);
+    }
+
+    /**
+     * @param templateList containing data
+     * @param userId owner of the templates
+     * @param templateType of the templates
+     * @return the files with FP format to export
+     */
+    public List<ExportFile> getFPFiles(TemplateList templateList, String userId, TemplateType templateType) {
+        int nbTemplate = templateList.getNbTemplate();
+        List<ExportFile> files = new ArrayList<>(nbTemplate);
+        for (int i = 0; i < nbTemplate; i++) {
+            Template t = templateList.getTemplate(i);
+            files.add(new ExportFile(new File(directory,
+                    "TemplateFP_" + userId + "_f" + (i + 1) + templateType.getExtension()), t.getData()));
+        }
+        return files;
+    }
+
+    /**
+     * @param templateList containing data
+     * @param userId owner of the templates
+     * @param templateFVPType of the templates
+     * @return the files with FVP format to export
+     */
+    public List<ExportFile> getFVPFiles(TemplateList templateList, String userId, TemplateFVPType templateFVPType) {
+        int nbTemplateFVP = templateList.getNbFVPTemplate();
+        List<ExportFile> files = new ArrayList<>(nbTemplateFVP);
+        for (int i = 0; i < nbTemplateFVP; i++) {
+            TemplateFVP t = templateList.getFVPTemplate(i);
+            files.add(new ExportFile(new File(directory,
+                    "TemplateFVP_" + userId + "_f" + (i + 1) + templateFVPType.getExtension()), t.getData()));
+        }
+        return files;
+    }
+
+    /**
+     * @param fileName of the image
+     * @param data of the image
+     * @return the image file to export
+     */
+    public ExportFile getImageFile(String fileName, byte[] data) {
+        return new ExportFile(new File(directory, fileName), data);
+    }
+
+    /**
+     * Determines whether the Template is of type Template FP or Template FVP (depending on the
+     * different Morpho devices)
+     *
+     * @param extension of the file
+     * @return the type of Template
+     */
+    public static ITemplateType getTemplateTypeFromExtension(String extension) {
+        for (TemplateType templateType : TemplateType.values()) {
+            if (templateType.getExtension().equalsIgnoreCase(extension)) {
+                return templateType;
+            }
+        }
+        for (TemplateFVPType templateFVPType : TemplateFVPType.values()) {
+            if (templateFVPType.getExtension().equalsIgnoreCase(extension)) {
+                return templateFVPType;
+            }
+        }
+        return TemplateType.MORPHO_NO_PK_FP;
+    }
+
+    /**
+     * Subtract the extension of a file and return it
+     *
+     * @param fileName to isolate extension
+     * @return the extension
+     */
+    public static String getFileExtension(String fileName) {
+        String extension = "";
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex >= 0) {
+            extension = fileName.substring(dotIndex);
+        }
+        return extension;
+    }
+}
@@ -0,0 +1,67 @@
+package com.famoco.morphodemo.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Variable length encoding of unsigned integers (7 bits per byte, low bits first,
+ * most significant bit set when another byte follows), as used by protobuf
+ *
+ * @version DEMO
+ */
+public final class VarInts {
+
+    private VarInts() {
+    }
+
+    /**
+     * @param value to write, handled as unsigned
+     */
+    public static void writeUnsignedInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * @param value to write, handled as unsigned
+     */
+    public static void writeUnsignedLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * @return the value read
+     * @throws EOFException if the stream ends before the value
+     */
+    public static int readUnsignedInt(InputStream in) throws IOException {
+        return (int) readUnsignedLong(in);
+    }
+
+    /**
+     * @return the value read
+     * @throws EOFException if the stream ends before the value
+     */
+    public static long readUnsignedLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+}
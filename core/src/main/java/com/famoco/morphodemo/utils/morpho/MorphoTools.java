@@ -1,7 +1,5 @@
 package com.famoco.morphodemo.utils.morpho;
 
-import android.util.Pair;
-
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -16,7 +14,10 @@ import java.util.Map;
 
 public class MorphoTools
 {
-    private static final Map<Pair<Integer, Integer>, String> supportedDevices	= new HashMap<Pair<Integer, Integer>, String>();
+    /**
+     * Supported devices keyed by (vendor id << 16 | product id)
+     */
+    private static final Map<Integer, String> supportedDevices	= new HashMap<Integer, String>();
     public static final String SOFTWAREID_MSO100		= "MSO100";
     public static final String SOFTWAREID_MSO300		= "MSO300";
     public static final String SOFTWAREID_MSO350		= "MSO350";
@@ -40,39 +41,34 @@ public class MorphoTools
 
     static
     {
-        supportedDevices.put(new Pair<Integer, Integer>(0x079b, 0x0023), SOFTWAREID_MSO100);
-        supportedDevices.put(new Pair<Integer, Integer>(0x079b, 0x0024), SOFTWAREID_MSO300);
-        supportedDevices.put(new Pair<Integer, Integer>(0x079b, 0x0026), SOFTWAREID_MSO350);
-
-        supportedDevices.put(new Pair<Integer, Integer>(0x079b, 0x0047), SOFTWAREID_CBM);
-        supportedDevices.put(new Pair<Integer, Integer>(0x079b, 0x0052), SOFTWAREID_MSO1350);
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x0001), SOFTWAREID_FVP);
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x0002), SOFTWAREID_FVP_C);
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x0003), SOFTWAREID_FVP_CL);
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x0007), SOFTWAREID_MEP);
-
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x0008), SOFTWAREID_CBME3);
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x0009), SOFTWAREID_CBMV3);
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x000A), SOFTWAREID_MSO1300E3);
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x000B), SOFTWAREID_MSO1300V3);
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x000C), SOFTWAREID_MSO1350E3);
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x000D), SOFTWAREID_MSO1350V3);
-        supportedDevices.put(new Pair<Integer, Integer>(0x225D, 0x000E), SOFTWAREID_MASIGMA);
+        supportedDevices.put(key(0x079b, 0x0023), SOFTWAREID_MSO100);
+        supportedDevices.put(key(0x079b, 0x0024), SOFTWAREID_MSO300);
+        supportedDevices.put(key(0x079b, 0x0026), SOFTWAREID_MSO350);
+
+        supportedDevices.put(key(0x079b, 0x0047), SOFTWAREID_CBM);
+        supportedDevices.put(key(0x079b, 0x0052), SOFTWAREID_MSO1350);
+        supportedDevices.put(key(0x225D, 0x0001), SOFTWAREID_FVP);
+        supportedDevices.put(key(0x225D, 0x0002), SOFTWAREID_FVP_C);
+        supportedDevices.put(key(0x225D, 0x0003), SOFTWAREID_FVP_CL);
+        supportedDevices.put(key(0x225D, 0x0007), SOFTWAREID_MEP);
+
+        supportedDevices.put(key(0x225D, 0x0008), SOFTWAREID_CBME3);
+        supportedDevices.put(key(0x225D, 0x0009), SOFTWAREID_CBMV3);
+        supportedDevices.put(key(0x225D, 0x000A), SOFTWAREID_MSO1300E3);
+        supportedDevices.put(key(0x225D, 0x000B), SOFTWAREID_MSO1300V3);
+        supportedDevices.put(key(0x225D, 0x000C), SOFTWAREID_MSO1350E3);
+        supportedDevices.put(key(0x225D, 0x000D), SOFTWAREID_MSO1350V3);
+        supportedDevices.put(key(0x225D, 0x000E), SOFTWAREID_MASIGMA);
     }
 
     public static synchronized boolean isSupported(int vid, int pid)
     {
-        for (Pair<Integer, Integer> supportedAttribs : supportedDevices.keySet())
-        {
-            //Log.i("MORPHO_USB", "Supported device : Vendor Id = " + supportedAttribs.getVendorId() + ", product Id = " + supportedAttribs.getProductId());
-            //Log.i("MORPHO_USB", "Vendor Id = " + attribs.getVendorId() + ", product Id = " + attribs.getProductId());
-            if (supportedAttribs.first == vid && supportedAttribs.second == pid)
-            {
-                return true;
-            }
-        }
+        return supportedDevices.containsKey(key(vid, pid));
+    }
 
-        return false;
+    private static int key(int vid, int pid)
+    {
+        return (vid << 16) | (pid & 0xFFFF);
     }
 
     public static ByteArrayOutputStream ReadFile(File file) throws IOException
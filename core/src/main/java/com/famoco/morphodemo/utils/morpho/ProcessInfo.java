@@ -1,15 +1,18 @@
 package com.famoco.morphodemo.utils.morpho;
 
+import com.famoco.morphodemo.device.MorphoDevicePort;
+import com.famoco.morphodemo.fingerprint.enroll.DuplicatePolicy;
+import com.famoco.morphodemo.metrics.StartupTimeline;
 import com.morpho.morphosmart.sdk.CallbackMask;
 import com.morpho.morphosmart.sdk.Coder;
 import com.morpho.morphosmart.sdk.MatchingStrategy;
 import com.morpho.morphosmart.sdk.MorphoDatabase;
-import com.morpho.morphosmart.sdk.MorphoDevice;
 import com.morpho.morphosmart.sdk.MorphoLogLevel;
 import com.morpho.morphosmart.sdk.MorphoLogMode;
 import com.morpho.morphosmart.sdk.SecurityLevel;
 import com.morpho.morphosmart.sdk.StrategyAcquisitionMode;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,7 +24,7 @@ import java.util.List;
 public class ProcessInfo
 {
     // MorphoDevice
-    private MorphoDevice morphoDevice = null;
+    private MorphoDevicePort morphoDevice = null;
 
     private MorphoDatabase morphoDatabase = null;
 
@@ -90,6 +93,32 @@ public class ProcessInfo
 
     private volatile boolean			commandBioStart						= false;
 
+    // Storage of templates, images and logs
+    private File						storageDirectory					= new File("sdcard");
+
+    // Recording of the callbacks of each acquisition, for replay
+    private boolean						callbackRecording					= false;
+
+    // Owner of the templates enrolled and verified
+    private String						userId								= "test";
+
+    // Verification against all the enrolled users instead of userId
+    private boolean						identification						= false;
+
+    // Number of templates from which the identification only matches the shortlist of the
+    // pre-filter, losing some of the users, 0 to always match the whole gallery
+    private int							preFilterGallerySize				= 0;
+
+    // Search of the enrolled finger among the other users, and its time budget in ms
+    private DuplicatePolicy				duplicatePolicy						= DuplicatePolicy.NONE;
+    private long						duplicateCheckBudget				= 2000;
+
+    // Steps of the connection to the Morpho device at the start of the app
+    private StartupTimeline				startupTimeline						= null;
+
+    // Names of every USB sensor enumerated, the first one being morphoDevice
+    private List<String>				sensorNames							= new ArrayList<>();
+
 
 
     private static ProcessInfo	mInstance	= null;
@@ -308,7 +337,7 @@ public class ProcessInfo
     /**
      * @return the morphoDevice
      */
-    public MorphoDevice getMorphoDevice()
+    public MorphoDevicePort getMorphoDevice()
     {
         return morphoDevice;
     }
@@ -316,7 +345,7 @@ public class ProcessInfo
     /**
      * @param morphoDevice the morphoDevice to set
      */
-    public void setMorphoDevice(MorphoDevice morphoDevice)
+    public void setMorphoDevice(MorphoDevicePort morphoDevice)
     {
         this.morphoDevice = morphoDevice;
     }
@@ -622,6 +651,105 @@ public class ProcessInfo
         this.strategyAcquisitionMode = strategyAcquisitionMode;
     }
 
+    public File getStorageDirectory() {
+        return storageDirectory;
+    }
+
+    public void setStorageDirectory(File storageDirectory) {
+        this.storageDirectory = storageDirectory;
+    }
+
+    public boolean isCallbackRecording() {
+        return callbackRecording;
+    }
+
+    /**
+     * @param callbackRecording true to record the callbacks of each acquisition in the storage directory
+     */
+    public void setCallbackRecording(boolean callbackRecording) {
+        this.callbackRecording = callbackRecording;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * @param userId owner of the templates enrolled and verified
+     */
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public boolean isIdentification() {
+        return identification;
+    }
+
+    /**
+     * @param identification true to search the finger among all the enrolled users (1:N),
+     *                       false to verify it against the templates of userId (1:1)
+     */
+    public void setIdentification(boolean identification) {
+        this.identification = identification;
+    }
+
+    public int getPreFilterGallerySize() {
+        return preFilterGallerySize;
+    }
+
+    /**
+     * @param preFilterGallerySize number of templates from which the identification only
+     *                             matches the closest candidates of the pre-filter, faster on
+     *                             a large gallery but missing some users, 0 to match them all
+     */
+    public void setPreFilterGallerySize(int preFilterGallerySize) {
+        this.preFilterGallerySize = preFilterGallerySize;
+    }
+
+    public DuplicatePolicy getDuplicatePolicy() {
+        return duplicatePolicy;
+    }
+
+    /**
+     * @param duplicatePolicy handling of a finger enrolled which is already enrolled under another user
+     */
+    public void setDuplicatePolicy(DuplicatePolicy duplicatePolicy) {
+        this.duplicatePolicy = duplicatePolicy;
+    }
+
+    public long getDuplicateCheckBudget() {
+        return duplicateCheckBudget;
+    }
+
+    /**
+     * @param duplicateCheckBudget maximum duration of the duplicate check, in ms
+     */
+    public void setDuplicateCheckBudget(long duplicateCheckBudget) {
+        this.duplicateCheckBudget = duplicateCheckBudget;
+    }
+
+    /**
+     * @return the steps of the connection to the Morpho device, null until connected
+     */
+    public StartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+
+    public void setStartupTimeline(StartupTimeline startupTimeline) {
+        this.startupTimeline = startupTimeline;
+    }
+
+    /**
+     * @return the names of the USB sensors enumerated, the first one being the morphoDevice
+     */
+    public List<String> getSensorNames() {
+        return sensorNames;
+    }
+
+    public void setSensorNames(List<String> sensorNames) {
+        this.sensorNames = sensorNames;
+    }
+
     public MorphoLogLevel getLogLevel() {
         return logLevel;
     }
@@ -665,6 +793,7 @@ public class ProcessInfo
         setMSOAddress(-1);
         setMSOFD(-1);
         setSecurityOptions(new ArrayList<SecurityOption>());
+        sensorNames = new ArrayList<>();
 
         // Database information
         maximumNumberofDatabaseValue = 1;
@@ -700,6 +829,14 @@ public class ProcessInfo
 
         logLevel = MorphoLogLevel.MORPHO_LOG_NOLOG;
         logMode	= MorphoLogMode.MORPHO_LOG_DISABLE;
+
+        storageDirectory = new File("sdcard");
+        callbackRecording = false;
+        userId = "test";
+        identification = false;
+        preFilterGallerySize = 0;
+        duplicatePolicy = DuplicatePolicy.NONE;
+        duplicateCheckBudget = 2000;
     }
 
 }
\ No newline at end of file
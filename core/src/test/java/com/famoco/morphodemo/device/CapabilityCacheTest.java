@@ -0,0 +1,43 @@
+package com.famoco.morphodemo.device;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Static information of the sensors, kept between two starts of the app
+ */
+public class CapabilityCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void put_isReadBackWithoutTheSensor() {
+        SimulatedMorphoDevice device = new SimulatedMorphoDevice(42);
+        device.setFvp(true);
+        device.openUsbDevice("SIM-00000", 0);
+        DeviceCapabilities read = DeviceCapabilities.read(device);
+        assertTrue(read.isFvp());
+        assertEquals("Simulated firmware 1.0", read.getFirmwareVersion());
+
+        File directory = new File(folder.getRoot(), CapabilityCache.DIRECTORY_NAME);
+        new CapabilityCache(directory).put("SIM-00000", read);
+        device.closeDevice();
+
+        CapabilityCache cache = new CapabilityCache(directory);
+        DeviceCapabilities cached = cache.get("SIM-00000");
+        assertTrue(cached.sameAs(read));
+        assertTrue(cached.isFvp());
+        assertFalse(CapabilityCache.isStale(cached));
+        assertNull(cache.get("SIM-00001"));
+
+        DeviceCapabilities old = new DeviceCapabilities(read.getProductDescriptor(), read.getSoftwareDescriptor(),
+                System.currentTimeMillis() - CapabilityCache.MAX_AGE_MS - 1);
+        assertTrue(CapabilityCache.isStale(old));
+    }
+}
@@ -0,0 +1,133 @@
+package com.famoco.morphodemo.device;
+
+import com.famoco.morphodemo.metrics.StartupTimeline;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Connection to the Morpho device at the start of the app
+ */
+public class ConnectionSequenceTest {
+
+    /**
+     * Steps recording the thread they run on, the permission granted after the dialog
+     */
+    private static class RecordingSteps implements ConnectionSequence.Steps {
+
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        final DeviceExecutor executor;
+        int openResult = ErrorCodes.MORPHO_OK;
+
+        RecordingSteps(DeviceExecutor executor) {
+            this.executor = executor;
+        }
+
+        private void call(String step) {
+            calls.add(step + (executor.isDeviceThread() ? "" : " off the device thread"));
+        }
+
+        @Override
+        public boolean requestPermission() {
+            call("permission");
+            return false;
+        }
+
+        @Override
+        public int enumerate() {
+            call("enumerate");
+            return ErrorCodes.MORPHO_OK;
+        }
+
+        @Override
+        public int open() {
+            call("open");
+            return openResult;
+        }
+
+        @Override
+        public int configure() {
+            call("configure");
+            return ErrorCodes.MORPHO_OK;
+        }
+
+        @Override
+        public int readDescriptor() {
+            call("descriptor");
+            return ErrorCodes.MORPHO_OK;
+        }
+    }
+
+    private static class LatchListener implements ConnectionSequence.Listener {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile ConnectionSequence.State failedState;
+
+        @Override
+        public void onConnected(StartupTimeline timeline) {
+            done.countDown();
+        }
+
+        @Override
+        public void onFailed(ConnectionSequence.State state, int error, StartupTimeline timeline) {
+            failedState = state;
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void permissionGranted_runsEveryStepOnTheDeviceThread() throws Exception {
+        DeviceExecutor executor = new DeviceExecutor("test-device", 16);
+        RecordingSteps steps = new RecordingSteps(executor);
+        LatchListener listener = new LatchListener();
+        ConnectionSequence sequence = new ConnectionSequence(executor, steps, listener, new StartupTimeline());
+
+        sequence.start();
+        sequence.start();
+        sequence.onPermissionResult(true);
+        // Repeated broadcast
+        sequence.onPermissionResult(true);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+
+        assertEquals(ConnectionSequence.State.CONNECTED, sequence.getState());
+        assertEquals(Arrays.asList("permission", "enumerate", "open", "configure", "descriptor"),
+                steps.calls);
+        StartupTimeline timeline = sequence.getTimeline();
+        for (StartupTimeline.Step step : StartupTimeline.Step.values()) {
+            assertTrue(step + " not recorded", timeline.getDurationNanos(step) >= 0);
+        }
+        assertEquals(timeline.getEndNanos(StartupTimeline.Step.DESCRIPTOR), timeline.getTotalNanos());
+    }
+
+    @Test
+    public void openFailed_stopsTheSequence() throws Exception {
+        DeviceExecutor executor = new DeviceExecutor("test-device", 16);
+        RecordingSteps steps = new RecordingSteps(executor);
+        steps.openResult = ErrorCodes.MORPHOERR_COM_NOT_OPEN;
+        LatchListener listener = new LatchListener();
+        ConnectionSequence sequence = new ConnectionSequence(executor, steps, listener, new StartupTimeline());
+
+        sequence.start();
+        sequence.onPermissionResult(true);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(ConnectionSequence.State.OPENING, listener.failedState);
+        assertEquals(ConnectionSequence.State.FAILED, sequence.getState());
+        assertFalse(steps.calls.contains("configure"));
+        assertEquals(-1, sequence.getTimeline().getDurationNanos(StartupTimeline.Step.CONFIGURE));
+    }
+}
@@ -0,0 +1,71 @@
+package com.famoco.morphodemo.device;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Serialization of the commands sent to the Morpho device
+ */
+public class DeviceExecutorTest {
+
+    @Test
+    public void commands_neverOverlap() throws Exception {
+        final DeviceExecutor executor = new DeviceExecutor("test-device", 64);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Boolean>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++) {
+            futures.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    int current = running.incrementAndGet();
+                    maxRunning.set(Math.max(maxRunning.get(), current));
+                    Thread.sleep(1);
+                    running.decrementAndGet();
+                    return executor.isDeviceThread();
+                }
+            }));
+        }
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get());
+        }
+
+        assertEquals(1, maxRunning.get());
+        assertEquals(50, executor.getSubmittedCount());
+        assertEquals(50, executor.getWaitTimes().getCount());
+        assertFalse(executor.isDeviceThread());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void submit_whenQueueFull_isRejected() throws Exception {
+        DeviceExecutor executor = new DeviceExecutor("test-device", 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        try {
+            executor.submit(blocking);
+            executor.submit(blocking);
+            executor.submit(blocking);
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.famoco.morphodemo.device;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Routing of the commands between the sensors of a station
+ */
+public class DevicePoolTest {
+
+    /**
+     * Command holding its sensor until released
+     */
+    private static class BlockingCommand implements DevicePool.Command<MorphoDevicePort> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release;
+
+        BlockingCommand(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public MorphoDevicePort execute(MorphoDevicePort device) throws Exception {
+            started.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return device;
+        }
+    }
+
+    @Test
+    public void commands_goToTheFirstIdleSensor() throws Exception {
+        SimulatedMorphoDevice first = new SimulatedMorphoDevice(1);
+        SimulatedMorphoDevice second = new SimulatedMorphoDevice(2);
+        DevicePool pool = new DevicePool();
+        pool.add("first", first, new DeviceExecutor("test-device-1", 16));
+        pool.add("second", second, new DeviceExecutor("test-device-2", 16));
+        assertEquals(2, pool.getIdleCount());
+
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingCommand one = new BlockingCommand(release);
+        BlockingCommand two = new BlockingCommand(release);
+        Future<MorphoDevicePort> onFirst = pool.submit(one);
+        Future<MorphoDevicePort> onSecond = pool.submit(two);
+        // Both sensors capture at the same time
+        assertTrue(one.started.await(5, TimeUnit.SECONDS));
+        assertTrue(two.started.await(5, TimeUnit.SECONDS));
+        assertEquals(0, pool.getIdleCount());
+
+        Future<MorphoDevicePort> queued = pool.submit(new BlockingCommand(release));
+        assertEquals(1, pool.getRoutedToBusyCount());
+        release.countDown();
+
+        assertSame(first, onFirst.get(5, TimeUnit.SECONDS));
+        assertSame(second, onSecond.get(5, TimeUnit.SECONDS));
+        assertSame(first, queued.get(5, TimeUnit.SECONDS));
+        DevicePool.Member member = pool.getMembers().get(0);
+        assertEquals(2, member.getCompletedCount());
+        assertEquals(2, member.getRunTimes().getCount());
+        assertEquals(2, pool.getIdleCount());
+
+        // An idle first sensor takes the next command again
+        assertSame(first, pool.submit(new BlockingCommand(release)).get(5, TimeUnit.SECONDS));
+        assertSame(member, pool.remove(first));
+        assertSame(second, pool.submit(new BlockingCommand(release)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void emptyPool_rejectsCommands() {
+        new DevicePool().submit(new BlockingCommand(new CountDownLatch(0)));
+    }
+}
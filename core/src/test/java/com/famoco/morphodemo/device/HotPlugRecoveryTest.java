@@ -0,0 +1,149 @@
+package com.famoco.morphodemo.device;
+
+import com.morpho.morphosmart.sdk.ErrorCodes;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Re-open of the Morpho device after a USB detach
+ */
+public class HotPlugRecoveryTest {
+
+    private static class LatchListener implements HotPlugRecovery.Listener {
+
+        final CountDownLatch lost = new CountDownLatch(1);
+        final CountDownLatch recovered = new CountDownLatch(1);
+        volatile int resumed = -1;
+        volatile boolean replaced;
+
+        @Override
+        public void onLost() {
+            lost.countDown();
+        }
+
+        @Override
+        public void onRecovered(String serial, boolean replaced, int resumed, long outageNanos) {
+            this.replaced = replaced;
+            this.resumed = resumed;
+            recovered.countDown();
+        }
+
+        @Override
+        public void onRecoveryFailed(int error) {
+            fail("Recovery failed : " + error);
+        }
+    }
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Test
+    public void glitch_reopensTheSameSerialAndResumes() throws Exception {
+        DeviceExecutor executor = new DeviceExecutor("test-device", 16);
+        SensorSessionManager sessions = new SensorSessionManager();
+        SimulatedMorphoDevice device = new SimulatedMorphoDevice(42);
+        assertEquals(ErrorCodes.MORPHO_OK, sessions.acquire(device, SensorSessionManager.usb("SIM-00000", 0)));
+        HotPlugRecovery recovery = new HotPlugRecovery(executor, sessions, new DevicePool(), 60000);
+        LatchListener listener = new LatchListener();
+        recovery.watch(device, "SIM-00000", listener);
+
+        final AtomicInteger captures = new AtomicInteger();
+        device.setDeviceCount(0);
+        recovery.onDetached();
+        // Repeated broadcast
+        recovery.onDetached();
+        assertTrue(recovery.resumeAfterRecovery(device, ErrorCodes.MORPHOERR_CMDE_ABORTED, new Runnable() {
+            @Override
+            public void run() {
+                captures.incrementAndGet();
+            }
+        }));
+        // A genuine result of the capture is reported
+        assertFalse(recovery.resumeAfterRecovery(device, ErrorCodes.MORPHOERR_NO_HIT, NOTHING));
+        executor.submit(NOTHING).get();
+        assertFalse(device.isOpened());
+
+        device.setDeviceCount(1);
+        recovery.onAttached();
+        assertTrue(listener.recovered.await(5, TimeUnit.SECONDS));
+
+        assertEquals(HotPlugRecovery.State.CONNECTED, recovery.getState());
+        assertTrue(device.isOpened());
+        assertTrue(sessions.isOpen(device));
+        assertEquals(2, sessions.getOpenCount());
+        assertEquals(1, captures.get());
+        assertEquals(1, listener.resumed);
+        assertFalse(listener.replaced);
+        assertEquals(1, recovery.getGlitchCount());
+        assertFalse(recovery.resumeAfterRecovery(device, ErrorCodes.MORPHOERR_CMDE_ABORTED, NOTHING));
+    }
+
+    @Test
+    public void lostThenReplaced_opensTheNewSensorWithoutResuming() throws Exception {
+        DeviceExecutor executor = new DeviceExecutor("test-device", 16);
+        SensorSessionManager sessions = new SensorSessionManager();
+        SimulatedMorphoDevice device = new SimulatedMorphoDevice(42);
+        device.setDeviceCount(2);
+        assertEquals(ErrorCodes.MORPHO_OK, sessions.acquire(device, SensorSessionManager.usb("SIM-00001", 0)));
+        HotPlugRecovery recovery = new HotPlugRecovery(executor, sessions, new DevicePool(), 50);
+        LatchListener listener = new LatchListener();
+        recovery.watch(device, "SIM-00001", listener);
+
+        device.setDeviceCount(1);
+        recovery.onDetached();
+        assertTrue(recovery.resumeAfterRecovery(device, ErrorCodes.MORPHOERR_CMDE_ABORTED, NOTHING));
+        assertTrue(listener.lost.await(5, TimeUnit.SECONDS));
+        assertEquals(HotPlugRecovery.State.LOST, recovery.getState());
+        assertFalse(recovery.resumeAfterRecovery(device, ErrorCodes.MORPHOERR_CMDE_ABORTED, NOTHING));
+
+        // Another sensor plugged in its place
+        recovery.onAttached();
+        assertTrue(listener.recovered.await(5, TimeUnit.SECONDS));
+        assertTrue(listener.replaced);
+        assertEquals(0, listener.resumed);
+        assertEquals(1, recovery.getReplacementCount());
+        assertTrue(sessions.isOpen(device));
+    }
+
+    @Test
+    public void detachOfAnotherSensor_removesItFromThePoolOnly() throws Exception {
+        DeviceExecutor executor = new DeviceExecutor("test-device", 16);
+        DeviceExecutor otherExecutor = new DeviceExecutor("test-device-1", 16);
+        SensorSessionManager sessions = new SensorSessionManager();
+        SimulatedMorphoDevice device = new SimulatedMorphoDevice(1);
+        SimulatedMorphoDevice other = new SimulatedMorphoDevice(2);
+        device.setDeviceCount(2);
+        other.setDeviceCount(2);
+        assertEquals(ErrorCodes.MORPHO_OK, sessions.acquire(device, SensorSessionManager.usb("SIM-00000", 0)));
+        assertEquals(ErrorCodes.MORPHO_OK, sessions.acquire(other, SensorSessionManager.usb("SIM-00001", 0)));
+        DevicePool pool = new DevicePool();
+        pool.add("SIM-00000", device, executor);
+        pool.add("SIM-00001", other, otherExecutor);
+        HotPlugRecovery recovery = new HotPlugRecovery(executor, sessions, pool, 50);
+        LatchListener listener = new LatchListener();
+        recovery.watch(device, "SIM-00000", listener);
+
+        device.setDeviceCount(1);
+        recovery.onDetached();
+        // The command of another sensor is not resumed by the watched one
+        assertFalse(recovery.resumeAfterRecovery(other, ErrorCodes.MORPHOERR_CMDE_ABORTED, NOTHING));
+        executor.submit(NOTHING).get();
+        otherExecutor.submit(NOTHING).get();
+
+        assertEquals(HotPlugRecovery.State.CONNECTED, recovery.getState());
+        assertTrue(sessions.isOpen(device));
+        assertFalse(sessions.isOpen(other));
+        assertEquals(1, pool.size());
+        assertSame(device, pool.getMembers().get(0).getDevice());
+        assertFalse(listener.lost.await(200, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,134 @@
+package com.famoco.morphodemo.device;
+
+import com.morpho.morphosmart.sdk.ErrorCodes;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Session of the Morpho device shared by the screens of the app
+ */
+public class SensorSessionManagerTest {
+
+    @Test
+    public void handOff_isTakenOverWithoutReopening() {
+        SensorSessionManager manager = new SensorSessionManager();
+        SimulatedMorphoDevice device = new SimulatedMorphoDevice(42);
+        SensorSessionManager.Opener opener = SensorSessionManager.usb("SIM-00000", 0);
+
+        // Connection screen
+        assertEquals(ErrorCodes.MORPHO_OK, manager.acquire(device, opener));
+        manager.handOff(device);
+        assertTrue(device.isOpened());
+
+        // Home screen
+        assertEquals(ErrorCodes.MORPHO_OK, manager.acquire(device, opener));
+        assertEquals(ErrorCodes.MORPHO_OK, manager.acquire(device, opener));
+        assertEquals(1, manager.getOpenCount());
+        assertEquals(2, manager.getReuseCount());
+
+        manager.release(device);
+        assertTrue(device.isOpened());
+        manager.release(device);
+        assertFalse(device.isOpened());
+        assertFalse(manager.isOpen(device));
+
+        assertEquals(ErrorCodes.MORPHO_OK, manager.acquire(device, opener));
+        assertEquals(2, manager.getOpenCount());
+    }
+
+    @Test
+    public void sessionsOfTwoSensors_areIndependent() {
+        SensorSessionManager manager = new SensorSessionManager();
+        SimulatedMorphoDevice first = new SimulatedMorphoDevice(1);
+        SimulatedMorphoDevice second = new SimulatedMorphoDevice(2);
+        first.setDeviceCount(2);
+        second.setDeviceCount(2);
+
+        assertEquals(ErrorCodes.MORPHO_OK, manager.acquire(first, SensorSessionManager.usb("SIM-00000", 0)));
+        assertEquals(ErrorCodes.MORPHO_OK, manager.acquire(second, SensorSessionManager.usb("SIM-00001", 0)));
+        assertTrue(first.isOpened());
+        assertTrue(second.isOpened());
+        assertEquals("SIM-00000", manager.getSensorName(first));
+        assertEquals("SIM-00001", manager.getSensorName(second));
+
+        manager.invalidate(second);
+        assertTrue(first.isOpened());
+        assertTrue(manager.isOpen(first));
+        assertFalse(second.isOpened());
+        assertNull(manager.getSensorName(second));
+    }
+
+    @Test
+    public void acquire_failedOpen_holdsNoReference() {
+        SensorSessionManager manager = new SensorSessionManager();
+        SimulatedMorphoDevice device = new SimulatedMorphoDevice(42);
+        int ret = manager.acquire(device, new SensorSessionManager.Opener() {
+            @Override
+            public int open(MorphoDevicePort device) {
+                return ErrorCodes.MORPHOERR_COM_NOT_OPEN;
+            }
+
+            @Override
+            public String getSensorName() {
+                return "SIM-00000";
+            }
+        });
+        assertEquals(ErrorCodes.MORPHOERR_COM_NOT_OPEN, ret);
+        assertFalse(manager.isOpen(device));
+        assertEquals(0, manager.getOpenCount());
+    }
+
+    @Test
+    public void acquire_slowOpen_doesNotBlockTheOtherSessions() throws Exception {
+        final SensorSessionManager manager = new SensorSessionManager();
+        SimulatedMorphoDevice first = new SimulatedMorphoDevice(1);
+        final SimulatedMorphoDevice second = new SimulatedMorphoDevice(2);
+        first.setDeviceCount(2);
+        second.setDeviceCount(2);
+        assertEquals(ErrorCodes.MORPHO_OK, manager.acquire(first, SensorSessionManager.usb("SIM-00000", 0)));
+
+        final CountDownLatch opening = new CountDownLatch(1);
+        final CountDownLatch opened = new CountDownLatch(1);
+        final SensorSessionManager.Opener usb = SensorSessionManager.usb("SIM-00001", 0);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                manager.acquire(second, new SensorSessionManager.Opener() {
+                    @Override
+                    public int open(MorphoDevicePort device) {
+                        opening.countDown();
+                        try {
+                            opened.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return usb.open(device);
+                    }
+
+                    @Override
+                    public String getSensorName() {
+                        return usb.getSensorName();
+                    }
+                });
+            }
+        });
+        thread.start();
+        assertTrue(opening.await(5, TimeUnit.SECONDS));
+
+        // Commands of the first sensor keep naming their logs while the second one opens
+        assertEquals("SIM-00000", manager.getSensorName(first));
+        assertFalse(manager.isOpen(second));
+        assertNull(manager.getSensorName(second));
+
+        opened.countDown();
+        thread.join(5000);
+        assertTrue(manager.isOpen(second));
+        assertEquals("SIM-00001", manager.getSensorName(second));
+        assertEquals(2, manager.getOpenCount());
+    }
+}
@@ -0,0 +1,104 @@
+package com.famoco.morphodemo.device.replay;
+
+import com.famoco.morphodemo.device.SimulatedMorphoDevice;
+import com.famoco.morphodemo.utils.VarInts;
+import com.morpho.morphosmart.sdk.CallbackMessage;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+import com.morpho.morphosmart.sdk.LatentDetection;
+import com.morpho.morphosmart.sdk.MorphoImage;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+
+import static com.morpho.morphosmart.sdk.CompressionAlgorithm.MORPHO_NO_COMPRESS;
+import static org.junit.Assert.*;
+
+/**
+ * Recording of a simulated acquisition, then replay of the recording
+ */
+public class CallbackReplayTest {
+
+    private static final int ALL_CALLBACKS = 0xFF;
+
+    private static class Collector implements Observer {
+        final List<CallbackMessage> messages = new ArrayList<>();
+
+        @Override
+        public void update(Observable o, Object arg) {
+            messages.add((CallbackMessage) arg);
+        }
+    }
+
+    @Test
+    public void recordThenReplay_isIdentical() throws Exception {
+        SimulatedMorphoDevice device = new SimulatedMorphoDevice(1);
+        device.initUsbDevicesNameEnum(new CustomInteger());
+        device.openUsbDevice(device.getUsbDeviceName(0), 0);
+
+        Collector live = new Collector();
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (CallbackRecorder recorder = new CallbackRecorder(file, live)) {
+            device.getImage(0, 0, MORPHO_NO_COMPRESS, 0, 0, LatentDetection.LATENT_DETECT_ENABLE,
+                    new MorphoImage(), ALL_CALLBACKS, recorder);
+            assertEquals(live.messages.size(), recorder.getCount());
+        }
+
+        CallbackStream stream = CallbackStream.read(new ByteArrayInputStream(file.toByteArray()));
+        assertEquals(live.messages.size(), stream.size());
+
+        CallbackReplayer replayer = new CallbackReplayer(stream);
+        replayer.setSpeed(CallbackReplayer.AS_FAST_AS_POSSIBLE);
+        Collector replayed = new Collector();
+        assertEquals(ErrorCodes.MORPHO_OK, replayer.replay(replayed));
+
+        assertEquals(live.messages.size(), replayed.messages.size());
+        for (int i = 0; i < live.messages.size(); i++) {
+            CallbackMessage expected = live.messages.get(i);
+            CallbackMessage actual = replayed.messages.get(i);
+            assertEquals(expected.getMessageType(), actual.getMessageType());
+            if (expected.getMessage() instanceof byte[]) {
+                assertArrayEquals((byte[]) expected.getMessage(), (byte[]) actual.getMessage());
+            } else {
+                assertEquals(expected.getMessage(), actual.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void cancelBeforeReplay_abortsIt() {
+        CallbackStream stream = new CallbackStream();
+        stream.add(0, CallbackStream.MESSAGE_QUALITY, 50);
+        CallbackReplayer replayer = new CallbackReplayer(stream);
+        replayer.setSpeed(CallbackReplayer.AS_FAST_AS_POSSIBLE);
+
+        replayer.cancel();
+        Collector replayed = new Collector();
+        assertEquals(ErrorCodes.MORPHOERR_CMDE_ABORTED, replayer.replay(replayed));
+        assertTrue(replayed.messages.isEmpty());
+        // The cancel is consumed by the replay it aborted
+        assertEquals(ErrorCodes.MORPHO_OK, replayer.replay(replayed));
+        assertEquals(1, replayed.messages.size());
+    }
+
+    @Test
+    public void read_oversizedImage_isRejected() throws Exception {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        CallbackStream.writeHeader(file);
+        VarInts.writeUnsignedLong(file, 0);
+        file.write(CallbackStream.MESSAGE_IMAGE);
+        VarInts.writeUnsignedInt(file, CallbackStream.MAX_IMAGE_LENGTH + 1);
+        try {
+            CallbackStream.read(new ByteArrayInputStream(file.toByteArray()));
+            fail("Oversized image read");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.famoco.morphodemo.fingerprint;
+
+import com.famoco.morphodemo.device.SimulatedMorphoDevice;
+import com.famoco.morphodemo.fingerprint.enroll.DuplicatePolicy;
+import com.famoco.morphodemo.fingerprint.enroll.EnrollProcess;
+import com.famoco.morphodemo.fingerprint.enroll.EnrollResult;
+import com.famoco.morphodemo.fingerprint.identify.MinutiaePreFilter;
+import com.famoco.morphodemo.fingerprint.verify.VerifyProcess;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+import com.morpho.morphosmart.sdk.ITemplateType;
+import com.morpho.morphosmart.sdk.TemplateList;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Enrollment then verification on the simulated Morpho device, on the host JVM
+ */
+public class EnrollVerifyProcessTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SimulatedMorphoDevice morphoDevice;
+    private TemplateStorage templateStorage;
+    private int images;
+
+    @Before
+    public void setUp() throws Exception {
+        morphoDevice = new SimulatedMorphoDevice(42);
+        morphoDevice.initUsbDevicesNameEnum(new CustomInteger());
+        morphoDevice.openUsbDevice(morphoDevice.getUsbDeviceName(0), 0);
+        ProcessInfo.getInstance().setStorageDirectory(folder.getRoot());
+        templateStorage = new TemplateStorage(folder.getRoot());
+        images = 0;
+        ProcessInfo.getInstance().setUserId("test");
+        ProcessInfo.getInstance().setDuplicatePolicy(DuplicatePolicy.NONE);
+    }
+
+    @Test
+    public void enrollThenVerify_isOk() throws Exception {
+        CallbackDispatcher dispatcher = new CallbackDispatcher(new CallbackDispatcher.Listener() {
+            @Override
+            public void onCommand(Integer command) {
+            }
+
+            @Override
+            public void onImage(byte[] image) {
+                images++;
+            }
+
+            @Override
+            public void onQuality(Integer quality) {
+            }
+        });
+
+        ProcessResult enroll = new EnrollProcess(morphoDevice, templateStorage).execute(dispatcher);
+        assertEquals(ErrorCodes.MORPHO_OK, enroll.getErrorCode());
+        assertTrue(templateStorage.templateExists());
+        assertTrue(templateStorage.getRepository().contains(ProcessInfo.getInstance().getUserId(), 1));
+        assertTrue(images > 0);
+
+        VerifyProcess verifyProcess = new VerifyProcess(morphoDevice, templateStorage);
+        assertNull(verifyProcess.loadTemplateList("unknown"));
+        TemplateList templateList = verifyProcess.loadTemplateList(ProcessInfo.getInstance().getUserId());
+        assertEquals(1, templateList.getNbTemplate());
+        assertEquals(ErrorCodes.MORPHO_OK, verifyProcess.execute(templateList, dispatcher).getErrorCode());
+    }
+
+    @Test
+    public void enroll_duplicateFinger_isRejectedOrFlagged() throws Exception {
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+        MinutiaePreFilter preFilter = new MinutiaePreFilter(1);
+        EnrollProcess enrollProcess = new EnrollProcess(morphoDevice, templateStorage);
+        enrollProcess.setPreFilter(preFilter, 10);
+        // Compact card template, 3 bytes per minutia
+        morphoDevice.setPresentedTemplate("alice's minutia".getBytes());
+        processInfo.setDuplicatePolicy(DuplicatePolicy.REJECT);
+
+        processInfo.setUserId("alice");
+        assertEquals(ErrorCodes.MORPHO_OK, enrollProcess.execute(null).getErrorCode());
+        // Same user enrolled again
+        EnrollResult result = enrollProcess.execute(null);
+        assertEquals(ErrorCodes.MORPHO_OK, result.getErrorCode());
+        assertNull(result.getDuplicate());
+        assertTrue(result.isDuplicateCheckComplete());
+
+        processInfo.setUserId("bob");
+        result = enrollProcess.execute(null);
+        assertEquals(ErrorCodes.MORPHOERR_ALREADY_ENROLLED, result.getErrorCode());
+        assertEquals("alice", result.getDuplicate().getUserId());
+        assertTrue(result.getDuplicateCheckNanos() > 0);
+        assertFalse(templateStorage.getRepository().contains("bob"));
+
+        processInfo.setDuplicatePolicy(DuplicatePolicy.FLAG);
+        result = enrollProcess.execute(null);
+        assertEquals(ErrorCodes.MORPHO_OK, result.getErrorCode());
+        assertEquals("alice", result.getDuplicate().getUserId());
+        assertTrue(templateStorage.getRepository().contains("bob"));
+        preFilter.shutdown();
+    }
+
+    @Test
+    public void enroll_duplicateMissedByPreFilter_isFoundInTheGallery() throws Exception {
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+        MinutiaePreFilter preFilter = new MinutiaePreFilter(1) {
+            @Override
+            public synchronized List<StoredTemplate> shortlist(TemplateRepository templateRepository,
+                                                               byte[] probe, ITemplateType probeType,
+                                                               int count) {
+                return Collections.emptyList();
+            }
+        };
+        EnrollProcess enrollProcess = new EnrollProcess(morphoDevice, templateStorage);
+        enrollProcess.setPreFilter(preFilter, 10);
+        morphoDevice.setPresentedTemplate("alice's minutia".getBytes());
+        processInfo.setDuplicatePolicy(DuplicatePolicy.REJECT);
+
+        processInfo.setUserId("alice");
+        assertEquals(ErrorCodes.MORPHO_OK, enrollProcess.execute(null).getErrorCode());
+        processInfo.setUserId("bob");
+        EnrollResult result = enrollProcess.execute(null);
+        assertEquals(ErrorCodes.MORPHOERR_ALREADY_ENROLLED, result.getErrorCode());
+        assertEquals("alice", result.getDuplicate().getUserId());
+        preFilter.shutdown();
+    }
+
+    @Test
+    public void enroll_failingPreFilter_stillChecksAndStores() throws Exception {
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+        MinutiaePreFilter preFilter = new MinutiaePreFilter(1) {
+            @Override
+            public synchronized List<StoredTemplate> shortlist(TemplateRepository templateRepository,
+                                                               byte[] probe, ITemplateType probeType,
+                                                               int count) {
+                throw new IllegalStateException("pre-filter failure");
+            }
+        };
+        EnrollProcess enrollProcess = new EnrollProcess(morphoDevice, templateStorage);
+        enrollProcess.setPreFilter(preFilter, 10);
+        morphoDevice.setPresentedTemplate("alice's minutia".getBytes());
+        processInfo.setDuplicatePolicy(DuplicatePolicy.REJECT);
+
+        processInfo.setUserId("alice");
+        EnrollResult result = enrollProcess.execute(null);
+        assertEquals(ErrorCodes.MORPHO_OK, result.getErrorCode());
+        assertTrue(result.isDuplicateCheckComplete());
+        assertTrue(templateStorage.getRepository().contains("alice"));
+        processInfo.setUserId("bob");
+        assertEquals(ErrorCodes.MORPHOERR_ALREADY_ENROLLED, enrollProcess.execute(null).getErrorCode());
+        preFilter.shutdown();
+    }
+}
@@ -0,0 +1,29 @@
+package com.famoco.morphodemo.fingerprint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameMailboxTest {
+
+    @Test
+    public void latestFrame_wins() {
+        FrameMailbox mailbox = new FrameMailbox();
+        byte[] first = new byte[1];
+        byte[] second = new byte[2];
+        byte[] third = new byte[3];
+
+        assertTrue(mailbox.offer(first));
+        assertFalse(mailbox.offer(second));
+        assertFalse(mailbox.offer(third));
+        assertSame(third, mailbox.take());
+        assertNull(mailbox.take());
+
+        assertTrue(mailbox.offer(first));
+        mailbox.clear();
+        assertTrue(mailbox.offer(second));
+
+        assertEquals(5, mailbox.getOfferedCount());
+        assertEquals(3, mailbox.getDroppedCount());
+    }
+}
@@ -0,0 +1,106 @@
+package com.famoco.morphodemo.fingerprint;
+
+import com.famoco.morphodemo.device.SimulatedMorphoDevice;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.LatentDetection;
+import com.morpho.morphosmart.sdk.MorphoImage;
+import com.morpho.morphosmart.sdk.MorphoImageHeader;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Observable;
+import java.util.Observer;
+
+import static com.morpho.morphosmart.sdk.CompressionAlgorithm.MORPHO_NO_COMPRESS;
+import static org.junit.Assert.*;
+
+public class LiveFrameTest {
+
+    @Test
+    public void parse_matchesSdk() {
+        final byte[][] image = new byte[1][];
+        SimulatedMorphoDevice device = new SimulatedMorphoDevice(7);
+        device.setPreviewSize(100, 80);
+        device.initUsbDevicesNameEnum(new CustomInteger());
+        device.openUsbDevice(device.getUsbDeviceName(0), 0);
+        device.getImage(0, 0, MORPHO_NO_COMPRESS, 0, 0, LatentDetection.LATENT_DETECT_ENABLE,
+                new MorphoImage(), 0xFF, new CallbackDispatcher(new CallbackDispatcher.Listener() {
+                    @Override
+                    public void onCommand(Integer command) {
+                    }
+
+                    @Override
+                    public void onImage(byte[] data) {
+                        image[0] = data;
+                    }
+
+                    @Override
+                    public void onQuality(Integer quality) {
+                    }
+                }));
+
+        MorphoImage expected = MorphoImage.getMorphoImageFromLive(image[0]);
+        MorphoImageHeader header = expected.getMorphoImageHeader();
+        LiveFrame frame = LiveFrame.parse(image[0]);
+
+        assertEquals(header.getNbRow(), frame.getNbRow());
+        assertEquals(header.getNbColumn(), frame.getNbColumn());
+        assertEquals(header.getResX(), frame.getResX());
+        assertEquals(header.getResY(), frame.getResY());
+        assertEquals(header.getNbBitsPerPixel(), frame.getNbBitsPerPixel());
+        assertSame(image[0], frame.getData());
+
+        ByteBuffer pixels = frame.getPixels();
+        byte[] copy = new byte[pixels.remaining()];
+        pixels.get(copy);
+        assertArrayEquals(expected.getImage(), copy);
+    }
+
+    @Test
+    public void parse_rejectsTruncatedImage() {
+        assertNull(LiveFrame.parse(null));
+        assertNull(LiveFrame.parse(new byte[LiveFrame.HEADER_SIZE - 1]));
+        byte[] truncated = new byte[LiveFrame.HEADER_SIZE + 10];
+        truncated[2] = 4;
+        truncated[4] = 4;
+        truncated[11] = 8;
+        assertNull(LiveFrame.parse(truncated));
+    }
+
+    @Test
+    public void parse_rejectsEmptyOrUnknownDepth() {
+        byte[] image = new byte[LiveFrame.HEADER_SIZE + 16];
+        image[2] = 4;
+        image[4] = 4;
+        image[11] = 8;
+        assertNotNull(LiveFrame.parse(image));
+        image[11] = 16;
+        assertNull(LiveFrame.parse(image));
+        image[11] = 8;
+        image[2] = 0;
+        assertNull(LiveFrame.parse(image));
+    }
+
+    @Test
+    public void unpackPixels_expands4BitsPerPixel() {
+        // 3 x 3 pixels : 5 bytes, the last nibble unused
+        byte[] image = new byte[LiveFrame.HEADER_SIZE + 5];
+        image[2] = 3;
+        image[4] = 3;
+        image[11] = 4;
+        image[LiveFrame.HEADER_SIZE] = (byte) 0x0F;
+        image[LiveFrame.HEADER_SIZE + 4] = (byte) 0x80;
+        LiveFrame frame = LiveFrame.parse(image);
+        assertTrue(frame.isPacked());
+
+        byte[] pixels = new byte[9];
+        frame.unpackPixels(pixels);
+        assertEquals(0, pixels[0]);
+        assertEquals((byte) 0xFF, pixels[1]);
+        assertEquals((byte) 0x88, pixels[8]);
+
+        assertNull(LiveFrame.parse(Arrays.copyOf(image, LiveFrame.HEADER_SIZE + 4)));
+    }
+}
@@ -0,0 +1,165 @@
+package com.famoco.morphodemo.fingerprint.identify;
+
+import com.famoco.morphodemo.device.SimulatedMorphoDevice;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.famoco.morphodemo.storage.TemplateStorage;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.ErrorCodes;
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Identification among the templates of the repository, on the simulated Morpho device
+ */
+public class IdentifyProcessTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SimulatedMorphoDevice morphoDevice;
+    private IdentifyProcess identifyProcess;
+    private TemplateRepository templateRepository;
+
+    @Before
+    public void setUp() throws Exception {
+        morphoDevice = new SimulatedMorphoDevice(42);
+        morphoDevice.initUsbDevicesNameEnum(new CustomInteger());
+        morphoDevice.openUsbDevice(morphoDevice.getUsbDeviceName(0), 0);
+        ProcessInfo.getInstance().setStorageDirectory(folder.getRoot());
+        TemplateStorage templateStorage = new TemplateStorage(folder.getRoot());
+        templateRepository = templateStorage.getRepository();
+        identifyProcess = new IdentifyProcess(morphoDevice, templateStorage);
+    }
+
+    /**
+     * Well formed compact card template : 3 bytes per minutia
+     */
+    private static byte[] minutiae(String name) {
+        StringBuilder data = new StringBuilder("minutiae of " + name);
+        while (data.length() % 3 != 0) {
+            data.append(' ');
+        }
+        return data.toString().getBytes();
+    }
+
+    private void enroll(int users) throws Exception {
+        for (int i = 0; i < users; i++) {
+            templateRepository.put(new StoredTemplate("user" + i, 1, TemplateType.MORPHO_PK_ISO_FMC_CS,
+                    minutiae("user" + i)));
+        }
+    }
+
+    @Test
+    public void identify_largeGallery_capturesOnceThenMatchesBatches() throws Exception {
+        enroll(95);
+        morphoDevice.setPresentedTemplate(minutiae("user61"));
+
+        IdentifyResult result = identifyProcess.execute(null);
+
+        assertEquals(ErrorCodes.MORPHO_OK, result.getErrorCode());
+        assertEquals("user61", result.getMatch().getUserId());
+        assertEquals(IdentifyResult.SCORE_UNKNOWN, result.getMatchingScore());
+        assertTrue(result.getCandidates() > 0);
+    }
+
+    @Test
+    public void identify_preFilter_matchesShortlistOnly() throws Exception {
+        enroll(95);
+        MinutiaePreFilter preFilter = new MinutiaePreFilter(2);
+        identifyProcess.setPreFilter(preFilter, 5);
+        morphoDevice.setPresentedTemplate(minutiae("user61"));
+
+        IdentifyResult result = identifyProcess.execute(null);
+        preFilter.shutdown();
+
+        assertEquals(ErrorCodes.MORPHO_OK, result.getErrorCode());
+        assertEquals("user61", result.getMatch().getUserId());
+        assertTrue(result.getCandidates() <= 5);
+    }
+
+    @Test
+    public void identify_preFilterAboveGallerySize_matchesWholeGallery() throws Exception {
+        enroll(95);
+        MinutiaePreFilter preFilter = new MinutiaePreFilter(2);
+        identifyProcess.setPreFilter(preFilter, 5, 1000);
+        morphoDevice.setPresentedTemplate(minutiae("a stranger"));
+
+        IdentifyResult result = identifyProcess.execute(null);
+        preFilter.shutdown();
+
+        assertEquals(ErrorCodes.MORPHOERR_NO_HIT, result.getErrorCode());
+        assertEquals(95, result.getCandidates());
+        assertEquals(0, preFilter.size());
+    }
+
+    @Test
+    public void identify_smallGallery_verifiesWithScore() throws Exception {
+        enroll(IdentifyProcess.DEFAULT_BATCH_SIZE);
+        morphoDevice.setPresentedTemplate(minutiae("user7"));
+        morphoDevice.setMatchScore(3100);
+
+        IdentifyResult result = identifyProcess.execute(null);
+
+        assertEquals(ErrorCodes.MORPHO_OK, result.getErrorCode());
+        assertEquals("user7", result.getMatch().getUserId());
+        assertEquals(3100, result.getMatchingScore());
+        assertEquals(IdentifyProcess.DEFAULT_BATCH_SIZE, result.getCandidates());
+    }
+
+    @Test
+    public void identify_unknownFinger_isNoHit() throws Exception {
+        enroll(95);
+        morphoDevice.setPresentedTemplate(minutiae("a stranger"));
+
+        IdentifyResult result = identifyProcess.execute(null);
+
+        assertEquals(ErrorCodes.MORPHOERR_NO_HIT, result.getErrorCode());
+        assertNull(result.getMatch());
+        assertEquals(95, result.getCandidates());
+    }
+
+    @Test
+    public void identify_enrollmentReindexingDuringTheScan_restartsIt() throws Exception {
+        enroll(95);
+        SimulatedMorphoDevice enrollingDevice = new SimulatedMorphoDevice(42) {
+            private boolean enrolled;
+
+            @Override
+            public int verifyMatch(int far, TemplateList searchTemplateList, TemplateList referenceTemplateList,
+                                   CustomInteger matchingPkIndex) {
+                if (!enrolled) {
+                    enrolled = true;
+                    // Enrollment on another sensor, reallocating the index of the repository
+                    try {
+                        for (int i = 0; i < 700; i++) {
+                            templateRepository.put(new StoredTemplate("late" + i, 1,
+                                    TemplateType.MORPHO_PK_ISO_FMC_CS, minutiae("late" + i)));
+                        }
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                return super.verifyMatch(far, searchTemplateList, referenceTemplateList, matchingPkIndex);
+            }
+        };
+        enrollingDevice.initUsbDevicesNameEnum(new CustomInteger());
+        enrollingDevice.openUsbDevice(enrollingDevice.getUsbDeviceName(0), 0);
+        enrollingDevice.setPresentedTemplate(minutiae("user61"));
+        IdentifyProcess process = new IdentifyProcess(enrollingDevice,
+                new TemplateStorage(folder.getRoot()));
+
+        IdentifyResult result = process.execute(null);
+
+        assertEquals(ErrorCodes.MORPHO_OK, result.getErrorCode());
+        assertEquals("user61", result.getMatch().getUserId());
+    }
+}
@@ -0,0 +1,133 @@
+package com.famoco.morphodemo.fingerprint.identify;
+
+import com.famoco.morphodemo.fingerprint.template.IsoTemplate;
+import com.famoco.morphodemo.fingerprint.template.TemplateFormatException;
+import com.famoco.morphodemo.storage.StoredTemplate;
+import com.famoco.morphodemo.storage.TemplateRepository;
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Host side shortlist of the candidates of an identification
+ */
+public class MinutiaePreFilterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Compact card template of 30 to 50 random minutiae
+     */
+    static byte[] randomTemplate(Random random) {
+        byte[] template = new byte[(30 + random.nextInt(21)) * 3];
+        for (int i = 0; i < template.length; i += 3) {
+            template[i] = (byte) (20 + random.nextInt(180));
+            template[i + 1] = (byte) (20 + random.nextInt(220));
+            template[i + 2] = (byte) ((1 + random.nextInt(2)) << 6 | random.nextInt(64));
+        }
+        return template;
+    }
+
+    /**
+     * Another acquisition of the same finger : minutiae moved by up to 2 units, 3 of them missed
+     */
+    static byte[] reacquire(byte[] template, Random random) {
+        byte[] probe = new byte[template.length - 3 * 3];
+        for (int i = 0; i < probe.length; i += 3) {
+            probe[i] = (byte) ((template[i] & 0xFF) + random.nextInt(5) - 2);
+            probe[i + 1] = (byte) ((template[i + 1] & 0xFF) + random.nextInt(5) - 2);
+            probe[i + 2] = (byte) ((template[i + 2] & 0xC0) | ((template[i + 2] + random.nextInt(3) - 1) & 0x3F));
+        }
+        return probe;
+    }
+
+    @Test
+    public void shortlist_findsReacquiredFinger() throws Exception {
+        TemplateRepository repository = TemplateRepository.open(folder.getRoot());
+        Random random = new Random(42);
+        int users = 3 * MinutiaePreFilter.MIN_PARTITION_SIZE;
+        byte[][] templates = new byte[users][];
+        for (int i = 0; i < users; i++) {
+            templates[i] = randomTemplate(random);
+            repository.put(new StoredTemplate("user" + i, 1, TemplateType.MORPHO_PK_ISO_FMC_CS, templates[i]));
+        }
+        // Neither FP nor well formed : not candidates
+        repository.put(new StoredTemplate("fvp", 1, TemplateFVPType.MORPHO_PK_FVP, new byte[]{1}));
+        repository.put(new StoredTemplate("corrupt", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{1}));
+
+        MinutiaePreFilter preFilter = new MinutiaePreFilter(4);
+        assertEquals(users, preFilter.index(repository));
+        for (int i = 0; i < users; i += users / 10) {
+            List<StoredTemplate> shortlist = preFilter.shortlist(repository, reacquire(templates[i], random),
+                    TemplateType.MORPHO_PK_ISO_FMC_CS, 50);
+            assertEquals(50, shortlist.size());
+            boolean found = false;
+            for (StoredTemplate candidate : shortlist) {
+                found |= candidate.getUserId().equals("user" + i);
+            }
+            assertTrue("user" + i + " not shortlisted", found);
+        }
+
+        // Same template : closest candidate
+        assertEquals("user7", preFilter.shortlist(repository, templates[7],
+                TemplateType.MORPHO_PK_ISO_FMC_CS, 1).get(0).getUserId());
+
+        // Indexed again once the repository changes
+        repository.delete("user7", 1);
+        assertEquals(users - 1, preFilter.index(repository));
+        preFilter.shutdown();
+        repository.close();
+    }
+
+    @Test
+    public void recordWithoutFingerView_isSkippedOrRejected() throws Exception {
+        TemplateRepository repository = TemplateRepository.open(folder.getRoot());
+        // Record header only : "FMR", version " 20", length, no finger view
+        ByteBuffer empty = ByteBuffer.allocate(24);
+        empty.putInt(0x464D5200).putInt(0x20323000).putInt(24);
+        repository.put(new StoredTemplate("empty", 1, TemplateType.MORPHO_PK_ISO_FMR, empty.array()));
+        byte[] template = randomTemplate(new Random(42));
+        repository.put(new StoredTemplate("user", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, template));
+
+        MinutiaePreFilter preFilter = new MinutiaePreFilter(1);
+        assertEquals(1, preFilter.index(repository));
+        assertEquals("user", preFilter.shortlist(repository, template,
+                TemplateType.MORPHO_PK_ISO_FMC_CS, 10).get(0).getUserId());
+        try {
+            preFilter.shortlist(repository, empty.array(), TemplateType.MORPHO_PK_ISO_FMR, 10);
+            fail("Probe without finger view shortlisted");
+        } catch (TemplateFormatException expected) {
+        }
+        preFilter.shutdown();
+        repository.close();
+    }
+
+    @Test
+    public void extract_normalCard_matchesCompactCard() throws Exception {
+        byte[] compact = randomTemplate(new Random(42));
+        // Same minutiae in units of 0.01 mm and 1/256 of a turn, 5 bytes each
+        ByteBuffer normal = ByteBuffer.allocate(compact.length / 3 * 5);
+        for (int i = 0; i < compact.length; i += 3) {
+            int type = (compact[i + 2] >> 6) & 0x03;
+            normal.putShort((short) (type << 14 | (compact[i] & 0xFF) * 10))
+                    .putShort((short) ((compact[i + 1] & 0xFF) * 10))
+                    .put((byte) ((compact[i + 2] & 0x3F) * 4));
+        }
+        byte[] compactFeatures = new byte[MinutiaeFeatures.SIZE];
+        byte[] normalFeatures = new byte[MinutiaeFeatures.SIZE];
+        MinutiaeFeatures.extract(IsoTemplate.parse(compact, TemplateType.MORPHO_PK_ISO_FMC_CS), compactFeatures, 0);
+        MinutiaeFeatures.extract(IsoTemplate.parse(normal.array(), TemplateType.MORPHO_PK_ISO_FMC_NS),
+                normalFeatures, 0);
+        assertArrayEquals(compactFeatures, normalFeatures);
+    }
+}
@@ -0,0 +1,120 @@
+package com.famoco.morphodemo.fingerprint.template;
+
+import com.famoco.morphodemo.device.SimulatedMorphoDevice;
+import com.famoco.morphodemo.fingerprint.enroll.EnrollProcess;
+import com.famoco.morphodemo.utils.morpho.ProcessInfo;
+import com.morpho.morphosmart.sdk.CustomInteger;
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reading of ISO/IEC 19794-2:2005 templates in place
+ */
+public class IsoTemplateTest {
+
+    /**
+     * Record of 2 finger views : right thumb with 2 minutiae and 3 bytes of extended data,
+     * left index without minutia
+     */
+    private static ByteBuffer record() {
+        ByteBuffer buffer = ByteBuffer.allocate(IsoTemplate.RECORD_HEADER_SIZE + 4 + 12 + 2 + 3 + 4 + 2);
+        buffer.putInt(IsoTemplate.FORMAT_IDENTIFIER).putInt(IsoTemplate.VERSION_2005).putInt(buffer.capacity())
+                .putShort((short) 0x1033).putShort((short) 256).putShort((short) 400)
+                .putShort((short) 197).putShort((short) 197).put((byte) 2).put((byte) 0);
+        buffer.put((byte) 1).put((byte) 0x10).put((byte) 80).put((byte) 2);
+        buffer.putShort((short) (1 << 14 | 100)).putShort((short) 300).put((byte) 64).put((byte) 90);
+        buffer.putShort((short) (2 << 14 | 255)).putShort((short) 399).put((byte) 255).put((byte) 0);
+        buffer.putShort((short) 3).put(new byte[]{1, 2, 3});
+        buffer.put((byte) 7).put((byte) 0x21).put((byte) 0).put((byte) 0);
+        buffer.putShort((short) 0);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void parse_record() throws Exception {
+        IsoTemplate template = IsoTemplate.parse(record(), IsoTemplateFormat.RECORD);
+        assertEquals(0x1033, template.getCaptureEquipment());
+        assertEquals(256, template.getImageWidth());
+        assertEquals(400, template.getImageHeight());
+        assertEquals(197, template.getResolutionY());
+        assertEquals(2, template.getNbFingerViews());
+
+        IsoTemplate.FingerView thumb = template.getFingerView(0);
+        assertEquals(1, thumb.getFingerPosition());
+        assertEquals(1, thumb.getViewNumber());
+        assertEquals(80, thumb.getQuality());
+        assertEquals(2, thumb.getNbMinutiae());
+        assertEquals(IsoTemplate.MINUTIA_RIDGE_ENDING, thumb.getMinutiaType(0));
+        assertEquals(100, thumb.getMinutiaX(0));
+        assertEquals(300, thumb.getMinutiaY(0));
+        assertEquals(64, thumb.getMinutiaAngle(0));
+        assertEquals(90, thumb.getMinutiaQuality(0));
+        assertEquals(IsoTemplate.MINUTIA_BIFURCATION, thumb.getMinutiaType(1));
+        assertEquals(399, thumb.getMinutiaY(1));
+
+        IsoTemplate.FingerView index = template.getFingerView(1);
+        assertEquals(7, index.getFingerPosition());
+        assertEquals(2, index.getViewNumber());
+        assertEquals(1, index.getImpressionType());
+        assertEquals(0, index.getNbMinutiae());
+    }
+
+    @Test
+    public void parse_corruptRecord_isRejected() {
+        byte[] valid = record().array();
+        // Truncated, extended data longer than the record, minutia outside of the image, trailing byte
+        assertRejected(ByteBuffer.wrap(valid, 0, valid.length - 1));
+        byte[] data = valid.clone();
+        data[IsoTemplate.RECORD_HEADER_SIZE + 4 + 12 + 1] = 9;
+        assertRejected(ByteBuffer.wrap(data));
+        data = valid.clone();
+        data[IsoTemplate.RECORD_HEADER_SIZE + 4 + 2] = 0x7F;
+        assertRejected(ByteBuffer.wrap(data));
+        ByteBuffer longer = ByteBuffer.allocate(valid.length + 1).put(valid);
+        longer.putInt(8, longer.capacity()).rewind();
+        assertRejected(longer);
+
+        try {
+            IsoTemplate.parse(new byte[]{1, 2, 3, 4}, TemplateType.MORPHO_PK_ISO_FMC_CS);
+            fail();
+        } catch (TemplateFormatException e) {
+            // 4 bytes are not a number of minutiae
+        }
+    }
+
+    @Test
+    public void parse_capturedTemplate() throws Exception {
+        SimulatedMorphoDevice morphoDevice = new SimulatedMorphoDevice(42);
+        morphoDevice.initUsbDevicesNameEnum(new CustomInteger());
+        morphoDevice.openUsbDevice(morphoDevice.getUsbDeviceName(0), 0);
+        ProcessInfo processInfo = ProcessInfo.getInstance();
+        TemplateList templateList = new TemplateList();
+        morphoDevice.capture(processInfo.getTimeout(), 0, 0, 1, EnrollProcess.TEMPLATE_TYPE, null, 255,
+                null, null, null, 0, null, 0, templateList, 0, null);
+        byte[] data = templateList.getTemplate(0).getData();
+
+        IsoTemplate template = IsoTemplate.parse(data, TemplateType.MORPHO_PK_ISO_FMC_CS);
+        assertEquals(1, template.getNbFingerViews());
+        IsoTemplate.FingerView view = template.getFingerView(0);
+        assertEquals(data.length / 3, view.getNbMinutiae());
+        assertEquals(data[0] & 0xFF, view.getMinutiaX(0));
+        assertEquals(data[2] & 0x3F, view.getMinutiaAngle(0));
+        assertEquals(0, view.getMinutiaQuality(0));
+    }
+
+    private static void assertRejected(ByteBuffer data) {
+        try {
+            IsoTemplate.parse(data, IsoTemplateFormat.RECORD);
+            fail();
+        } catch (TemplateFormatException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.famoco.morphodemo.fingerprint.template;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lossless packing of the ISO/IEC 19794-2:2005 templates
+ */
+public class PackedTemplateTest {
+
+    /**
+     * Record of one finger view of minutiae sorted by vertical position, with 2 bytes of
+     * extended data
+     */
+    private static byte[] record(int nbMinutiae, Random random) {
+        ByteBuffer buffer = ByteBuffer.allocate(IsoTemplate.RECORD_HEADER_SIZE + 4 + nbMinutiae * 6 + 2 + 2);
+        buffer.putInt(IsoTemplate.FORMAT_IDENTIFIER).putInt(IsoTemplate.VERSION_2005).putInt(buffer.capacity())
+                .putShort((short) 0x1033).putShort((short) 416).putShort((short) 416)
+                .putShort((short) 197).putShort((short) 197).put((byte) 1).put((byte) 0);
+        buffer.put((byte) 2).put((byte) 0x00).put((byte) 70).put((byte) nbMinutiae);
+        int[] ys = new int[nbMinutiae];
+        for (int i = 0; i < nbMinutiae; i++) {
+            ys[i] = random.nextInt(416);
+        }
+        Arrays.sort(ys);
+        for (int y : ys) {
+            buffer.putShort((short) ((1 + random.nextInt(2)) << 14 | random.nextInt(416))).putShort((short) y)
+                    .put((byte) random.nextInt(256)).put((byte) (1 + random.nextInt(100)));
+        }
+        buffer.putShort((short) 2).put((byte) 5).put((byte) 6);
+        return buffer.array();
+    }
+
+    private static byte[] compactCard(int nbMinutiae, Random random) {
+        byte[] data = new byte[nbMinutiae * 3];
+        int[] ys = new int[nbMinutiae];
+        for (int i = 0; i < nbMinutiae; i++) {
+            ys[i] = random.nextInt(256);
+        }
+        Arrays.sort(ys);
+        for (int i = 0; i < nbMinutiae; i++) {
+            data[3 * i] = (byte) random.nextInt(256);
+            data[3 * i + 1] = (byte) ys[i];
+            data[3 * i + 2] = (byte) ((1 + random.nextInt(2)) << 6 | random.nextInt(64));
+        }
+        return data;
+    }
+
+    @Test
+    public void packThenUnpack_isIdentical() throws Exception {
+        Random random = new Random(42);
+        byte[] record = record(40, random);
+        byte[] packed = PackedTemplate.pack(record, IsoTemplateFormat.RECORD);
+        assertTrue(packed.length < record.length * 0.85);
+        assertArrayEquals(record, PackedTemplate.unpack(packed, IsoTemplateFormat.RECORD));
+
+        byte[] card = compactCard(40, random);
+        packed = PackedTemplate.pack(card, IsoTemplateFormat.CARD_COMPACT);
+        assertTrue(packed.length < card.length);
+        assertArrayEquals(card, PackedTemplate.unpack(packed, IsoTemplateFormat.CARD_COMPACT));
+    }
+
+    @Test
+    public void packThenUnpack_unsorted_isIdentical() throws Exception {
+        Random random = new Random(42);
+        byte[] record = record(40, random);
+        // Minutiae in the order of a capture not sorted by the extractor
+        shuffleMinutiae(record, IsoTemplate.RECORD_HEADER_SIZE + 4, 40, 6, random);
+        byte[] packed = PackedTemplate.pack(record, IsoTemplateFormat.RECORD);
+        assertNotNull(packed);
+        assertTrue(packed.length < record.length * 0.9);
+        assertArrayEquals(record, PackedTemplate.unpack(packed, IsoTemplateFormat.RECORD));
+
+        // The 8 bits positions of a shuffled compact card do not get any shorter
+        byte[] card = compactCard(40, random);
+        shuffleMinutiae(card, 0, 40, 3, random);
+        packed = PackedTemplate.pack(card, IsoTemplateFormat.CARD_COMPACT);
+        if (packed != null) {
+            assertArrayEquals(card, PackedTemplate.unpack(packed, IsoTemplateFormat.CARD_COMPACT));
+        }
+    }
+
+    private static void shuffleMinutiae(byte[] data, int offset, int nbMinutiae, int size, Random random) {
+        for (int i = nbMinutiae - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            for (int b = 0; b < size; b++) {
+                byte swapped = data[offset + size * i + b];
+                data[offset + size * i + b] = data[offset + size * j + b];
+                data[offset + size * j + b] = swapped;
+            }
+        }
+    }
+
+    @Test
+    public void pack_malformed_isNotPacked() {
+        byte[] card = compactCard(40, new Random(42));
+        assertNull(PackedTemplate.pack(Arrays.copyOf(card, card.length - 1), IsoTemplateFormat.CARD_COMPACT));
+    }
+
+    @Test(expected = TemplateFormatException.class)
+    public void unpack_moreMinutiaeThanTheRecordLength_isRejected() throws Exception {
+        byte[] packed = PackedTemplate.pack(record(40, new Random(42)), IsoTemplateFormat.RECORD);
+        // Record length (bytes 8..11 of the header, after the Rice parameter) ending in the first minutia
+        packed[1 + 10] = 0;
+        packed[1 + 11] = (byte) (IsoTemplate.RECORD_HEADER_SIZE + 4 + 2);
+        PackedTemplate.unpack(packed, IsoTemplateFormat.RECORD);
+    }
+
+    @Test(expected = TemplateFormatException.class)
+    public void unpack_truncated_isRejected() throws Exception {
+        byte[] packed = PackedTemplate.pack(record(40, new Random(42)), IsoTemplateFormat.RECORD);
+        PackedTemplate.unpack(Arrays.copyOf(packed, packed.length - 2), IsoTemplateFormat.RECORD);
+    }
+}
@@ -0,0 +1,80 @@
+package com.famoco.morphodemo.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Background writing of the exports
+ */
+public class ExportWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<ExportFile> completed = Collections.synchronizedList(new ArrayList<ExportFile>());
+    private final List<ExportFile> failed = Collections.synchronizedList(new ArrayList<ExportFile>());
+
+    private final ExportWriter.Listener listener = new ExportWriter.Listener() {
+        @Override
+        public void onExportCompleted(List<ExportFile> files) {
+            completed.addAll(files);
+        }
+
+        @Override
+        public void onExportFailed(ExportFile file, IOException e) {
+            failed.add(file);
+        }
+    };
+
+    @Test
+    public void flush_waitsForEverySubmittedBatch() throws Exception {
+        ExportWriter writer = new ExportWriter("test-export", 2);
+        TemplateStorage storage = new TemplateStorage(folder.getRoot());
+
+        for (int i = 0; i < 20; i++) {
+            writer.submit(Arrays.asList(
+                    storage.getImageFile("image" + i + ".wsq", new byte[]{(byte) i}),
+                    storage.getImageFile("image" + i + "_newHeader.wsq", new byte[]{(byte) i, 1})),
+                    listener);
+        }
+        writer.flush();
+
+        assertEquals(40, completed.size());
+        assertEquals(20, writer.getWrittenCount());
+        assertEquals(0, writer.getQueueDepth());
+        assertArrayEquals(new byte[]{19, 1}, storage.readTemplate(new File(folder.getRoot(), "image19_newHeader.wsq")));
+    }
+
+    @Test
+    public void failure_stopsTheBatch() throws Exception {
+        ExportWriter writer = new ExportWriter("test-export", 2);
+        ExportFile missingDirectory = new ExportFile(new File(folder.getRoot(), "missing/image.wsq"), new byte[1]);
+        ExportFile next = new ExportFile(folder.newFile("next.wsq"), new byte[1]);
+
+        writer.submit(Arrays.asList(missingDirectory, next), listener);
+        writer.shutdown();
+
+        assertEquals(Collections.singletonList(missingDirectory), failed);
+        assertTrue(completed.isEmpty());
+        assertEquals(0, next.getFile().length());
+        assertEquals(1, writer.getFailedCount());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void submit_afterShutdown_isRejected() {
+        ExportWriter writer = new ExportWriter("test-export", 2);
+        writer.shutdown();
+        writer.submit(Collections.<ExportFile>emptyList(), listener);
+    }
+}
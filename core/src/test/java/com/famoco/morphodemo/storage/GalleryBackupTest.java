@@ -0,0 +1,110 @@
+package com.famoco.morphodemo.storage;
+
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Backup of the gallery in an archive and restoration
+ */
+public class GalleryBackupTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void backupThenRestore_restoresRepositoryAndExports() throws Exception {
+        File directory = folder.newFolder("gallery");
+        TemplateStorage templateStorage = new TemplateStorage(directory);
+        TemplateRepository repository = templateStorage.getRepository();
+        repository.put(new StoredTemplate("alice", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{1, 2, 3}));
+        repository.put(new StoredTemplate("bob", 2, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{4, 5, 6}));
+        templateStorage.getImageFile("TemplateFP_alice_f1.iso-fmc-cs", new byte[]{1, 2, 3}).write();
+        templateStorage.getImageFile("TemplateFP_WSQ.wsq", new byte[70000]).write();
+        templateStorage.getImageFile("unrelated.txt", new byte[]{9}).write();
+
+        File archive = folder.newFile("gallery" + GalleryBackup.EXTENSION);
+        GalleryBackup.Manifest manifest = new GalleryBackup(templateStorage).backup(archive);
+        assertEquals(2, manifest.getTemplates());
+        assertEquals(3, manifest.getEntries().size());
+
+        // Changes after the backup are undone by the restoration
+        repository.put(new StoredTemplate("carol", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{7, 8, 9}));
+        repository.delete("alice", 1);
+        new GalleryBackup(templateStorage).restore(archive);
+
+        repository = templateStorage.getRepository();
+        assertEquals(2, repository.size());
+        assertArrayEquals(new byte[]{1, 2, 3}, repository.get("alice", 1).getData());
+        assertNull(repository.get("carol", 1));
+        assertEquals(70000, new File(directory, "TemplateFP_WSQ.wsq").length());
+        repository.close();
+    }
+
+    @Test
+    public void restore_corruptArchive_replacesNothing() throws Exception {
+        File directory = folder.newFolder("gallery");
+        TemplateStorage templateStorage = new TemplateStorage(directory);
+        TemplateRepository repository = templateStorage.getRepository();
+        repository.put(new StoredTemplate("alice", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{1, 2, 3}));
+        File archive = folder.newFile("gallery" + GalleryBackup.EXTENSION);
+        new GalleryBackup(templateStorage).backup(archive);
+        repository.put(new StoredTemplate("bob", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{4, 5, 6}));
+
+        try (RandomAccessFile file = new RandomAccessFile(archive, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+        try {
+            new GalleryBackup(templateStorage).restore(archive);
+            fail("Corrupt archive restored");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(TemplateRepository.DATA_FILENAME));
+        }
+        assertEquals(2, templateStorage.getRepository().size());
+        templateStorage.getRepository().close();
+    }
+
+    @Test
+    public void restore_failingAfterDataReplaced_leavesNoStaleIndex() throws Exception {
+        File source = folder.newFolder("source");
+        TemplateStorage sourceStorage = new TemplateStorage(source);
+        TemplateRepository repository = sourceStorage.getRepository();
+        repository.put(new StoredTemplate("alice", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{1, 2, 3}));
+        repository.put(new StoredTemplate("bob", 2, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{4, 5, 6}));
+        repository.put(new StoredTemplate("carol", 3, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{7, 8, 9}));
+        sourceStorage.getImageFile("TemplateFP_WSQ.wsq", new byte[]{1}).write();
+        File archive = folder.newFile("gallery" + GalleryBackup.EXTENSION);
+        new GalleryBackup(sourceStorage).backup(archive);
+        repository.close();
+
+        // A smaller repository, whose index would be trusted against the restored data file
+        File directory = folder.newFolder("gallery");
+        TemplateStorage templateStorage = new TemplateStorage(directory);
+        templateStorage.getRepository().put(
+                new StoredTemplate("dave", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{1}));
+        assertTrue(new File(directory, "TemplateFP_WSQ.wsq").mkdir());
+        try {
+            new GalleryBackup(templateStorage).restore(archive);
+            fail("Export restored over a directory");
+        } catch (IOException expected) {
+        }
+        assertFalse(new File(directory, TemplateRepository.INDEX_FILENAME).exists());
+
+        repository = templateStorage.getRepository();
+        assertEquals(3, repository.size());
+        assertArrayEquals(new byte[]{7, 8, 9}, repository.get("carol", 3).getData());
+        assertNull(repository.get("dave", 1));
+        repository.close();
+    }
+}
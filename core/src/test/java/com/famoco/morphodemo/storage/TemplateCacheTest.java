@@ -0,0 +1,69 @@
+package com.famoco.morphodemo.storage;
+
+import com.morpho.morphosmart.sdk.TemplateList;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * TemplateLists kept between verifications
+ */
+public class TemplateCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void put(TemplateCache cache, TemplateRepository repository, String userId,
+                            TemplateList templateList) throws Exception {
+        cache.put(repository, repository.getGeneration(), repository.getRecordOffsets(userId), userId, templateList);
+    }
+
+    @Test
+    public void get_invalidatedByChangesOfTheUser() throws Exception {
+        TemplateRepository repository = TemplateRepository.open(folder.getRoot());
+        TemplateCache cache = new TemplateCache(2);
+        TemplateList templateList = new TemplateList();
+        repository.put(new StoredTemplate("alice", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{1}));
+
+        assertNull(cache.get(repository, "alice"));
+        put(cache, repository, "alice", templateList);
+        assertSame(templateList, cache.get(repository, "alice"));
+
+        // The enrollment of another user keeps the entry
+        repository.put(new StoredTemplate("bob", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{1}));
+        assertSame(templateList, cache.get(repository, "alice"));
+
+        // A template of the user stored again makes the entry outdated
+        repository.put(new StoredTemplate("alice", 2, TemplateType.MORPHO_PK_ISO_FMC_CS, new byte[]{2}));
+        assertNull(cache.get(repository, "alice"));
+        assertEquals(0, cache.size());
+
+        put(cache, repository, "alice", templateList);
+        repository.delete("alice", 1);
+        assertNull(cache.get(repository, "alice"));
+        repository.close();
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() throws Exception {
+        TemplateRepository repository = TemplateRepository.open(folder.getRoot());
+        TemplateCache cache = new TemplateCache(2);
+        put(cache, repository, "alice", new TemplateList());
+        put(cache, repository, "bob", new TemplateList());
+        assertNotNull(cache.get(repository, "alice"));
+        put(cache, repository, "carol", new TemplateList());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(repository, "alice"));
+        assertNull(cache.get(repository, "bob"));
+        assertNotNull(cache.get(repository, "carol"));
+        repository.close();
+    }
+}
@@ -0,0 +1,101 @@
+package com.famoco.morphodemo.storage;
+
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bulk import of template files
+ */
+public class TemplateImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte[] ALICE = "alice's minutia".getBytes();
+    private static final byte[] BOB = "bob's minutiae.".getBytes();
+
+    private static void write(File file, byte[] data) throws Exception {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+
+    @Test
+    public void importFrom_directory_skipsDuplicatesAndInvalidFiles() throws Exception {
+        File source = folder.newFolder("source");
+        write(new File(source, "TemplateFP_alice_f1.iso-fmc-cs"), ALICE);
+        write(new File(source, "site2/TemplateFP_bob_f2.iso-fmc-cs"), BOB);
+        // Same content as alice's
+        write(new File(source, "site2/TemplateFP_carol_f1.iso-fmc-cs"), ALICE);
+        // Not a whole number of minutiae
+        write(new File(source, "TemplateFP_dave_f1.iso-fmc-cs"), new byte[]{1, 2});
+        write(new File(source, "TemplateFP_erin_f11.iso-fmc-cs"), BOB);
+        write(new File(source, "readme.txt"), new byte[]{1});
+
+        TemplateRepository repository = TemplateRepository.open(folder.newFolder("repository"));
+        final List<Integer> progress = new ArrayList<>();
+        TemplateImporter.Report report = new TemplateImporter(repository, 2).importFrom(source,
+                new TemplateImporter.Listener() {
+                    @Override
+                    public void onProgress(int processed, int total) {
+                        progress.add(processed);
+                        assertEquals(6, total);
+                    }
+                });
+
+        assertEquals(2, report.getImported());
+        assertEquals(1, report.getDuplicates());
+        assertEquals(1, report.getInvalid());
+        assertEquals(2, report.getIgnored());
+        assertEquals(6, (int) progress.get(progress.size() - 1));
+        assertArrayEquals(ALICE, repository.get("alice", 1).getData());
+        assertEquals(TemplateType.MORPHO_PK_ISO_FMC_CS, repository.get("bob", 2).getTemplateType());
+
+        // Importing again stores nothing more
+        long generation = repository.getGeneration();
+        report = new TemplateImporter(repository, 2).importFrom(source, TemplateImporter.Listener.NONE);
+        assertEquals(0, report.getImported());
+        assertEquals(generation, repository.getGeneration());
+        repository.close();
+    }
+
+    @Test
+    public void importFrom_zip_storesTemplatesByBatches() throws Exception {
+        File archive = folder.newFile("templates.zip");
+        int users = TemplateImporter.BATCH_SIZE + 10;
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (int i = 0; i < users; i++) {
+                zip.putNextEntry(new ZipEntry("export/TemplateFP_user" + i + "_f3.iso-fmc-cs"));
+                zip.write(new byte[]{(byte) i, (byte) (i >> 8), 7});
+                zip.closeEntry();
+            }
+        }
+
+        TemplateRepository repository = TemplateRepository.open(folder.newFolder("repository"));
+        TemplateImporter.Report report = new TemplateImporter(repository, 3).importFrom(archive,
+                TemplateImporter.Listener.NONE);
+
+        assertEquals(users, report.getImported());
+        assertEquals(users, repository.size());
+        assertArrayEquals(new byte[]{(byte) 1000, (byte) (1000 >> 8), 7}, repository.get("user1000", 3).getData());
+        repository.close();
+
+        // The records of the batches are indexed again from the data file
+        repository = TemplateRepository.open(repository.getDirectory());
+        assertEquals(users, repository.size());
+        repository.close();
+    }
+}
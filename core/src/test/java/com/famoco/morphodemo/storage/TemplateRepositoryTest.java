@@ -0,0 +1,173 @@
+package com.famoco.morphodemo.storage;
+
+import com.morpho.morphosmart.sdk.TemplateFVPType;
+import com.morpho.morphosmart.sdk.TemplateType;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Storage of the templates of many users
+ */
+public class TemplateRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static StoredTemplate template(String userId, int finger) {
+        return new StoredTemplate(userId, finger, TemplateType.MORPHO_PK_ISO_FMC_CS,
+                (userId + "/" + finger).getBytes());
+    }
+
+    @Test
+    public void putGetDelete_manyUsers() throws Exception {
+        TemplateRepository repository = TemplateRepository.open(folder.getRoot());
+        for (int i = 0; i < 3000; i++) {
+            repository.put(template("user" + i, 1 + i % TemplateRepository.NB_FINGERS));
+        }
+        repository.put(new StoredTemplate("user7", 8, TemplateFVPType.MORPHO_PK_FVP, new byte[]{7}));
+        assertTrue(repository.delete("user42", 3));
+        assertFalse(repository.delete("user42", 3));
+
+        assertEquals(2999, repository.size());
+        assertNull(repository.get("user42", 3));
+        assertNull(repository.get("user43", 3));
+        assertArrayEquals("user2999/10".getBytes(), repository.get("user2999", 10).getData());
+        StoredTemplate replaced = repository.get("user7", 8);
+        assertEquals(TemplateFVPType.MORPHO_PK_FVP, replaced.getTemplateType());
+        assertArrayEquals(new byte[]{7}, replaced.getData());
+        repository.close();
+
+        // Index persisted
+        repository = TemplateRepository.open(folder.getRoot());
+        assertEquals(2999, repository.size());
+        assertTrue(repository.contains("user1000", 1));
+        assertFalse(repository.contains("user42"));
+        repository.close();
+
+        // Index rebuilt from the data file
+        assertTrue(new File(folder.getRoot(), TemplateRepository.INDEX_FILENAME).delete());
+        repository = TemplateRepository.open(folder.getRoot());
+        assertEquals(2999, repository.size());
+        assertEquals(TemplateType.MORPHO_PK_ISO_FMC_CS, repository.get("user1000", 1).getTemplateType());
+        assertNull(repository.get("user42", 3));
+        repository.close();
+    }
+
+    @Test
+    public void put_sortedIsoTemplate_isStoredPacked() throws Exception {
+        // Compact card, minutiae sorted by vertical position
+        byte[] data = new byte[40 * 3];
+        for (int i = 0; i < 40; i++) {
+            data[3 * i] = (byte) (i * 37);
+            data[3 * i + 1] = (byte) (i * 6);
+            data[3 * i + 2] = (byte) (1 << 6 | i);
+        }
+        TemplateRepository repository = TemplateRepository.open(folder.getRoot());
+        repository.put(new StoredTemplate("alice", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, data));
+        long packedLength = repository.syncedLength();
+        repository.put(new StoredTemplate("bob", 1, TemplateType.MORPHO_PK_ISO_FMC_CS, data.clone()));
+        // Shorter than the raw record : fixed fields, user id, data and checksum
+        assertTrue(repository.syncedLength() - packedLength < 11 + "bob".length() + data.length + 4);
+
+        StoredTemplate read = repository.get("alice", 1);
+        assertNotNull(read.getPacked());
+        assertArrayEquals(data, read.getData());
+        read.validate();
+        // Stored again without being packed again
+        repository.put(new StoredTemplate("carol", 2, TemplateType.MORPHO_PK_ISO_FMC_CS, read.getData()));
+        repository.put(read);
+        repository.close();
+
+        repository = TemplateRepository.open(folder.getRoot());
+        assertArrayEquals(data, repository.get("alice", 1).getData());
+        assertArrayEquals(data, repository.get("carol", 2).getData());
+        repository.close();
+    }
+
+    @Test
+    public void open_dropsTruncatedRecord() throws Exception {
+        TemplateRepository repository = TemplateRepository.open(folder.getRoot());
+        repository.put(template("alice", 1));
+        repository.put(template("bob", 2));
+        repository.close();
+
+        File data = new File(folder.getRoot(), TemplateRepository.DATA_FILENAME);
+        try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+        assertTrue(new File(folder.getRoot(), TemplateRepository.INDEX_FILENAME).delete());
+
+        repository = TemplateRepository.open(folder.getRoot());
+        assertEquals(1, repository.size());
+        assertNotNull(repository.get("alice", 1));
+        assertNull(repository.get("bob", 2));
+        repository.put(template("bob", 2));
+        assertNotNull(repository.get("bob", 2));
+        repository.close();
+    }
+
+    @Test
+    public void corruptRecord_isQuarantined() throws Exception {
+        TemplateRepository repository = TemplateRepository.open(folder.getRoot());
+        repository.put(template("alice", 1));
+        repository.put(template("bob", 2));
+        repository.put(template("carol", 3));
+        repository.close();
+
+        // Flip a byte of the data of bob (second record) and of carol (last record)
+        File data = new File(folder.getRoot(), TemplateRepository.DATA_FILENAME);
+        try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            for (long position : new long[]{8 + 27 + 15, file.length() - 6}) {
+                file.seek(position);
+                int b = file.read();
+                file.seek(position);
+                file.write(b ^ 0x10);
+            }
+        }
+
+        repository = TemplateRepository.open(folder.getRoot());
+        assertNull(repository.get("carol", 3));
+        assertEquals(1, repository.getQuarantinedCount());
+        assertTrue(new File(folder.getRoot(), TemplateRepository.QUARANTINE_FILENAME).length() > 0);
+        TemplateRepository.Sweep sweep = repository.sweep();
+        assertEquals(1, sweep.next(100));
+        assertEquals(-1, sweep.next(100));
+        assertEquals(2, repository.getQuarantinedCount());
+        assertArrayEquals("alice/1".getBytes(), repository.get("alice", 1).getData());
+        repository.close();
+
+        // Deleted for good, even when the index is rebuilt
+        assertTrue(new File(folder.getRoot(), TemplateRepository.INDEX_FILENAME).delete());
+        repository = TemplateRepository.open(folder.getRoot());
+        assertEquals(1, repository.size());
+        assertNull(repository.get("bob", 2));
+        repository.close();
+    }
+
+    @Test
+    public void open_importsLegacyTemplateFile() throws Exception {
+        try (FileOutputStream fos = new FileOutputStream(new File(folder.getRoot(), TemplateStorage.FILENAME))) {
+            fos.write(new byte[]{1, 2, 3});
+        }
+
+        TemplateRepository repository = TemplateRepository.open(folder.getRoot());
+        StoredTemplate legacy = repository.get("test", 1);
+        assertEquals(TemplateType.MORPHO_PK_ISO_FMC_CS, legacy.getTemplateType());
+        assertArrayEquals(new byte[]{1, 2, 3}, legacy.getData());
+
+        // Deleted for good, not imported again
+        repository.delete("test", 1);
+        repository.close();
+        repository = TemplateRepository.open(folder.getRoot());
+        assertTrue(repository.isEmpty());
+        repository.close();
+    }
+}